@@ -1,21 +1,30 @@
 package de.agentquack.icekart.client;
 
+import de.agentquack.icekart.Icekart;
 import de.agentquack.icekart.client.command.RacerCommand;
 import de.agentquack.icekart.client.command.WaypointCommand;
+import de.agentquack.icekart.client.event.RaceEventBus;
+import de.agentquack.icekart.client.heat.HeatScheduler;
+import de.agentquack.icekart.client.hud.DeltaHud;
+import de.agentquack.icekart.client.hud.StandingsHud;
+import de.agentquack.icekart.client.metrics.MetricsServer;
+import de.agentquack.icekart.client.session.SessionResume;
 import de.agentquack.icekart.client.waypoint.WaypointManager;
 import de.agentquack.icekart.client.waypoint.WaypointRenderer;
 import de.agentquack.icekart.client.waypoint.WaypointSelectionTool;
 import de.agentquack.icekart.client.waypoint.WaypointTracker;
 import net.fabricmc.api.ClientModInitializer;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandRegistrationCallback;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.minecraft.client.MinecraftClient;
 import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class IcekartClient implements ClientModInitializer {
 
-    public static final String MOD_ID = "icekart";
-    public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
+    public static final String MOD_ID = Icekart.MOD_ID;
+    public static final Logger LOGGER = Icekart.LOGGER;
 
     @Override
     public void onInitializeClient() {
@@ -23,6 +32,13 @@ public class IcekartClient implements ClientModInitializer {
         registerRacerCommand();
         registerWaypointCommand();
         registerWaypointSystem();
+        StandingsHud.getInstance().register();
+        DeltaHud.getInstance().register();
+        MetricsServer.getInstance().startFromSystemProperty();
+        // Pick up a race the client crashed in
+        SessionResume.getInstance().restore();
+        // Quitting normally ends the session, only a crash resumes it
+        ClientLifecycleEvents.CLIENT_STOPPING.register(client -> SessionResume.getInstance().onClientStopping());
     }
 
     private void registerWaypointCommand() {
@@ -35,43 +51,57 @@ public class IcekartClient implements ClientModInitializer {
         // Register the wooden axe selection tool
         WaypointSelectionTool.register();
 
-        // Register the waypoint particle renderer
+        // Register the waypoint renderer (lines or particles)
         WaypointRenderer.getInstance().register();
 
-        // Track world changes for waypoint loading
-        String[] lastWorldName = {null};
-        ClientTickEvents.END_CLIENT_TICK.register(client -> {
-            String currentWorld = null;
-            if (client.world != null && client.isIntegratedServerRunning()) {
-                // Single player world
-                var server = client.getServer();
-                if (server != null) {
-                    currentWorld = server.getSaveProperties().getLevelName();
-                }
-            } else if (client.world != null && client.getCurrentServerEntry() != null) {
-                // Multiplayer server
-                currentWorld = client.getCurrentServerEntry().address;
-            }
-
-            if (currentWorld != null && !currentWorld.equals(lastWorldName[0])) {
-                lastWorldName[0] = currentWorld;
-                WaypointManager.getInstance().onWorldChanged(currentWorld);
-            } else if (currentWorld == null && lastWorldName[0] != null) {
-                lastWorldName[0] = null;
-                WaypointManager.getInstance().onWorldChanged(null);
+        // Load the track as soon as the connection enters the play state, so it is
+        // compiled and indexed in the background before the player spawns
+        ClientPlayConnectionEvents.INIT.register((handler, client) ->
+                client.execute(() -> WaypointManager.getInstance().onWorldChanged(getWorldName(client))));
+        // Fallback in case the world name wasn't available yet (no-op if it didn't change)
+        ClientPlayConnectionEvents.JOIN.register((handler, sender, client) -> client.execute(() -> {
+            String worldName = getWorldName(client);
+            if (worldName != null) {
+                WaypointManager.getInstance().onWorldChanged(worldName);
             }
-        });
+        }));
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> client.execute(() -> {
+            WaypointManager.getInstance().onWorldChanged(null);
+            // Sessions use tracks of the world that was left
+            WaypointTracker.getInstance().getSessions().closeAll();
+        }));
 
         // Register waypoint tick tracker
         ClientTickEvents.END_CLIENT_TICK.register(client -> {
             if (client.world != null && client.player != null) {
                 WaypointTracker.getInstance().tick();
+                HeatScheduler.getInstance().tick();
             }
+            // Events posted during the tick (and by the network thread) go out as one batch
+            RaceEventBus.getInstance().flush();
+            SessionResume.getInstance().tick();
         });
 
         LOGGER.info("[IceKart] Waypoint system initialized");
     }
 
+    /**
+     * Name identifying the current world: the level name in single player,
+     * the server address in multiplayer. Null if neither is known.
+     */
+    private static String getWorldName(MinecraftClient client) {
+        if (client.isIntegratedServerRunning()) {
+            // Single player world
+            var server = client.getServer();
+            return server != null ? server.getSaveProperties().getLevelName() : null;
+        }
+        if (client.getCurrentServerEntry() != null) {
+            // Multiplayer server
+            return client.getCurrentServerEntry().address;
+        }
+        return null;
+    }
+
     private void registerRacerCommand() {
         ClientCommandRegistrationCallback.EVENT.register((dispatcher, registryAccess) -> {
             RacerCommand.register(dispatcher);
@@ -1,10 +1,26 @@
 package de.agentquack.icekart.client.command;
 
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
 import com.mojang.brigadier.suggestion.SuggestionProvider;
 import de.agentquack.icekart.client.IcekartClient;
+import de.agentquack.icekart.client.heat.Heat;
+import de.agentquack.icekart.client.heat.HeatScheduler;
+import de.agentquack.icekart.client.hud.StandingsHud;
+import de.agentquack.icekart.client.metrics.MetricsServer;
+import de.agentquack.icekart.client.session.SessionAnalytics;
+import de.agentquack.icekart.client.session.SessionExporter;
+import de.agentquack.icekart.client.session.SessionRecorder;
+import de.agentquack.icekart.client.timing.RaceTimer;
+import de.agentquack.icekart.client.waypoint.WaypointManager;
+import de.agentquack.icekart.client.waypoint.WaypointTracker;
+import de.agentquack.icekart.race.RaceServerConnection;
+import de.agentquack.icekart.race.RaceSession;
+import de.agentquack.icekart.race.RaceSessions;
+import de.agentquack.icekart.tracking.TrackerElection;
+import de.agentquack.icekart.track.TrackStorage;
 import de.agentquack.icekart.client.websocket.WebSocketClient;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandManager;
 import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
@@ -12,6 +28,11 @@ import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.network.PlayerListEntry;
 import net.minecraft.text.Text;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Registers the /racer command with subcommands for managing racers and race state.
  *
@@ -24,6 +45,18 @@ import net.minecraft.text.Text;
  * - /racer race reset                - Reset the race
  * - /racer connect                   - Connect to WebSocket server
  * - /racer disconnect                - Disconnect from WebSocket server
+ * - /racer hud                       - Toggle the live standings and delta HUD
+ * - /racer analytics                 - Analyze all recorded sessions and export the results
+ * - /racer metrics start [port]      - Serve metrics for Prometheus on 127.0.0.1 (default port 9464)
+ * - /racer metrics stop              - Stop the metrics endpoint
+ * - /racer session add <name> <track> <url> - Track another race on another track and race server
+ * - /racer session remove <name>     - Stop tracking a race session
+ * - /racer session list              - List the race sessions
+ * - /racer heat load <file>          - Load a heat queue from config/icekart/<file>.json
+ * - /racer heat start                - Stage the first heat, or start the staged heat now
+ * - /racer heat skip                 - Move on to the next heat right away
+ * - /racer heat status               - Show the heat queue and heats per hour
+ * - /racer heat clear                - Drop the heat queue
  */
 public class RacerCommand {
 
@@ -51,6 +84,26 @@ public class RacerCommand {
         return builder.buildFuture();
     };
 
+    // Suggestion provider for the tracks of the current world
+    private static final SuggestionProvider<FabricClientCommandSource> TRACK_NAMES = (context, builder) -> {
+        WaypointManager.getInstance().getTracks().forEach(track -> {
+            if (track.name().toLowerCase().startsWith(builder.getRemainingLowerCase())) {
+                builder.suggest(track.name());
+            }
+        });
+        return builder.buildFuture();
+    };
+
+    // Suggestion provider for the running race sessions
+    private static final SuggestionProvider<FabricClientCommandSource> SESSIONS = (context, builder) -> {
+        for (RaceSession session : WaypointTracker.getInstance().getSessions().getAll()) {
+            if (session.getName().toLowerCase().startsWith(builder.getRemainingLowerCase())) {
+                builder.suggest(session.getName());
+            }
+        }
+        return builder.buildFuture();
+    };
+
     public static void register(CommandDispatcher<FabricClientCommandSource> dispatcher) {
         dispatcher.register(ClientCommandManager.literal("racer")
                 // /racer connect
@@ -59,6 +112,49 @@ public class RacerCommand {
                 // /racer disconnect
                 .then(ClientCommandManager.literal("disconnect")
                         .executes(RacerCommand::disconnect))
+                // /racer hud
+                .then(ClientCommandManager.literal("hud")
+                        .executes(RacerCommand::toggleHud))
+                // /racer analytics
+                .then(ClientCommandManager.literal("analytics")
+                        .executes(RacerCommand::runAnalytics))
+                // /racer metrics start [port]
+                .then(ClientCommandManager.literal("metrics")
+                        .then(ClientCommandManager.literal("start")
+                                .executes(context -> startMetrics(context, MetricsServer.DEFAULT_PORT))
+                                .then(ClientCommandManager.argument("port", IntegerArgumentType.integer(1, 65535))
+                                        .executes(context -> startMetrics(context,
+                                                IntegerArgumentType.getInteger(context, "port")))))
+                        // /racer metrics stop
+                        .then(ClientCommandManager.literal("stop")
+                                .executes(RacerCommand::stopMetrics)))
+                // /racer heat load|start|skip|status|clear
+                .then(ClientCommandManager.literal("heat")
+                        .then(ClientCommandManager.literal("load")
+                                .then(ClientCommandManager.argument("file", StringArgumentType.string())
+                                        .executes(RacerCommand::loadHeats)))
+                        .then(ClientCommandManager.literal("start")
+                                .executes(RacerCommand::startHeat))
+                        .then(ClientCommandManager.literal("skip")
+                                .executes(RacerCommand::skipHeat))
+                        .then(ClientCommandManager.literal("status")
+                                .executes(RacerCommand::heatStatus))
+                        .then(ClientCommandManager.literal("clear")
+                                .executes(RacerCommand::clearHeats)))
+                // /racer session add|remove|list
+                .then(ClientCommandManager.literal("session")
+                        .then(ClientCommandManager.literal("add")
+                                .then(ClientCommandManager.argument("name", StringArgumentType.word())
+                                        .then(ClientCommandManager.argument("track", StringArgumentType.word())
+                                                .suggests(TRACK_NAMES)
+                                                .then(ClientCommandManager.argument("url", StringArgumentType.greedyString())
+                                                        .executes(RacerCommand::addSession)))))
+                        .then(ClientCommandManager.literal("remove")
+                                .then(ClientCommandManager.argument("name", StringArgumentType.word())
+                                        .suggests(SESSIONS)
+                                        .executes(RacerCommand::removeSession)))
+                        .then(ClientCommandManager.literal("list")
+                                .executes(RacerCommand::listSessions)))
                 // /racer player add <name>
                 .then(ClientCommandManager.literal("player")
                         .then(ClientCommandManager.literal("add")
@@ -117,6 +213,232 @@ public class RacerCommand {
         return 1;
     }
 
+    private static int toggleHud(CommandContext<FabricClientCommandSource> context) {
+        boolean enabled = StandingsHud.getInstance().toggle();
+        if (enabled) {
+            context.getSource().sendFeedback(Text.literal("§a[IceKart] Standings HUD §aENABLED"));
+        } else {
+            context.getSource().sendFeedback(Text.literal("§a[IceKart] Standings HUD §cDISABLED"));
+        }
+        return 1;
+    }
+
+    private static int startMetrics(CommandContext<FabricClientCommandSource> context, int port) {
+        try {
+            MetricsServer.getInstance().start(port);
+        } catch (IOException e) {
+            context.getSource().sendError(Text.literal("§c[IceKart] Failed to start metrics endpoint: " + e.getMessage()));
+            return 0;
+        }
+        context.getSource().sendFeedback(Text.literal("§a[IceKart] Metrics available at §fhttp://127.0.0.1:"
+                + MetricsServer.getInstance().getPort() + "/metrics"));
+        return 1;
+    }
+
+    private static int stopMetrics(CommandContext<FabricClientCommandSource> context) {
+        if (!MetricsServer.getInstance().isRunning()) {
+            context.getSource().sendFeedback(Text.literal("§e[IceKart] Metrics endpoint is not running"));
+            return 0;
+        }
+        MetricsServer.getInstance().stop();
+        context.getSource().sendFeedback(Text.literal("§a[IceKart] Metrics endpoint stopped"));
+        return 1;
+    }
+
+    private static int loadHeats(CommandContext<FabricClientCommandSource> context) {
+        String file = StringArgumentType.getString(context, "file");
+        HeatScheduler.getInstance().load(file).whenCompleteAsync((count, error) -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                context.getSource().sendError(Text.literal("§c[IceKart] Failed to load heats: " + cause.getMessage()));
+                return;
+            }
+            context.getSource().sendFeedback(Text.literal("§a[IceKart] Loaded §f" + count
+                    + " §aheats §7- /racer heat start to stage the first one"));
+        }, MinecraftClient.getInstance()::execute);
+        return 1;
+    }
+
+    private static int startHeat(CommandContext<FabricClientCommandSource> context) {
+        if (!WebSocketClient.getInstance().isConnected()) {
+            context.getSource().sendFeedback(Text.literal("§c[IceKart] Not connected! Use /racer connect first"));
+            return 0;
+        }
+        if (!HeatScheduler.getInstance().start()) {
+            context.getSource().sendError(Text.literal("§c[IceKart] No heat to start"));
+            return 0;
+        }
+        return 1;
+    }
+
+    private static int skipHeat(CommandContext<FabricClientCommandSource> context) {
+        if (!WebSocketClient.getInstance().isConnected()) {
+            context.getSource().sendFeedback(Text.literal("§c[IceKart] Not connected! Use /racer connect first"));
+            return 0;
+        }
+        if (!HeatScheduler.getInstance().skip()) {
+            context.getSource().sendError(Text.literal("§c[IceKart] No next heat"));
+            return 0;
+        }
+        return 1;
+    }
+
+    private static int heatStatus(CommandContext<FabricClientCommandSource> context) {
+        HeatScheduler scheduler = HeatScheduler.getInstance();
+        if (scheduler.getHeats().isEmpty()) {
+            context.getSource().sendFeedback(Text.literal("§e[IceKart] No heat queue loaded"));
+            return 0;
+        }
+        context.getSource().sendFeedback(Text.literal("§6[IceKart] Heats: §f" + scheduler.getCompleted() + "/"
+                + scheduler.getHeats().size() + " §7done | " + scheduler.getPhase()));
+        scheduler.getCurrentHeat().ifPresent(heat -> context.getSource().sendFeedback(
+                Text.literal("§7Current: §f" + describeHeat(heat)
+                        + (scheduler.isTrackActive() ? "" : " §e(track not active)"))));
+        scheduler.getNextHeat().ifPresent(heat -> context.getSource().sendFeedback(
+                Text.literal("§7Next: §f" + describeHeat(heat)
+                        + (scheduler.isNextTrackReady() ? " §a(track ready)" : " §e(track loading)"))));
+
+        double rate = scheduler.getHeatsPerHour();
+        long turnaround = scheduler.getMeanTurnaroundMs();
+        context.getSource().sendFeedback(Text.literal(String.format("§7Heats per hour: §f%s §7| turnaround: §f%s",
+                rate < 0 ? "-" : String.format("%.1f", rate),
+                turnaround < 0 ? "-" : String.format("%.1fs", turnaround / 1000.0))));
+        return 1;
+    }
+
+    private static String describeHeat(Heat heat) {
+        return heat.name() + " §7| " + heat.track() + " | " + heat.laps() + " laps | "
+                + String.join(", ", heat.racers());
+    }
+
+    private static int clearHeats(CommandContext<FabricClientCommandSource> context) {
+        HeatScheduler.getInstance().clear();
+        context.getSource().sendFeedback(Text.literal("§a[IceKart] Heat queue cleared"));
+        return 1;
+    }
+
+    private static int addSession(CommandContext<FabricClientCommandSource> context) {
+        String name = StringArgumentType.getString(context, "name");
+        String trackName = StringArgumentType.getString(context, "track");
+        String url = StringArgumentType.getString(context, "url").trim();
+        RaceSessions sessions = WaypointTracker.getInstance().getSessions();
+
+        if (sessions.get(name).isPresent()) {
+            context.getSource().sendError(Text.literal("§c[IceKart] Session " + name + " already exists"));
+            return 0;
+        }
+        if (!url.startsWith("ws://") && !url.startsWith("wss://")) {
+            context.getSource().sendError(Text.literal("§c[IceKart] Race server URL must start with ws:// or wss://"));
+            return 0;
+        }
+
+        MinecraftClient client = MinecraftClient.getInstance();
+        WaypointManager.getInstance().loadTrackAsync(trackName).whenCompleteAsync((track, error) -> {
+            if (error != null || track == null) {
+                context.getSource().sendError(Text.literal("§c[IceKart] Track " + trackName
+                        + (error != null ? " failed to load" : " not found")));
+                return;
+            }
+            RaceSession session = new RaceSession(name,
+                    new RaceServerConnection(url, TrackerElection.CLIENT_PRIORITY));
+            session.setTrack(trackName, track);
+            if (!sessions.add(session)) {
+                context.getSource().sendError(Text.literal("§c[IceKart] Session " + name + " already exists"));
+                return;
+            }
+            context.getSource().sendFeedback(Text.literal("§a[IceKart] Session §f" + name + " §atracking §f"
+                    + trackName + " §7(" + track.size() + " gates) §afor §f" + url));
+        }, client::execute);
+        return 1;
+    }
+
+    private static int removeSession(CommandContext<FabricClientCommandSource> context) {
+        String name = StringArgumentType.getString(context, "name");
+        if (!WaypointTracker.getInstance().getSessions().remove(name)) {
+            context.getSource().sendError(Text.literal("§c[IceKart] No session named " + name));
+            return 0;
+        }
+        context.getSource().sendFeedback(Text.literal("§a[IceKart] Session " + name + " removed"));
+        return 1;
+    }
+
+    private static int listSessions(CommandContext<FabricClientCommandSource> context) {
+        List<RaceSession> sessions = WaypointTracker.getInstance().getSessions().getAll();
+        if (sessions.isEmpty()) {
+            context.getSource().sendFeedback(Text.literal("§e[IceKart] No race sessions besides the main race"));
+            return 0;
+        }
+        context.getSource().sendFeedback(Text.literal("§6[IceKart] Race sessions:"));
+        for (RaceSession session : sessions) {
+            RaceServerConnection channel = session.getChannel();
+            context.getSource().sendFeedback(Text.literal(String.format("§f%s §7| %s (%d gates) | %s | %s | %d racers",
+                    session.getName(), session.getTrackName(), session.getTrack().size(), channel.getUrl(),
+                    channel.isConnected() ? "§a" + session.getRaceStatus() + "§7" : "§cdisconnected§7",
+                    channel.getRacerNames().size())));
+        }
+        return 1;
+    }
+
+    private static int runAnalytics(CommandContext<FabricClientCommandSource> context) {
+        List<Path> sessions;
+        try {
+            sessions = SessionRecorder.listSessions();
+        } catch (IOException e) {
+            context.getSource().sendError(Text.literal("§c[IceKart] Failed to list sessions: " + e.getMessage()));
+            return 0;
+        }
+        if (sessions.isEmpty()) {
+            context.getSource().sendFeedback(Text.literal("§e[IceKart] No recorded sessions"));
+            return 0;
+        }
+
+        context.getSource().sendFeedback(Text.literal("§7[IceKart] Analyzing " + sessions.size() + " sessions..."));
+        MinecraftClient client = MinecraftClient.getInstance();
+        long start = System.nanoTime();
+
+        // Analysis runs on the common fork-join pool, exports on the IO thread
+        CompletableFuture.supplyAsync(() -> SessionAnalytics.analyze(sessions))
+                .thenApplyAsync(reports -> {
+                    for (SessionAnalytics.SessionReport report : reports) {
+                        try {
+                            SessionExporter.export(report, SessionRecorder.getSessionDir());
+                        } catch (IOException e) {
+                            IcekartClient.LOGGER.error("[IceKart] Failed to export analytics of {}", report.name(), e);
+                        }
+                    }
+                    return reports;
+                }, TrackStorage.getExecutor())
+                .whenComplete((reports, error) -> client.execute(() -> {
+                    if (error != null) {
+                        IcekartClient.LOGGER.error("[IceKart] Session analytics failed", error);
+                        context.getSource().sendError(Text.literal("§c[IceKart] Session analytics failed"));
+                        return;
+                    }
+                    long millis = (System.nanoTime() - start) / 1_000_000L;
+                    context.getSource().sendFeedback(Text.literal(String.format(
+                            "§a[IceKart] Analyzed %d sessions in %d ms §7(exported to config/icekart/sessions)",
+                            reports.size(), millis)));
+                    reportBestLap(context, reports);
+                }));
+        return 1;
+    }
+
+    private static void reportBestLap(CommandContext<FabricClientCommandSource> context,
+                                      List<SessionAnalytics.SessionReport> reports) {
+        SessionAnalytics.RacerReport best = null;
+        for (SessionAnalytics.SessionReport report : reports) {
+            for (SessionAnalytics.RacerReport racer : report.racers()) {
+                if (racer.bestLapNanos() >= 0 && (best == null || racer.bestLapNanos() < best.bestLapNanos())) {
+                    best = racer;
+                }
+            }
+        }
+        if (best != null) {
+            context.getSource().sendFeedback(Text.literal("§7[IceKart] Best lap: §f" + best.name()
+                    + " §7in §f" + RaceTimer.formatNanos(best.bestLapNanos())));
+        }
+    }
+
     private static int addPlayer(CommandContext<FabricClientCommandSource> context) {
         String playerName = StringArgumentType.getString(context, "name");
         WebSocketClient client = WebSocketClient.getInstance();
@@ -1,14 +1,19 @@
 package de.agentquack.icekart.client.command;
 
 import de.agentquack.icekart.client.IcekartClient;
+import de.agentquack.icekart.client.event.RaceEvent;
+import de.agentquack.icekart.client.event.RaceEventBus;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 
 /**
  * Manages the list of racers participating in the race.
  * Tracks the mapping between player names and server-assigned racer IDs.
+ * The roster is synced on the WebSocket thread and used on the client thread, so all methods
+ * are synchronized.
  */
 public class RacerManager {
 
@@ -32,7 +37,7 @@ public class RacerManager {
     /**
      * Add a racer locally (before server confirms with ID)
      */
-    public void addRacer(String playerName) {
+    public synchronized void addRacer(String playerName) {
         // We add with null ID initially, the ID will be set when we receive init/update from server
         if (!racerNameToId.containsKey(playerName)) {
             racerNameToId.put(playerName, null);
@@ -44,16 +49,41 @@ public class RacerManager {
      * Update racer information from server data.
      * Called when we receive init or update events.
      */
-    public void updateRacerFromServer(String id, String name) {
-        racerNameToId.put(name, id);
+    public synchronized void updateRacerFromServer(String id, String name) {
+        String previous = racerNameToId.put(name, id);
         racerIdToName.put(id, name);
-        IcekartClient.LOGGER.info("[IceKart] Racer synced from server: {} -> ID: {}", name, id);
+        if (!id.equals(previous)) {
+            if (previous != null) {
+                racerIdToName.remove(previous);
+            }
+            IcekartClient.LOGGER.info("[IceKart] Racer synced from server: {} -> ID: {}", name, id);
+            RaceEventBus.getInstance().post(new RaceEvent.RacerSynced(name, id));
+        }
+    }
+
+    /**
+     * Make the roster match the race server's: sync the IDs of the listed racers and drop the
+     * synced racers the server no longer lists. Racers added locally that the server doesn't know
+     * yet (no ID) are kept, their registration may still be on its way.
+     *
+     * @param serverRacers racer ID by name, the complete roster of an init or update message
+     */
+    public synchronized void syncFromServer(Map<String, String> serverRacers) {
+        racerNameToId.entrySet().removeIf(entry -> {
+            if (entry.getValue() == null || serverRacers.containsKey(entry.getKey())) {
+                return false;
+            }
+            racerIdToName.remove(entry.getValue());
+            IcekartClient.LOGGER.info("[IceKart] Racer no longer on the server, removed: {}", entry.getKey());
+            return true;
+        });
+        serverRacers.forEach((name, id) -> updateRacerFromServer(id, name));
     }
 
     /**
      * Remove a racer by name
      */
-    public boolean removeRacer(String playerName) {
+    public synchronized boolean removeRacer(String playerName) {
         String id = racerNameToId.remove(playerName);
         if (id != null) {
             racerIdToName.remove(id);
@@ -67,14 +97,14 @@ public class RacerManager {
     /**
      * Check if a player is registered as a racer
      */
-    public boolean isRacer(String playerName) {
+    public synchronized boolean isRacer(String playerName) {
         return racerNameToId.containsKey(playerName.toLowerCase());
     }
 
     /**
      * Get the server-assigned racer ID for a player name
      */
-    public Optional<String> getRacerId(String playerName) {
+    public synchronized Optional<String> getRacerId(String playerName) {
         String id = racerNameToId.get(playerName);
         return Optional.ofNullable(id);
     }
@@ -82,7 +112,7 @@ public class RacerManager {
     /**
      * Get the player name for a racer ID
      */
-    public Optional<String> getRacerName(String racerId) {
+    public synchronized Optional<String> getRacerName(String racerId) {
         String name = racerIdToName.get(racerId);
         return Optional.ofNullable(name);
     }
@@ -90,7 +120,7 @@ public class RacerManager {
     /**
      * Clear all racers
      */
-    public void clearRacers() {
+    public synchronized void clearRacers() {
         racerNameToId.clear();
         racerIdToName.clear();
         IcekartClient.LOGGER.debug("[IceKart] All racers cleared");
@@ -99,8 +129,15 @@ public class RacerManager {
     /**
      * Get all registered racer names
      */
-    public java.util.Set<String> getRacerNames() {
+    public synchronized java.util.Set<String> getRacerNames() {
         return new java.util.HashSet<>(racerNameToId.keySet());
     }
+
+    /**
+     * Copy of the roster: racer ID by player name, null for racers not synced yet.
+     */
+    public synchronized Map<String, String> getRacers() {
+        return new LinkedHashMap<>(racerNameToId);
+    }
 }
 
@@ -1,16 +1,22 @@
 package de.agentquack.icekart.client.command;
 
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
 import com.mojang.brigadier.suggestion.SuggestionProvider;
 import de.agentquack.icekart.client.IcekartClient;
-import de.agentquack.icekart.client.waypoint.Waypoint;
+import de.agentquack.icekart.client.websocket.WebSocketClient;
+import de.agentquack.icekart.track.CompiledTrack;
+import de.agentquack.icekart.track.TrackLibrary;
+import de.agentquack.icekart.track.Waypoint;
+import de.agentquack.icekart.client.waypoint.TrackShard;
 import de.agentquack.icekart.client.waypoint.WaypointManager;
 import de.agentquack.icekart.client.waypoint.WaypointRenderer;
 import de.agentquack.icekart.client.waypoint.WaypointTracker;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandManager;
 import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
+import net.minecraft.client.MinecraftClient;
 import net.minecraft.text.MutableText;
 import net.minecraft.text.Text;
 
@@ -25,10 +31,21 @@ import java.util.List;
  * - /waypoint list                   - List all waypoints
  * - /waypoint info <id>              - Show waypoint info
  * - /waypoint clear                  - Clear all waypoints
- * - /waypoint save                   - Save waypoints to config
+ * - /waypoint undo                   - Undo the last edit
+ * - /waypoint redo                   - Redo the last undone edit
+ * - /waypoint save                   - Compact the edit journal into the track file
  * - /waypoint load                   - Load waypoints from config
+ * - /waypoint export                 - Export waypoints as JSON for hand editing
+ * - /waypoint track list             - List tracks of this world
+ * - /waypoint track select <name>    - Switch to another track
+ * - /waypoint track create <name>    - Create an empty track and switch to it
+ * - /waypoint track delete <name>    - Delete an inactive track
  * - /waypoint view                   - Toggle waypoint visualization
+ * - /waypoint view <mode>            - Enable visualization with mode (lines, particles)
  * - /waypoint selection clear        - Clear current selection
+ * - /waypoint shard                  - Show the claimed shard
+ * - /waypoint shard claim <from> <to> - Only track gates from..to (gate numbers) and report them as a shard
+ * - /waypoint shard clear            - Track the whole track again
  * - /waypoint reset                  - Reset tracking
  */
 public class WaypointCommand {
@@ -54,6 +71,27 @@ public class WaypointCommand {
         return builder.buildFuture();
     };
 
+    // Suggestion provider for track names
+    private static final SuggestionProvider<FabricClientCommandSource> TRACK_NAMES = (context, builder) -> {
+        for (TrackLibrary.TrackInfo track : WaypointManager.getInstance().getTracks()) {
+            if (track.name().regionMatches(true, 0, builder.getRemaining(), 0, builder.getRemaining().length())) {
+                builder.suggest(track.name());
+            }
+        }
+        return builder.buildFuture();
+    };
+
+    // Suggestion provider for render modes
+    private static final SuggestionProvider<FabricClientCommandSource> VIEW_MODES = (context, builder) -> {
+        for (WaypointRenderer.Mode mode : WaypointRenderer.Mode.values()) {
+            String name = mode.name().toLowerCase();
+            if (name.startsWith(builder.getRemainingLowerCase())) {
+                builder.suggest(name);
+            }
+        }
+        return builder.buildFuture();
+    };
+
     public static void register(CommandDispatcher<FabricClientCommandSource> dispatcher) {
         dispatcher.register(ClientCommandManager.literal("waypoint")
                 // /waypoint create <id> [type]
@@ -84,6 +122,14 @@ public class WaypointCommand {
                 .then(ClientCommandManager.literal("clear")
                         .executes(WaypointCommand::clearWaypoints))
 
+                // /waypoint undo
+                .then(ClientCommandManager.literal("undo")
+                        .executes(WaypointCommand::undo))
+
+                // /waypoint redo
+                .then(ClientCommandManager.literal("redo")
+                        .executes(WaypointCommand::redo))
+
                 // /waypoint save
                 .then(ClientCommandManager.literal("save")
                         .executes(WaypointCommand::saveWaypoints))
@@ -92,15 +138,48 @@ public class WaypointCommand {
                 .then(ClientCommandManager.literal("load")
                         .executes(WaypointCommand::loadWaypoints))
 
-                // /waypoint view (toggle particle visualization)
+                // /waypoint export
+                .then(ClientCommandManager.literal("export")
+                        .executes(WaypointCommand::exportWaypoints))
+
+                // /waypoint track list|select|create|delete
+                .then(ClientCommandManager.literal("track")
+                        .then(ClientCommandManager.literal("list")
+                                .executes(WaypointCommand::listTracks))
+                        .then(ClientCommandManager.literal("select")
+                                .then(ClientCommandManager.argument("name", StringArgumentType.word())
+                                        .suggests(TRACK_NAMES)
+                                        .executes(WaypointCommand::selectTrack)))
+                        .then(ClientCommandManager.literal("create")
+                                .then(ClientCommandManager.argument("name", StringArgumentType.word())
+                                        .executes(WaypointCommand::createTrack)))
+                        .then(ClientCommandManager.literal("delete")
+                                .then(ClientCommandManager.argument("name", StringArgumentType.word())
+                                        .suggests(TRACK_NAMES)
+                                        .executes(WaypointCommand::deleteTrack))))
+
+                // /waypoint view [mode] (toggle visualization)
                 .then(ClientCommandManager.literal("view")
-                        .executes(WaypointCommand::toggleView))
+                        .executes(WaypointCommand::toggleView)
+                        .then(ClientCommandManager.argument("mode", StringArgumentType.word())
+                                .suggests(VIEW_MODES)
+                                .executes(WaypointCommand::setViewMode)))
 
                 // /waypoint selection clear
                 .then(ClientCommandManager.literal("selection")
                         .then(ClientCommandManager.literal("clear")
                                 .executes(WaypointCommand::clearSelection)))
 
+                // /waypoint shard [claim <from> <to>|clear]
+                .then(ClientCommandManager.literal("shard")
+                        .executes(WaypointCommand::showShard)
+                        .then(ClientCommandManager.literal("claim")
+                                .then(ClientCommandManager.argument("from", IntegerArgumentType.integer(1))
+                                        .then(ClientCommandManager.argument("to", IntegerArgumentType.integer(1))
+                                                .executes(WaypointCommand::claimShard))))
+                        .then(ClientCommandManager.literal("clear")
+                                .executes(WaypointCommand::clearShard)))
+
                 // /waypoint reset (reset tracking)
                 .then(ClientCommandManager.literal("reset")
                         .executes(WaypointCommand::resetTracking))
@@ -113,6 +192,9 @@ public class WaypointCommand {
         String id = StringArgumentType.getString(ctx, "id");
         WaypointManager manager = WaypointManager.getInstance();
 
+        if (!checkEditable(ctx)) {
+            return 0;
+        }
         if (!manager.hasCompleteSelection()) {
             ctx.getSource().sendFeedback(Text.literal("§c[IceKart] §7No selection! Use wooden axe to select an area."));
             ctx.getSource().sendFeedback(Text.literal("§7  Left-click: Set position 1"));
@@ -130,7 +212,6 @@ public class WaypointCommand {
             ctx.getSource().sendFeedback(Text.literal(String.format(
                     "§a[IceKart] §fWaypoint created: §b%s §7(type: §e%s§7, order: §e#%d§7)",
                     id, type.name(), waypoint.getOrder() + 1)));
-            manager.saveWaypoints();
             return 1;
         } else {
             ctx.getSource().sendFeedback(Text.literal("§c[IceKart] §7Failed to create waypoint."));
@@ -154,9 +235,11 @@ public class WaypointCommand {
         String id = StringArgumentType.getString(ctx, "id");
         WaypointManager manager = WaypointManager.getInstance();
 
+        if (!checkEditable(ctx)) {
+            return 0;
+        }
         if (manager.removeWaypoint(id)) {
             ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fWaypoint removed: §b" + id));
-            manager.saveWaypoints();
             return 1;
         } else {
             ctx.getSource().sendFeedback(Text.literal("§c[IceKart] §7Waypoint not found: " + id));
@@ -217,44 +300,235 @@ public class WaypointCommand {
     }
 
     private static int clearWaypoints(CommandContext<FabricClientCommandSource> ctx) {
+        if (!checkEditable(ctx)) {
+            return 0;
+        }
         WaypointManager manager = WaypointManager.getInstance();
         int count = manager.getWaypointCount();
         manager.clearWaypoints();
-        manager.saveWaypoints();
         ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fCleared " + count + " waypoints."));
         return count;
     }
 
+    private static int undo(CommandContext<FabricClientCommandSource> ctx) {
+        if (!checkEditable(ctx)) {
+            return 0;
+        }
+        var edit = WaypointManager.getInstance().undo();
+        if (edit.isEmpty()) {
+            ctx.getSource().sendFeedback(Text.literal("§e[IceKart] §7Nothing to undo."));
+            return 0;
+        }
+        ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fUndone: §b" + edit.get().describe()));
+        return 1;
+    }
+
+    private static int redo(CommandContext<FabricClientCommandSource> ctx) {
+        if (!checkEditable(ctx)) {
+            return 0;
+        }
+        var edit = WaypointManager.getInstance().redo();
+        if (edit.isEmpty()) {
+            ctx.getSource().sendFeedback(Text.literal("§e[IceKart] §7Nothing to redo."));
+            return 0;
+        }
+        ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fRedone: §b" + edit.get().describe()));
+        return 1;
+    }
+
+    /**
+     * Edits are rejected while the active track is loading, they would be lost.
+     */
+    private static boolean checkEditable(CommandContext<FabricClientCommandSource> ctx) {
+        if (WaypointManager.getInstance().isEditable()) {
+            return true;
+        }
+        ctx.getSource().sendFeedback(Text.literal("§c[IceKart] §7The track is still loading, try again in a moment."));
+        return false;
+    }
+
     private static int saveWaypoints(CommandContext<FabricClientCommandSource> ctx) {
         WaypointManager manager = WaypointManager.getInstance();
-        manager.saveWaypoints();
-        ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fWaypoints saved."));
+        MinecraftClient client = MinecraftClient.getInstance();
+        manager.saveWaypoints().whenCompleteAsync((ignored, error) -> {
+            if (error == null) {
+                ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fWaypoints saved."));
+            } else {
+                ctx.getSource().sendFeedback(Text.literal("§c[IceKart] §7Failed to save waypoints. See log for details."));
+            }
+        }, client::execute);
         return 1;
     }
 
     private static int loadWaypoints(CommandContext<FabricClientCommandSource> ctx) {
         WaypointManager manager = WaypointManager.getInstance();
-        manager.loadWaypoints();
-        ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fLoaded " + manager.getWaypointCount() + " waypoints."));
+        manager.loadWaypoints().whenComplete((count, error) -> {
+            if (error == null) {
+                ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fLoaded " + count + " waypoints."));
+            } else {
+                MinecraftClient.getInstance().execute(() -> ctx.getSource().sendFeedback(
+                        Text.literal("§c[IceKart] §7Failed to load waypoints. See log for details.")));
+            }
+        });
+        return 1;
+    }
+
+    private static int exportWaypoints(CommandContext<FabricClientCommandSource> ctx) {
+        WaypointManager manager = WaypointManager.getInstance();
+        MinecraftClient client = MinecraftClient.getInstance();
+        manager.exportWaypoints().whenCompleteAsync((path, error) -> {
+            if (error == null) {
+                ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fWaypoints exported to §e" + path.getFileName()));
+            } else {
+                ctx.getSource().sendFeedback(Text.literal("§c[IceKart] §7Failed to export waypoints. See log for details."));
+            }
+        }, client::execute);
+        return 1;
+    }
+
+    private static int listTracks(CommandContext<FabricClientCommandSource> ctx) {
+        WaypointManager manager = WaypointManager.getInstance();
+        List<TrackLibrary.TrackInfo> tracks = manager.getTracks();
+
+        if (tracks.isEmpty()) {
+            ctx.getSource().sendFeedback(Text.literal("§e[IceKart] §7No world loaded."));
+            return 0;
+        }
+
+        ctx.getSource().sendFeedback(Text.literal("§6[IceKart] §fTracks (" + tracks.size() + "):"));
+        String active = manager.getActiveTrackName();
+        for (TrackLibrary.TrackInfo track : tracks) {
+            String marker = track.name().equals(active) ? "§a> " : "  ";
+            ctx.getSource().sendFeedback(Text.literal(String.format("%s§f%s §7(%d gates)",
+                    marker, track.name(), track.gateCount())));
+        }
+        return tracks.size();
+    }
+
+    private static int selectTrack(CommandContext<FabricClientCommandSource> ctx) {
+        String name = StringArgumentType.getString(ctx, "name");
+        WaypointManager manager = WaypointManager.getInstance();
+        MinecraftClient client = MinecraftClient.getInstance();
+
+        manager.selectTrack(name).whenCompleteAsync((count, error) -> {
+            if (error == null) {
+                ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fActive track: §b" + name
+                        + " §7(" + count + " waypoints)"));
+            } else {
+                ctx.getSource().sendFeedback(Text.literal("§c[IceKart] §7Failed to select track: " + name));
+            }
+        }, client::execute);
+        return 1;
+    }
+
+    private static int createTrack(CommandContext<FabricClientCommandSource> ctx) {
+        String name = StringArgumentType.getString(ctx, "name");
+        WaypointManager manager = WaypointManager.getInstance();
+
+        if (!TrackLibrary.isValidName(name)) {
+            ctx.getSource().sendFeedback(Text.literal("§c[IceKart] §7Invalid track name (letters, digits, _ and -)."));
+            return 0;
+        }
+        if (!manager.createTrack(name)) {
+            ctx.getSource().sendFeedback(Text.literal("§c[IceKart] §7Track '" + name + "' already exists!"));
+            return 0;
+        }
+        ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fTrack created: §b" + name));
+        return selectTrack(ctx);
+    }
+
+    private static int deleteTrack(CommandContext<FabricClientCommandSource> ctx) {
+        String name = StringArgumentType.getString(ctx, "name");
+        WaypointManager manager = WaypointManager.getInstance();
+
+        if (name.equals(manager.getActiveTrackName())) {
+            ctx.getSource().sendFeedback(Text.literal("§c[IceKart] §7Can't delete the active track. Select another track first."));
+            return 0;
+        }
+        if (!manager.deleteTrack(name)) {
+            ctx.getSource().sendFeedback(Text.literal("§c[IceKart] §7Track not found or can't be deleted: " + name));
+            return 0;
+        }
+        ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fTrack deleted: §b" + name));
         return 1;
     }
 
     private static int toggleView(CommandContext<FabricClientCommandSource> ctx) {
-        boolean enabled = WaypointRenderer.getInstance().toggleView();
+        WaypointRenderer renderer = WaypointRenderer.getInstance();
+        boolean enabled = renderer.toggleView();
         if (enabled) {
-            ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fWaypoint view §aENABLED §7- showing particle outlines"));
+            ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fWaypoint view §aENABLED §7- showing "
+                    + renderer.getMode().name().toLowerCase() + " outlines"));
         } else {
             ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fWaypoint view §cDISABLED"));
         }
         return 1;
     }
 
+    private static int setViewMode(CommandContext<FabricClientCommandSource> ctx) {
+        String modeStr = StringArgumentType.getString(ctx, "mode").toUpperCase();
+        try {
+            WaypointRenderer.Mode mode = WaypointRenderer.Mode.valueOf(modeStr);
+            WaypointRenderer renderer = WaypointRenderer.getInstance();
+            renderer.setMode(mode);
+            renderer.setViewEnabled(true);
+            ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fWaypoint view §aENABLED §7- showing "
+                    + mode.name().toLowerCase() + " outlines"));
+            return 1;
+        } catch (IllegalArgumentException e) {
+            ctx.getSource().sendFeedback(Text.literal("§c[IceKart] §7Invalid view mode: " + modeStr));
+            ctx.getSource().sendFeedback(Text.literal("§7Valid modes: LINES, PARTICLES"));
+            return 0;
+        }
+    }
+
     private static int clearSelection(CommandContext<FabricClientCommandSource> ctx) {
         WaypointManager.getInstance().clearSelection();
         ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fSelection cleared."));
         return 1;
     }
 
+    private static int showShard(CommandContext<FabricClientCommandSource> ctx) {
+        TrackShard shard = TrackShard.getInstance();
+        if (!shard.isSharded()) {
+            ctx.getSource().sendFeedback(Text.literal("§6[IceKart] §fTracking the whole track."));
+            return 0;
+        }
+        CompiledTrack track = WaypointManager.getInstance().getCompiledTrack();
+        List<String> gateIds = shard.getGateIds(track);
+        ctx.getSource().sendFeedback(Text.literal("§6[IceKart] §fShard §b" + shard.getShardId()
+                + " §7(" + gateIds.size() + " gates: " + String.join(", ", gateIds) + ")"));
+        ctx.getSource().sendFeedback(Text.literal(WebSocketClient.getInstance().isLeader()
+                ? "  §7Role: §aleader" : "  §7Role: §estandby"));
+        return 1;
+    }
+
+    private static int claimShard(CommandContext<FabricClientCommandSource> ctx) {
+        int from = IntegerArgumentType.getInteger(ctx, "from");
+        int to = IntegerArgumentType.getInteger(ctx, "to");
+        CompiledTrack track = WaypointManager.getInstance().getCompiledTrack();
+        if (from > track.size() || to > track.size()) {
+            ctx.getSource().sendFeedback(Text.literal("§c[IceKart] §7The track only has " + track.size() + " gates."));
+            return 0;
+        }
+
+        TrackShard shard = TrackShard.getInstance();
+        shard.claim(from, to);
+        WaypointTracker.getInstance().resetTracking();
+        WebSocketClient.getInstance().setShard(shard.getShardId(), shard.getGateIds(track));
+        ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fClaimed shard §b" + shard.getShardId()
+                + " §7(" + shard.getGates(track).size() + " gates)"));
+        return 1;
+    }
+
+    private static int clearShard(CommandContext<FabricClientCommandSource> ctx) {
+        TrackShard.getInstance().clear();
+        WaypointTracker.getInstance().resetTracking();
+        WebSocketClient.getInstance().setShard(null, List.of());
+        ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fTracking the whole track again."));
+        return 1;
+    }
+
     private static int resetTracking(CommandContext<FabricClientCommandSource> ctx) {
         WaypointTracker.getInstance().resetTracking();
         ctx.getSource().sendFeedback(Text.literal("§a[IceKart] §fWaypoint tracking reset."));
@@ -0,0 +1,60 @@
+package de.agentquack.icekart.client.event;
+
+import de.agentquack.icekart.timing.CrossingTiming;
+import de.agentquack.icekart.track.Waypoint;
+
+/**
+ * Events published on the {@link RaceEventBus}. Immutable, so they can be handed to
+ * other threads and mods.
+ */
+public sealed interface RaceEvent {
+
+    /**
+     * A racer entered a gate and the crossing was reported (or shadowed as standby tracker).
+     *
+     * @param crossingNanos interpolated time of the crossing on the monotonic clock
+     * @param timing        timing computed by this client, null for crossings of a shard
+     */
+    record GateCrossed(String playerName, String racerId, String gateId, int order, Waypoint.Type type,
+                       long crossingNanos, CrossingTiming timing) implements RaceEvent {
+    }
+
+    /**
+     * A racer entered a gate but the crossing couldn't be reported.
+     */
+    record CrossingDropped(String playerName, String gateId, DropReason reason) implements RaceEvent {
+    }
+
+    /**
+     * Why a crossing was not reported.
+     */
+    enum DropReason {
+        // The race server hasn't assigned a racer ID to the player yet
+        NO_RACER_ID,
+        // Not connected to the race server
+        DISCONNECTED,
+        // No race is running
+        NOT_RACING
+    }
+
+    /**
+     * A crossing completed a lap. Only known when this client tracks the whole track.
+     *
+     * @param bestLapNanos best lap of the racer including this one
+     */
+    record LapCompleted(String playerName, String racerId, int lap, long lapNanos,
+                        long bestLapNanos) implements RaceEvent {
+    }
+
+    /**
+     * The race status of the race server changed ("idle", "racing", "finishing", "stopped").
+     */
+    record RaceStatusChanged(String previous, String status) implements RaceEvent {
+    }
+
+    /**
+     * The race server assigned a (new) racer ID to a player.
+     */
+    record RacerSynced(String playerName, String racerId) implements RaceEvent {
+    }
+}
@@ -0,0 +1,128 @@
+package de.agentquack.icekart.client.event;
+
+import de.agentquack.icekart.client.IcekartClient;
+import de.agentquack.icekart.client.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Typed bus for race events.
+ * Events are {@link #post posted} from any thread (mostly the tick thread) and collected until
+ * the end of the tick, when the batch is {@link #flush flushed} to a worker thread. The worker
+ * calls the typed listeners and offers every event to the {@link #getPublisher() publisher}
+ * for other mods. Nothing on the way blocks the poster: batches beyond {@link #MAX_PENDING_BATCHES}
+ * and events a publisher subscriber has no buffer space for are dropped and counted, so slow
+ * consumers (telemetry, HUDs) never stall tracking.
+ */
+public class RaceEventBus {
+
+    // Batches waiting for the worker, about 12 seconds of ticks
+    private static final int MAX_PENDING_BATCHES = 256;
+    // Events buffered per publisher subscriber, subscribers request at their own pace
+    private static final int SUBSCRIBER_BUFFER = 1024;
+
+    // Created eagerly, events are posted from the tick and the network thread
+    private static final RaceEventBus INSTANCE = new RaceEventBus();
+
+    private record Listener<E extends RaceEvent>(Class<E> type, Consumer<? super E> consumer) {
+        void accept(RaceEvent event) {
+            if (type.isInstance(event)) {
+                consumer.accept(type.cast(event));
+            }
+        }
+    }
+
+    private final ConcurrentLinkedQueue<RaceEvent> pending = new ConcurrentLinkedQueue<>();
+    private final List<Listener<?>> listeners = new CopyOnWriteArrayList<>();
+
+    private final ThreadPoolExecutor worker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAX_PENDING_BATCHES), runnable -> {
+        Thread thread = new Thread(runnable, "IceKart-Events");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService deliveryExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "IceKart-Events-Delivery");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final SubmissionPublisher<RaceEvent> publisher = new SubmissionPublisher<>(deliveryExecutor, SUBSCRIBER_BUFFER);
+
+    private RaceEventBus() {
+    }
+
+    public static RaceEventBus getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Listen to events of a type. Listeners run on the event worker thread, in posting order.
+     */
+    public <E extends RaceEvent> void subscribe(Class<E> type, Consumer<? super E> listener) {
+        listeners.add(new Listener<>(type, listener));
+    }
+
+    /**
+     * All race events as a reactive stream. Subscribers get their own buffer and request
+     * events with {@link Flow.Subscription#request}; events that don't fit are dropped.
+     */
+    public Flow.Publisher<RaceEvent> getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * Queue an event for the next batch. Thread-safe, never blocks.
+     */
+    public void post(RaceEvent event) {
+        pending.add(event);
+    }
+
+    /**
+     * Hand the events posted since the last flush to the worker. Called once per tick.
+     */
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<RaceEvent> batch = new ArrayList<>();
+        RaceEvent event;
+        while ((event = pending.poll()) != null) {
+            batch.add(event);
+        }
+        try {
+            worker.execute(() -> dispatch(batch));
+        } catch (RejectedExecutionException e) {
+            Metrics.EVENTS_DROPPED.add(batch.size());
+            IcekartClient.LOGGER.warn("[IceKart] Event worker is behind, dropped {} race events", batch.size());
+        }
+    }
+
+    private void dispatch(List<RaceEvent> batch) {
+        for (RaceEvent event : batch) {
+            for (Listener<?> listener : listeners) {
+                try {
+                    listener.accept(event);
+                } catch (Exception e) {
+                    IcekartClient.LOGGER.error("[IceKart] Race event listener failed on {}", event, e);
+                }
+            }
+            publisher.offer(event, (subscriber, dropped) -> {
+                Metrics.EVENTS_DROPPED.inc();
+                return false;
+            });
+            Metrics.EVENTS_PUBLISHED.inc();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package de.agentquack.icekart.client.heat;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A heat of a tournament: the track, the racers, the number of laps and when to start.
+ *
+ * @param delaySeconds seconds from staging the heat until the start, for {@link Start#DELAY}
+ */
+public record Heat(String name, String track, List<String> racers, int laps, Start start, int delaySeconds) {
+
+    /**
+     * When a staged heat starts.
+     */
+    public enum Start {
+        // Started by the operator (/racer heat start or /racer race start)
+        MANUAL,
+        // Started as soon as all racers of the heat are in their vehicles
+        READY,
+        // Started a fixed time after staging
+        DELAY
+    }
+
+    /**
+     * Parse a heat from its queue file entry:
+     * {"name": "Heat 1", "track": "oval", "racers": ["Steve", "Alex"], "laps": 5, "start": "delay", "delay": 30}
+     *
+     * @param index position in the queue, used for the default name
+     */
+    public static Heat fromJson(JsonObject json, int index) {
+        String name = json.has("name") ? json.get("name").getAsString() : "Heat " + (index + 1);
+        if (!json.has("track")) {
+            throw new IllegalArgumentException(name + ": missing track");
+        }
+        String track = json.get("track").getAsString();
+
+        List<String> racers = new ArrayList<>();
+        if (json.has("racers") && json.get("racers").isJsonArray()) {
+            JsonArray array = json.getAsJsonArray("racers");
+            for (JsonElement racer : array) {
+                racers.add(racer.getAsString());
+            }
+        }
+        if (racers.isEmpty()) {
+            throw new IllegalArgumentException(name + ": no racers");
+        }
+
+        int laps = json.has("laps") ? json.get("laps").getAsInt() : 0;
+        if (laps < 1) {
+            throw new IllegalArgumentException(name + ": laps must be at least 1");
+        }
+
+        Start start;
+        String startName = json.has("start") ? json.get("start").getAsString() : "manual";
+        try {
+            start = Start.valueOf(startName.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(name + ": unknown start condition " + startName);
+        }
+        int delay = json.has("delay") ? Math.max(0, json.get("delay").getAsInt()) : 30;
+
+        return new Heat(name, track, List.copyOf(racers), laps, start, delay);
+    }
+}
@@ -0,0 +1,499 @@
+package de.agentquack.icekart.client.heat;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import de.agentquack.icekart.client.IcekartClient;
+import de.agentquack.icekart.client.command.RacerManager;
+import de.agentquack.icekart.client.metrics.Metrics;
+import de.agentquack.icekart.client.waypoint.WaypointManager;
+import de.agentquack.icekart.client.websocket.WebSocketClient;
+import de.agentquack.icekart.track.TrackStorage;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.AbstractClientPlayerEntity;
+import net.minecraft.client.network.PlayerListEntry;
+import net.minecraft.text.Text;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs a queue of heats without manual setup between them. While a heat runs, the track
+ * of the next heat is loaded and compiled into the track cache in the background. When the
+ * race server reports the heat as stopped, the scheduler waits for the break, then resets
+ * the race, swaps the roster, sets the lap count, activates the next track and starts the
+ * heat according to its start condition. A heat never starts before its track is active; if
+ * the track can't be activated the heat is held until it is started again (which retries the
+ * track) or skipped.
+ *
+ * Queue files live in config/icekart:
+ * {"breakSeconds": 15, "heats": [{"name": "Heat 1", "track": "oval", "racers": ["Steve"], "laps": 5, "start": "ready"}]}
+ *
+ * Only used on the client thread.
+ */
+public class HeatScheduler {
+
+    private static HeatScheduler instance;
+
+    private static final Gson GSON = new Gson();
+    private static final int DEFAULT_BREAK_SECONDS = 15;
+
+    /**
+     * State of the current heat.
+     */
+    public enum Phase {
+        // No queue loaded, or all heats done
+        IDLE,
+        // Set up and waiting for its start condition
+        STAGED,
+        RACING,
+        // Stopped, waiting for the break to end before the next heat
+        BREAK
+    }
+
+    private List<Heat> heats = List.of();
+    private int breakSeconds = DEFAULT_BREAK_SECONDS;
+    private int current = -1;
+    private Phase phase = Phase.IDLE;
+
+    private long stagedAtMs = 0;
+    private long breakUntilMs = 0;
+    // End of the previous heat, for the turnaround time (0 before the first heat)
+    private long lastStoppedNanos = 0;
+    // Start of the first heat of the queue, for heats per hour
+    private long queueStartedMs = 0;
+    private int completed = 0;
+    private int transitions = 0;
+    private long turnaroundNanos = 0;
+
+    // Reset sent while staging, the race status is stale until the race server confirms it
+    private boolean awaitingReset = false;
+    // Start requested from the race server, waiting for the confirmation
+    private boolean startSent = false;
+    // Start requested by the operator, sent once the track is active
+    private boolean startRequested = false;
+    // The track of the staged heat is active, set from the track activation
+    private boolean trackActive = false;
+    // Activating the track of the staged heat failed, the heat is held
+    private boolean trackFailed = false;
+    // Incremented for every staged heat, so activations of a previous heat are ignored
+    private int stageCount = 0;
+    private boolean waitingLogged = false;
+    private CompletableFuture<Boolean> preload = CompletableFuture.completedFuture(false);
+
+    private HeatScheduler() {
+    }
+
+    public static HeatScheduler getInstance() {
+        if (instance == null) {
+            instance = new HeatScheduler();
+        }
+        return instance;
+    }
+
+    // --- Queue ---
+
+    /**
+     * Read a queue file from config/icekart on the I/O thread and replace the queue with it
+     * (on the client thread). Completes with the number of heats.
+     */
+    public CompletableFuture<Integer> load(String fileName) {
+        Path path = getConfigDir().resolve(fileName.endsWith(".json") ? fileName : fileName + ".json");
+        MinecraftClient client = MinecraftClient.getInstance();
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return GSON.fromJson(Files.readString(path), JsonObject.class);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read " + path.getFileName() + ": " + e.getMessage(), e);
+            }
+        }, TrackStorage.getExecutor()).thenApplyAsync(json -> {
+            if (json == null || !json.has("heats") || !json.get("heats").isJsonArray()) {
+                throw new IllegalArgumentException(path.getFileName() + " has no heats");
+            }
+            List<Heat> parsed = new ArrayList<>();
+            JsonArray array = json.getAsJsonArray("heats");
+            for (JsonElement element : array) {
+                parsed.add(Heat.fromJson(element.getAsJsonObject(), parsed.size()));
+            }
+            if (parsed.isEmpty()) {
+                throw new IllegalArgumentException(path.getFileName() + " has no heats");
+            }
+
+            heats = List.copyOf(parsed);
+            breakSeconds = json.has("breakSeconds") ? Math.max(0, json.get("breakSeconds").getAsInt()) : DEFAULT_BREAK_SECONDS;
+            current = -1;
+            phase = Phase.IDLE;
+            completed = 0;
+            transitions = 0;
+            turnaroundNanos = 0;
+            lastStoppedNanos = 0;
+            queueStartedMs = 0;
+            IcekartClient.LOGGER.info("[IceKart] Loaded {} heats from {}", heats.size(), path.getFileName());
+
+            preload(0);
+            return heats.size();
+        }, client::execute);
+    }
+
+    /**
+     * Drop the queue. The current race is left as it is.
+     */
+    public void clear() {
+        heats = List.of();
+        current = -1;
+        phase = Phase.IDLE;
+        IcekartClient.LOGGER.info("[IceKart] Heat queue cleared");
+    }
+
+    /**
+     * Stage the first heat, or start the staged heat right away.
+     *
+     * @return false if there is nothing to start
+     */
+    public boolean start() {
+        if (heats.isEmpty() || !WebSocketClient.getInstance().isConnected()) {
+            return false;
+        }
+        if (phase == Phase.IDLE && current < 0) {
+            return stage(0);
+        }
+        if (phase == Phase.STAGED) {
+            // Sent by the tick once the reset is confirmed and the track is active
+            startRequested = true;
+            if (trackFailed) {
+                activateTrack(true);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stop the current heat (if running) and move on to the next one without a break.
+     *
+     * @return false if there is no next heat
+     */
+    public boolean skip() {
+        WebSocketClient client = WebSocketClient.getInstance();
+        if (current + 1 >= heats.size() || !client.isConnected()) {
+            return false;
+        }
+        if (phase == Phase.RACING) {
+            client.sendAction("stop");
+        }
+        return stage(current + 1);
+    }
+
+    // --- Tick ---
+
+    /**
+     * Follow the race status of the current heat and run the transitions.
+     */
+    public void tick() {
+        if (phase == Phase.IDLE) {
+            return;
+        }
+        String status = WebSocketClient.getInstance().getRaceStatus();
+
+        switch (phase) {
+            case STAGED -> {
+                if (awaitingReset) {
+                    awaitingReset = !"idle".equals(status);
+                } else if ("racing".equals(status)) {
+                    onHeatStarted();
+                } else if (!startSent && trackActive && (startRequested || isStartConditionMet(heats.get(current)))) {
+                    WebSocketClient.getInstance().sendAction("start");
+                    startSent = true;
+                }
+            }
+            case RACING -> {
+                if ("stopped".equals(status)) {
+                    onHeatStopped();
+                } else if ("idle".equals(status)) {
+                    // Reset by the operator, the heat is staged again
+                    phase = Phase.STAGED;
+                    stagedAtMs = System.currentTimeMillis();
+                    startSent = false;
+                    startRequested = false;
+                }
+            }
+            case BREAK -> {
+                if (System.currentTimeMillis() >= breakUntilMs) {
+                    if (!WebSocketClient.getInstance().isConnected()) {
+                        // Stage as soon as the race server is back
+                        if (!waitingLogged) {
+                            IcekartClient.LOGGER.warn("[IceKart] Waiting for the race server to stage the next heat");
+                            waitingLogged = true;
+                        }
+                    } else if (current + 1 < heats.size()) {
+                        stage(current + 1);
+                    } else {
+                        phase = Phase.IDLE;
+                        IcekartClient.LOGGER.info("[IceKart] Heat queue finished: {} heats", completed);
+                        showMessage("§a[IceKart] All heats finished §7(" + formatRate() + ")");
+                    }
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void onHeatStarted() {
+        phase = Phase.RACING;
+        if (queueStartedMs == 0) {
+            queueStartedMs = System.currentTimeMillis();
+        }
+        if (lastStoppedNanos != 0) {
+            long turnaround = System.nanoTime() - lastStoppedNanos;
+            lastStoppedNanos = 0;
+            transitions++;
+            turnaroundNanos += turnaround;
+            Metrics.HEAT_TURNAROUND.observeNanos(turnaround);
+        }
+        IcekartClient.LOGGER.info("[IceKart] {} started", heats.get(current).name());
+
+        // Compile the next track while this heat runs
+        preload(current + 1);
+    }
+
+    private void onHeatStopped() {
+        phase = Phase.BREAK;
+        breakUntilMs = System.currentTimeMillis() + breakSeconds * 1000L;
+        lastStoppedNanos = System.nanoTime();
+        completed++;
+        Metrics.HEATS_COMPLETED.inc();
+
+        Heat heat = heats.get(current);
+        IcekartClient.LOGGER.info("[IceKart] {} finished ({} of {})", heat.name(), completed, heats.size());
+        if (current + 1 < heats.size()) {
+            showMessage("§a[IceKart] " + heat.name() + " finished §7| next: §f" + heats.get(current + 1).name()
+                    + " §7in " + breakSeconds + "s");
+        }
+    }
+
+    private boolean isStartConditionMet(Heat heat) {
+        return switch (heat.start()) {
+            case MANUAL -> false;
+            case DELAY -> System.currentTimeMillis() - stagedAtMs >= heat.delaySeconds() * 1000L;
+            case READY -> allRacersInVehicles(heat);
+        };
+    }
+
+    private static boolean allRacersInVehicles(Heat heat) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        if (client.world == null) {
+            return false;
+        }
+        Set<String> seated = new HashSet<>();
+        for (AbstractClientPlayerEntity player : client.world.getPlayers()) {
+            if (player.hasVehicle()) {
+                seated.add(player.getName().getString());
+            }
+        }
+        return seated.containsAll(heat.racers());
+    }
+
+    // --- Transition ---
+
+    /**
+     * Reset the race and set up the heat: roster, lap count and track.
+     */
+    private boolean stage(int index) {
+        WebSocketClient client = WebSocketClient.getInstance();
+        waitingLogged = false;
+
+        Heat heat = heats.get(index);
+        current = index;
+
+        // Swap the roster: drop racers of the previous heat before the reset, so the init message
+        // answering the reset already lists the new roster; then register the new ones
+        RacerManager racers = RacerManager.getInstance();
+        Set<String> roster = new HashSet<>(heat.racers());
+        for (String name : racers.getRacerNames()) {
+            if (!roster.contains(name)) {
+                racers.removeRacer(name);
+                client.sendRemove(name);
+            }
+        }
+        client.sendAction("reset");
+        awaitingReset = true;
+
+        Set<String> registered = racers.getRacerNames();
+        for (String name : heat.racers()) {
+            if (!registered.contains(name)) {
+                racers.addRacer(name);
+                client.sendRegister(name);
+            }
+        }
+        client.sendConfig(heat.laps());
+
+        phase = Phase.STAGED;
+        stagedAtMs = System.currentTimeMillis();
+        startSent = false;
+        startRequested = false;
+        stageCount++;
+        activateTrack(false);
+        IcekartClient.LOGGER.info("[IceKart] Staged {}: track {}, {} racers, {} laps, start {}",
+                heat.name(), heat.track(), heat.racers().size(), heat.laps(), heat.start());
+
+        List<String> missing = getMissingRacers(heat);
+        showMessage("§a[IceKart] Staged §f" + heat.name() + " §7| " + heat.track() + " | " + heat.laps() + " laps | "
+                + describeStart(heat) + (missing.isEmpty() ? "" : " §c| not online: " + String.join(", ", missing)));
+        return true;
+    }
+
+    /**
+     * Activate the track of the staged heat. Instant if the preload finished, otherwise loads now;
+     * the heat doesn't start until the track is active.
+     *
+     * @param retry the previous activation failed; if the track is active but empty it is
+     *              loaded again (e.g. after its files were repaired)
+     */
+    private void activateTrack(boolean retry) {
+        Heat heat = heats.get(current);
+        int stage = stageCount;
+        trackActive = false;
+        trackFailed = false;
+
+        WaypointManager manager = WaypointManager.getInstance();
+        CompletableFuture<Integer> activation = retry && heat.track().equals(manager.getActiveTrackName())
+                && manager.getCompiledTrack().isEmpty()
+                ? manager.loadWaypoints()
+                : manager.selectTrack(heat.track());
+        // Completes on the client thread
+        activation.whenComplete((gates, error) -> {
+            if (stage != stageCount) {
+                return;
+            }
+            if (error == null && gates > 0) {
+                trackActive = true;
+                return;
+            }
+            trackFailed = true;
+            Throwable cause = error != null && error.getCause() != null ? error.getCause() : error;
+            String reason = cause != null ? cause.getMessage() : "no gates";
+            IcekartClient.LOGGER.error("[IceKart] {}: failed to activate track {}: {}", heat.name(), heat.track(), reason);
+            showMessage("§c[IceKart] " + heat.name() + ": track " + heat.track() + " not available §7(" + reason
+                    + "), heat held - /racer heat start to retry, /racer heat skip to skip it");
+        });
+    }
+
+    /**
+     * Load the track of a heat into the track cache and check its roster ahead of time.
+     */
+    private void preload(int index) {
+        if (index < 0 || index >= heats.size()) {
+            return;
+        }
+        Heat heat = heats.get(index);
+        preload = WaypointManager.getInstance().preloadTrack(heat.track());
+        preload.thenAccept(found -> {
+            if (!found) {
+                IcekartClient.LOGGER.warn("[IceKart] Track {} of {} not found", heat.track(), heat.name());
+                showMessage("§c[IceKart] Track " + heat.track() + " of " + heat.name() + " not found");
+            }
+        });
+
+        List<String> missing = getMissingRacers(heat);
+        if (!missing.isEmpty()) {
+            IcekartClient.LOGGER.info("[IceKart] Racers of {} not online yet: {}", heat.name(), missing);
+        }
+    }
+
+    private static List<String> getMissingRacers(Heat heat) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        if (client.getNetworkHandler() == null) {
+            return heat.racers();
+        }
+        Set<String> online = new HashSet<>();
+        for (PlayerListEntry entry : client.getNetworkHandler().getPlayerList()) {
+            online.add(entry.getProfile().getName());
+        }
+        return heat.racers().stream().filter(name -> !online.contains(name)).toList();
+    }
+
+    // --- Status ---
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public List<Heat> getHeats() {
+        return heats;
+    }
+
+    public Optional<Heat> getCurrentHeat() {
+        return current >= 0 && current < heats.size() ? Optional.of(heats.get(current)) : Optional.empty();
+    }
+
+    public Optional<Heat> getNextHeat() {
+        return current + 1 < heats.size() ? Optional.of(heats.get(current + 1)) : Optional.empty();
+    }
+
+    public int getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Whether the track of the staged heat is active, the heat only starts once it is.
+     */
+    public boolean isTrackActive() {
+        return trackActive;
+    }
+
+    public boolean isNextTrackReady() {
+        return preload.isDone() && !preload.isCompletedExceptionally() && preload.join();
+    }
+
+    /**
+     * Completed heats per hour since the first heat started, -1 before the first heat finished.
+     */
+    public double getHeatsPerHour() {
+        if (completed == 0 || queueStartedMs == 0) {
+            return -1;
+        }
+        double hours = (System.currentTimeMillis() - queueStartedMs) / 3_600_000.0;
+        return hours > 0 ? completed / hours : -1;
+    }
+
+    /**
+     * Mean time from the end of a heat until the next one started, -1 if there was no transition yet.
+     */
+    public long getMeanTurnaroundMs() {
+        return transitions > 0 ? turnaroundNanos / transitions / 1_000_000L : -1;
+    }
+
+    private String formatRate() {
+        double rate = getHeatsPerHour();
+        return rate < 0 ? completed + " heats" : String.format("%d heats, %.1f per hour", completed, rate);
+    }
+
+    private static String describeStart(Heat heat) {
+        return switch (heat.start()) {
+            case MANUAL -> "start with /racer heat start";
+            case READY -> "starts when all racers are seated";
+            case DELAY -> "starts in " + heat.delaySeconds() + "s";
+        };
+    }
+
+    private static Path getConfigDir() {
+        return MinecraftClient.getInstance().runDirectory.toPath().resolve("config").resolve("icekart");
+    }
+
+    private static void showMessage(String message) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        if (client.player != null) {
+            client.player.sendMessage(Text.literal(message), false);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package de.agentquack.icekart.client.hud;
+
+import de.agentquack.icekart.client.IcekartClient;
+import de.agentquack.icekart.client.command.RacerManager;
+import de.agentquack.icekart.client.timing.RaceTimer;
+import net.fabricmc.fabric.api.client.rendering.v1.hud.HudElementRegistry;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.render.RenderTickCounter;
+import net.minecraft.util.Identifier;
+
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * HUD element showing the live delta of the local racer to their best lap,
+ * centered at the top of the screen. Shown together with the standings (/racer hud).
+ */
+public class DeltaHud {
+
+    private static DeltaHud instance;
+
+    private static final Identifier ID = Identifier.of(IcekartClient.MOD_ID, "delta");
+
+    private static final int MARGIN = 4;
+    private static final int PADDING = 3;
+
+    private static final int COLOR_BACKGROUND = 0x80000000;
+    private static final int COLOR_FASTER = 0xFF55FF55;
+    private static final int COLOR_SLOWER = 0xFFFF5555;
+
+    // Text is only rebuilt when the displayed value changes (10 ms resolution)
+    private long cachedCentis = Long.MIN_VALUE;
+    private String cachedText = "";
+    private int cachedWidth = 0;
+
+    private DeltaHud() {
+    }
+
+    public static DeltaHud getInstance() {
+        if (instance == null) {
+            instance = new DeltaHud();
+        }
+        return instance;
+    }
+
+    /**
+     * Register the HUD element.
+     */
+    public void register() {
+        HudElementRegistry.addLast(ID, this::render);
+        IcekartClient.LOGGER.info("[IceKart] Delta HUD registered");
+    }
+
+    private void render(DrawContext context, RenderTickCounter tickCounter) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        if (!StandingsHud.getInstance().isEnabled() || client.options.hudHidden || client.player == null) {
+            return;
+        }
+
+        Optional<String> racerId = RacerManager.getInstance().getRacerId(client.player.getName().getString());
+        if (racerId.isEmpty()) {
+            return;
+        }
+        OptionalLong delta = RaceTimer.getInstance().getDelta(racerId.get());
+        if (delta.isEmpty()) {
+            return;
+        }
+
+        TextRenderer textRenderer = client.textRenderer;
+        long centis = delta.getAsLong() / 10_000_000L;
+        if (centis != cachedCentis) {
+            cachedCentis = centis;
+            cachedText = "Δ " + RaceTimer.formatDelta(delta.getAsLong());
+            cachedWidth = textRenderer.getWidth(cachedText);
+        }
+
+        int width = cachedWidth + PADDING * 2;
+        int height = textRenderer.fontHeight + PADDING * 2;
+        int left = (context.getScaledWindowWidth() - width) / 2;
+        context.fill(left, MARGIN, left + width, MARGIN + height, COLOR_BACKGROUND);
+        context.drawTextWithShadow(textRenderer, cachedText, left + PADDING, MARGIN + PADDING,
+                delta.getAsLong() <= 0 ? COLOR_FASTER : COLOR_SLOWER);
+    }
+}
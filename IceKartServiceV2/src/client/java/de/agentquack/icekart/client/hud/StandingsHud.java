@@ -0,0 +1,189 @@
+package de.agentquack.icekart.client.hud;
+
+import de.agentquack.icekart.client.IcekartClient;
+import net.fabricmc.fabric.api.client.rendering.v1.hud.HudElementRegistry;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.render.RenderTickCounter;
+import net.minecraft.util.Identifier;
+
+import java.util.List;
+
+/**
+ * HUD overlay showing the live race standings.
+ * Row texts and widths are cached per standings entry and only rebuilt
+ * for rows whose entry changed since the last frame.
+ * Toggle with /racer hud
+ */
+public class StandingsHud {
+
+    private static StandingsHud instance;
+
+    private static final Identifier ID = Identifier.of(IcekartClient.MOD_ID, "standings");
+
+    private static final int MAX_ROWS = 40;
+    private static final int MARGIN = 4;
+    private static final int PADDING = 3;
+    private static final int COLUMN_GAP = 6;
+    private static final int COLUMNS = 6;
+
+    private static final int COLOR_BACKGROUND = 0x80000000;
+    private static final int COLOR_HEADER = 0xFFAAAAAA;
+    private static final int COLOR_TEXT = 0xFFFFFFFF;
+    private static final int COLOR_LEADER = 0xFFFFAA00;
+    private static final int COLOR_DISQUALIFIED = 0xFF777777;
+
+    private static final String[] HEADER = {"Pos", "Name", "Lap", "Gap", "Split", "Last"};
+
+    private boolean enabled = true;
+
+    // Cached layout per display row
+    private final StandingsModel.Entry[] rowEntries = new StandingsModel.Entry[MAX_ROWS];
+    private final String[][] rowCells = new String[MAX_ROWS][COLUMNS];
+    private final int[][] rowWidths = new int[MAX_ROWS][COLUMNS];
+    private final int[] rowColors = new int[MAX_ROWS];
+    private final int[] headerWidths = new int[COLUMNS];
+    private final int[] columnWidths = new int[COLUMNS];
+    private int cachedTotalLaps = -1;
+    private int cachedRowCount = 0;
+
+    private StandingsHud() {
+    }
+
+    public static StandingsHud getInstance() {
+        if (instance == null) {
+            instance = new StandingsHud();
+        }
+        return instance;
+    }
+
+    /**
+     * Register the HUD element.
+     */
+    public void register() {
+        HudElementRegistry.addLast(ID, this::render);
+        IcekartClient.LOGGER.info("[IceKart] Standings HUD registered");
+    }
+
+    public boolean toggle() {
+        enabled = !enabled;
+        return enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private void render(DrawContext context, RenderTickCounter tickCounter) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        if (!enabled || client.options.hudHidden) {
+            return;
+        }
+
+        StandingsModel.Snapshot snapshot = StandingsModel.getInstance().getSnapshot();
+        List<StandingsModel.Entry> entries = snapshot.entries();
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        TextRenderer textRenderer = client.textRenderer;
+        updateLayout(textRenderer, snapshot);
+
+        int rowHeight = textRenderer.fontHeight + 1;
+        int width = PADDING * 2 + COLUMN_GAP * (COLUMNS - 1);
+        for (int c = 0; c < COLUMNS; c++) {
+            width += columnWidths[c];
+        }
+        int height = PADDING * 2 + rowHeight * (cachedRowCount + 1);
+
+        int left = context.getScaledWindowWidth() - width - MARGIN;
+        int top = MARGIN;
+        context.fill(left, top, left + width, top + height, COLOR_BACKGROUND);
+
+        int y = top + PADDING;
+        drawRow(context, textRenderer, HEADER, headerWidths, left + PADDING, y, COLOR_HEADER);
+        for (int row = 0; row < cachedRowCount; row++) {
+            y += rowHeight;
+            drawRow(context, textRenderer, rowCells[row], rowWidths[row], left + PADDING, y, rowColors[row]);
+        }
+    }
+
+    private void drawRow(DrawContext context, TextRenderer textRenderer, String[] cells, int[] widths,
+                         int x, int y, int color) {
+        for (int c = 0; c < COLUMNS; c++) {
+            // Name is left aligned, all other columns right aligned
+            int cellX = c == 1 ? x : x + columnWidths[c] - widths[c];
+            context.drawTextWithShadow(textRenderer, cells[c], cellX, y, color);
+            x += columnWidths[c] + COLUMN_GAP;
+        }
+    }
+
+    /**
+     * Rebuild cached texts for rows whose entry changed, then recompute column widths if needed.
+     */
+    private void updateLayout(TextRenderer textRenderer, StandingsModel.Snapshot snapshot) {
+        List<StandingsModel.Entry> entries = snapshot.entries();
+        int rowCount = Math.min(entries.size(), MAX_ROWS);
+        boolean totalLapsChanged = snapshot.totalLaps() != cachedTotalLaps;
+        boolean changed = rowCount != cachedRowCount || totalLapsChanged;
+
+        if (headerWidths[0] == 0) {
+            for (int c = 0; c < COLUMNS; c++) {
+                headerWidths[c] = textRenderer.getWidth(HEADER[c]);
+            }
+            changed = true;
+        }
+
+        for (int row = 0; row < rowCount; row++) {
+            StandingsModel.Entry entry = entries.get(row);
+            if (entry != rowEntries[row] || totalLapsChanged) {
+                buildRow(textRenderer, row, entry, snapshot.totalLaps());
+                changed = true;
+            }
+        }
+        for (int row = rowCount; row < cachedRowCount; row++) {
+            rowEntries[row] = null;
+        }
+
+        cachedRowCount = rowCount;
+        cachedTotalLaps = snapshot.totalLaps();
+
+        if (changed) {
+            for (int c = 0; c < COLUMNS; c++) {
+                int max = headerWidths[c];
+                for (int row = 0; row < rowCount; row++) {
+                    max = Math.max(max, rowWidths[row][c]);
+                }
+                columnWidths[c] = max;
+            }
+        }
+    }
+
+    private void buildRow(TextRenderer textRenderer, int row, StandingsModel.Entry entry, int totalLaps) {
+        StandingsModel.RacerStanding racer = entry.racer();
+        String[] cells = rowCells[row];
+
+        cells[0] = entry.position() + ".";
+        cells[1] = racer.name();
+        cells[2] = totalLaps > 0 ? racer.laps() + "/" + totalLaps : String.valueOf(racer.laps());
+        cells[3] = entry.gap();
+        cells[4] = racer.splitCount() > 0
+                ? "S" + racer.splitCount() + " " + StandingsModel.formatTime(racer.lastSplit())
+                : "-";
+        cells[5] = racer.lastLap() > 0 ? StandingsModel.formatTime(racer.lastLap()) : "-";
+
+        for (int c = 0; c < COLUMNS; c++) {
+            rowWidths[row][c] = textRenderer.getWidth(cells[c]);
+        }
+
+        if (racer.disqualified()) {
+            rowColors[row] = COLOR_DISQUALIFIED;
+        } else if (entry.position() == 1) {
+            rowColors[row] = COLOR_LEADER;
+        } else {
+            rowColors[row] = COLOR_TEXT;
+        }
+        rowEntries[row] = entry;
+    }
+}
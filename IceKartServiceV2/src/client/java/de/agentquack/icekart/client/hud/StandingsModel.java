@@ -0,0 +1,232 @@
+package de.agentquack.icekart.client.hud;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import de.agentquack.icekart.timing.StandingsTree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Live race standings, maintained from the racer data in init/update events.
+ * Updates are applied on the WebSocket thread and published as an immutable snapshot.
+ * Mutations are synchronized, since the model is also cleared from the client thread on disconnect.
+ * The order is kept in a {@link StandingsTree}, so only changed racers are re-ranked.
+ * Unchanged racers keep the same {@link Entry} instance across snapshots, so the HUD
+ * only has to rebuild rows whose entry reference changed.
+ */
+public class StandingsModel {
+
+    private static StandingsModel instance;
+
+    /**
+     * Displayed state of a single racer, as received from the server.
+     */
+    public record RacerStanding(String id, String name, int laps, int checkpoints, long totalTime,
+                                long lastLap, long lastSplit, int splitCount,
+                                boolean disqualified, boolean finished) {
+    }
+
+    /**
+     * A racer at a position in the standings, with the gap to the leader.
+     */
+    public record Entry(int position, RacerStanding racer, String gap) {
+    }
+
+    /**
+     * Immutable standings snapshot. Version increases with every applied update.
+     */
+    public record Snapshot(List<Entry> entries, int totalLaps, long version) {
+    }
+
+    public static final Snapshot EMPTY = new Snapshot(List.of(), 0, 0);
+
+    // Guarded by this
+    private final Map<String, RacerStanding> racers = new HashMap<>();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final StandingsTree order = new StandingsTree();
+    private int totalLaps = 0;
+
+    private volatile Snapshot snapshot = EMPTY;
+
+    private StandingsModel() {
+    }
+
+    public static StandingsModel getInstance() {
+        if (instance == null) {
+            instance = new StandingsModel();
+        }
+        return instance;
+    }
+
+    /**
+     * Get the latest standings snapshot. Safe to call from any thread.
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Set the total number of laps (from init events).
+     */
+    public synchronized void setTotalLaps(int totalLaps) {
+        this.totalLaps = totalLaps;
+    }
+
+    /**
+     * Apply the full racer list of an init/update event.
+     * Racers missing from the list are removed.
+     */
+    public synchronized void update(JsonArray racersArray) {
+        Set<String> seen = new HashSet<>();
+
+        for (JsonElement element : racersArray) {
+            if (!element.isJsonObject()) {
+                continue;
+            }
+            RacerStanding parsed = parseRacer(element.getAsJsonObject());
+            if (parsed == null) {
+                continue;
+            }
+            seen.add(parsed.id());
+
+            // Keep the existing instance if nothing changed
+            RacerStanding existing = racers.get(parsed.id());
+            if (!parsed.equals(existing)) {
+                racers.put(parsed.id(), parsed);
+                order.update(toKey(parsed));
+            }
+        }
+
+        racers.keySet().removeIf(id -> {
+            if (seen.contains(id)) {
+                return false;
+            }
+            order.remove(id);
+            return true;
+        });
+        entries.keySet().retainAll(seen);
+        publish();
+    }
+
+    /**
+     * Clear all standings (e.g. on disconnect).
+     */
+    public synchronized void clear() {
+        racers.clear();
+        entries.clear();
+        order.clear();
+        snapshot = EMPTY;
+    }
+
+    private void publish() {
+        StandingsTree.Key leaderKey = order.getLeader();
+        RacerStanding leader = leaderKey == null || leaderKey.disqualified() ? null : racers.get(leaderKey.racerId());
+        List<Entry> result = new ArrayList<>(order.size());
+
+        order.forEachInOrder(key -> {
+            RacerStanding racer = racers.get(key.racerId());
+            int position = result.size() + 1;
+            String gap = formatGap(racer, leader);
+            Entry previous = entries.get(racer.id());
+
+            // Reuse the previous entry if position, data and gap are unchanged
+            Entry entry;
+            if (previous != null && previous.position() == position
+                    && previous.racer() == racer && previous.gap().equals(gap)) {
+                entry = previous;
+            } else {
+                entry = new Entry(position, racer, gap);
+                entries.put(racer.id(), entry);
+            }
+            result.add(entry);
+        });
+
+        snapshot = new Snapshot(Collections.unmodifiableList(result), totalLaps, snapshot.version() + 1);
+    }
+
+    private static StandingsTree.Key toKey(RacerStanding racer) {
+        return new StandingsTree.Key(racer.id(), racer.disqualified(), racer.laps(), racer.checkpoints(),
+                racer.totalTime());
+    }
+
+    /**
+     * Gap display, matching the leaderboard: "Leader", "+X.XX" or "+N lap(s)".
+     */
+    private static String formatGap(RacerStanding racer, RacerStanding leader) {
+        if (racer.disqualified()) {
+            return "DQ";
+        }
+        if (leader == null || racer == leader) {
+            return "Leader";
+        }
+        int lapsBehind = leader.laps() - racer.laps();
+        if (lapsBehind > 0) {
+            return "+" + lapsBehind + (lapsBehind == 1 ? " lap" : " laps");
+        }
+        return "+" + formatTime(Math.max(0, racer.totalTime() - leader.totalTime()));
+    }
+
+    /**
+     * Format milliseconds as seconds with two decimals, or minutes:seconds above one minute.
+     */
+    public static String formatTime(long millis) {
+        if (millis < 60_000) {
+            return String.format("%.2f", millis / 1000.0);
+        }
+        long minutes = millis / 60_000;
+        double seconds = (millis % 60_000) / 1000.0;
+        return String.format("%d:%05.2f", minutes, seconds);
+    }
+
+    private static RacerStanding parseRacer(JsonObject racer) {
+        String id = racer.has("id") ? racer.get("id").getAsString() : null;
+        String name = racer.has("name") ? racer.get("name").getAsString() : null;
+        if (id == null || name == null) {
+            return null;
+        }
+
+        int laps = getInt(racer, "laps");
+        int checkpoints = getInt(racer, "checkpoints");
+        long totalTime = getLong(racer, "totalTime");
+        boolean disqualified = racer.has("disqualified") && racer.get("disqualified").getAsBoolean();
+        boolean finished = racer.has("finished") && racer.get("finished").getAsBoolean();
+
+        // Last completed lap time
+        long lastLap = 0;
+        if (racer.has("history") && racer.get("history").isJsonArray()) {
+            JsonArray history = racer.getAsJsonArray("history");
+            if (!history.isEmpty() && history.get(history.size() - 1).isJsonObject()) {
+                lastLap = getLong(history.get(history.size() - 1).getAsJsonObject(), "lapTime");
+            }
+        }
+
+        // Most recent split in the current lap
+        long lastSplit = 0;
+        int splitCount = 0;
+        if (racer.has("currentLapSplits") && racer.get("currentLapSplits").isJsonArray()) {
+            JsonArray splits = racer.getAsJsonArray("currentLapSplits");
+            splitCount = splits.size();
+            if (splitCount > 0) {
+                lastSplit = splits.get(splitCount - 1).getAsLong();
+            }
+        }
+
+        return new RacerStanding(id, name, laps, checkpoints, totalTime, lastLap, lastSplit, splitCount,
+                disqualified, finished);
+    }
+
+    private static int getInt(JsonObject json, String key) {
+        return json.has(key) && !json.get(key).isJsonNull() ? json.get(key).getAsInt() : 0;
+    }
+
+    private static long getLong(JsonObject json, String key) {
+        return json.has(key) && !json.get(key).isJsonNull() ? json.get(key).getAsLong() : 0;
+    }
+}
@@ -0,0 +1,95 @@
+package de.agentquack.icekart.client.loadtest;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A simulated leaderboard display: subscribes to the race server like the web displays do
+ * and parses every update. A crossing counts as displayed when an update shows the racer's
+ * progress (laps * gates + checkpoints) at or beyond the crossing.
+ */
+final class DisplaySubscriber implements WebSocket.Listener {
+
+    /**
+     * Looks up when the crossing that brought a racer to a progress was detected.
+     */
+    interface CrossingLog {
+        /**
+         * @return the crossing, null if it isn't from the load generator
+         */
+        RaceLoadGenerator.Crossing get(String racerId, int progress);
+    }
+
+    private final int gatesPerLap;
+    private final CrossingLog crossings;
+    private final LatencyRecorder[] steps;
+    private final StringBuilder buffer = new StringBuilder();
+    // Progress already displayed per racer, only used on the listener thread
+    private final Map<String, Integer> displayed = new HashMap<>();
+    private WebSocket webSocket;
+
+    DisplaySubscriber(int gatesPerLap, CrossingLog crossings, LatencyRecorder[] steps) {
+        this.gatesPerLap = gatesPerLap;
+        this.crossings = crossings;
+        this.steps = steps;
+    }
+
+    void connect(String url) {
+        webSocket = HttpClient.newHttpClient().newWebSocketBuilder().buildAsync(URI.create(url), this).join();
+    }
+
+    void close() {
+        if (webSocket != null) {
+            webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "Load test finished");
+        }
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        buffer.append(data);
+        if (last) {
+            long now = System.nanoTime();
+            JsonObject json = JsonParser.parseString(buffer.toString()).getAsJsonObject();
+            buffer.setLength(0);
+            if (json.has("racers") && json.get("racers").isJsonArray()) {
+                onRacers(json.getAsJsonArray("racers"), now);
+            }
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        // Reported with the other report lines, the load generator runs outside the game
+        System.out.printf(Locale.ROOT, "Display subscriber failed, later updates are not counted: %s%n", error);
+    }
+
+    private void onRacers(JsonArray racers, long now) {
+        for (JsonElement element : racers) {
+            JsonObject racer = element.getAsJsonObject();
+            String id = racer.get("id").getAsString();
+            int progress = racer.get("laps").getAsInt() * gatesPerLap + racer.get("checkpoints").getAsInt();
+            int previous = displayed.getOrDefault(id, 0);
+            for (int p = previous + 1; p <= progress; p++) {
+                RaceLoadGenerator.Crossing crossing = crossings.get(id, p);
+                if (crossing != null) {
+                    steps[crossing.step()].record(now - crossing.detectedNanos());
+                }
+            }
+            if (progress > previous) {
+                displayed.put(id, progress);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package de.agentquack.icekart.client.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples of a load step and computes exact percentiles.
+ * Samples are added from the subscriber threads.
+ */
+final class LatencyRecorder {
+
+    private long[] samples = new long[1024];
+    private int count = 0;
+
+    synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    synchronized int count() {
+        return count;
+    }
+
+    /**
+     * Sorted copy of the samples.
+     */
+    synchronized long[] sorted() {
+        long[] copy = Arrays.copyOf(samples, count);
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    /**
+     * Nearest rank percentile of sorted samples, -1 if there are none.
+     */
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return -1;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+}
@@ -0,0 +1,359 @@
+package de.agentquack.icekart.client.loadtest;
+
+import de.agentquack.icekart.client.command.RacerManager;
+import de.agentquack.icekart.client.metrics.Metrics;
+import de.agentquack.icekart.client.timing.RaceTimer;
+import de.agentquack.icekart.client.websocket.WebSocketClient;
+import de.agentquack.icekart.race.local.LocalRaceServer;
+import de.agentquack.icekart.timing.CrossingTiming;
+import de.agentquack.icekart.track.CompiledTrack;
+import de.agentquack.icekart.track.TrackStorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Load generator for the race pipeline. Simulates racers driving around a track (exported
+ * waypoints_*.json) at configurable speeds, detects their gate crossings per 50 ms tick like the
+ * waypoint tracker and pushes them through {@link RaceTimer} and the real {@link WebSocketClient}
+ * to a race server. Simulated display subscribers measure the latency from crossing detection
+ * to the update that shows it.
+ *
+ * With --step the number of racers is ramped up in steps; the first step where the displays fall
+ * behind (less than 95% of the crossings shown) or the p99 latency exceeds --max-p99 is reported
+ * as the saturation point.
+ *
+ * Runs without Minecraft: ./gradlew raceLoad --args="--track path/to/waypoints_world.json --racers 100 --step 10"
+ *
+ * Options:
+ * --track <file>       exported track (required)
+ * --racers <n>         number of racers, the maximum when ramping (default 20)
+ * --step <n>           ramp up in steps of n racers (default: one step with all racers)
+ * --duration <s>       duration of each step (default 20)
+ * --speed <b/s>        mean speed in blocks per second (default 40, boats on blue ice)
+ * --jitter <fraction>  speed variation between racers (default 0.1)
+ * --subscribers <n>    simulated displays (default 3)
+ * --server <url>       race server, e.g. ws://localhost:3000/ws (default: embedded {@link LocalRaceServer})
+ * --max-p99 <ms>       p99 latency considered saturated (default 250)
+ */
+public final class RaceLoadGenerator {
+
+    private static final long TICK_NANOS = 50_000_000L;
+    // Wait for updates still in flight after each step
+    private static final long DRAIN_NANOS = 1_000_000_000L;
+    private static final int REGISTER_BATCH = 50;
+
+    /**
+     * A crossing sent by the generator.
+     */
+    record Crossing(long detectedNanos, int step) {
+    }
+
+    private record Options(Path track, int racers, int step, int durationSeconds, double speed, double jitter,
+                           int subscribers, String server, double maxP99Ms) {
+    }
+
+    /**
+     * Simulated racer following the polyline through the gate centers.
+     */
+    private static final class SimRacer {
+        final String name;
+        final double speed;
+        String id;
+        double distance;
+        int nextGate = 0;
+        // Distance of the current lap's start along the loop
+        double lapStart = 0;
+        int progress = 0;
+        boolean armed = false;
+
+        SimRacer(String name, double speed, double startDistance) {
+            this.name = name;
+            this.speed = speed;
+            this.distance = startDistance;
+        }
+    }
+
+    private record StepResult(int racers, double offeredPerSecond, double displayedPerSecond, double displayedShare,
+                              long p50, long p99, long p999, long max) {
+    }
+
+    private final Options options;
+    private final CompiledTrack track;
+    // Distance along the loop at which each gate is reached
+    private final double[] gateDistance;
+    private final double loopLength;
+    private final Map<String, Map<Integer, Crossing>> sent = new ConcurrentHashMap<>();
+
+    private RaceLoadGenerator(Options options, CompiledTrack track) {
+        this.options = options;
+        this.track = track;
+        this.gateDistance = new double[track.size()];
+        double length = 0;
+        for (int i = 0; i < track.size(); i++) {
+            gateDistance[i] = length;
+            int next = (i + 1) % track.size();
+            double dx = track.centerX(next) - track.centerX(i);
+            double dy = track.centerY(next) - track.centerY(i);
+            double dz = track.centerZ(next) - track.centerZ(i);
+            length += Math.sqrt(dx * dx + dy * dy + dz * dz);
+        }
+        this.loopLength = length;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = parseOptions(args);
+        CompiledTrack track = TrackStorage.fromJson(Files.readString(options.track()));
+        if (track.size() < 2) {
+            throw new IllegalArgumentException("Track needs at least 2 gates: " + options.track());
+        }
+
+        LocalRaceServer embedded = options.server() == null ? LocalRaceServer.start(0) : null;
+        String url = embedded != null ? embedded.getUrl() : options.server();
+        try {
+            new RaceLoadGenerator(options, track).run(url);
+        } finally {
+            if (embedded != null) {
+                embedded.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    private void run(String url) throws InterruptedException {
+        List<Integer> steps = new ArrayList<>();
+        for (int n = options.step() > 0 ? options.step() : options.racers(); n < options.racers(); n += options.step()) {
+            steps.add(n);
+        }
+        steps.add(options.racers());
+        LatencyRecorder[] recorders = new LatencyRecorder[steps.size()];
+        for (int i = 0; i < recorders.length; i++) {
+            recorders[i] = new LatencyRecorder();
+        }
+
+        System.out.printf(Locale.ROOT, "Track %s: %d gates, %.0f blocks per lap, %d racers at %.0f b/s, server %s%n",
+                options.track().getFileName(), track.size(), loopLength, options.racers(), options.speed(), url);
+
+        WebSocketClient client = WebSocketClient.getInstance();
+        client.connect(url).join();
+        if (!client.isConnected()) {
+            throw new IllegalStateException("Could not connect to " + url);
+        }
+        List<SimRacer> racers = register(client);
+
+        List<DisplaySubscriber> displays = new ArrayList<>();
+        for (int i = 0; i < options.subscribers(); i++) {
+            DisplaySubscriber display = new DisplaySubscriber(track.size(),
+                    (racerId, progress) -> sent.getOrDefault(racerId, Map.of()).get(progress), recorders);
+            display.connect(url);
+            displays.add(display);
+        }
+        // The race must not end while measuring
+        client.sendAction("reset");
+        client.sendConfig(1_000_000);
+        client.sendAction("start");
+        waitFor(() -> RaceTimer.getInstance().getRaceStartNanos() != 0, "race start");
+
+        List<StepResult> results = new ArrayList<>();
+        for (int s = 0; s < steps.size(); s++) {
+            results.add(runStep(client, racers.subList(0, steps.get(s)), s, recorders[s]));
+        }
+        displays.forEach(DisplaySubscriber::close);
+        client.disconnect();
+
+        report(results);
+    }
+
+    private List<SimRacer> register(WebSocketClient client) throws InterruptedException {
+        Random random = new Random(42);
+        List<SimRacer> racers = new ArrayList<>();
+        for (int i = 0; i < options.racers(); i++) {
+            double speed = options.speed() * (1 + options.jitter() * (random.nextDouble() * 2 - 1));
+            // Start just before the first gate, spread out so the crossings don't all land in one tick
+            double start = -random.nextDouble() * Math.min(loopLength / 2, speed * 2);
+            SimRacer racer = new SimRacer(String.format(Locale.ROOT, "load-%03d", i + 1), speed, start);
+            racers.add(racer);
+            RacerManager.getInstance().addRacer(racer.name);
+            client.sendRegister(racer.name);
+            // The Bun server derives racer IDs from the current millisecond
+            Thread.sleep(2);
+            // Every registration broadcasts the whole roster, let the server catch up
+            if (racers.size() % REGISTER_BATCH == 0 || racers.size() == options.racers()) {
+                waitFor(() -> racers.stream().allMatch(r -> RacerManager.getInstance().getRacerId(r.name).isPresent()),
+                        "racer registration");
+            }
+        }
+        for (SimRacer racer : racers) {
+            racer.id = RacerManager.getInstance().getRacerId(racer.name).orElseThrow();
+            sent.put(racer.id, new ConcurrentHashMap<>());
+        }
+        return racers;
+    }
+
+    private StepResult runStep(WebSocketClient client, List<SimRacer> racers, int step, LatencyRecorder recorder)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        long end = start + options.durationSeconds() * 1_000_000_000L;
+        long droppedBefore = Metrics.WS_MESSAGES_DROPPED.get();
+        int sentCrossings = 0;
+        long tick = start;
+
+        while (tick < end) {
+            long sleep = tick + TICK_NANOS - System.nanoTime();
+            if (sleep > 0) {
+                Thread.sleep(sleep / 1_000_000L, (int) (sleep % 1_000_000L));
+            }
+            // A late tick covers the whole time since the previous one, like a lagging client
+            long now = System.nanoTime();
+            for (SimRacer racer : racers) {
+                sentCrossings += advance(client, racer, tick, now, step);
+            }
+            tick = now;
+        }
+        Thread.sleep(DRAIN_NANOS / 1_000_000L);
+
+        double seconds = (tick - start) / 1_000_000_000.0;
+        long[] sorted = recorder.sorted();
+        int expected = sentCrossings * options.subscribers();
+        double displayedShare = expected > 0 ? (double) sorted.length / expected : 1;
+        StepResult result = new StepResult(racers.size(), sentCrossings / seconds,
+                sorted.length / (double) options.subscribers() / seconds, displayedShare,
+                LatencyRecorder.percentile(sorted, 50), LatencyRecorder.percentile(sorted, 99),
+                LatencyRecorder.percentile(sorted, 99.9), sorted.length > 0 ? sorted[sorted.length - 1] : -1);
+
+        long dropped = Metrics.WS_MESSAGES_DROPPED.get() - droppedBefore;
+        System.out.printf(Locale.ROOT, "%4d racers | %7.1f crossings/s sent | %7.1f/s displayed (%5.1f%%) | "
+                        + "p50 %s | p99 %s | p999 %s | max %s%s%n",
+                result.racers(), result.offeredPerSecond(), result.displayedPerSecond(), displayedShare * 100,
+                formatMs(result.p50()), formatMs(result.p99()), formatMs(result.p999()), formatMs(result.max()),
+                dropped > 0 ? " | " + dropped + " messages dropped" : "");
+        return result;
+    }
+
+    /**
+     * Move a racer for one tick and send the gates it passed, with the crossing time
+     * interpolated within the tick like the waypoint tracker does.
+     *
+     * @return number of crossings sent (excluding the arming crossing)
+     */
+    private int advance(WebSocketClient client, SimRacer racer, long tickStart, long tickEnd, int step) {
+        double from = racer.distance;
+        double to = from + racer.speed * (tickEnd - tickStart) / 1_000_000_000.0;
+        racer.distance = to;
+        int count = 0;
+
+        while (true) {
+            double gateAt = racer.lapStart + gateDistance[racer.nextGate];
+            if (gateAt > to) {
+                return count;
+            }
+            double fraction = (gateAt - from) / (to - from);
+            long crossingNanos = tickStart + (long) ((tickEnd - tickStart) * fraction);
+            String gateId = track.get(racer.nextGate).getId();
+            racer.nextGate++;
+            if (racer.nextGate == track.size()) {
+                racer.nextGate = 0;
+                racer.lapStart += loopLength;
+            }
+            from = gateAt;
+
+            CrossingTiming timing = RaceTimer.getInstance().onCrossing(racer.id, gateId, crossingNanos, track.size());
+            if (racer.armed) {
+                racer.progress++;
+                sent.get(racer.id).put(racer.progress, new Crossing(System.nanoTime(), step));
+                count++;
+            }
+            racer.armed = true;
+            client.sendCheckpoint(racer.id, timing);
+        }
+    }
+
+    private void report(List<StepResult> results) {
+        StepResult lastGood = null;
+        StepResult saturated = null;
+        for (StepResult result : results) {
+            boolean behind = result.displayedShare() < 0.95
+                    || (result.p99() >= 0 && result.p99() / 1_000_000.0 > options.maxP99Ms());
+            if (behind) {
+                saturated = result;
+                break;
+            }
+            lastGood = result;
+        }
+
+        if (saturated == null) {
+            StepResult last = results.get(results.size() - 1);
+            System.out.printf(Locale.ROOT, "No saturation up to %d racers (%.1f crossings/s)%n",
+                    last.racers(), last.offeredPerSecond());
+        } else {
+            System.out.printf(Locale.ROOT, "Saturated at %d racers (%.1f crossings/s): %.1f%% displayed, p99 %s%n",
+                    saturated.racers(), saturated.offeredPerSecond(), saturated.displayedShare() * 100,
+                    formatMs(saturated.p99()));
+            if (lastGood != null) {
+                System.out.printf(Locale.ROOT, "Last healthy step: %d racers (%.1f crossings/s)%n",
+                        lastGood.racers(), lastGood.offeredPerSecond());
+            }
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Timed out waiting for " + what);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static String formatMs(long nanos) {
+        return nanos < 0 ? "-" : String.format(Locale.ROOT, "%.2fms", nanos / 1_000_000.0);
+    }
+
+    private static Options parseOptions(String[] args) throws IOException {
+        Path track = null;
+        int racers = 20;
+        int step = 0;
+        int duration = 20;
+        double speed = 40;
+        double jitter = 0.1;
+        int subscribers = 3;
+        String server = null;
+        double maxP99 = 250;
+
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            if (value == null) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "--track" -> track = Path.of(value);
+                case "--racers" -> racers = Integer.parseInt(value);
+                case "--step" -> step = Integer.parseInt(value);
+                case "--duration" -> duration = Integer.parseInt(value);
+                case "--speed" -> speed = Double.parseDouble(value);
+                case "--jitter" -> jitter = Double.parseDouble(value);
+                case "--subscribers" -> subscribers = Integer.parseInt(value);
+                case "--server" -> server = value;
+                case "--max-p99" -> maxP99 = Double.parseDouble(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+            i++;
+        }
+        if (track == null || !Files.exists(track)) {
+            throw new IOException("Track file not found, use --track <waypoints_*.json>");
+        }
+        if (racers < 1 || subscribers < 1 || duration < 1 || speed <= 0) {
+            throw new IllegalArgumentException("racers, subscribers, duration and speed must be positive");
+        }
+        return new Options(track, racers, step, duration, speed, jitter, subscribers, server, maxP99);
+    }
+}
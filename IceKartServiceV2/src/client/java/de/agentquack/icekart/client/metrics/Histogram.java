@@ -0,0 +1,66 @@
+package de.agentquack.icekart.client.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations with fixed bucket bounds (exported in seconds).
+ * Every bucket is a striped {@link LongAdder}; observing a value is a short
+ * scan over the bounds and never allocates.
+ */
+public final class Histogram {
+
+    private final double[] boundsSeconds;
+    private final long[] boundsNanos;
+    // One bucket per bound plus +Inf, not cumulative
+    private final LongAdder[] buckets;
+    private final LongAdder sumNanos = new LongAdder();
+
+    Histogram(double... boundsSeconds) {
+        this.boundsSeconds = boundsSeconds.clone();
+        this.boundsNanos = new long[boundsSeconds.length];
+        for (int i = 0; i < boundsSeconds.length; i++) {
+            boundsNanos[i] = (long) (boundsSeconds[i] * 1_000_000_000L);
+        }
+        this.buckets = new LongAdder[boundsSeconds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void observeNanos(long nanos) {
+        int bucket = 0;
+        while (bucket < boundsNanos.length && nanos > boundsNanos[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Observe the time elapsed since a {@link System#nanoTime()} timestamp.
+     */
+    public void observeSince(long startNanos) {
+        observeNanos(System.nanoTime() - startNanos);
+    }
+
+    double[] getBoundsSeconds() {
+        return boundsSeconds;
+    }
+
+    /**
+     * Cumulative bucket counts (Prometheus "le" semantics), the last entry is the total count.
+     */
+    long[] getCumulativeCounts() {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            total += buckets[i].sum();
+            counts[i] = total;
+        }
+        return counts;
+    }
+
+    double getSumSeconds() {
+        return sumNanos.sum() / 1_000_000_000.0;
+    }
+}
@@ -0,0 +1,81 @@
+package de.agentquack.icekart.client.metrics;
+
+/**
+ * The metrics exported by the mod. Updating them is lock-free and allocation-free,
+ * so they can be used on the tick thread.
+ */
+public final class Metrics {
+
+    private static final MetricsRegistry REGISTRY = MetricsRegistry.getInstance();
+
+    // Tick times are expected well below a millisecond, anything above 50 ms costs a frame
+    private static final double[] TICK_BUCKETS = {0.00005, 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.05};
+    // Dead time between two heats, from a quick restart to a long break
+    private static final double[] TURNAROUND_BUCKETS = {5, 10, 20, 30, 60, 120, 300, 600};
+    private static final double[] NETWORK_BUCKETS = {0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1};
+
+    // --- Waypoint tracker ---
+
+    public static final Histogram TRACKER_TICK = REGISTRY.histogram("icekart_tracker_tick_seconds",
+            "Duration of a waypoint tracker tick", TICK_BUCKETS);
+    public static final Counter GATES_EVALUATED = REGISTRY.counter("icekart_tracker_gates_evaluated_total",
+            "Gate bounding box checks performed by the waypoint tracker");
+    public static final Counter GATE_CHECKS_SKIPPED = REGISTRY.counter("icekart_tracker_gate_checks_skipped_total",
+            "Racer gate checks skipped because no gate was in reach since the last check");
+    public static final Counter CROSSINGS_DETECTED = REGISTRY.counter("icekart_crossings_detected_total",
+            "Gate entries detected by the waypoint tracker");
+    public static final Counter CROSSINGS_DROPPED_COOLDOWN = droppedCrossings("cooldown");
+    public static final Counter CROSSINGS_DROPPED_NO_RACER_ID = droppedCrossings("no_racer_id");
+    public static final Counter CROSSINGS_DROPPED_DISCONNECTED = droppedCrossings("disconnected");
+    public static final Counter CROSSINGS_DROPPED_NOT_RACING = droppedCrossings("not_racing");
+    public static final Counter CROSSINGS_SHADOWED = REGISTRY.counter("icekart_crossings_shadowed_total",
+            "Gate entries timed but not reported while this client is a standby tracker");
+
+    // --- WebSocket ---
+
+    public static final Counter WS_MESSAGES_SENT = REGISTRY.counter("icekart_websocket_messages_sent_total",
+            "WebSocket messages sent to the race server");
+    public static final Counter WS_MESSAGES_DROPPED = REGISTRY.counter("icekart_websocket_messages_dropped_total",
+            "WebSocket messages dropped (queue full or send failed)");
+    public static final Counter WS_MESSAGES_RECEIVED = REGISTRY.counter("icekart_websocket_messages_received_total",
+            "WebSocket messages received from the race server");
+    public static final Histogram WS_SEND_LATENCY = REGISTRY.histogram("icekart_websocket_send_seconds",
+            "Time from queueing a WebSocket message until it was sent", NETWORK_BUCKETS);
+    public static final Histogram WS_PARSE_TIME = REGISTRY.histogram("icekart_websocket_parse_seconds",
+            "Time to parse and apply a received WebSocket message", TICK_BUCKETS);
+    public static final Counter WS_CONNECTS = REGISTRY.counter("icekart_websocket_connects_total",
+            "Successful WebSocket connections");
+    public static final Counter WS_RECONNECTS = REGISTRY.counter("icekart_websocket_reconnects_total",
+            "WebSocket connections after the first one");
+    public static final Counter WS_CONNECT_FAILURES = REGISTRY.counter("icekart_websocket_connect_failures_total",
+            "Failed WebSocket connection attempts");
+
+    // --- Events ---
+
+    public static final Counter EVENTS_PUBLISHED = REGISTRY.counter("icekart_events_published_total",
+            "Race events dispatched by the event bus");
+    public static final Counter EVENTS_DROPPED = REGISTRY.counter("icekart_events_dropped_total",
+            "Race events dropped because the event worker or a subscriber was behind");
+
+    // --- Session snapshots ---
+
+    public static final Counter SNAPSHOTS_WRITTEN = REGISTRY.counter("icekart_session_snapshots_written_total",
+            "Session snapshots written for crash recovery");
+    public static final Counter SNAPSHOTS_SKIPPED = REGISTRY.counter("icekart_session_snapshots_skipped_total",
+            "Session snapshots skipped because the previous one was still being written");
+
+    // --- Heats ---
+
+    public static final Counter HEATS_COMPLETED = REGISTRY.counter("icekart_heats_completed_total",
+            "Heats of the heat queue that ran until the race stopped");
+    public static final Histogram HEAT_TURNAROUND = REGISTRY.histogram("icekart_heat_turnaround_seconds",
+            "Time from the end of a heat until the next heat started", TURNAROUND_BUCKETS);
+
+    private Metrics() {
+    }
+
+    private static Counter droppedCrossings(String reason) {
+        return REGISTRY.counter("icekart_crossings_dropped_total",
+                "Gate entries that were not sent to the race server", "reason=\"" + reason + "\"");
+    }
+}
@@ -0,0 +1,143 @@
+package de.agentquack.icekart.client.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of all metrics, rendered in the Prometheus text exposition format.
+ * Metrics are registered once at startup; rendering only reads them, so scraping
+ * never blocks the threads that update them.
+ */
+public class MetricsRegistry {
+
+    private static MetricsRegistry instance;
+
+    private enum Type {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    /**
+     * A metric name with its help text and one series per label set.
+     */
+    private static final class Family {
+        final String name;
+        final String help;
+        final Type type;
+        final List<String> labels = new ArrayList<>();
+        final List<Object> series = new ArrayList<>();
+
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    public static MetricsRegistry getInstance() {
+        if (instance == null) {
+            instance = new MetricsRegistry();
+        }
+        return instance;
+    }
+
+    public Counter counter(String name, String help) {
+        return counter(name, help, "");
+    }
+
+    /**
+     * Register a counter series, labels in Prometheus syntax without braces (e.g. reason="cooldown").
+     */
+    public synchronized Counter counter(String name, String help, String labels) {
+        Counter counter = new Counter();
+        addSeries(family(name, help, Type.COUNTER), labels, counter);
+        return counter;
+    }
+
+    public synchronized void gauge(String name, String help, LongSupplier value) {
+        addSeries(family(name, help, Type.GAUGE), "", value);
+    }
+
+    /**
+     * Register a duration histogram with the given bucket bounds in seconds.
+     */
+    public synchronized Histogram histogram(String name, String help, double... boundsSeconds) {
+        Histogram histogram = new Histogram(boundsSeconds);
+        addSeries(family(name, help, Type.HISTOGRAM), "", histogram);
+        return histogram;
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(n, help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " already registered as " + family.type);
+        }
+        return family;
+    }
+
+    /**
+     * Render all metrics in the Prometheus text format (version 0.0.4).
+     */
+    public synchronized String render() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Family family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ')
+                    .append(family.type.name().toLowerCase(Locale.ROOT)).append('\n');
+            for (int i = 0; i < family.series.size(); i++) {
+                String labels = family.labels.get(i);
+                Object series = family.series.get(i);
+                if (series instanceof Counter counter) {
+                    sample(out, family.name, labels, counter.get());
+                } else if (series instanceof LongSupplier gauge) {
+                    sample(out, family.name, labels, gauge.getAsLong());
+                } else if (series instanceof Histogram histogram) {
+                    renderHistogram(out, family.name, labels, histogram);
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void renderHistogram(StringBuilder out, String name, String labels, Histogram histogram) {
+        double[] bounds = histogram.getBoundsSeconds();
+        long[] counts = histogram.getCumulativeCounts();
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        for (int i = 0; i < bounds.length; i++) {
+            sample(out, name + "_bucket", prefix + "le=\"" + Double.toString(bounds[i]) + "\"", counts[i]);
+        }
+        sample(out, name + "_bucket", prefix + "le=\"+Inf\"", counts[counts.length - 1]);
+        out.append(name).append("_sum");
+        appendLabels(out, labels);
+        out.append(' ').append(Double.toString(histogram.getSumSeconds())).append('\n');
+        sample(out, name + "_count", labels, counts[counts.length - 1]);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        appendLabels(out, labels);
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static void appendLabels(StringBuilder out, String labels) {
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+    }
+
+    /**
+     * Add a series to a family (called with the registry lock held).
+     */
+    private static void addSeries(Family family, String labels, Object series) {
+        family.labels.add(labels);
+        family.series.add(series);
+    }
+}
@@ -0,0 +1,114 @@
+package de.agentquack.icekart.client.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.agentquack.icekart.client.IcekartClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Optional HTTP endpoint serving the metrics at /metrics for Prometheus.
+ * Only binds to the loopback interface. Scrapes are handled on a dedicated
+ * daemon thread, so they never run on the client thread.
+ *
+ * Start with /racer metrics start [port] or the system property icekart.metrics.port.
+ */
+public class MetricsServer {
+
+    private static MetricsServer instance;
+
+    public static final int DEFAULT_PORT = 9464;
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private HttpServer server = null;
+    private ExecutorService executor = null;
+
+    private MetricsServer() {
+    }
+
+    public static MetricsServer getInstance() {
+        if (instance == null) {
+            instance = new MetricsServer();
+        }
+        return instance;
+    }
+
+    /**
+     * Start the endpoint if the system property icekart.metrics.port is set.
+     */
+    public void startFromSystemProperty() {
+        String port = System.getProperty("icekart.metrics.port");
+        if (port == null) {
+            return;
+        }
+        try {
+            start(Integer.parseInt(port));
+        } catch (NumberFormatException e) {
+            IcekartClient.LOGGER.warn("[IceKart] Invalid icekart.metrics.port: {}", port);
+        } catch (IOException e) {
+            IcekartClient.LOGGER.error("[IceKart] Failed to start metrics endpoint: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Start serving on 127.0.0.1 at the given port.
+     *
+     * @throws IOException if the port can't be bound
+     */
+    public synchronized void start(int port) throws IOException {
+        if (server != null) {
+            throw new IOException("Metrics endpoint already running on port " + getPort());
+        }
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext("/metrics", this::handleMetrics);
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "IceKart-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpServer.setExecutor(executor);
+        httpServer.start();
+        server = httpServer;
+        IcekartClient.LOGGER.info("[IceKart] Metrics endpoint listening on http://127.0.0.1:{}/metrics", getPort());
+    }
+
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        executor.shutdown();
+        server = null;
+        executor = null;
+        IcekartClient.LOGGER.info("[IceKart] Metrics endpoint stopped");
+    }
+
+    public synchronized boolean isRunning() {
+        return server != null;
+    }
+
+    public synchronized int getPort() {
+        return server != null ? server.getAddress().getPort() : -1;
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = MetricsRegistry.getInstance().render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package de.agentquack.icekart.client.session;
+
+import de.agentquack.icekart.client.IcekartClient;
+import de.agentquack.icekart.timing.StandingsTree;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * Post-race analytics over recorded sessions: lap and sector bests, lap time consistency,
+ * speed histograms per sector (the "corners" between two gates) and overtakes.
+ *
+ * Sessions are analyzed in parallel, and within a session all racers are analyzed in
+ * parallel on the common fork-join pool. Only the overtake detection, which needs the
+ * global crossing order, runs sequentially per session.
+ */
+public final class SessionAnalytics {
+
+    // Speed histogram: 20 bins of 4 blocks/s, the last bin is open ended
+    public static final int SPEED_BIN_WIDTH = 4;
+    public static final int SPEED_BINS = 20;
+
+    // Sample gaps longer than this (e.g. lag spikes, teleports) are not used for speeds
+    private static final long MAX_SAMPLE_GAP_NANOS = 250_000_000L;
+
+    /**
+     * Analytics of a single racer in a session.
+     *
+     * @param lapTimes        completed lap times in order
+     * @param consistency     standard deviation of the lap times relative to the mean (percent), -1 with less than two laps
+     * @param bestSectorNanos best time per sector index, -1 if not driven
+     * @param topSpeed        highest measured speed (blocks per second)
+     */
+    public record RacerReport(String racerId, String name, long[] lapTimes, long bestLapNanos, long meanLapNanos,
+                              long lapStdDevNanos, double consistency, long[] bestSectorNanos,
+                              int overtakesMade, int overtakesLost, double topSpeed) {
+
+        public int laps() {
+            return lapTimes.length;
+        }
+    }
+
+    /**
+     * Analytics of a sector (from one gate to the next) over all racers.
+     *
+     * @param bestRacer      name of the racer with the best sector time, null if not driven
+     * @param speedHistogram number of speed samples per bin of {@link #SPEED_BIN_WIDTH} blocks/s
+     */
+    public record SectorReport(int sector, long bestNanos, String bestRacer, long meanNanos, long[] speedHistogram) {
+    }
+
+    /**
+     * Analytics of a session.
+     *
+     * @param theoreticalBestNanos sum of the best sector times of all racers, -1 if a sector was never driven
+     */
+    public record SessionReport(String name, long startTimeMs, int gatesPerLap, List<RacerReport> racers,
+                                List<SectorReport> sectors, long theoreticalBestNanos) {
+    }
+
+    /**
+     * Per racer intermediate results, merged into the sector reports.
+     */
+    private record RacerStats(RacerReport report, long[] sectorSums, int[] sectorCounts, long[][] histogram) {
+    }
+
+    private SessionAnalytics() {
+    }
+
+    /**
+     * Read and analyze session files in parallel. Files that can't be read are skipped.
+     */
+    public static List<SessionReport> analyze(List<Path> files) {
+        return files.parallelStream()
+                .map(SessionAnalytics::analyzeFile)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    private static SessionReport analyzeFile(Path file) {
+        try {
+            String name = file.getFileName().toString();
+            if (name.endsWith(SessionFormat.EXTENSION)) {
+                name = name.substring(0, name.length() - SessionFormat.EXTENSION.length());
+            }
+            return analyze(name, SessionFormat.read(file));
+        } catch (IOException e) {
+            IcekartClient.LOGGER.warn("[IceKart] Skipping session {}: {}", file.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Analyze a single session.
+     */
+    public static SessionReport analyze(String name, SessionData session) {
+        int racerCount = session.getRacerCount();
+        int sectorCount = Math.max(1, session.getGatesPerLap());
+        int[][] crossingsByRacer = SessionData.indexByRacer(session.crossingRacer, racerCount);
+        int[][] samplesByRacer = SessionData.indexByRacer(session.sampleRacer, racerCount);
+
+        int[][] overtakes = countOvertakes(session);
+
+        List<RacerStats> stats = IntStream.range(0, racerCount).parallel()
+                .mapToObj(r -> analyzeRacer(session, r, crossingsByRacer[r], samplesByRacer[r], sectorCount,
+                        overtakes[0][r], overtakes[1][r]))
+                .toList();
+
+        List<SectorReport> sectors = new ArrayList<>(sectorCount);
+        long theoreticalBest = 0;
+        for (int s = 0; s < sectorCount; s++) {
+            long best = -1;
+            String bestRacer = null;
+            long sum = 0;
+            int count = 0;
+            long[] histogram = new long[SPEED_BINS];
+            for (RacerStats racer : stats) {
+                long racerBest = racer.report().bestSectorNanos()[s];
+                if (racerBest >= 0 && (best < 0 || racerBest < best)) {
+                    best = racerBest;
+                    bestRacer = racer.report().name();
+                }
+                sum += racer.sectorSums()[s];
+                count += racer.sectorCounts()[s];
+                for (int b = 0; b < SPEED_BINS; b++) {
+                    histogram[b] += racer.histogram()[s][b];
+                }
+            }
+            sectors.add(new SectorReport(s, best, bestRacer, count > 0 ? sum / count : -1, histogram));
+            theoreticalBest = best < 0 || theoreticalBest < 0 ? -1 : theoreticalBest + best;
+        }
+
+        List<RacerReport> racers = stats.stream().map(RacerStats::report).toList();
+        return new SessionReport(name, session.getStartTimeMs(), session.getGatesPerLap(), racers, sectors,
+                theoreticalBest);
+    }
+
+    private static RacerStats analyzeRacer(SessionData session, int racer, int[] crossings, int[] samples,
+                                           int sectorCount, int overtakesMade, int overtakesLost) {
+        long[] bestSectors = new long[sectorCount];
+        Arrays.fill(bestSectors, -1);
+        long[] sectorSums = new long[sectorCount];
+        int[] sectorCounts = new int[sectorCount];
+        long[] lapTimes = new long[crossings.length];
+        int laps = 0;
+
+        for (int c : crossings) {
+            int split = session.crossingSplit[c];
+            if (split >= 0 && split < sectorCount) {
+                long sector = session.crossingSector[c];
+                if (bestSectors[split] < 0 || sector < bestSectors[split]) {
+                    bestSectors[split] = sector;
+                }
+                sectorSums[split] += sector;
+                sectorCounts[split]++;
+            }
+            if (session.crossingLapTime[c] >= 0) {
+                lapTimes[laps++] = session.crossingLapTime[c];
+            }
+        }
+        lapTimes = Arrays.copyOf(lapTimes, laps);
+
+        long best = -1;
+        long sum = 0;
+        for (long lap : lapTimes) {
+            best = best < 0 ? lap : Math.min(best, lap);
+            sum += lap;
+        }
+        long mean = laps > 0 ? sum / laps : -1;
+        double variance = 0;
+        for (long lap : lapTimes) {
+            variance += (double) (lap - mean) * (lap - mean);
+        }
+        long stdDev = laps > 1 ? (long) Math.sqrt(variance / (laps - 1)) : -1;
+        double consistency = laps > 1 && mean > 0 ? 100.0 * stdDev / mean : -1;
+
+        long[][] histogram = new long[sectorCount][SPEED_BINS];
+        double topSpeed = computeSpeeds(session, crossings, samples, histogram);
+
+        RacerReport report = new RacerReport(session.getRacerId(racer), session.getRacerName(racer), lapTimes,
+                best, mean, stdDev, consistency, bestSectors, overtakesMade, overtakesLost, topSpeed);
+        return new RacerStats(report, sectorSums, sectorCounts, histogram);
+    }
+
+    /**
+     * Fill the per sector speed histogram of a racer. A sample belongs to the sector that
+     * ends with the next crossing; samples before arming and after the last crossing are ignored.
+     *
+     * @return top speed in blocks per second
+     */
+    private static double computeSpeeds(SessionData session, int[] crossings, int[] samples, long[][] histogram) {
+        double topSpeed = 0;
+        int nextCrossing = 0;
+        int sectorCount = histogram.length;
+
+        for (int i = 1; i < samples.length; i++) {
+            int previous = samples[i - 1];
+            int current = samples[i];
+            long time = session.sampleTime[current];
+            while (nextCrossing < crossings.length && session.crossingTime[crossings[nextCrossing]] < time) {
+                nextCrossing++;
+            }
+            if (nextCrossing == crossings.length) {
+                break;
+            }
+            int sector = session.crossingSplit[crossings[nextCrossing]];
+            long dt = time - session.sampleTime[previous];
+            if (sector < 0 || sector >= sectorCount || dt <= 0 || dt > MAX_SAMPLE_GAP_NANOS) {
+                continue;
+            }
+
+            double dx = session.sampleX[current] - session.sampleX[previous];
+            double dy = session.sampleY[current] - session.sampleY[previous];
+            double dz = session.sampleZ[current] - session.sampleZ[previous];
+            double speed = Math.sqrt(dx * dx + dy * dy + dz * dz) / (dt / 1_000_000_000.0);
+            topSpeed = Math.max(topSpeed, speed);
+            histogram[sector][Math.min(SPEED_BINS - 1, (int) (speed / SPEED_BIN_WIDTH))]++;
+        }
+        return topSpeed;
+    }
+
+    /**
+     * Replay all crossings in time order through a {@link StandingsTree}. A racer that moves up
+     * k positions with a crossing made k overtakes, the racers it passed each lost one.
+     *
+     * @return overtakes made [0] and lost [1] per racer
+     */
+    private static int[][] countOvertakes(SessionData session) {
+        int racerCount = session.getRacerCount();
+        int[][] result = new int[2][racerCount];
+        int[] laps = new int[racerCount];
+        int[] progress = new int[racerCount];
+        Map<String, Integer> racerIndex = new HashMap<>();
+        for (int r = 0; r < racerCount; r++) {
+            racerIndex.put(session.getRacerId(r), r);
+        }
+
+        // Crossing times are interpolated per racer, so recording order isn't strictly time order
+        Integer[] order = new Integer[session.getCrossingCount()];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, (a, b) -> Long.compare(session.crossingTime[a], session.crossingTime[b]));
+
+        StandingsTree standings = new StandingsTree();
+        for (int c : order) {
+            int racer = session.crossingRacer[c];
+            String racerId = session.getRacerId(racer);
+            int before = standings.positionOf(racerId);
+
+            if (session.crossingLapTime[c] >= 0) {
+                laps[racer]++;
+                progress[racer] = 0;
+            } else if (session.crossingSplit[c] >= 0) {
+                progress[racer]++;
+            }
+            standings.update(new StandingsTree.Key(racerId, false, laps[racer], progress[racer],
+                    Math.max(1, session.crossingTime[c] / 1_000_000L)));
+
+            int after = standings.positionOf(racerId);
+            if (before > 0 && after < before) {
+                result[0][racer] += before - after;
+                for (int position = after + 1; position <= before; position++) {
+                    result[1][racerIndex.get(standings.get(position).racerId())]++;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,208 @@
+package de.agentquack.icekart.client.session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A recorded race session: gate crossings and per-tick vehicle positions of all racers.
+ * Stored column-wise in primitive arrays in recording (time) order, so a session
+ * with hundreds of thousands of samples stays compact and can be scanned quickly.
+ * Times are nanoseconds since the race start.
+ */
+public final class SessionData {
+
+    /**
+     * Split index of a crossing that only armed lap timing.
+     */
+    public static final int ARMED = -1;
+
+    private final long startTimeMs;
+    private final int gatesPerLap;
+    private final String[] racerIds;
+    private final String[] racerNames;
+
+    // Crossings
+    final int[] crossingRacer;
+    final long[] crossingTime;
+    final int[] crossingLap;
+    final int[] crossingSplit;
+    final long[] crossingSector;
+    final long[] crossingLapTime;
+
+    // Samples
+    final int[] sampleRacer;
+    final long[] sampleTime;
+    final double[] sampleX;
+    final double[] sampleY;
+    final double[] sampleZ;
+
+    SessionData(long startTimeMs, int gatesPerLap, String[] racerIds, String[] racerNames,
+                int[] crossingRacer, long[] crossingTime, int[] crossingLap, int[] crossingSplit,
+                long[] crossingSector, long[] crossingLapTime,
+                int[] sampleRacer, long[] sampleTime, double[] sampleX, double[] sampleY, double[] sampleZ) {
+        this.startTimeMs = startTimeMs;
+        this.gatesPerLap = gatesPerLap;
+        this.racerIds = racerIds;
+        this.racerNames = racerNames;
+        this.crossingRacer = crossingRacer;
+        this.crossingTime = crossingTime;
+        this.crossingLap = crossingLap;
+        this.crossingSplit = crossingSplit;
+        this.crossingSector = crossingSector;
+        this.crossingLapTime = crossingLapTime;
+        this.sampleRacer = sampleRacer;
+        this.sampleTime = sampleTime;
+        this.sampleX = sampleX;
+        this.sampleY = sampleY;
+        this.sampleZ = sampleZ;
+    }
+
+    /**
+     * Race start (epoch milliseconds).
+     */
+    public long getStartTimeMs() {
+        return startTimeMs;
+    }
+
+    public int getGatesPerLap() {
+        return gatesPerLap;
+    }
+
+    public int getRacerCount() {
+        return racerIds.length;
+    }
+
+    public String getRacerId(int racer) {
+        return racerIds[racer];
+    }
+
+    public String getRacerName(int racer) {
+        return racerNames[racer];
+    }
+
+    public int getCrossingCount() {
+        return crossingRacer.length;
+    }
+
+    public int getSampleCount() {
+        return sampleRacer.length;
+    }
+
+    /**
+     * Indices of the crossings (or samples) of each racer, in time order.
+     */
+    static int[][] indexByRacer(int[] racerColumn, int racerCount) {
+        int[] counts = new int[racerCount];
+        for (int racer : racerColumn) {
+            counts[racer]++;
+        }
+        int[][] index = new int[racerCount][];
+        for (int r = 0; r < racerCount; r++) {
+            index[r] = new int[counts[r]];
+        }
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < racerColumn.length; i++) {
+            int racer = racerColumn[i];
+            index[racer][counts[racer]++] = i;
+        }
+        return index;
+    }
+
+    /**
+     * Collects a session while the race is running. Not thread safe.
+     */
+    static final class Builder {
+
+        private final long startTimeMs;
+        private int gatesPerLap = 0;
+        private final Map<String, Integer> racerIndex = new HashMap<>();
+        private final List<String> racerIds = new ArrayList<>();
+        private final List<String> racerNames = new ArrayList<>();
+
+        private int crossingCount = 0;
+        private int[] crossingRacer = new int[256];
+        private long[] crossingTime = new long[256];
+        private int[] crossingLap = new int[256];
+        private int[] crossingSplit = new int[256];
+        private long[] crossingSector = new long[256];
+        private long[] crossingLapTime = new long[256];
+
+        private int sampleCount = 0;
+        private int[] sampleRacer = new int[4096];
+        private long[] sampleTime = new long[4096];
+        private double[] sampleX = new double[4096];
+        private double[] sampleY = new double[4096];
+        private double[] sampleZ = new double[4096];
+
+        Builder(long startTimeMs) {
+            this.startTimeMs = startTimeMs;
+        }
+
+        int getCrossingCount() {
+            return crossingCount;
+        }
+
+        void addCrossing(String racerId, String racerName, long time, int lap, int split,
+                         long sectorNanos, long lapNanos, int gatesPerLap) {
+            this.gatesPerLap = Math.max(this.gatesPerLap, gatesPerLap);
+            if (crossingCount == crossingRacer.length) {
+                int capacity = crossingCount * 2;
+                crossingRacer = Arrays.copyOf(crossingRacer, capacity);
+                crossingTime = Arrays.copyOf(crossingTime, capacity);
+                crossingLap = Arrays.copyOf(crossingLap, capacity);
+                crossingSplit = Arrays.copyOf(crossingSplit, capacity);
+                crossingSector = Arrays.copyOf(crossingSector, capacity);
+                crossingLapTime = Arrays.copyOf(crossingLapTime, capacity);
+            }
+            int i = crossingCount++;
+            crossingRacer[i] = racer(racerId, racerName);
+            crossingTime[i] = time;
+            crossingLap[i] = lap;
+            crossingSplit[i] = split;
+            crossingSector[i] = sectorNanos;
+            crossingLapTime[i] = lapNanos;
+        }
+
+        void addSample(String racerId, String racerName, long time, double x, double y, double z) {
+            if (sampleCount == sampleRacer.length) {
+                int capacity = sampleCount * 2;
+                sampleRacer = Arrays.copyOf(sampleRacer, capacity);
+                sampleTime = Arrays.copyOf(sampleTime, capacity);
+                sampleX = Arrays.copyOf(sampleX, capacity);
+                sampleY = Arrays.copyOf(sampleY, capacity);
+                sampleZ = Arrays.copyOf(sampleZ, capacity);
+            }
+            int i = sampleCount++;
+            sampleRacer[i] = racer(racerId, racerName);
+            sampleTime[i] = time;
+            sampleX[i] = x;
+            sampleY[i] = y;
+            sampleZ[i] = z;
+        }
+
+        private int racer(String racerId, String racerName) {
+            Integer index = racerIndex.get(racerId);
+            if (index == null) {
+                index = racerIds.size();
+                racerIndex.put(racerId, index);
+                racerIds.add(racerId);
+                racerNames.add(racerName != null ? racerName : racerId);
+            }
+            return index;
+        }
+
+        SessionData build() {
+            return new SessionData(startTimeMs, gatesPerLap,
+                    racerIds.toArray(String[]::new), racerNames.toArray(String[]::new),
+                    Arrays.copyOf(crossingRacer, crossingCount), Arrays.copyOf(crossingTime, crossingCount),
+                    Arrays.copyOf(crossingLap, crossingCount), Arrays.copyOf(crossingSplit, crossingCount),
+                    Arrays.copyOf(crossingSector, crossingCount), Arrays.copyOf(crossingLapTime, crossingCount),
+                    Arrays.copyOf(sampleRacer, sampleCount), Arrays.copyOf(sampleTime, sampleCount),
+                    Arrays.copyOf(sampleX, sampleCount), Arrays.copyOf(sampleY, sampleCount),
+                    Arrays.copyOf(sampleZ, sampleCount));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package de.agentquack.icekart.client.session;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import de.agentquack.icekart.track.TrackStorage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Exports session analytics as JSON (full report) and CSV (one file per racer table and sector table).
+ * Times are exported in seconds.
+ */
+public final class SessionExporter {
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    public static final String JSON_SUFFIX = ".analytics.json";
+    public static final String RACERS_CSV_SUFFIX = ".racers.csv";
+    public static final String SECTORS_CSV_SUFFIX = ".sectors.csv";
+
+    private SessionExporter() {
+    }
+
+    /**
+     * Write the JSON and CSV files of a report next to the session files.
+     */
+    public static void export(SessionAnalytics.SessionReport report, Path dir) throws IOException {
+        TrackStorage.writeAtomically(dir.resolve(report.name() + JSON_SUFFIX),
+                toJson(report).getBytes(StandardCharsets.UTF_8));
+        TrackStorage.writeAtomically(dir.resolve(report.name() + RACERS_CSV_SUFFIX),
+                racersCsv(report).getBytes(StandardCharsets.UTF_8));
+        TrackStorage.writeAtomically(dir.resolve(report.name() + SECTORS_CSV_SUFFIX),
+                sectorsCsv(report).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String toJson(SessionAnalytics.SessionReport report) {
+        JsonObject root = new JsonObject();
+        root.addProperty("session", report.name());
+        root.addProperty("startTime", report.startTimeMs());
+        root.addProperty("gatesPerLap", report.gatesPerLap());
+        addSeconds(root, "theoreticalBest", report.theoreticalBestNanos());
+
+        JsonArray racers = new JsonArray();
+        for (SessionAnalytics.RacerReport racer : report.racers()) {
+            JsonObject json = new JsonObject();
+            json.addProperty("id", racer.racerId());
+            json.addProperty("name", racer.name());
+            json.addProperty("laps", racer.laps());
+            addSeconds(json, "bestLap", racer.bestLapNanos());
+            addSeconds(json, "meanLap", racer.meanLapNanos());
+            addSeconds(json, "lapStdDev", racer.lapStdDevNanos());
+            if (racer.consistency() >= 0) {
+                json.addProperty("consistency", round(racer.consistency()));
+            }
+            json.add("lapTimes", secondsArray(racer.lapTimes()));
+            json.add("bestSectors", secondsArray(racer.bestSectorNanos()));
+            json.addProperty("overtakesMade", racer.overtakesMade());
+            json.addProperty("overtakesLost", racer.overtakesLost());
+            json.addProperty("topSpeed", round(racer.topSpeed()));
+            racers.add(json);
+        }
+        root.add("racers", racers);
+
+        JsonArray sectors = new JsonArray();
+        for (SessionAnalytics.SectorReport sector : report.sectors()) {
+            JsonObject json = new JsonObject();
+            json.addProperty("sector", sector.sector() + 1);
+            addSeconds(json, "best", sector.bestNanos());
+            if (sector.bestRacer() != null) {
+                json.addProperty("bestRacer", sector.bestRacer());
+            }
+            addSeconds(json, "mean", sector.meanNanos());
+            json.addProperty("speedBinWidth", SessionAnalytics.SPEED_BIN_WIDTH);
+            JsonArray histogram = new JsonArray();
+            for (long count : sector.speedHistogram()) {
+                histogram.add(count);
+            }
+            json.add("speedHistogram", histogram);
+            sectors.add(json);
+        }
+        root.add("sectors", sectors);
+
+        return GSON.toJson(root);
+    }
+
+    public static String racersCsv(SessionAnalytics.SessionReport report) {
+        StringBuilder csv = new StringBuilder();
+        csv.append("id,name,laps,best_lap,mean_lap,lap_stddev,consistency_pct,overtakes_made,overtakes_lost,top_speed");
+        for (int s = 0; s < report.sectors().size(); s++) {
+            csv.append(",best_s").append(s + 1);
+        }
+        csv.append('\n');
+
+        for (SessionAnalytics.RacerReport racer : report.racers()) {
+            csv.append(escape(racer.racerId())).append(',')
+                    .append(escape(racer.name())).append(',')
+                    .append(racer.laps()).append(',')
+                    .append(seconds(racer.bestLapNanos())).append(',')
+                    .append(seconds(racer.meanLapNanos())).append(',')
+                    .append(seconds(racer.lapStdDevNanos())).append(',')
+                    .append(racer.consistency() >= 0 ? format(racer.consistency()) : "").append(',')
+                    .append(racer.overtakesMade()).append(',')
+                    .append(racer.overtakesLost()).append(',')
+                    .append(format(racer.topSpeed()));
+            for (long sector : racer.bestSectorNanos()) {
+                csv.append(',').append(seconds(sector));
+            }
+            csv.append('\n');
+        }
+        return csv.toString();
+    }
+
+    public static String sectorsCsv(SessionAnalytics.SessionReport report) {
+        StringBuilder csv = new StringBuilder("sector,best,best_racer,mean");
+        for (int b = 0; b < SessionAnalytics.SPEED_BINS; b++) {
+            int from = b * SessionAnalytics.SPEED_BIN_WIDTH;
+            csv.append(",speed_").append(from)
+                    .append(b == SessionAnalytics.SPEED_BINS - 1 ? "_plus" : "_" + (from + SessionAnalytics.SPEED_BIN_WIDTH));
+        }
+        csv.append('\n');
+
+        for (SessionAnalytics.SectorReport sector : report.sectors()) {
+            csv.append(sector.sector() + 1).append(',')
+                    .append(seconds(sector.bestNanos())).append(',')
+                    .append(sector.bestRacer() != null ? escape(sector.bestRacer()) : "").append(',')
+                    .append(seconds(sector.meanNanos()));
+            for (long count : sector.speedHistogram()) {
+                csv.append(',').append(count);
+            }
+            csv.append('\n');
+        }
+        return csv.toString();
+    }
+
+    // --- Helpers ---
+
+    private static void addSeconds(JsonObject json, String key, long nanos) {
+        if (nanos >= 0) {
+            json.addProperty(key, nanos / 1_000_000_000.0);
+        }
+    }
+
+    private static JsonArray secondsArray(long[] nanos) {
+        JsonArray array = new JsonArray();
+        for (long value : nanos) {
+            if (value >= 0) {
+                array.add(value / 1_000_000_000.0);
+            } else {
+                array.add((Number) null);
+            }
+        }
+        return array;
+    }
+
+    private static String seconds(long nanos) {
+        return nanos >= 0 ? String.format(Locale.ROOT, "%.3f", nanos / 1_000_000_000.0) : "";
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static String escape(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+}
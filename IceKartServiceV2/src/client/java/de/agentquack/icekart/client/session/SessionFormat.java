@@ -0,0 +1,227 @@
+package de.agentquack.icekart.client.session;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary session file format.
+ *
+ * Layout (big endian):
+ * - Header (48 bytes): magic "IKSS", version (u16), flags (u16), racer count,
+ *   crossing count, sample count, gates per lap, start time (long, epoch ms),
+ *   string table offset, reserved int, CRC32C of everything after the header, reserved int
+ * - Crossing columns: racer (int), lap (int), split (int), time (long), sector (long), lap time (long)
+ * - Sample columns: racer (int), time (long), x, y, z (double)
+ * - String table: racer IDs followed by racer names, each as u16 byte length and UTF-8 bytes
+ *
+ * Columns are written and read with bulk buffer operations, files are read memory-mapped.
+ */
+public final class SessionFormat {
+
+    public static final int MAGIC = 0x494B5353; // "IKSS"
+    public static final int VERSION = 1;
+    public static final String EXTENSION = ".iks";
+
+    private static final int HEADER_SIZE = 48;
+    private static final int CHECKSUM_OFFSET = 40;
+    private static final int CROSSING_SIZE = 3 * Integer.BYTES + 3 * Long.BYTES;
+    private static final int SAMPLE_SIZE = Integer.BYTES + Long.BYTES + 3 * Double.BYTES;
+
+    private SessionFormat() {
+    }
+
+    /**
+     * Encode a session into the binary format.
+     */
+    public static byte[] encode(SessionData session) {
+        int racers = session.getRacerCount();
+        byte[][] strings = new byte[racers * 2][];
+        for (int r = 0; r < racers; r++) {
+            strings[r] = encodeString(session.getRacerId(r));
+            strings[racers + r] = encodeString(session.getRacerName(r));
+        }
+
+        int crossings = session.getCrossingCount();
+        int samples = session.getSampleCount();
+        long stringTableOffset = HEADER_SIZE + (long) crossings * CROSSING_SIZE + (long) samples * SAMPLE_SIZE;
+        long length = stringTableOffset;
+        for (byte[] string : strings) {
+            length += Short.BYTES + string.length;
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Session too large: " + length + " bytes");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) 0); // flags
+        buffer.putInt(racers);
+        buffer.putInt(crossings);
+        buffer.putInt(samples);
+        buffer.putInt(session.getGatesPerLap());
+        buffer.putLong(session.getStartTimeMs());
+        buffer.putInt((int) stringTableOffset);
+        buffer.putInt(0); // reserved
+        buffer.putInt(0); // checksum, filled in below
+        buffer.putInt(0); // reserved
+
+        buffer.asIntBuffer().put(session.crossingRacer).put(session.crossingLap).put(session.crossingSplit);
+        buffer.position(buffer.position() + crossings * 3 * Integer.BYTES);
+        buffer.asLongBuffer().put(session.crossingTime).put(session.crossingSector).put(session.crossingLapTime);
+        buffer.position(buffer.position() + crossings * 3 * Long.BYTES);
+
+        buffer.asIntBuffer().put(session.sampleRacer);
+        buffer.position(buffer.position() + samples * Integer.BYTES);
+        buffer.asLongBuffer().put(session.sampleTime);
+        buffer.position(buffer.position() + samples * Long.BYTES);
+        buffer.asDoubleBuffer().put(session.sampleX).put(session.sampleY).put(session.sampleZ);
+        buffer.position(buffer.position() + samples * 3 * Double.BYTES);
+
+        for (byte[] string : strings) {
+            buffer.putShort((short) string.length);
+            buffer.put(string);
+        }
+
+        buffer.putInt(CHECKSUM_OFFSET, checksum(buffer));
+        return buffer.array();
+    }
+
+    /**
+     * Read a session file.
+     *
+     * @throws IOException if the file can't be read or is not a valid session file
+     */
+    public static SessionData read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid session file size: " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return decode(buffer);
+        }
+    }
+
+    /**
+     * Decode a session from a buffer containing a complete session file.
+     */
+    public static SessionData decode(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an IceKart session file");
+        }
+        int version = buffer.getShort(4) & 0xFFFF;
+        if (version != VERSION) {
+            throw new IOException("Unsupported session file version: " + version);
+        }
+        if (buffer.getInt(CHECKSUM_OFFSET) != checksum(buffer)) {
+            throw new IOException("Session file checksum mismatch");
+        }
+
+        int racers = buffer.getInt(8);
+        int crossings = buffer.getInt(12);
+        int samples = buffer.getInt(16);
+        int gatesPerLap = buffer.getInt(20);
+        long startTimeMs = buffer.getLong(24);
+        int stringTableOffset = buffer.getInt(32);
+        if (racers < 0 || crossings < 0 || samples < 0
+                || HEADER_SIZE + (long) crossings * CROSSING_SIZE + (long) samples * SAMPLE_SIZE != stringTableOffset
+                || stringTableOffset > buffer.limit()) {
+            throw new IOException("Corrupt session file header");
+        }
+
+        int position = HEADER_SIZE;
+        int[] crossingRacer = new int[crossings];
+        int[] crossingLap = new int[crossings];
+        int[] crossingSplit = new int[crossings];
+        buffer.slice(position, crossings * 3 * Integer.BYTES).asIntBuffer()
+                .get(crossingRacer).get(crossingLap).get(crossingSplit);
+        position += crossings * 3 * Integer.BYTES;
+
+        long[] crossingTime = new long[crossings];
+        long[] crossingSector = new long[crossings];
+        long[] crossingLapTime = new long[crossings];
+        buffer.slice(position, crossings * 3 * Long.BYTES).asLongBuffer()
+                .get(crossingTime).get(crossingSector).get(crossingLapTime);
+        position += crossings * 3 * Long.BYTES;
+
+        int[] sampleRacer = new int[samples];
+        buffer.slice(position, samples * Integer.BYTES).asIntBuffer().get(sampleRacer);
+        position += samples * Integer.BYTES;
+
+        long[] sampleTime = new long[samples];
+        buffer.slice(position, samples * Long.BYTES).asLongBuffer().get(sampleTime);
+        position += samples * Long.BYTES;
+
+        double[] sampleX = new double[samples];
+        double[] sampleY = new double[samples];
+        double[] sampleZ = new double[samples];
+        buffer.slice(position, samples * 3 * Double.BYTES).asDoubleBuffer().get(sampleX).get(sampleY).get(sampleZ);
+
+        String[] strings = readStrings(buffer, stringTableOffset, racers * 2);
+        String[] racerIds = new String[racers];
+        String[] racerNames = new String[racers];
+        System.arraycopy(strings, 0, racerIds, 0, racers);
+        System.arraycopy(strings, racers, racerNames, 0, racers);
+
+        for (int racer : crossingRacer) {
+            checkRacer(racer, racers);
+        }
+        for (int racer : sampleRacer) {
+            checkRacer(racer, racers);
+        }
+
+        return new SessionData(startTimeMs, gatesPerLap, racerIds, racerNames,
+                crossingRacer, crossingTime, crossingLap, crossingSplit, crossingSector, crossingLapTime,
+                sampleRacer, sampleTime, sampleX, sampleY, sampleZ);
+    }
+
+    private static void checkRacer(int racer, int racers) throws IOException {
+        if (racer < 0 || racer >= racers) {
+            throw new IOException("Corrupt racer index: " + racer);
+        }
+    }
+
+    private static String[] readStrings(ByteBuffer buffer, int offset, int count) throws IOException {
+        String[] strings = new String[count];
+        int position = offset;
+        for (int i = 0; i < count; i++) {
+            if (position + Short.BYTES > buffer.limit()) {
+                throw new IOException("Corrupt string table");
+            }
+            int length = buffer.getShort(position) & 0xFFFF;
+            position += Short.BYTES;
+            if (position + length > buffer.limit()) {
+                throw new IOException("Corrupt string table");
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(position, bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            position += length;
+        }
+        return strings;
+    }
+
+    private static byte[] encodeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String too long for session file: " + value.length());
+        }
+        return bytes;
+    }
+
+    /**
+     * CRC32C of everything after the header.
+     */
+    private static int checksum(ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(HEADER_SIZE, buffer.limit() - HEADER_SIZE));
+        return (int) crc.getValue();
+    }
+}
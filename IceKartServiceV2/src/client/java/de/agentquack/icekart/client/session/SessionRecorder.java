@@ -0,0 +1,139 @@
+package de.agentquack.icekart.client.session;
+
+import de.agentquack.icekart.client.IcekartClient;
+import de.agentquack.icekart.client.command.RacerManager;
+import de.agentquack.icekart.timing.CrossingTiming;
+import de.agentquack.icekart.track.TrackStorage;
+import net.minecraft.client.MinecraftClient;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Records race sessions (gate crossings and vehicle positions) for post-race analytics.
+ * Recording starts with the race and the session is written to
+ * config/icekart/sessions when the race is stopped or reset.
+ *
+ * Called by the {@link de.agentquack.icekart.client.timing.RaceTimer} while holding its lock.
+ */
+public class SessionRecorder {
+
+    private static SessionRecorder instance;
+
+    private static final DateTimeFormatter FILE_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    private SessionData.Builder current = null;
+    private String currentName = null;
+
+    private SessionRecorder() {
+    }
+
+    public static SessionRecorder getInstance() {
+        if (instance == null) {
+            instance = new SessionRecorder();
+        }
+        return instance;
+    }
+
+    /**
+     * Start recording a new session (no-op if already recording).
+     */
+    public synchronized void start(long startTimeMs) {
+        if (current != null) {
+            return;
+        }
+        current = new SessionData.Builder(startTimeMs);
+        currentName = "session_" + LocalDateTime.now().format(FILE_NAME_FORMAT);
+        IcekartClient.LOGGER.info("[IceKart] Recording session {}", currentName);
+    }
+
+    public synchronized boolean isRecording() {
+        return current != null;
+    }
+
+    /**
+     * Record a gate crossing.
+     *
+     * @param raceNanos time of the crossing since the race start
+     */
+    public synchronized void recordCrossing(CrossingTiming timing, long raceNanos, int gatesPerLap) {
+        if (current == null) {
+            return;
+        }
+        int split = timing.armed() ? SessionData.ARMED : timing.splitIndex();
+        current.addCrossing(timing.racerId(), getRacerName(timing.racerId()), raceNanos, timing.lap(), split,
+                timing.sectorNanos(), timing.lapNanos(), gatesPerLap);
+    }
+
+    /**
+     * Record the vehicle position of a racer.
+     *
+     * @param raceNanos time of the sample since the race start
+     */
+    public synchronized void recordSample(String racerId, long raceNanos, double x, double y, double z) {
+        if (current != null) {
+            current.addSample(racerId, getRacerName(racerId), raceNanos, x, y, z);
+        }
+    }
+
+    /**
+     * Stop recording and write the session in the background.
+     * Sessions without any crossing are discarded.
+     */
+    public synchronized CompletableFuture<Path> stop() {
+        SessionData.Builder finished = current;
+        String name = currentName;
+        current = null;
+        currentName = null;
+        if (finished == null || finished.getCrossingCount() == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        SessionData session = finished.build();
+        Path path = getSessionDir().resolve(name + SessionFormat.EXTENSION);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                TrackStorage.writeAtomically(path, SessionFormat.encode(session));
+                IcekartClient.LOGGER.info("[IceKart] Saved session {} ({} crossings, {} samples)",
+                        path.getFileName(), session.getCrossingCount(), session.getSampleCount());
+                return path;
+            } catch (IOException e) {
+                IcekartClient.LOGGER.error("[IceKart] Failed to save session {}", name, e);
+                return null;
+            }
+        }, TrackStorage.getExecutor());
+    }
+
+    /**
+     * All recorded session files, oldest first.
+     */
+    public static List<Path> listSessions() throws IOException {
+        Path dir = getSessionDir();
+        if (!Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(SessionFormat.EXTENSION))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    public static Path getSessionDir() {
+        return MinecraftClient.getInstance().runDirectory.toPath()
+                .resolve("config")
+                .resolve("icekart")
+                .resolve("sessions");
+    }
+
+    private static String getRacerName(String racerId) {
+        return RacerManager.getInstance().getRacerName(racerId).orElse(racerId);
+    }
+}
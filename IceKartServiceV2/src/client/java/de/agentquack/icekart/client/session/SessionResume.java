@@ -0,0 +1,268 @@
+package de.agentquack.icekart.client.session;
+
+import de.agentquack.icekart.client.IcekartClient;
+import de.agentquack.icekart.client.command.RacerManager;
+import de.agentquack.icekart.client.metrics.Metrics;
+import de.agentquack.icekart.client.timing.RaceTimer;
+import de.agentquack.icekart.client.waypoint.WaypointManager;
+import de.agentquack.icekart.client.waypoint.WaypointTracker;
+import de.agentquack.icekart.client.websocket.WebSocketClient;
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Crash recovery for the operator client.
+ * Once a second the session state (race server, racer IDs, tracker progress, lap timing) is captured on the
+ * tick thread into one of two buffers and written by a background thread from the other, so the
+ * tick thread never waits for the disk. Snapshots alternate between two files; a crash while
+ * writing one leaves the previous snapshot intact, and the checksum tells which one is complete.
+ *
+ * On startup the newest valid snapshot is restored and the client reconnects to its race server;
+ * the tracker progress is restored once the client is back in the same world, the lap timing once
+ * the race server confirmed the race is still running. Quitting normally
+ * writes an empty snapshot, so only a crash resumes.
+ */
+public class SessionResume {
+
+    private static final int SNAPSHOT_INTERVAL_TICKS = 20;
+    // Older snapshots belong to a race that is long over
+    private static final long MAX_RESUME_AGE_MS = 30 * 60 * 1000L;
+    private static final int SLOTS = 2;
+    private static final long STOP_WRITE_TIMEOUT_SECONDS = 2;
+
+    private static SessionResume instance;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "IceKart-Snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Set while the writer owns the front buffer
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+    private ByteBuffer front = ByteBuffer.allocate(4096);
+    private ByteBuffer back = ByteBuffer.allocate(4096);
+
+    private long sequence = 0;
+    private int ticks = 0;
+    // Nothing to resume was written last time, so empty snapshots can be skipped
+    private boolean savedEmpty = true;
+    // Restored tracker progress waiting for its world to be joined, null if none
+    private List<SessionSnapshot.Progress> pendingProgress = null;
+    private String pendingWorldName = null;
+
+    private SessionResume() {
+    }
+
+    public static SessionResume getInstance() {
+        if (instance == null) {
+            instance = new SessionResume();
+        }
+        return instance;
+    }
+
+    // --- Snapshots ---
+
+    /**
+     * Called every client tick.
+     */
+    public void tick() {
+        if (pendingProgress != null) {
+            restorePendingProgress();
+        }
+        if (++ticks < SNAPSHOT_INTERVAL_TICKS) {
+            return;
+        }
+        ticks = 0;
+        if (writing.get()) {
+            // The disk is slow, the next interval captures a newer state anyway
+            Metrics.SNAPSHOTS_SKIPPED.inc();
+            return;
+        }
+
+        SessionSnapshot snapshot = capture();
+        if (snapshot.isEmpty() && savedEmpty) {
+            return;
+        }
+        savedEmpty = snapshot.isEmpty();
+
+        back = snapshot.encode(back);
+        ByteBuffer ready = back;
+        back = front;
+        front = ready;
+
+        Path path = getSlotPath(snapshot.sequence());
+        writing.set(true);
+        writer.execute(() -> {
+            try {
+                write(path, ready);
+                Metrics.SNAPSHOTS_WRITTEN.inc();
+            } catch (IOException e) {
+                IcekartClient.LOGGER.warn("[IceKart] Failed to write session snapshot {}: {}", path, e.getMessage());
+            } finally {
+                writing.set(false);
+            }
+        });
+    }
+
+    private SessionSnapshot capture() {
+        WebSocketClient wsClient = WebSocketClient.getInstance();
+        List<SessionSnapshot.Racer> racers = new ArrayList<>();
+        // A copy, the roster is synced on the network thread
+        for (Map.Entry<String, String> racer : RacerManager.getInstance().getRacers().entrySet()) {
+            racers.add(new SessionSnapshot.Racer(racer.getKey(), racer.getValue()));
+        }
+        RaceTimer.Snapshot timing = RaceTimer.getInstance().snapshot();
+        // Progress not restored yet is kept, the world may not have been joined again yet
+        if (pendingProgress != null) {
+            return new SessionSnapshot(++sequence, System.currentTimeMillis(), wsClient.getServerUrl(),
+                    pendingWorldName, wsClient.getRaceStatus(), racers, pendingProgress,
+                    timing.startTimeMs(), timing.racers());
+        }
+        return new SessionSnapshot(++sequence, System.currentTimeMillis(), wsClient.getServerUrl(),
+                WaypointManager.getInstance().getCurrentWorldName(), wsClient.getRaceStatus(),
+                racers, WaypointTracker.getInstance().getProgress(), timing.startTimeMs(), timing.racers());
+    }
+
+    /**
+     * The client quits normally: write an empty snapshot, so the next start doesn't resume.
+     * Waits (briefly) for the write, the client exits right after.
+     */
+    public void onClientStopping() {
+        SessionSnapshot empty = new SessionSnapshot(++sequence, System.currentTimeMillis(), null, null, null,
+                List.of(), List.of(), null, List.of());
+        ByteBuffer buffer = empty.encode(ByteBuffer.allocate(64));
+        Path path = getSlotPath(empty.sequence());
+        try {
+            // On the writer thread, after a snapshot that may still be in flight
+            writer.submit(() -> {
+                write(path, buffer);
+                return null;
+            }).get(STOP_WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            IcekartClient.LOGGER.warn("[IceKart] Failed to clear session snapshot {}: {}", path, e.getCause().getMessage());
+        } catch (TimeoutException | InterruptedException e) {
+            IcekartClient.LOGGER.warn("[IceKart] Timed out clearing session snapshot {}", path);
+        }
+        writer.shutdown();
+    }
+
+    private static void write(Path path, ByteBuffer buffer) throws IOException {
+        Files.createDirectories(path.getParent());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    // --- Restore ---
+
+    /**
+     * Restore the newest snapshot, if it is recent: re-add the racers with their IDs and reconnect
+     * to the race server. The race server's init message then brings the roster and the race
+     * status up to date and re-anchors the race start, which restores the lap timing if it is
+     * still the same race. The tracker progress is restored once the snapshot's world is joined.
+     */
+    public void restore() {
+        Optional<SessionSnapshot> latest = readLatest();
+        if (latest.isEmpty()) {
+            return;
+        }
+        SessionSnapshot snapshot = latest.get();
+        sequence = snapshot.sequence();
+
+        long ageMs = System.currentTimeMillis() - snapshot.savedAtMs();
+        if (snapshot.isEmpty() || ageMs > MAX_RESUME_AGE_MS) {
+            IcekartClient.LOGGER.info("[IceKart] Session snapshot is empty or too old ({} s), not resuming", ageMs / 1000);
+            return;
+        }
+
+        RacerManager racerManager = RacerManager.getInstance();
+        for (SessionSnapshot.Racer racer : snapshot.racers()) {
+            if (racer.id() != null) {
+                racerManager.updateRacerFromServer(racer.id(), racer.name());
+            } else {
+                racerManager.addRacer(racer.name());
+            }
+        }
+        if (snapshot.worldName() != null && !snapshot.progress().isEmpty()) {
+            pendingProgress = snapshot.progress();
+            pendingWorldName = snapshot.worldName();
+        }
+        RaceTimer.getInstance().restore(new RaceTimer.Snapshot(snapshot.raceStartTime(), snapshot.timing()));
+        savedEmpty = false;
+
+        IcekartClient.LOGGER.info("[IceKart] Resumed session of {} from {} s ago: {} racers, race {}",
+                snapshot.worldName(), ageMs / 1000, snapshot.racers().size(), snapshot.raceStatus());
+        if (snapshot.serverUrl() != null) {
+            WebSocketClient.getInstance().connect(snapshot.serverUrl());
+        }
+    }
+
+    /**
+     * Restore the tracker progress of the snapshot once a world is joined, if it is the
+     * snapshot's world. Gate IDs of other worlds are unrelated, their progress is dropped.
+     */
+    private void restorePendingProgress() {
+        String worldName = WaypointManager.getInstance().getCurrentWorldName();
+        if (worldName == null) {
+            return;
+        }
+        if (Objects.equals(worldName, pendingWorldName)) {
+            WaypointTracker tracker = WaypointTracker.getInstance();
+            pendingProgress.forEach(tracker::restoreProgress);
+            IcekartClient.LOGGER.info("[IceKart] Restored tracker progress of {} players in {}",
+                    pendingProgress.size(), worldName);
+        } else {
+            IcekartClient.LOGGER.info("[IceKart] Joined {} instead of {}, tracker progress not restored",
+                    worldName, pendingWorldName);
+        }
+        pendingProgress = null;
+        pendingWorldName = null;
+    }
+
+    private Optional<SessionSnapshot> readLatest() {
+        SessionSnapshot latest = null;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            Path path = getSlotPath(slot);
+            if (!Files.exists(path)) {
+                continue;
+            }
+            try {
+                SessionSnapshot snapshot = SessionSnapshot.decode(ByteBuffer.wrap(Files.readAllBytes(path)));
+                if (latest == null || snapshot.sequence() > latest.sequence()) {
+                    latest = snapshot;
+                }
+            } catch (IOException e) {
+                // Most likely the client crashed while writing this slot, the other one is intact
+                IcekartClient.LOGGER.warn("[IceKart] Ignoring session snapshot {}: {}", path, e.getMessage());
+            }
+        }
+        return Optional.ofNullable(latest);
+    }
+
+    private static Path getSlotPath(long sequence) {
+        return FabricLoader.getInstance().getConfigDir()
+                .resolve("icekart")
+                .resolve("resume." + (sequence % SLOTS) + ".bin");
+    }
+}
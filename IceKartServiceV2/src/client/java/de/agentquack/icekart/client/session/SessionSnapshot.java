@@ -0,0 +1,233 @@
+package de.agentquack.icekart.client.session;
+
+import de.agentquack.icekart.timing.RacerTiming;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * State needed to resume a race after the client crashed: the race server connection,
+ * the racer IDs, the tracker progress and the lap timing of each racer.
+ *
+ * Binary layout (big endian):
+ * - Header (32 bytes): magic "IKRS", version (u16), flags (u16), sequence (i64),
+ *   saved at (epoch ms, i64), body length, CRC32C of the body
+ * - Body: server URL, world name, race status, racer count, per racer name and ID,
+ *   progress count, per player name, last gate order and gate the player is inside,
+ *   race start time (epoch ms, i64, -1 for null), timing count, per racer ID, armed (u8),
+ *   completed laps (i32), lap start and last crossing (race ns, i64), last and best lap (i64),
+ *   splits, best sectors and last lap sectors.
+ *   Strings are an u16 byte length (0xFFFF for null) followed by UTF-8 bytes, time arrays an
+ *   i32 length followed by i64 values.
+ *
+ * @param sequence   increasing number, the newest valid snapshot wins
+ * @param serverUrl  race server to reconnect to, null if the client wasn't connected
+ * @param racers     registered racers, the ID is null until the race server assigned one
+ * @param progress   tracker progress of the players that passed or are inside a gate
+ * @param raceStartTime race start time on the race server (epoch ms) the timing belongs to, null if none
+ * @param timing     lap timing of the racers, relative to the race start
+ */
+public record SessionSnapshot(long sequence, long savedAtMs, String serverUrl, String worldName, String raceStatus,
+                              List<Racer> racers, List<Progress> progress, Long raceStartTime,
+                              List<RacerTiming.State> timing) {
+
+    public static final int MAGIC = 0x494B5253; // "IKRS"
+    public static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int NULL_STRING = 0xFFFF;
+    private static final long NO_START_TIME = -1;
+
+    /**
+     * @param id racer ID on the race server, null if not synced yet
+     */
+    public record Racer(String name, String id) {
+    }
+
+    /**
+     * @param lastOrder     order of the last gate passed, -1 if none
+     * @param currentGateId gate the player is inside, null if none
+     */
+    public record Progress(String playerName, int lastOrder, String currentGateId) {
+    }
+
+    public boolean isEmpty() {
+        return serverUrl == null && racers.isEmpty() && progress.isEmpty() && timing.isEmpty();
+    }
+
+    /**
+     * Encode the snapshot into a reusable buffer.
+     *
+     * @return the buffer, or a larger one if it was too small; flipped for reading
+     */
+    public ByteBuffer encode(ByteBuffer buffer) {
+        while (true) {
+            buffer.clear();
+            try {
+                writeTo(buffer);
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    private void writeTo(ByteBuffer buffer) {
+        buffer.position(HEADER_SIZE);
+        putString(buffer, serverUrl);
+        putString(buffer, worldName);
+        putString(buffer, raceStatus);
+        buffer.putInt(racers.size());
+        for (Racer racer : racers) {
+            putString(buffer, racer.name());
+            putString(buffer, racer.id());
+        }
+        buffer.putInt(progress.size());
+        for (Progress entry : progress) {
+            putString(buffer, entry.playerName());
+            buffer.putInt(entry.lastOrder());
+            putString(buffer, entry.currentGateId());
+        }
+        buffer.putLong(raceStartTime != null ? raceStartTime : NO_START_TIME);
+        buffer.putInt(timing.size());
+        for (RacerTiming.State state : timing) {
+            putString(buffer, state.racerId());
+            buffer.put((byte) (state.armed() ? 1 : 0));
+            buffer.putInt(state.completedLaps());
+            buffer.putLong(state.lapStartRaceNanos());
+            buffer.putLong(state.lastCrossingRaceNanos());
+            buffer.putLong(state.lastLapNanos());
+            buffer.putLong(state.bestLapNanos());
+            putTimes(buffer, state.splits());
+            putTimes(buffer, state.bestSectors());
+            putTimes(buffer, state.lastLapSectors());
+        }
+
+        int bodyLength = buffer.position() - HEADER_SIZE;
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, (short) VERSION);
+        buffer.putShort(6, (short) 0); // flags
+        buffer.putLong(8, sequence);
+        buffer.putLong(16, savedAtMs);
+        buffer.putInt(24, bodyLength);
+        buffer.putInt(28, checksum(buffer, bodyLength));
+    }
+
+    /**
+     * Decode a snapshot from a buffer containing a complete snapshot file.
+     *
+     * @throws IOException if the buffer is not a valid (complete) snapshot
+     */
+    public static SessionSnapshot decode(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an IceKart session snapshot");
+        }
+        int version = buffer.getShort(4) & 0xFFFF;
+        if (version != VERSION) {
+            throw new IOException("Unsupported session snapshot version: " + version);
+        }
+        int bodyLength = buffer.getInt(24);
+        if (bodyLength < 0 || HEADER_SIZE + bodyLength > buffer.limit()) {
+            throw new IOException("Truncated session snapshot");
+        }
+        if (buffer.getInt(28) != checksum(buffer, bodyLength)) {
+            throw new IOException("Session snapshot checksum mismatch");
+        }
+
+        try {
+            ByteBuffer body = buffer.slice(HEADER_SIZE, bodyLength);
+            String serverUrl = getString(body);
+            String worldName = getString(body);
+            String raceStatus = getString(body);
+            int racerCount = body.getInt();
+            List<Racer> racers = new ArrayList<>();
+            for (int i = 0; i < racerCount; i++) {
+                racers.add(new Racer(getString(body), getString(body)));
+            }
+            int progressCount = body.getInt();
+            List<Progress> progress = new ArrayList<>();
+            for (int i = 0; i < progressCount; i++) {
+                progress.add(new Progress(getString(body), body.getInt(), getString(body)));
+            }
+            long raceStartTime = body.getLong();
+            int timingCount = body.getInt();
+            List<RacerTiming.State> timing = new ArrayList<>();
+            for (int i = 0; i < timingCount; i++) {
+                timing.add(getTiming(body));
+            }
+            return new SessionSnapshot(buffer.getLong(8), buffer.getLong(16), serverUrl, worldName, raceStatus,
+                    racers, progress, raceStartTime != NO_START_TIME ? raceStartTime : null, timing);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt session snapshot", e);
+        }
+    }
+
+    private static RacerTiming.State getTiming(ByteBuffer buffer) {
+        String racerId = getString(buffer);
+        boolean armed = buffer.get() != 0;
+        int completedLaps = buffer.getInt();
+        long lapStartRaceNanos = buffer.getLong();
+        long lastCrossingRaceNanos = buffer.getLong();
+        long lastLapNanos = buffer.getLong();
+        long bestLapNanos = buffer.getLong();
+        long[] splits = getTimes(buffer);
+        long[] bestSectors = getTimes(buffer);
+        long[] lastLapSectors = getTimes(buffer);
+        return new RacerTiming.State(racerId, armed, completedLaps, lapStartRaceNanos, lastCrossingRaceNanos,
+                splits, lastLapNanos, bestLapNanos, bestSectors, lastLapSectors);
+    }
+
+    private static void putTimes(ByteBuffer buffer, long[] times) {
+        buffer.putInt(times.length);
+        for (long time : times) {
+            buffer.putLong(time);
+        }
+    }
+
+    private static long[] getTimes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining() / Long.BYTES) {
+            throw new IllegalArgumentException("Invalid time count: " + length);
+        }
+        long[] times = new long[length];
+        for (int i = 0; i < length; i++) {
+            times[i] = buffer.getLong();
+        }
+        return times;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putShort((short) NULL_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NULL_STRING) {
+            throw new IllegalArgumentException("String too long for session snapshot: " + value.length());
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(ByteBuffer buffer, int bodyLength) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(HEADER_SIZE, bodyLength));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,278 @@
+package de.agentquack.icekart.client.timing;
+
+import de.agentquack.icekart.client.IcekartClient;
+import de.agentquack.icekart.client.session.SessionRecorder;
+import de.agentquack.icekart.timing.CrossingTiming;
+import de.agentquack.icekart.timing.RacerTiming;
+import de.agentquack.icekart.timing.StandingsTree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * Client side timing engine.
+ * Computes splits, sector times, lap times and best laps per racer from the
+ * (sub-tick interpolated) gate crossing times of the {@link de.agentquack.icekart.client.waypoint.WaypointTracker},
+ * using the monotonic {@link System#nanoTime()} clock. The results are sent to the
+ * server with every checkpoint, so timing no longer depends on network latency.
+ *
+ * Crossings are reported from the client thread, race status changes from the
+ * WebSocket thread, so all methods are synchronized.
+ */
+public class RaceTimer {
+
+    /**
+     * Timing state of a race to resume after a client restart.
+     *
+     * @param startTimeMs race start time on the race server (epoch ms), identifies the race
+     */
+    public record Snapshot(Long startTimeMs, List<RacerTiming.State> racers) {
+
+        public static final Snapshot EMPTY = new Snapshot(null, List.of());
+    }
+
+    private static RaceTimer instance;
+
+    private final Map<String, RacerTiming> racers = new HashMap<>();
+    // Client side standings by timed progress, updated in O(log n) per crossing
+    private final StandingsTree standings = new StandingsTree();
+
+    // Monotonic time of the race start, 0 if no race is running
+    private long raceStartNanos = 0;
+    // Race start time on the race server (epoch ms) of the running race, null if unknown
+    private Long raceStartTimeMs = null;
+    private String status = "idle";
+    // Restored timing waiting for its race to be anchored again, null if none
+    private Snapshot pending = null;
+
+    private RaceTimer() {
+    }
+
+    public static RaceTimer getInstance() {
+        if (instance == null) {
+            instance = new RaceTimer();
+        }
+        return instance;
+    }
+
+    /**
+     * Called whenever the race status is received from the server.
+     *
+     * @param status          race status ("idle", "racing", "finishing", "stopped")
+     * @param startTimeMs     server race start time (epoch milliseconds), null if unknown
+     * @param clockStartNanos race start on the monotonic clock as estimated by the
+     *                        {@link de.agentquack.icekart.timing.RaceClock}, 0 if unknown
+     */
+    public synchronized void onRaceStatus(String status, Long startTimeMs, long clockStartNanos) {
+        String previous = this.status;
+        this.status = status;
+
+        if ("idle".equals(status) || "stopped".equals(status)) {
+            SessionRecorder.getInstance().stop();
+        }
+        if ("idle".equals(status)) {
+            if (!"idle".equals(previous)) {
+                reset();
+            }
+            discardPending();
+            return;
+        }
+
+        if (!"racing".equals(status) && !"finishing".equals(status)) {
+            return;
+        }
+        if (raceStartNanos == 0) {
+            // Also covers joining a running race, the clock knows how long it has been running
+            raceStartNanos = clockStartNanos != 0 ? clockStartNanos : System.nanoTime();
+            IcekartClient.LOGGER.info("[IceKart] Race timer started");
+        }
+        if (raceStartTimeMs == null) {
+            raceStartTimeMs = startTimeMs;
+        }
+        if (pending != null && raceStartTimeMs != null) {
+            restorePending();
+        }
+        // A race resumed after a stop keeps its start, but the stop ended the recording
+        SessionRecorder recorder = SessionRecorder.getInstance();
+        if (!recorder.isRecording()) {
+            recorder.start(startTimeMs != null ? startTimeMs : System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Called when the race clock estimated the race start more precisely (a ping with a shorter
+     * round trip). Only race times change, lap and split times are differences of crossing times.
+     */
+    public synchronized void onClockSync(long clockStartNanos) {
+        if (raceStartNanos != 0 && clockStartNanos != 0) {
+            raceStartNanos = clockStartNanos;
+        }
+    }
+
+    /**
+     * Record a gate crossing of a racer.
+     *
+     * @param crossingNanos monotonic time of the crossing
+     * @param gatesPerLap   number of gates of the active track
+     */
+    public synchronized CrossingTiming onCrossing(String racerId, String gateId, long crossingNanos, int gatesPerLap) {
+        RacerTiming timing = racers.computeIfAbsent(racerId, RacerTiming::new);
+        CrossingTiming result = timing.onCrossing(gateId, crossingNanos, raceStartNanos, gatesPerLap);
+        standings.update(new StandingsTree.Key(racerId, false, timing.getCompletedLaps(),
+                timing.getSplitCount(), Math.max(0, result.raceNanos()) / 1_000_000L));
+        SessionRecorder.getInstance().recordCrossing(result, result.raceNanos(), gatesPerLap);
+
+        if (result.completesLap()) {
+            IcekartClient.LOGGER.info("[IceKart] Racer {} completed lap {} in {} (best {})", racerId,
+                    result.lap(), formatNanos(result.lapNanos()), formatNanos(result.bestLapNanos()));
+        }
+        return result;
+    }
+
+    /**
+     * Record the vehicle position of a racer for the current tick (session recording, and ghost
+     * recording and live delta once the racer has crossed a gate).
+     */
+    public synchronized void onSample(String racerId, long nanos, double x, double y, double z) {
+        RacerTiming timing = racers.get(racerId);
+        if (timing != null) {
+            timing.onSample(nanos, x, y, z);
+        }
+        if (raceStartNanos > 0) {
+            SessionRecorder.getInstance().recordSample(racerId, nanos - raceStartNanos, x, y, z);
+        }
+    }
+
+    /**
+     * Live delta of a racer to its best lap, empty until a ghost lap exists.
+     */
+    public synchronized OptionalLong getDelta(String racerId) {
+        RacerTiming timing = racers.get(racerId);
+        if (timing == null || timing.getDeltaNanos() == CrossingTiming.NO_DELTA) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(timing.getDeltaNanos());
+    }
+
+    /**
+     * Get the timing state of a racer.
+     */
+    public synchronized Optional<RacerTiming> getRacer(String racerId) {
+        return Optional.ofNullable(racers.get(racerId));
+    }
+
+    /**
+     * Position (1 based) of a racer by timed progress, -1 if it hasn't crossed a gate yet.
+     */
+    public synchronized int getPosition(String racerId) {
+        return standings.positionOf(racerId);
+    }
+
+    /**
+     * ID of the racer leading by timed progress, empty if nobody crossed a gate yet.
+     */
+    public synchronized Optional<String> getLeaderId() {
+        StandingsTree.Key leader = standings.getLeader();
+        return Optional.ofNullable(leader).map(StandingsTree.Key::racerId);
+    }
+
+    /**
+     * Monotonic time of the race start, 0 if no race is running.
+     */
+    public synchronized long getRaceStartNanos() {
+        return raceStartNanos;
+    }
+
+    /**
+     * Clear all timing data (e.g. on race reset).
+     */
+    public synchronized void reset() {
+        racers.clear();
+        standings.clear();
+        raceStartNanos = 0;
+        raceStartTimeMs = null;
+        IcekartClient.LOGGER.info("[IceKart] Race timer reset");
+    }
+
+    // --- Resume ---
+
+    /**
+     * Timing state of the running race, relative to its start. Restored timing that is still
+     * waiting for its race is returned as is.
+     */
+    public synchronized Snapshot snapshot() {
+        if (pending != null) {
+            return pending;
+        }
+        if (raceStartNanos == 0 || racers.isEmpty()) {
+            return Snapshot.EMPTY;
+        }
+        List<RacerTiming.State> states = new ArrayList<>(racers.size());
+        for (RacerTiming timing : racers.values()) {
+            states.add(timing.getState(raceStartNanos));
+        }
+        return new Snapshot(raceStartTimeMs, states);
+    }
+
+    /**
+     * Restore the timing of a resumed session once its race is running again: the race start is
+     * only known after the race server's init message re-anchored the {@link de.agentquack.icekart.timing.RaceClock}.
+     * Timing of another race is discarded.
+     */
+    public synchronized void restore(Snapshot snapshot) {
+        if (snapshot.startTimeMs() == null || snapshot.racers().isEmpty()) {
+            return;
+        }
+        pending = snapshot;
+        if (raceStartNanos != 0 && raceStartTimeMs != null) {
+            restorePending();
+        }
+    }
+
+    private void restorePending() {
+        Snapshot snapshot = pending;
+        pending = null;
+        if (!Objects.equals(snapshot.startTimeMs(), raceStartTimeMs)) {
+            IcekartClient.LOGGER.info("[IceKart] Resumed timing belongs to another race, not restored");
+            return;
+        }
+        for (RacerTiming.State state : snapshot.racers()) {
+            RacerTiming timing = RacerTiming.fromState(state, raceStartNanos);
+            racers.put(state.racerId(), timing);
+            if (timing.isArmed()) {
+                standings.update(new StandingsTree.Key(state.racerId(), false, timing.getCompletedLaps(),
+                        timing.getSplitCount(), Math.max(0, state.lastCrossingRaceNanos()) / 1_000_000L));
+            }
+        }
+        IcekartClient.LOGGER.info("[IceKart] Restored lap timing of {} racers", snapshot.racers().size());
+    }
+
+    private void discardPending() {
+        if (pending != null) {
+            pending = null;
+            IcekartClient.LOGGER.info("[IceKart] Race is not running anymore, resumed timing discarded");
+        }
+    }
+
+    /**
+     * Format nanoseconds as seconds with three decimals.
+     */
+    public static String formatNanos(long nanos) {
+        if (nanos < 0) {
+            return "--";
+        }
+        return String.format("%.3fs", nanos / 1_000_000_000.0);
+    }
+
+    /**
+     * Format a delta as signed seconds with two decimals.
+     */
+    public static String formatDelta(long nanos) {
+        return String.format("%+.2f", nanos / 1_000_000_000.0);
+    }
+}
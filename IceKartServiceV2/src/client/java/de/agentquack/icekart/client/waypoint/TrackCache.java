@@ -0,0 +1,92 @@
+package de.agentquack.icekart.client.waypoint;
+
+import de.agentquack.icekart.client.IcekartClient;
+import de.agentquack.icekart.track.TrackJournal;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of compiled tracks and their journals, keyed by track file path (without extension).
+ * Bounded by the estimated memory of the cached tracks, so switching between
+ * recently used tracks does not hit the disk. Only used on the client thread.
+ */
+public class TrackCache {
+
+    private static TrackCache instance;
+
+    private static final long MAX_BYTES = 16L * 1024 * 1024;
+
+    private final LinkedHashMap<Path, TrackJournal.StoredTrack> tracks = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes = 0;
+
+    private TrackCache() {
+    }
+
+    public static TrackCache getInstance() {
+        if (instance == null) {
+            instance = new TrackCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Get a cached track and mark it as recently used, or null if not cached.
+     */
+    public TrackJournal.StoredTrack get(Path trackPath) {
+        return tracks.get(trackPath);
+    }
+
+    /**
+     * Cache a track, evicting the least recently used tracks if the memory bound is exceeded.
+     */
+    public void put(Path trackPath, TrackJournal.StoredTrack stored) {
+        long bytes = stored.track().estimateMemory();
+        if (bytes > MAX_BYTES) {
+            invalidate(trackPath);
+            return;
+        }
+
+        TrackJournal.StoredTrack previous = tracks.put(trackPath, stored);
+        if (previous != null) {
+            cachedBytes -= previous.track().estimateMemory();
+        }
+        cachedBytes += bytes;
+
+        Iterator<Map.Entry<Path, TrackJournal.StoredTrack>> iterator = tracks.entrySet().iterator();
+        while (cachedBytes > MAX_BYTES && iterator.hasNext()) {
+            Map.Entry<Path, TrackJournal.StoredTrack> eldest = iterator.next();
+            if (eldest.getKey().equals(trackPath)) {
+                continue;
+            }
+            cachedBytes -= eldest.getValue().track().estimateMemory();
+            iterator.remove();
+            IcekartClient.LOGGER.debug("[IceKart] Evicted track {} from cache", eldest.getKey().getFileName());
+        }
+    }
+
+    /**
+     * Remove a track from the cache (e.g. after its file changed or it was deleted).
+     */
+    public void invalidate(Path trackPath) {
+        TrackJournal.StoredTrack removed = tracks.remove(trackPath);
+        if (removed != null) {
+            cachedBytes -= removed.track().estimateMemory();
+        }
+    }
+
+    public void clear() {
+        tracks.clear();
+        cachedBytes = 0;
+    }
+
+    public long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    public int size() {
+        return tracks.size();
+    }
+}
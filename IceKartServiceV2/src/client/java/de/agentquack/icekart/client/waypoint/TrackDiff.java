@@ -0,0 +1,92 @@
+package de.agentquack.icekart.client.waypoint;
+
+import de.agentquack.icekart.track.Waypoint;
+import de.agentquack.icekart.track.CompiledTrack;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-gate difference between two versions of a track, matched by waypoint ID.
+ * A gate is "moved" if it kept its ID but its type, order or bounds changed.
+ */
+public final class TrackDiff {
+
+    private final List<Waypoint> added;
+    private final List<String> removed;
+    private final List<Waypoint> moved;
+
+    private TrackDiff(List<Waypoint> added, List<String> removed, List<Waypoint> moved) {
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+        this.moved = Collections.unmodifiableList(moved);
+    }
+
+    /**
+     * Compute the changes needed to turn the current track into the updated one.
+     */
+    public static TrackDiff compute(CompiledTrack current, CompiledTrack updated) {
+        Map<String, Waypoint> currentById = new HashMap<>();
+        for (Waypoint waypoint : current.getWaypoints()) {
+            currentById.put(waypoint.getId(), waypoint);
+        }
+
+        List<Waypoint> added = new ArrayList<>();
+        List<Waypoint> moved = new ArrayList<>();
+        Set<String> updatedIds = new HashSet<>();
+        for (Waypoint waypoint : updated.getWaypoints()) {
+            updatedIds.add(waypoint.getId());
+            Waypoint existing = currentById.get(waypoint.getId());
+            if (existing == null) {
+                added.add(waypoint);
+            } else if (!existing.hasSameLayout(waypoint)) {
+                moved.add(waypoint);
+            }
+        }
+
+        List<String> removed = new ArrayList<>();
+        for (String id : currentById.keySet()) {
+            if (!updatedIds.contains(id)) {
+                removed.add(id);
+            }
+        }
+
+        return new TrackDiff(added, removed, moved);
+    }
+
+    public List<Waypoint> getAdded() {
+        return added;
+    }
+
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    public List<Waypoint> getMoved() {
+        return moved;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && moved.isEmpty();
+    }
+
+    /**
+     * IDs of all gates whose tracking state is no longer valid (removed or moved).
+     */
+    public Set<String> getInvalidatedIds() {
+        Set<String> ids = new HashSet<>(removed);
+        for (Waypoint waypoint : moved) {
+            ids.add(waypoint.getId());
+        }
+        return ids;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("+%d -%d ~%d", added.size(), removed.size(), moved.size());
+    }
+}
@@ -0,0 +1,98 @@
+package de.agentquack.icekart.client.waypoint;
+
+import de.agentquack.icekart.track.CompiledTrack;
+import de.agentquack.icekart.track.Waypoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The part of the track this client covers when several operator clients share a track
+ * that is wider than one client's entity tracking range. A shard is a range of gates
+ * (by gate number, wrapping around the finish line); the tracker only evaluates these gates
+ * and reports raw crossings, which the race server merges into one timeline per racer.
+ * Only used on the client thread.
+ */
+public class TrackShard {
+
+    private static TrackShard instance;
+
+    // Claimed gate numbers (1 based, inclusive), 0 if the whole track is covered
+    private int fromGate = 0;
+    private int toGate = 0;
+
+    // Claimed gates of the compiled track they were resolved for
+    private long resolvedGeneration = -1;
+    private List<Waypoint> gates = List.of();
+
+    private TrackShard() {
+    }
+
+    public static TrackShard getInstance() {
+        if (instance == null) {
+            instance = new TrackShard();
+        }
+        return instance;
+    }
+
+    /**
+     * Claim the gates from one gate number to another (inclusive, wrapping if from > to).
+     */
+    public void claim(int fromGate, int toGate) {
+        this.fromGate = fromGate;
+        this.toGate = toGate;
+        resolvedGeneration = -1;
+    }
+
+    /**
+     * Cover the whole track again.
+     */
+    public void clear() {
+        claim(0, 0);
+    }
+
+    public boolean isSharded() {
+        return fromGate > 0;
+    }
+
+    /**
+     * Shard ID reported to the race server, null for the whole track.
+     * Clients claiming the same range share a shard and back each other up.
+     */
+    public String getShardId() {
+        return isSharded() ? "gates-" + fromGate + "-" + toGate : null;
+    }
+
+    /**
+     * The gates to evaluate on the given track.
+     */
+    public List<Waypoint> getGates(CompiledTrack track) {
+        if (!isSharded()) {
+            return track.getWaypoints();
+        }
+        if (track.getGeneration() != resolvedGeneration) {
+            List<Waypoint> claimed = new ArrayList<>();
+            for (int i = 0; i < track.size(); i++) {
+                if (covers(i + 1)) {
+                    claimed.add(track.get(i));
+                }
+            }
+            gates = List.copyOf(claimed);
+            resolvedGeneration = track.getGeneration();
+        }
+        return gates;
+    }
+
+    /**
+     * IDs of the claimed gates on the given track.
+     */
+    public List<String> getGateIds(CompiledTrack track) {
+        return getGates(track).stream().map(Waypoint::getId).toList();
+    }
+
+    private boolean covers(int gate) {
+        return fromGate <= toGate
+                ? gate >= fromGate && gate <= toGate
+                : gate >= fromGate || gate <= toGate;
+    }
+}
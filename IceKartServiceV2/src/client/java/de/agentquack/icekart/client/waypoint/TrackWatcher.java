@@ -0,0 +1,131 @@
+package de.agentquack.icekart.client.waypoint;
+
+import de.agentquack.icekart.client.IcekartClient;
+import de.agentquack.icekart.track.TrackStorage;
+import net.minecraft.client.MinecraftClient;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the track config directory for JSON files edited outside the game.
+ * Changed files are handed to the {@link WaypointManager} on the client thread,
+ * which reloads them and applies a per-gate diff.
+ */
+public class TrackWatcher {
+
+    private static TrackWatcher instance;
+
+    // Editors often save in several steps (truncate, write, rename), wait until the directory is quiet
+    private static final long DEBOUNCE_MS = 250;
+
+    private Path directory = null;
+    private WatchService watchService = null;
+
+    private TrackWatcher() {
+    }
+
+    public static TrackWatcher getInstance() {
+        if (instance == null) {
+            instance = new TrackWatcher();
+        }
+        return instance;
+    }
+
+    /**
+     * Start watching the given directory. Does nothing if it is already being watched.
+     */
+    public synchronized void start(Path dir) {
+        if (watchService != null && dir.equals(directory)) {
+            return;
+        }
+        stop();
+
+        WatchService service;
+        try {
+            Files.createDirectories(dir);
+            service = FileSystems.getDefault().newWatchService();
+            dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            IcekartClient.LOGGER.warn("[IceKart] Track hot reload unavailable: {}", e.getMessage());
+            return;
+        }
+        watchService = service;
+        directory = dir;
+
+        Thread thread = new Thread(() -> run(service, dir), "IceKart-TrackWatcher");
+        thread.setDaemon(true);
+        thread.start();
+        IcekartClient.LOGGER.info("[IceKart] Watching {} for track changes", dir);
+    }
+
+    /**
+     * Stop watching.
+     */
+    public synchronized void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            watchService = null;
+            directory = null;
+        }
+    }
+
+    private void run(WatchService service, Path dir) {
+        try {
+            while (true) {
+                Set<Path> changed = new HashSet<>();
+                WatchKey key = service.take();
+                boolean valid = collect(key, changed);
+                while (valid && (key = service.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    valid = collect(key, changed);
+                }
+
+                if (!changed.isEmpty()) {
+                    MinecraftClient client = MinecraftClient.getInstance();
+                    for (Path file : changed) {
+                        Path path = dir.resolve(file);
+                        client.execute(() -> WaypointManager.getInstance().onTrackFileChanged(path));
+                    }
+                }
+
+                if (!valid) {
+                    IcekartClient.LOGGER.warn("[IceKart] Track directory no longer accessible, hot reload stopped");
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Watcher stopped
+        }
+    }
+
+    /**
+     * Collect changed JSON track files from a watch key and reset it.
+     * Returns false if the key is no longer valid.
+     */
+    private boolean collect(WatchKey key, Set<Path> changed) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                continue;
+            }
+            Path file = (Path) event.context();
+            if (file.toString().endsWith(TrackStorage.JSON_EXTENSION)) {
+                changed.add(file);
+            }
+        }
+        return key.reset();
+    }
+}
@@ -0,0 +1,205 @@
+package de.agentquack.icekart.client.waypoint;
+
+import de.agentquack.icekart.track.Waypoint;
+import de.agentquack.icekart.track.CompiledTrack;
+import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderContext;
+import net.minecraft.client.render.RenderLayer;
+import net.minecraft.client.render.VertexConsumer;
+import net.minecraft.client.render.VertexConsumerProvider;
+import net.minecraft.client.util.math.MatrixStack;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+
+/**
+ * Renders waypoint boundaries as line geometry.
+ * Vertex data is built once per compiled track and streamed into the shared
+ * lines buffer every frame, so all gates end up in a single draw call.
+ */
+public class WaypointLineRenderer {
+
+    // Colors (ARGB) per waypoint type
+    private static final int COLOR_START = 0xFF55FF55;      // Green
+    private static final int COLOR_CHECKPOINT = 0xFF55FFFF; // Aqua
+    private static final int COLOR_FINISH = 0xFFFFAA00;     // Orange
+    private static final int COLOR_SELECTION = 0xFFFFFFFF;  // White
+
+    private static final int EDGES_PER_BOX = 12;
+    private static final int VERTICES_PER_BOX = EDGES_PER_BOX * 2;
+
+    // Cached vertex data for the current compiled track
+    private long cachedGeneration = -1;
+    private int vertexCount = 0;
+    private float[] positions = new float[0]; // xyz per vertex, relative to origin
+    private float[] normals = new float[0];   // xyz per vertex (edge direction)
+    private int[] colors = new int[0];        // ARGB per vertex
+
+    // Origin of the cached vertex data, keeps float coordinates small
+    private double originX;
+    private double originY;
+    private double originZ;
+
+    /**
+     * Render the compiled track and the current selection.
+     * Called from the world render event when line mode is active.
+     */
+    public void render(WorldRenderContext context) {
+        MatrixStack matrices = context.matrixStack();
+        VertexConsumerProvider consumers = context.consumers();
+        if (matrices == null || consumers == null) {
+            return;
+        }
+
+        WaypointManager manager = WaypointManager.getInstance();
+        CompiledTrack track = manager.getCompiledTrack();
+        if (track.getGeneration() != cachedGeneration) {
+            rebuild(track);
+        }
+
+        boolean hasSelection = manager.hasCompleteSelection();
+        if (vertexCount == 0 && !hasSelection) {
+            return;
+        }
+
+        Vec3d camera = context.camera().getPos();
+        VertexConsumer buffer = consumers.getBuffer(RenderLayer.getLines());
+
+        matrices.push();
+        matrices.translate(originX - camera.x, originY - camera.y, originZ - camera.z);
+        MatrixStack.Entry entry = matrices.peek();
+        for (int i = 0; i < vertexCount; i++) {
+            int v = i * 3;
+            buffer.vertex(entry, positions[v], positions[v + 1], positions[v + 2])
+                    .color(colors[i])
+                    .normal(entry, normals[v], normals[v + 1], normals[v + 2]);
+        }
+        matrices.pop();
+
+        // The selection changes while editing, so it is emitted directly instead of cached
+        if (hasSelection) {
+            BlockPos pos1 = manager.getSelectionPos1();
+            BlockPos pos2 = manager.getSelectionPos2();
+            matrices.push();
+            matrices.translate(-camera.x, -camera.y, -camera.z);
+            emitBox(matrices.peek(), buffer,
+                    Math.min(pos1.getX(), pos2.getX()),
+                    Math.min(pos1.getY(), pos2.getY()),
+                    Math.min(pos1.getZ(), pos2.getZ()),
+                    Math.max(pos1.getX(), pos2.getX()) + 1,
+                    Math.max(pos1.getY(), pos2.getY()) + 1,
+                    Math.max(pos1.getZ(), pos2.getZ()) + 1,
+                    COLOR_SELECTION);
+            matrices.pop();
+        }
+    }
+
+    /**
+     * Rebuild the cached vertex data from the given track.
+     */
+    private void rebuild(CompiledTrack track) {
+        cachedGeneration = track.getGeneration();
+        vertexCount = track.size() * VERTICES_PER_BOX;
+
+        if (positions.length < vertexCount * 3) {
+            positions = new float[vertexCount * 3];
+            normals = new float[vertexCount * 3];
+            colors = new int[vertexCount];
+        }
+
+        if (track.isEmpty()) {
+            return;
+        }
+
+        originX = track.minX(0);
+        originY = track.minY(0);
+        originZ = track.minZ(0);
+
+        int vertex = 0;
+        for (int i = 0; i < track.size(); i++) {
+            float minX = (float) (track.minX(i) - originX);
+            float minY = (float) (track.minY(i) - originY);
+            float minZ = (float) (track.minZ(i) - originZ);
+            float maxX = (float) (track.maxX(i) - originX);
+            float maxY = (float) (track.maxY(i) - originY);
+            float maxZ = (float) (track.maxZ(i) - originZ);
+            int color = colorFor(track.get(i).getType());
+
+            // Bottom edges
+            vertex = putEdge(vertex, minX, minY, minZ, maxX, minY, minZ, color);
+            vertex = putEdge(vertex, minX, minY, minZ, minX, minY, maxZ, color);
+            vertex = putEdge(vertex, maxX, minY, minZ, maxX, minY, maxZ, color);
+            vertex = putEdge(vertex, minX, minY, maxZ, maxX, minY, maxZ, color);
+
+            // Top edges
+            vertex = putEdge(vertex, minX, maxY, minZ, maxX, maxY, minZ, color);
+            vertex = putEdge(vertex, minX, maxY, minZ, minX, maxY, maxZ, color);
+            vertex = putEdge(vertex, maxX, maxY, minZ, maxX, maxY, maxZ, color);
+            vertex = putEdge(vertex, minX, maxY, maxZ, maxX, maxY, maxZ, color);
+
+            // Vertical edges
+            vertex = putEdge(vertex, minX, minY, minZ, minX, maxY, minZ, color);
+            vertex = putEdge(vertex, maxX, minY, minZ, maxX, maxY, minZ, color);
+            vertex = putEdge(vertex, minX, minY, maxZ, minX, maxY, maxZ, color);
+            vertex = putEdge(vertex, maxX, minY, maxZ, maxX, maxY, maxZ, color);
+        }
+    }
+
+    /**
+     * Store one edge (two vertices) in the cache. Edges always run along one axis
+     * from min to max, so the normal is the unit vector of that axis.
+     */
+    private int putEdge(int vertex, float x1, float y1, float z1, float x2, float y2, float z2, int color) {
+        float nx = x2 != x1 ? 1 : 0;
+        float ny = y2 != y1 ? 1 : 0;
+        float nz = z2 != z1 ? 1 : 0;
+
+        int v = vertex * 3;
+        positions[v] = x1;
+        positions[v + 1] = y1;
+        positions[v + 2] = z1;
+        positions[v + 3] = x2;
+        positions[v + 4] = y2;
+        positions[v + 5] = z2;
+        normals[v] = nx;
+        normals[v + 1] = ny;
+        normals[v + 2] = nz;
+        normals[v + 3] = nx;
+        normals[v + 4] = ny;
+        normals[v + 5] = nz;
+        colors[vertex] = color;
+        colors[vertex + 1] = color;
+        return vertex + 2;
+    }
+
+    private void emitBox(MatrixStack.Entry entry, VertexConsumer buffer,
+                         float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int color) {
+        emitEdge(entry, buffer, minX, minY, minZ, maxX, minY, minZ, color);
+        emitEdge(entry, buffer, minX, minY, minZ, minX, minY, maxZ, color);
+        emitEdge(entry, buffer, maxX, minY, minZ, maxX, minY, maxZ, color);
+        emitEdge(entry, buffer, minX, minY, maxZ, maxX, minY, maxZ, color);
+        emitEdge(entry, buffer, minX, maxY, minZ, maxX, maxY, minZ, color);
+        emitEdge(entry, buffer, minX, maxY, minZ, minX, maxY, maxZ, color);
+        emitEdge(entry, buffer, maxX, maxY, minZ, maxX, maxY, maxZ, color);
+        emitEdge(entry, buffer, minX, maxY, maxZ, maxX, maxY, maxZ, color);
+        emitEdge(entry, buffer, minX, minY, minZ, minX, maxY, minZ, color);
+        emitEdge(entry, buffer, maxX, minY, minZ, maxX, maxY, minZ, color);
+        emitEdge(entry, buffer, minX, minY, maxZ, minX, maxY, maxZ, color);
+        emitEdge(entry, buffer, maxX, minY, maxZ, maxX, maxY, maxZ, color);
+    }
+
+    private void emitEdge(MatrixStack.Entry entry, VertexConsumer buffer,
+                          float x1, float y1, float z1, float x2, float y2, float z2, int color) {
+        float nx = x2 != x1 ? 1 : 0;
+        float ny = y2 != y1 ? 1 : 0;
+        float nz = z2 != z1 ? 1 : 0;
+        buffer.vertex(entry, x1, y1, z1).color(color).normal(entry, nx, ny, nz);
+        buffer.vertex(entry, x2, y2, z2).color(color).normal(entry, nx, ny, nz);
+    }
+
+    private static int colorFor(Waypoint.Type type) {
+        return switch (type) {
+            case START -> COLOR_START;
+            case CHECKPOINT -> COLOR_CHECKPOINT;
+            case FINISH -> COLOR_FINISH;
+        };
+    }
+}
@@ -1,32 +1,48 @@
 package de.agentquack.icekart.client.waypoint;
 
-import com.google.gson.*;
 import de.agentquack.icekart.client.IcekartClient;
+import de.agentquack.icekart.track.CompiledTrack;
+import de.agentquack.icekart.track.TrackJournal;
+import de.agentquack.icekart.track.TrackLibrary;
+import de.agentquack.icekart.track.TrackStorage;
+import de.agentquack.icekart.track.Waypoint;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.text.Text;
 import net.minecraft.util.math.BlockPos;
 
-import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages waypoints for race tracks.
- * Supports world-specific and global waypoint configurations.
+ * Supports world-specific and global waypoint configurations, with multiple
+ * named tracks per world (see {@link TrackLibrary}). Only the active track is
+ * tracked and rendered.
  */
 public class WaypointManager {
 
     private static WaypointManager instance;
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
 
     // Waypoints by ID
     private final Map<String, Waypoint> waypoints = new ConcurrentHashMap<>();
     // Waypoints sorted by order
     private final List<Waypoint> orderedWaypoints = new ArrayList<>();
+    // Immutable snapshot of the waypoints, rebuilt on every change
+    private volatile CompiledTrack compiledTrack = CompiledTrack.EMPTY;
 
     // Current world name for world-specific configs
     private String currentWorldName = null;
+    // Named tracks of the current world, null until the index is loaded
+    private TrackLibrary library = null;
+    // Incremented for every load, so results of outdated loads can be discarded
+    private long loadToken = 0;
+    // Whether the waypoints are the complete active track (false while it is loading)
+    private boolean trackReady = false;
+    // Edit journal of the active track, null until it is loaded
+    private TrackJournal journal = null;
 
     // Selection state for waypoint creation tool
     private BlockPos selectionPos1 = null;
@@ -92,9 +108,12 @@ public class WaypointManager {
      * Add a waypoint.
      */
     public void addWaypoint(Waypoint waypoint) {
+        checkEditable();
         waypoints.put(waypoint.getId(), waypoint);
         orderedWaypoints.add(waypoint);
         orderedWaypoints.sort(Comparator.comparingInt(Waypoint::getOrder));
+        recompile();
+        recordEdit(TrackJournal.Edit.add(waypoint));
         IcekartClient.LOGGER.info("[IceKart] Waypoint added: {}", waypoint);
     }
 
@@ -102,9 +121,12 @@ public class WaypointManager {
      * Remove a waypoint by ID.
      */
     public boolean removeWaypoint(String id) {
+        checkEditable();
         Waypoint removed = waypoints.remove(id);
         if (removed != null) {
             orderedWaypoints.remove(removed);
+            recompile();
+            recordEdit(TrackJournal.Edit.remove(removed));
             IcekartClient.LOGGER.info("[IceKart] Waypoint removed: {}", id);
             return true;
         }
@@ -143,9 +165,101 @@ public class WaypointManager {
      * Clear all waypoints.
      */
     public void clearWaypoints() {
+        checkEditable();
+        List<Waypoint> removed = new ArrayList<>(orderedWaypoints);
+        resetWaypoints();
+        if (!removed.isEmpty()) {
+            recordEdit(TrackJournal.Edit.clear(removed));
+        }
+        IcekartClient.LOGGER.info("[IceKart] All waypoints cleared");
+    }
+
+    /**
+     * Drop the waypoints in memory without recording an edit (e.g. when switching tracks).
+     */
+    private void resetWaypoints() {
         waypoints.clear();
         orderedWaypoints.clear();
-        IcekartClient.LOGGER.info("[IceKart] All waypoints cleared");
+        recompile();
+    }
+
+    // --- Undo / Redo ---
+
+    /**
+     * Undo the most recent edit of the active track. Returns the undone edit, if any.
+     */
+    public Optional<TrackJournal.Edit> undo() {
+        checkEditable();
+        TrackJournal.Edit edit = journal != null ? journal.undo() : null;
+        if (edit == null) {
+            return Optional.empty();
+        }
+        applyEdit(edit, true);
+        IcekartClient.LOGGER.info("[IceKart] Undone: {}", edit.describe());
+        return Optional.of(edit);
+    }
+
+    /**
+     * Redo the most recently undone edit of the active track. Returns the redone edit, if any.
+     */
+    public Optional<TrackJournal.Edit> redo() {
+        checkEditable();
+        TrackJournal.Edit edit = journal != null ? journal.redo() : null;
+        if (edit == null) {
+            return Optional.empty();
+        }
+        applyEdit(edit, false);
+        IcekartClient.LOGGER.info("[IceKart] Redone: {}", edit.describe());
+        return Optional.of(edit);
+    }
+
+    private void applyEdit(TrackJournal.Edit edit, boolean inverse) {
+        edit.applyTo(waypoints, inverse);
+        orderedWaypoints.clear();
+        orderedWaypoints.addAll(waypoints.values());
+        orderedWaypoints.sort(Comparator.comparingInt(Waypoint::getOrder));
+        recompile();
+
+        Set<String> ids = new HashSet<>();
+        for (Waypoint waypoint : edit.waypoints()) {
+            ids.add(waypoint.getId());
+        }
+        WaypointTracker.getInstance().invalidateWaypoints(ids);
+        journal.compactIfNeeded(compiledTrack);
+    }
+
+    /**
+     * Append an edit to the journal of the active track, so it is durable immediately.
+     */
+    private void recordEdit(TrackJournal.Edit edit) {
+        journal.record(edit);
+        journal.compactIfNeeded(compiledTrack);
+    }
+
+    /**
+     * Whether the active track can be edited: false while it is loading, edits would be
+     * overwritten by the loaded track and couldn't be journaled.
+     */
+    public boolean isEditable() {
+        return trackReady && journal != null;
+    }
+
+    private void checkEditable() {
+        if (!isEditable()) {
+            throw new IllegalStateException("Track is still loading");
+        }
+    }
+
+    /**
+     * Get the compiled snapshot of the current waypoints.
+     * A new snapshot is created whenever waypoints change.
+     */
+    public CompiledTrack getCompiledTrack() {
+        return compiledTrack;
+    }
+
+    private void recompile() {
+        compiledTrack = CompiledTrack.compile(orderedWaypoints);
     }
 
     // --- World Management ---
@@ -155,14 +269,22 @@ public class WaypointManager {
      */
     public void onWorldChanged(String worldName) {
         if (worldName == null) {
+            deactivateTrack();
             currentWorldName = null;
-            clearWaypoints();
+            library = null;
+            loadToken++;
+            resetWaypoints();
             return;
         }
 
         if (!worldName.equals(currentWorldName)) {
+            deactivateTrack();
             currentWorldName = worldName;
-            loadWaypoints();
+            library = null;
+            TrackWatcher.getInstance().start(getConfigDir());
+            // Don't keep the previous world's track while the new one loads
+            resetWaypoints();
+            loadLibrary();
         }
     }
 
@@ -170,6 +292,175 @@ public class WaypointManager {
         return currentWorldName;
     }
 
+    // --- Track Library ---
+
+    /**
+     * Get the name of the active track.
+     */
+    public String getActiveTrackName() {
+        return library != null ? library.getActiveTrack() : TrackLibrary.DEFAULT_TRACK;
+    }
+
+    /**
+     * Get all tracks of the current world.
+     */
+    public List<TrackLibrary.TrackInfo> getTracks() {
+        return library != null ? library.getTracks() : List.of();
+    }
+
+    /**
+     * Make another track of the current world the active one.
+     * Recently used tracks are installed from the cache, others are loaded in the background.
+     * Completes (on the client thread) with the number of waypoints of the track.
+     */
+    public CompletableFuture<Integer> selectTrack(String name) {
+        if (library == null || !library.hasTrack(name)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Unknown track: " + name));
+        }
+        if (name.equals(library.getActiveTrack())) {
+            return CompletableFuture.completedFuture(compiledTrack.size());
+        }
+
+        deactivateTrack();
+        library.setActiveTrack(name);
+        library.saveAsync();
+
+        // Gate IDs of different tracks are unrelated, so tracking starts from scratch
+        WaypointTracker.getInstance().resetTracking();
+        resetWaypoints();
+        return activateTrack();
+    }
+
+    /**
+     * Add an empty track to the current world. Returns false if the name is invalid or taken.
+     */
+    public boolean createTrack(String name) {
+        if (library == null || !library.addTrack(name)) {
+            return false;
+        }
+        library.saveAsync();
+        return true;
+    }
+
+    /**
+     * Delete a track of the current world including its files.
+     * Returns false if the track doesn't exist, is active or is the default track.
+     */
+    public boolean deleteTrack(String name) {
+        if (library == null || !library.hasTrack(name)) {
+            return false;
+        }
+        Path trackPath = library.getTrackPath(name);
+        if (!library.removeTrack(name)) {
+            return false;
+        }
+        TrackCache.getInstance().invalidate(trackPath);
+        library.saveAsync();
+        TrackStorage.deleteAsync(trackPath);
+        return true;
+    }
+
+    /**
+     * Load and compile a track of the current world into the track cache in the background,
+     * so {@link #selectTrack selecting} it later is instant. Completes on the client thread
+     * with false if the world has no such track.
+     */
+    public CompletableFuture<Boolean> preloadTrack(String name) {
+        if (library == null || !library.hasTrack(name)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        Path trackPath = library.getTrackPath(name);
+        if (name.equals(library.getActiveTrack()) || TrackCache.getInstance().get(trackPath) != null) {
+            return CompletableFuture.completedFuture(true);
+        }
+        TrackLibrary preloadLibrary = library;
+        MinecraftClient client = MinecraftClient.getInstance();
+        return TrackStorage.loadAsync(trackPath, currentWorldName).thenApplyAsync(stored -> {
+            // Discard if the world changed or the track got activated in the meantime
+            if (library != preloadLibrary || name.equals(library.getActiveTrack())) {
+                stored.journal().close();
+                return false;
+            }
+            TrackCache.getInstance().put(trackPath, stored);
+            IcekartClient.LOGGER.info("[IceKart] Preloaded track '{}' ({} waypoints)", name, stored.track().size());
+            return true;
+        }, client::execute);
+    }
+
+    /**
+     * Load a track of the current world without activating it, e.g. for a parallel race session.
+     * Completes with null if the world has no such track.
+     */
+    public CompletableFuture<CompiledTrack> loadTrackAsync(String name) {
+        if (library == null || !library.hasTrack(name)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return TrackStorage.loadAsync(library.getTrackPath(name), currentWorldName).thenApply(stored -> {
+            // Read only, edits go through the active track's journal
+            stored.journal().close();
+            return stored.track();
+        });
+    }
+
+    /**
+     * Read the track index of the current world, then activate its active track.
+     */
+    private CompletableFuture<Integer> loadLibrary() {
+        long token = ++loadToken;
+        Path configDir = getConfigDir();
+        String fileKey = sanitizeFileName(currentWorldName);
+        MinecraftClient client = MinecraftClient.getInstance();
+
+        return CompletableFuture.supplyAsync(() -> TrackLibrary.load(configDir, fileKey), TrackStorage.getExecutor())
+                .thenComposeAsync(loaded -> {
+                    if (token != loadToken) {
+                        return CompletableFuture.completedFuture(compiledTrack.size());
+                    }
+                    library = loaded;
+                    return activateTrack();
+                }, client::execute);
+    }
+
+    /**
+     * Install the active track from the cache, or load it from its file.
+     */
+    private CompletableFuture<Integer> activateTrack() {
+        TrackJournal.StoredTrack cached = TrackCache.getInstance().get(getWorldConfigPath());
+        if (cached != null) {
+            // Supersede any load that is still pending
+            loadToken++;
+            installJournal(cached.journal());
+            applyTrack(cached.track());
+            trackReady = true;
+            IcekartClient.LOGGER.info("[IceKart] Activated cached track '{}' ({} waypoints)",
+                    getActiveTrackName(), cached.track().size());
+            return CompletableFuture.completedFuture(cached.track().size());
+        }
+        return loadWaypoints();
+    }
+
+    /**
+     * Close the journal of the active track and keep the track in the cache,
+     * so switching back to it is instant.
+     */
+    private void deactivateTrack() {
+        if (journal != null) {
+            if (library != null && trackReady) {
+                TrackCache.getInstance().put(getWorldConfigPath(), new TrackJournal.StoredTrack(compiledTrack, journal));
+            }
+            journal.close();
+            journal = null;
+        }
+        trackReady = false;
+    }
+
+    private void installJournal(TrackJournal loaded) {
+        if (journal != null && journal != loaded) {
+            journal.close();
+        }
+        journal = loaded;
+    }
+
     // --- Persistence ---
 
     private Path getConfigDir() {
@@ -178,11 +469,17 @@ public class WaypointManager {
                 .resolve("icekart");
     }
 
+    /**
+     * Track file path of the active track, without extension.
+     */
     private Path getWorldConfigPath() {
+        if (library != null) {
+            return library.getTrackPath(library.getActiveTrack());
+        }
         if (currentWorldName == null) {
-            return getConfigDir().resolve("waypoints_global.json");
+            return getConfigDir().resolve("waypoints_global");
         }
-        return getConfigDir().resolve("waypoints_" + sanitizeFileName(currentWorldName) + ".json");
+        return getConfigDir().resolve("waypoints_" + sanitizeFileName(currentWorldName));
     }
 
     private String sanitizeFileName(String name) {
@@ -191,101 +488,152 @@ public class WaypointManager {
 
     /**
      * Save waypoints to config file.
+     * Edits are already durable through the journal, saving compacts the journal into
+     * the track file on the I/O thread.
      */
-    public void saveWaypoints() {
-        try {
-            Path configDir = getConfigDir();
-            Files.createDirectories(configDir);
-
-            JsonObject root = new JsonObject();
-            root.addProperty("worldName", currentWorldName);
-            root.addProperty("version", 1);
-
-            JsonArray waypointsArray = new JsonArray();
-            for (Waypoint waypoint : orderedWaypoints) {
-                JsonObject wpJson = new JsonObject();
-                wpJson.addProperty("id", waypoint.getId());
-                wpJson.addProperty("type", waypoint.getType().name());
-                wpJson.addProperty("order", waypoint.getOrder());
-
-                JsonObject pos1Json = new JsonObject();
-                pos1Json.addProperty("x", waypoint.getPos1().getX());
-                pos1Json.addProperty("y", waypoint.getPos1().getY());
-                pos1Json.addProperty("z", waypoint.getPos1().getZ());
-                wpJson.add("pos1", pos1Json);
-
-                JsonObject pos2Json = new JsonObject();
-                pos2Json.addProperty("x", waypoint.getPos2().getX());
-                pos2Json.addProperty("y", waypoint.getPos2().getY());
-                pos2Json.addProperty("z", waypoint.getPos2().getZ());
-                wpJson.add("pos2", pos2Json);
-
-                waypointsArray.add(wpJson);
-            }
-            root.add("waypoints", waypointsArray);
-
-            Path configPath = getWorldConfigPath();
-            Files.writeString(configPath, GSON.toJson(root));
-            IcekartClient.LOGGER.info("[IceKart] Saved {} waypoints to {}", waypoints.size(), configPath);
-
-        } catch (IOException e) {
-            IcekartClient.LOGGER.error("[IceKart] Failed to save waypoints: {}", e.getMessage());
+    public CompletableFuture<Void> saveWaypoints() {
+        if (journal == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Track is not loaded yet"));
         }
+        if (library != null) {
+            library.setGateCount(library.getActiveTrack(), compiledTrack.size());
+            library.saveAsync();
+        }
+        return journal.compact(compiledTrack);
+    }
+
+    /**
+     * Export waypoints as JSON for hand editing.
+     * Completes with the path of the written file.
+     */
+    public CompletableFuture<Path> exportWaypoints() {
+        return TrackStorage.exportJsonAsync(getWorldConfigPath(), currentWorldName, compiledTrack);
     }
 
     /**
      * Load waypoints from config file.
+     * The file is read and compiled on the I/O thread, the result is applied as a
+     * per-gate diff on the client thread. Completes (on the client thread) with the
+     * number of loaded waypoints. A load that is superseded by a newer load or world
+     * change is discarded. If the load fails the track stays editable: a reload keeps the
+     * live track and its journal, otherwise the track starts over empty.
      */
-    public void loadWaypoints() {
-        clearWaypoints();
+    public CompletableFuture<Integer> loadWaypoints() {
+        long token = ++loadToken;
+        trackReady = false;
+        Path basePath = getWorldConfigPath();
+        String worldName = currentWorldName;
+        MinecraftClient client = MinecraftClient.getInstance();
+
+        return TrackStorage.loadAsync(basePath, worldName).handleAsync((stored, error) -> {
+            if (token != loadToken) {
+                IcekartClient.LOGGER.debug("[IceKart] Discarding stale waypoint load");
+                if (stored != null) {
+                    stored.journal().close();
+                }
+                return compiledTrack.size();
+            }
+            if (error != null) {
+                recoverTrack(token, basePath, worldName);
+                throw new CompletionException(error);
+            }
+            installJournal(stored.journal());
+            applyTrack(stored.track());
+            trackReady = true;
+            return stored.track().size();
+        }, client::execute);
+    }
 
-        Path configPath = getWorldConfigPath();
-        if (!Files.exists(configPath)) {
-            IcekartClient.LOGGER.info("[IceKart] No waypoint config found at {}", configPath);
+    /**
+     * Make the active track editable again after its load failed.
+     */
+    private void recoverTrack(long token, Path basePath, String worldName) {
+        if (journal != null) {
+            // A reload failed, the live track and its journal are still intact
+            trackReady = true;
             return;
         }
+        MinecraftClient client = MinecraftClient.getInstance();
+        TrackStorage.recoverAsync(basePath, worldName).thenAcceptAsync(stored -> {
+            if (token != loadToken) {
+                stored.journal().close();
+                return;
+            }
+            installJournal(stored.journal());
+            applyTrack(stored.track());
+            trackReady = true;
+            IcekartClient.LOGGER.warn("[IceKart] Track '{}' couldn't be loaded, starting over with an empty track",
+                    getActiveTrackName());
+        }, client::execute);
+    }
 
-        try {
-            String json = Files.readString(configPath);
-            JsonObject root = JsonParser.parseString(json).getAsJsonObject();
+    /**
+     * Called on the client thread when a JSON track file in the config directory changed.
+     * Reloads the current track if the file belongs to it and applies the changes.
+     */
+    public void onTrackFileChanged(Path file) {
+        if (currentWorldName == null) {
+            return;
+        }
+        if (!file.equals(TrackStorage.jsonPath(getWorldConfigPath()))) {
+            // An inactive track changed, reload it from disk when it is selected again
+            String fileName = file.getFileName().toString();
+            TrackCache.getInstance().invalidate(file.resolveSibling(
+                    fileName.substring(0, fileName.length() - TrackStorage.JSON_EXTENSION.length())));
+            return;
+        }
+
+        // Don't bump the token: a hot reload must not cancel a pending explicit load
+        long token = loadToken;
+        MinecraftClient client = MinecraftClient.getInstance();
 
-            JsonArray waypointsArray = root.getAsJsonArray("waypoints");
-            if (waypointsArray == null) {
+        TrackStorage.loadAsync(getWorldConfigPath(), currentWorldName).whenCompleteAsync((stored, error) -> {
+            if (error != null) {
+                // Usually a half-written or invalid file, keep the live track until the next change
+                IcekartClient.LOGGER.warn("[IceKart] Ignoring changed track file {}", file.getFileName());
                 return;
             }
-
-            for (JsonElement element : waypointsArray) {
-                JsonObject wpJson = element.getAsJsonObject();
-
-                String id = wpJson.get("id").getAsString();
-                Waypoint.Type type = Waypoint.Type.valueOf(wpJson.get("type").getAsString());
-                int order = wpJson.get("order").getAsInt();
-
-                JsonObject pos1Json = wpJson.getAsJsonObject("pos1");
-                BlockPos pos1 = new BlockPos(
-                        pos1Json.get("x").getAsInt(),
-                        pos1Json.get("y").getAsInt(),
-                        pos1Json.get("z").getAsInt()
-                );
-
-                JsonObject pos2Json = wpJson.getAsJsonObject("pos2");
-                BlockPos pos2 = new BlockPos(
-                        pos2Json.get("x").getAsInt(),
-                        pos2Json.get("y").getAsInt(),
-                        pos2Json.get("z").getAsInt()
-                );
-
-                Waypoint waypoint = new Waypoint(id, type, pos1, pos2, order);
-                waypoints.put(id, waypoint);
-                orderedWaypoints.add(waypoint);
+            if (token != loadToken) {
+                return;
             }
+            installJournal(stored.journal());
+            TrackDiff diff = applyTrack(stored.track());
+            if (!diff.isEmpty() && client.player != null) {
+                client.player.sendMessage(Text.literal("§e[IceKart] §7Track reloaded from "
+                        + file.getFileName() + " §f(" + diff + ")"), false);
+            }
+        }, client::execute);
+    }
 
-            orderedWaypoints.sort(Comparator.comparingInt(Waypoint::getOrder));
-            IcekartClient.LOGGER.info("[IceKart] Loaded {} waypoints from {}", waypoints.size(), configPath);
+    /**
+     * Bring the live waypoints in line with the given track by applying a per-gate diff.
+     * Unchanged gates keep their instances and tracking state; tracking state of removed
+     * and moved gates is reset. Runs on the client thread, so the tracker never observes
+     * a partially applied diff.
+     */
+    private TrackDiff applyTrack(CompiledTrack track) {
+        TrackDiff diff = TrackDiff.compute(compiledTrack, track);
+        if (diff.isEmpty()) {
+            return diff;
+        }
 
-        } catch (Exception e) {
-            IcekartClient.LOGGER.error("[IceKart] Failed to load waypoints: {}", e.getMessage());
+        for (String id : diff.getRemoved()) {
+            waypoints.remove(id);
+        }
+        for (Waypoint waypoint : diff.getMoved()) {
+            waypoints.put(waypoint.getId(), waypoint);
         }
+        for (Waypoint waypoint : diff.getAdded()) {
+            waypoints.put(waypoint.getId(), waypoint);
+        }
+
+        orderedWaypoints.clear();
+        orderedWaypoints.addAll(waypoints.values());
+        orderedWaypoints.sort(Comparator.comparingInt(Waypoint::getOrder));
+        recompile();
+
+        WaypointTracker.getInstance().invalidateWaypoints(diff.getInvalidatedIds());
+        IcekartClient.LOGGER.info("[IceKart] Applied track changes ({})", diff);
+        return diff;
     }
 }
-
@@ -1,26 +1,63 @@
 package de.agentquack.icekart.client.waypoint;
 
 import de.agentquack.icekart.client.IcekartClient;
+import de.agentquack.icekart.track.CompiledTrack;
+import de.agentquack.icekart.track.Waypoint;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderEvents;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.render.Frustum;
+import net.minecraft.particle.ParticleEffect;
 import net.minecraft.particle.ParticleTypes;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Box;
 import net.minecraft.util.math.Vec3d;
 
-import java.util.List;
-
 /**
- * Renders waypoint boundaries using particles for development/debugging.
+ * Renders waypoint boundaries for development/debugging.
+ * Either as line geometry (default) or with particles.
  * Toggle with /waypoint view
  */
 public class WaypointRenderer {
 
+    public enum Mode {
+        LINES,     // Batched line geometry, drawn every frame
+        PARTICLES  // Particle outlines, spawned every few ticks
+    }
+
     private static WaypointRenderer instance;
 
+    private final WaypointLineRenderer lineRenderer = new WaypointLineRenderer();
+
     private boolean viewEnabled = false;
+    private Mode mode = Mode.LINES;
     private int tickCounter = 0;
     private static final int PARTICLE_INTERVAL = 5; // Render every N ticks (reduce spam)
     private static final double PARTICLE_SPACING = 1.0; // Space between particles in blocks
+    private static final double MAX_VIEW_DISTANCE = 100.0;
+
+    // Level of detail: particle spacing per distance band
+    private static final double[] LOD_SPACING = {1.0, 2.0, 4.0};
+    private static final double[] LOD_MAX_DISTANCE = {32.0, 64.0, MAX_VIEW_DISTANCE};
+
+    // Global particle budget per render pass, scaled down when FPS drops
+    private static final int MAX_PARTICLES_PER_PASS = 800;
+    private static final int MIN_PARTICLES_PER_PASS = 100;
+    private static final int TARGET_FPS = 60;
+    private static final int MIN_FPS = 20;
+
+    // Frustum of the last rendered frame, used to cull gates outside the view
+    private Frustum lastFrustum;
+
+    // Cached particle points per gate and LOD level, rebuilt when the track changes
+    private long cachedGeneration = -1;
+    private float[][][] gatePoints = new float[LOD_SPACING.length][0][];
+    private ParticleEffect[] gateParticles = new ParticleEffect[0];
+    private Box[] gateBoxes = new Box[0];
+
+    // Scratch arrays for sorting visible gates by distance
+    private int[] visibleGates = new int[0];
+    private double[] visibleDistances = new double[0];
 
     private WaypointRenderer() {
     }
@@ -33,11 +70,11 @@ public class WaypointRenderer {
     }
 
     /**
-     * Register the tick event for rendering particles.
+     * Register the tick event for rendering particles and the world render event for lines.
      */
     public void register() {
         ClientTickEvents.END_CLIENT_TICK.register(client -> {
-            if (!viewEnabled || client.world == null || client.player == null) {
+            if (!viewEnabled || mode != Mode.PARTICLES || client.world == null || client.player == null) {
                 return;
             }
 
@@ -48,6 +85,14 @@ public class WaypointRenderer {
             }
         });
 
+        WorldRenderEvents.AFTER_SETUP.register(context -> lastFrustum = context.frustum());
+
+        WorldRenderEvents.AFTER_ENTITIES.register(context -> {
+            if (viewEnabled && mode == Mode.LINES) {
+                lineRenderer.render(context);
+            }
+        });
+
         IcekartClient.LOGGER.info("[IceKart] Waypoint renderer registered");
     }
 
@@ -73,8 +118,25 @@ public class WaypointRenderer {
         this.viewEnabled = enabled;
     }
 
+    /**
+     * Get the render mode.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Set the render mode.
+     */
+    public void setMode(Mode mode) {
+        this.mode = mode;
+        this.tickCounter = 0;
+    }
+
     /**
      * Render all waypoints with particles.
+     * Gates outside the view frustum or view distance are skipped, nearer gates are
+     * rendered first with denser particles until the particle budget is used up.
      */
     private void renderWaypoints() {
         MinecraftClient client = MinecraftClient.getInstance();
@@ -82,151 +144,227 @@ public class WaypointRenderer {
             return;
         }
 
-        List<Waypoint> waypoints = WaypointManager.getInstance().getOrderedWaypoints();
+        WaypointManager manager = WaypointManager.getInstance();
+        CompiledTrack track = manager.getCompiledTrack();
+        if (track.getGeneration() != cachedGeneration) {
+            rebuildPointCache(track);
+        }
+
         Vec3d playerPos = client.player.getPos();
+        int budget = computeParticleBudget(client.getCurrentFps());
 
-        for (Waypoint waypoint : waypoints) {
-            Box box = waypoint.getBoundingBox();
+        // Render current selection first, it is what the user is working on
+        budget -= renderSelection(manager);
 
-            // Only render if player is within reasonable distance (performance)
-            if (playerPos.distanceTo(box.getCenter()) > 100) {
+        int visible = collectVisibleGates(track, playerPos);
+        for (int v = 0; v < visible && budget > 0; v++) {
+            int gate = visibleGates[v];
+            float[] points = gatePoints[lodFor(visibleDistances[v])][gate];
+            budget -= spawnPoints(points, gateParticles[gate], budget);
+        }
+    }
+
+    /**
+     * Collect gates within view distance and frustum, sorted by distance (nearest first).
+     * Returns the number of visible gates.
+     */
+    private int collectVisibleGates(CompiledTrack track, Vec3d playerPos) {
+        Frustum frustum = lastFrustum;
+        double maxDistanceSq = MAX_VIEW_DISTANCE * MAX_VIEW_DISTANCE;
+        int visible = 0;
+
+        for (int i = 0; i < track.size(); i++) {
+            double dx = track.centerX(i) - playerPos.x;
+            double dy = track.centerY(i) - playerPos.y;
+            double dz = track.centerZ(i) - playerPos.z;
+            double distanceSq = dx * dx + dy * dy + dz * dz;
+            if (distanceSq > maxDistanceSq) {
+                continue;
+            }
+            if (frustum != null && !frustum.isVisible(gateBoxes[i])) {
                 continue;
             }
 
-            renderBoxOutline(box, waypoint.getType());
+            // Insertion sort, the number of visible gates is small
+            int pos = visible;
+            while (pos > 0 && visibleDistances[pos - 1] > distanceSq) {
+                visibleGates[pos] = visibleGates[pos - 1];
+                visibleDistances[pos] = visibleDistances[pos - 1];
+                pos--;
+            }
+            visibleGates[pos] = i;
+            visibleDistances[pos] = distanceSq;
+            visible++;
         }
+        return visible;
+    }
 
-        // Also render current selection if exists
-        WaypointManager manager = WaypointManager.getInstance();
-        if (manager.getSelectionPos1() != null) {
-            renderSelectionPoint(Vec3d.ofCenter(manager.getSelectionPos1()), true);
+    /**
+     * Particle budget for one render pass, scaled linearly between MIN_FPS and TARGET_FPS.
+     */
+    private int computeParticleBudget(int fps) {
+        if (fps >= TARGET_FPS) {
+            return MAX_PARTICLES_PER_PASS;
         }
-        if (manager.getSelectionPos2() != null) {
-            renderSelectionPoint(Vec3d.ofCenter(manager.getSelectionPos2()), false);
+        if (fps <= MIN_FPS) {
+            return MIN_PARTICLES_PER_PASS;
         }
-        if (manager.hasCompleteSelection()) {
-            Box selectionBox = new Box(
-                    manager.getSelectionPos1().getX(),
-                    manager.getSelectionPos1().getY(),
-                    manager.getSelectionPos1().getZ(),
-                    manager.getSelectionPos2().getX() + 1,
-                    manager.getSelectionPos2().getY() + 1,
-                    manager.getSelectionPos2().getZ() + 1
-            );
-            renderBoxOutlineSelection(selectionBox);
+        double factor = (double) (fps - MIN_FPS) / (TARGET_FPS - MIN_FPS);
+        return MIN_PARTICLES_PER_PASS + (int) ((MAX_PARTICLES_PER_PASS - MIN_PARTICLES_PER_PASS) * factor);
+    }
+
+    private int lodFor(double distanceSq) {
+        for (int lod = 0; lod < LOD_MAX_DISTANCE.length; lod++) {
+            if (distanceSq <= LOD_MAX_DISTANCE[lod] * LOD_MAX_DISTANCE[lod]) {
+                return lod;
+            }
         }
+        return LOD_MAX_DISTANCE.length - 1;
     }
 
     /**
-     * Spawn a particle at the given position.
+     * Spawn particles for a cached point list. If the list exceeds the remaining budget,
+     * points are thinned out evenly instead of cutting off part of the outline.
+     * Returns the number of particles spawned.
      */
-    private void spawnParticle(net.minecraft.particle.ParticleEffect particle, double x, double y, double z) {
-        MinecraftClient client = MinecraftClient.getInstance();
-        if (client.world != null && client.particleManager != null) {
-            client.particleManager.addParticle(particle, x, y, z, 0, 0, 0);
+    private int spawnPoints(float[] points, ParticleEffect particle, int budget) {
+        int count = points.length / 3;
+        int stride = count > budget ? (count + budget - 1) / budget : 1;
+        int spawned = 0;
+        for (int i = 0; i < count; i += stride) {
+            int p = i * 3;
+            spawnParticle(particle, points[p], points[p + 1], points[p + 2]);
+            spawned++;
         }
+        return spawned;
     }
 
     /**
-     * Render a box outline with particles based on waypoint type.
+     * Rebuild the cached point lists for all gates and LOD levels.
      */
-    private void renderBoxOutline(Box box, Waypoint.Type type) {
-        // Draw edges of the box
-        double minX = box.minX;
-        double minY = box.minY;
-        double minZ = box.minZ;
-        double maxX = box.maxX;
-        double maxY = box.maxY;
-        double maxZ = box.maxZ;
-
-        // Bottom edges
-        drawLine(minX, minY, minZ, maxX, minY, minZ, type);
-        drawLine(minX, minY, minZ, minX, minY, maxZ, type);
-        drawLine(maxX, minY, maxZ, maxX, minY, minZ, type);
-        drawLine(maxX, minY, maxZ, minX, minY, maxZ, type);
-
-        // Top edges
-        drawLine(minX, maxY, minZ, maxX, maxY, minZ, type);
-        drawLine(minX, maxY, minZ, minX, maxY, maxZ, type);
-        drawLine(maxX, maxY, maxZ, maxX, maxY, minZ, type);
-        drawLine(maxX, maxY, maxZ, minX, maxY, maxZ, type);
-
-        // Vertical edges
-        drawLine(minX, minY, minZ, minX, maxY, minZ, type);
-        drawLine(maxX, minY, minZ, maxX, maxY, minZ, type);
-        drawLine(minX, minY, maxZ, minX, maxY, maxZ, type);
-        drawLine(maxX, minY, maxZ, maxX, maxY, maxZ, type);
+    private void rebuildPointCache(CompiledTrack track) {
+        cachedGeneration = track.getGeneration();
+        int size = track.size();
+
+        gatePoints = new float[LOD_SPACING.length][size][];
+        gateParticles = new ParticleEffect[size];
+        gateBoxes = new Box[size];
+        visibleGates = new int[size];
+        visibleDistances = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            Waypoint waypoint = track.get(i);
+            gateBoxes[i] = waypoint.getBoundingBox();
+            gateParticles[i] = particleFor(waypoint.getType());
+            for (int lod = 0; lod < LOD_SPACING.length; lod++) {
+                gatePoints[lod][i] = computeOutlinePoints(
+                        track.minX(i), track.minY(i), track.minZ(i),
+                        track.maxX(i), track.maxY(i), track.maxZ(i),
+                        LOD_SPACING[lod]);
+            }
+        }
     }
 
     /**
-     * Draw a line of particles between two points.
+     * Compute particle positions along the 12 edges of a box.
+     * Edges are axis-aligned, so the edge length is simply the difference on one axis.
      */
-    private void drawLine(double x1, double y1, double z1, double x2, double y2, double z2, Waypoint.Type type) {
-        double distance = Math.sqrt(Math.pow(x2 - x1, 2) + Math.pow(y2 - y1, 2) + Math.pow(z2 - z1, 2));
-        int particles = (int) Math.ceil(distance / PARTICLE_SPACING);
-
-        for (int i = 0; i <= particles; i++) {
-            double t = particles == 0 ? 0 : (double) i / particles;
-            double x = x1 + (x2 - x1) * t;
-            double y = y1 + (y2 - y1) * t;
-            double z = z1 + (z2 - z1) * t;
-
-            // Use different colored particles based on waypoint type
-            // HAPPY_VILLAGER = green, FLAME = orange, SOUL_FIRE_FLAME = blue
-            var particleType = switch (type) {
-                case START -> ParticleTypes.HAPPY_VILLAGER;      // Green
-                case CHECKPOINT -> ParticleTypes.HAPPY_VILLAGER; // Green
-                case FINISH -> ParticleTypes.FLAME;              // Orange/Yellow
-            };
+    private static float[] computeOutlinePoints(double minX, double minY, double minZ,
+                                                double maxX, double maxY, double maxZ, double spacing) {
+        int segmentsX = Math.max(1, (int) Math.ceil((maxX - minX) / spacing));
+        int segmentsY = Math.max(1, (int) Math.ceil((maxY - minY) / spacing));
+        int segmentsZ = Math.max(1, (int) Math.ceil((maxZ - minZ) / spacing));
+        int count = 4 * (segmentsX + 1) + 4 * (segmentsY + 1) + 4 * (segmentsZ + 1);
+
+        float[] points = new float[count * 3];
+        int p = 0;
+
+        // Edges along X (bottom and top)
+        for (double y : new double[]{minY, maxY}) {
+            for (double z : new double[]{minZ, maxZ}) {
+                p = putEdgePoints(points, p, minX, y, z, maxX, y, z, segmentsX);
+            }
+        }
+        // Edges along Z (bottom and top)
+        for (double y : new double[]{minY, maxY}) {
+            for (double x : new double[]{minX, maxX}) {
+                p = putEdgePoints(points, p, x, y, minZ, x, y, maxZ, segmentsZ);
+            }
+        }
+        // Vertical edges
+        for (double x : new double[]{minX, maxX}) {
+            for (double z : new double[]{minZ, maxZ}) {
+                p = putEdgePoints(points, p, x, minY, z, x, maxY, z, segmentsY);
+            }
+        }
+        return points;
+    }
 
-            spawnParticle(particleType, x, y, z);
+    private static int putEdgePoints(float[] points, int p, double x1, double y1, double z1,
+                                     double x2, double y2, double z2, int segments) {
+        for (int i = 0; i <= segments; i++) {
+            double t = (double) i / segments;
+            points[p++] = (float) (x1 + (x2 - x1) * t);
+            points[p++] = (float) (y1 + (y2 - y1) * t);
+            points[p++] = (float) (z1 + (z2 - z1) * t);
         }
+        return p;
     }
 
     /**
-     * Render selection box outline with different particles.
+     * Use different colored particles based on waypoint type.
+     * HAPPY_VILLAGER = green, FLAME = orange
      */
-    private void renderBoxOutlineSelection(Box box) {
-        double minX = box.minX;
-        double minY = box.minY;
-        double minZ = box.minZ;
-        double maxX = box.maxX;
-        double maxY = box.maxY;
-        double maxZ = box.maxZ;
-
-        // Draw with END_ROD particles (white/yellow)
-        drawLineSelection(minX, minY, minZ, maxX, minY, minZ);
-        drawLineSelection(minX, minY, minZ, minX, minY, maxZ);
-        drawLineSelection(maxX, minY, maxZ, maxX, minY, minZ);
-        drawLineSelection(maxX, minY, maxZ, minX, minY, maxZ);
-        drawLineSelection(minX, maxY, minZ, maxX, maxY, minZ);
-        drawLineSelection(minX, maxY, minZ, minX, maxY, maxZ);
-        drawLineSelection(maxX, maxY, maxZ, maxX, maxY, minZ);
-        drawLineSelection(maxX, maxY, maxZ, minX, maxY, maxZ);
-        drawLineSelection(minX, minY, minZ, minX, maxY, minZ);
-        drawLineSelection(maxX, minY, minZ, maxX, maxY, minZ);
-        drawLineSelection(minX, minY, maxZ, minX, maxY, maxZ);
-        drawLineSelection(maxX, minY, maxZ, maxX, maxY, maxZ);
+    private static ParticleEffect particleFor(Waypoint.Type type) {
+        return switch (type) {
+            case START -> ParticleTypes.HAPPY_VILLAGER;      // Green
+            case CHECKPOINT -> ParticleTypes.HAPPY_VILLAGER; // Green
+            case FINISH -> ParticleTypes.FLAME;              // Orange/Yellow
+        };
     }
 
-    private void drawLineSelection(double x1, double y1, double z1, double x2, double y2, double z2) {
-        double distance = Math.sqrt(Math.pow(x2 - x1, 2) + Math.pow(y2 - y1, 2) + Math.pow(z2 - z1, 2));
-        int particles = (int) Math.ceil(distance / PARTICLE_SPACING);
-
-        for (int i = 0; i <= particles; i++) {
-            double t = particles == 0 ? 0 : (double) i / particles;
-            double x = x1 + (x2 - x1) * t;
-            double y = y1 + (y2 - y1) * t;
-            double z = z1 + (z2 - z1) * t;
+    /**
+     * Spawn a particle at the given position.
+     */
+    private void spawnParticle(ParticleEffect particle, double x, double y, double z) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        if (client.world != null && client.particleManager != null) {
+            client.particleManager.addParticle(particle, x, y, z, 0, 0, 0);
+        }
+    }
 
-            spawnParticle(ParticleTypes.END_ROD, x, y, z);
+    /**
+     * Render the selection points and box. Returns the number of particles spawned.
+     */
+    private int renderSelection(WaypointManager manager) {
+        int spawned = 0;
+        BlockPos pos1 = manager.getSelectionPos1();
+        BlockPos pos2 = manager.getSelectionPos2();
+        if (pos1 != null) {
+            spawned += renderSelectionPoint(Vec3d.ofCenter(pos1), true);
+        }
+        if (pos2 != null) {
+            spawned += renderSelectionPoint(Vec3d.ofCenter(pos2), false);
         }
+        if (pos1 != null && pos2 != null) {
+            // Draw with END_ROD particles (white/yellow)
+            float[] points = computeOutlinePoints(
+                    Math.min(pos1.getX(), pos2.getX()),
+                    Math.min(pos1.getY(), pos2.getY()),
+                    Math.min(pos1.getZ(), pos2.getZ()),
+                    Math.max(pos1.getX(), pos2.getX()) + 1,
+                    Math.max(pos1.getY(), pos2.getY()) + 1,
+                    Math.max(pos1.getZ(), pos2.getZ()) + 1,
+                    PARTICLE_SPACING);
+            spawned += spawnPoints(points, ParticleTypes.END_ROD, MAX_PARTICLES_PER_PASS);
+        }
+        return spawned;
     }
 
     /**
-     * Render a selection point marker.
+     * Render a selection point marker. Returns the number of particles spawned.
      */
-    private void renderSelectionPoint(Vec3d pos, boolean isPos1) {
+    private int renderSelectionPoint(Vec3d pos, boolean isPos1) {
         // Create a small burst of particles at the selection point
         var particleType = isPos1 ? ParticleTypes.COMPOSTER : ParticleTypes.DRIPPING_HONEY;
 
@@ -236,6 +374,6 @@ public class WaypointRenderer {
             double offsetZ = (Math.random() - 0.5) * 0.3;
             spawnParticle(particleType, pos.x + offsetX, pos.y + offsetY, pos.z + offsetZ);
         }
+        return 3;
     }
 }
-
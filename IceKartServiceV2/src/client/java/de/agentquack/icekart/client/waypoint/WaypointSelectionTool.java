@@ -1,6 +1,7 @@
 package de.agentquack.icekart.client.waypoint;
 
 import de.agentquack.icekart.client.IcekartClient;
+import de.agentquack.icekart.track.Waypoint;
 import net.fabricmc.fabric.api.event.player.AttackBlockCallback;
 import net.fabricmc.fabric.api.event.player.UseBlockCallback;
 import net.minecraft.item.Items;
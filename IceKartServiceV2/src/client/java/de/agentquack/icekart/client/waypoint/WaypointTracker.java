@@ -2,7 +2,16 @@ package de.agentquack.icekart.client.waypoint;
 
 import de.agentquack.icekart.client.IcekartClient;
 import de.agentquack.icekart.client.command.RacerManager;
+import de.agentquack.icekart.client.event.RaceEvent;
+import de.agentquack.icekart.client.event.RaceEventBus;
+import de.agentquack.icekart.client.metrics.Metrics;
+import de.agentquack.icekart.client.session.SessionSnapshot;
+import de.agentquack.icekart.client.timing.RaceTimer;
 import de.agentquack.icekart.client.websocket.WebSocketClient;
+import de.agentquack.icekart.race.RaceSessions;
+import de.agentquack.icekart.timing.CrossingTiming;
+import de.agentquack.icekart.track.Waypoint;
+import de.agentquack.icekart.tracking.TimeToContact;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.world.ClientWorld;
 import net.minecraft.entity.Entity;
@@ -10,6 +19,7 @@ import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.vehicle.AbstractMinecartEntity;
 import net.minecraft.entity.vehicle.BoatEntity;
 import net.minecraft.text.Text;
+import net.minecraft.util.math.Box;
 import net.minecraft.util.math.Vec3d;
 
 import java.util.*;
@@ -18,6 +28,11 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * Tracks players passing through waypoints.
  * Uses position-based detection instead of block-based, avoiding distance limitations.
+ * Racers far from every gate are only checked again when they could have reached one
+ * ({@link TimeToContact}), so long straights cost almost nothing.
+ * Reported crossings are published on the {@link RaceEventBus}; announcing them is left to its listeners.
+ * Racers of additional race sessions (other heats on other tracks) are found in the same
+ * pass over the entities and handed to their session.
  */
 public class WaypointTracker {
 
@@ -31,11 +46,34 @@ public class WaypointTracker {
     // Key: playerName, Value: last passed waypoint order
     private final Map<String, Integer> playerLastWaypointOrder = new ConcurrentHashMap<>();
 
+    // Vehicle position of each player in the previous tick, to interpolate crossing times
+    // Key: playerName
+    private final Map<String, Vec3d> playerLastPosition = new ConcurrentHashMap<>();
+    // Monotonic time of the current and the previous tick
+    private long tickNanos = 0;
+    private long lastTickNanos = 0;
+
+    // First tick in which each player's gates have to be checked again
+    // Key: playerName
+    private final Map<String, Long> playerNextCheckTick = new ConcurrentHashMap<>();
+    // Gates the schedule was computed for, a new track or shard invalidates it
+    private List<Waypoint> scheduledGates = List.of();
+    private long tick = 0;
+
+    // Gate checks of the current tick, reported to the metrics once per tick
+    private int gatesEvaluated = 0;
+    private int checksSkipped = 0;
+
     // Cooldown to prevent rapid duplicate triggers
     private final Map<String, Long> playerCooldowns = new ConcurrentHashMap<>();
     private static final long COOLDOWN_MS = 500;
 
+    // Additional races running next to the main race
+    private final RaceSessions sessions = new RaceSessions();
+
     private WaypointTracker() {
+        RaceEventBus.getInstance().subscribe(RaceEvent.GateCrossed.class, this::announceCrossing);
+        RaceEventBus.getInstance().subscribe(RaceEvent.CrossingDropped.class, this::announceDroppedCrossing);
     }
 
     public static WaypointTracker getInstance() {
@@ -55,14 +93,21 @@ public class WaypointTracker {
             return;
         }
 
-        WaypointManager waypointManager = WaypointManager.getInstance();
-        List<Waypoint> waypoints = waypointManager.getOrderedWaypoints();
-        if (waypoints.isEmpty()) {
+        // Only the gates of the claimed shard (all gates without a claim)
+        List<Waypoint> waypoints = TrackShard.getInstance().getGates(WaypointManager.getInstance().getCompiledTrack());
+        if (waypoints.isEmpty() && sessions.isEmpty()) {
             return;
         }
 
         RacerManager racerManager = RacerManager.getInstance();
         ClientWorld world = client.world;
+        tick++;
+        tickNanos = System.nanoTime();
+        sessions.beginTick(tickNanos);
+        if (waypoints != scheduledGates) {
+            playerNextCheckTick.clear();
+            scheduledGates = waypoints;
+        }
 
         // Check all players in vehicles (or on foot) for waypoint triggers
         Set<String> checkedPlayers = new HashSet<>();
@@ -74,6 +119,16 @@ public class WaypointTracker {
 
         // Clean up tracking for players no longer in world
         playerCurrentWaypoint.keySet().removeIf(name -> !checkedPlayers.contains(name));
+        playerLastPosition.keySet().removeIf(name -> !checkedPlayers.contains(name));
+        playerNextCheckTick.keySet().removeIf(name -> !checkedPlayers.contains(name));
+        lastTickNanos = tickNanos;
+        sessions.endTick();
+
+        Metrics.GATES_EVALUATED.add(gatesEvaluated);
+        Metrics.GATE_CHECKS_SKIPPED.add(checksSkipped);
+        gatesEvaluated = 0;
+        checksSkipped = 0;
+        Metrics.TRACKER_TICK.observeSince(tickNanos);
     }
 
     private void checkEntityForWaypoint(Entity entity, List<Waypoint> waypoints,
@@ -90,8 +145,11 @@ public class WaypointTracker {
             }
             checkedPlayers.add(playerName);
 
-            // Skip if not a registered racer
+            // Skip if not a registered racer, racers of other sessions are tracked by their session
             if (!racerManager.isRacer(playerName)) {
+                if (player.getVehicle() != null) {
+                    sessions.dispatch(playerName, player.getVehicle().getPos());
+                }
                 continue;
             }
 
@@ -100,19 +158,20 @@ public class WaypointTracker {
             if (!player.hasVehicle() || player.getVehicle() == null) {
                 // Player is not in a vehicle, clear their waypoint tracking and skip
                 playerCurrentWaypoint.remove(playerName);
+                playerLastPosition.remove(playerName);
+                playerNextCheckTick.remove(playerName);
                 continue;
             }
 
             // Use vehicle position for checkpoint detection
             Vec3d checkPos = player.getVehicle().getPos();
 
-            // Find which waypoint the player is currently inside
+            // Find which waypoint the player is currently inside, unless no gate is in reach
             Waypoint currentWaypoint = null;
-            for (Waypoint wp : waypoints) {
-                if (wp.contains(checkPos)) {
-                    currentWaypoint = wp;
-                    break;
-                }
+            if (canSkipGates(playerName, checkPos)) {
+                checksSkipped++;
+            } else {
+                currentWaypoint = findWaypoint(playerName, checkPos, waypoints);
             }
 
             String previousWaypointId = playerCurrentWaypoint.get(playerName);
@@ -121,8 +180,11 @@ public class WaypointTracker {
             // Detect entry into a new waypoint
             if (currentWaypointId != null && !currentWaypointId.equals(previousWaypointId)) {
                 // Player just entered this waypoint
-                onPlayerEnteredWaypoint(player, currentWaypoint);
+                long crossingNanos = interpolateCrossing(currentWaypoint, playerLastPosition.get(playerName), checkPos);
+                onPlayerEnteredWaypoint(player, currentWaypoint, crossingNanos);
             }
+            playerLastPosition.put(playerName, checkPos);
+            recordSample(playerName, checkPos);
 
             // Update tracking
             if (currentWaypointId != null) {
@@ -133,6 +195,59 @@ public class WaypointTracker {
         }
     }
 
+    /**
+     * Whether the player can't have reached a gate since the gates were last checked.
+     */
+    private boolean canSkipGates(String playerName, Vec3d position) {
+        Long nextCheck = playerNextCheckTick.get(playerName);
+        Vec3d lastPosition = playerLastPosition.get(playerName);
+        return nextCheck != null && tick < nextCheck && lastPosition != null
+                && TimeToContact.isPlausibleMove(lastPosition, position);
+    }
+
+    /**
+     * Find the waypoint the position is inside and schedule the next check from the distance
+     * to the nearest gate.
+     */
+    private Waypoint findWaypoint(String playerName, Vec3d position, List<Waypoint> waypoints) {
+        double nearest = Double.POSITIVE_INFINITY;
+        for (Waypoint wp : waypoints) {
+            gatesEvaluated++;
+            if (wp.contains(position)) {
+                playerNextCheckTick.put(playerName, tick + 1);
+                return wp;
+            }
+            Box box = wp.getBoundingBox();
+            nearest = Math.min(nearest, TimeToContact.distanceSquared(box.minX, box.minY, box.minZ,
+                    box.maxX, box.maxY, box.maxZ, position.x, position.y, position.z));
+        }
+        playerNextCheckTick.put(playerName, tick + 1 + TimeToContact.skippableTicks(nearest));
+        return null;
+    }
+
+    /**
+     * Estimate when the vehicle entered the waypoint between the previous and the current tick,
+     * assuming it moved in a straight line.
+     */
+    private long interpolateCrossing(Waypoint waypoint, Vec3d previousPos, Vec3d currentPos) {
+        if (previousPos == null || lastTickNanos == 0) {
+            return tickNanos;
+        }
+        double fraction = waypoint.getEntryFraction(previousPos, currentPos);
+        return lastTickNanos + (long) ((tickNanos - lastTickNanos) * fraction);
+    }
+
+    /**
+     * Feed the vehicle position to the timing engine for ghost laps and the live delta.
+     */
+    private void recordSample(String playerName, Vec3d position) {
+        if (!WebSocketClient.getInstance().isRacing()) {
+            return;
+        }
+        RacerManager.getInstance().getRacerId(playerName).ifPresent(racerId ->
+                RaceTimer.getInstance().onSample(racerId, tickNanos, position.x, position.y, position.z));
+    }
+
     private List<PlayerEntity> getPlayersFromEntity(Entity entity) {
         List<PlayerEntity> players = new ArrayList<>();
 
@@ -153,16 +268,20 @@ public class WaypointTracker {
         return players;
     }
 
-    private void onPlayerEnteredWaypoint(PlayerEntity player, Waypoint waypoint) {
+    private void onPlayerEnteredWaypoint(PlayerEntity player, Waypoint waypoint, long crossingNanos) {
         String playerName = player.getName().getString();
 
+        Metrics.CROSSINGS_DETECTED.inc();
+
         // Check cooldown
         long now = System.currentTimeMillis();
         Long lastTrigger = playerCooldowns.get(playerName);
         if (lastTrigger != null && (now - lastTrigger) < COOLDOWN_MS) {
+            Metrics.CROSSINGS_DROPPED_COOLDOWN.inc();
             return;
         }
         playerCooldowns.put(playerName, now);
+        WaypointTriggeredCallback.EVENT.invoker().onWaypointTriggered(waypoint, player);
 
         // Validate waypoint order (optional - can be enabled for stricter checking)
         Integer lastOrder = playerLastWaypointOrder.get(playerName);
@@ -176,8 +295,9 @@ public class WaypointTracker {
         Optional<String> racerIdOpt = racerManager.getRacerId(playerName);
 
         if (racerIdOpt.isEmpty()) {
-            IcekartClient.LOGGER.warn("[IceKart] Waypoint triggered but no racer ID for: {}", playerName);
-            showErrorMessage("§c[IceKart] §7Waypoint missed - racer ID not synced");
+            Metrics.CROSSINGS_DROPPED_NO_RACER_ID.inc();
+            RaceEventBus.getInstance().post(new RaceEvent.CrossingDropped(playerName, waypoint.getId(),
+                    RaceEvent.DropReason.NO_RACER_ID));
             return;
         }
 
@@ -185,55 +305,88 @@ public class WaypointTracker {
 
         // Check WebSocket connection
         if (!wsClient.isConnected()) {
-            IcekartClient.LOGGER.warn("[IceKart] Waypoint triggered but WebSocket not connected: {} at {}",
-                    playerName, waypoint.getId());
-            showErrorMessage("§c[IceKart] §7Waypoint missed - not connected to server");
+            Metrics.CROSSINGS_DROPPED_DISCONNECTED.inc();
+            RaceEventBus.getInstance().post(new RaceEvent.CrossingDropped(playerName, waypoint.getId(),
+                    RaceEvent.DropReason.DISCONNECTED));
             return;
         }
 
         // Check if race is running
         if (!wsClient.isRacing()) {
-            IcekartClient.LOGGER.debug("[IceKart] Waypoint triggered but race not running: {} at {}",
-                    playerName, waypoint.getId());
+            Metrics.CROSSINGS_DROPPED_NOT_RACING.inc();
+            RaceEventBus.getInstance().post(new RaceEvent.CrossingDropped(playerName, waypoint.getId(),
+                    RaceEvent.DropReason.NOT_RACING));
             return;
         }
 
         String racerId = racerIdOpt.get();
 
-        // Send checkpoint to server
-        wsClient.sendCheckpoint(racerId);
+        int gatesPerLap = WaypointManager.getInstance().getCompiledTrack().size();
+        TrackShard shard = TrackShard.getInstance();
+        CrossingTiming timing = null;
+        if (shard.isSharded()) {
+            // Laps can't be counted from part of the track, the race server times shard crossings
+            long raceNanos = crossingNanos - RaceTimer.getInstance().getRaceStartNanos();
+            wsClient.sendShardCrossing(racerId, shard.getShardId(), waypoint.getId(), gatesPerLap, raceNanos);
+        } else {
+            // Compute timing locally and send it with the checkpoint
+            timing = RaceTimer.getInstance().onCrossing(racerId, waypoint.getId(), crossingNanos, gatesPerLap);
+            wsClient.sendCheckpoint(racerId, timing);
+        }
 
+        RaceEventBus bus = RaceEventBus.getInstance();
+        bus.post(new RaceEvent.GateCrossed(playerName, racerId, waypoint.getId(), waypoint.getOrder(),
+                waypoint.getType(), crossingNanos, timing));
+        if (timing != null && timing.completesLap()) {
+            bus.post(new RaceEvent.LapCompleted(playerName, racerId, timing.lap(), timing.lapNanos(),
+                    timing.bestLapNanos()));
+        }
+    }
+
+    /**
+     * Log a reported crossing and show it in chat while the waypoint view is enabled.
+     * Runs on the event worker thread.
+     */
+    private void announceCrossing(RaceEvent.GateCrossed crossing) {
         IcekartClient.LOGGER.info("[IceKart] Waypoint {} triggered by {} (ID: {}, type: {}, order: {})",
-                waypoint.getId(), playerName, racerId, waypoint.getType(), waypoint.getOrder());
+                crossing.gateId(), crossing.playerName(), crossing.racerId(), crossing.type(), crossing.order());
 
         // Show success message only when view is enabled
         if (WaypointRenderer.getInstance().isViewEnabled()) {
-            String typeStr = switch (waypoint.getType()) {
+            String typeStr = switch (crossing.type()) {
                 case START -> "§aSTART";
                 case CHECKPOINT -> "§bCHECKPOINT";
                 case FINISH -> "§6FINISH";
             };
             showMessage(String.format("§a[IceKart] §f%s §7| §b%s §7(#%d)",
-                    typeStr, playerName, waypoint.getOrder() + 1));
+                    typeStr, crossing.playerName(), crossing.order() + 1));
         }
     }
 
     /**
-     * Show a message in chat (only used for debug/view mode).
+     * Log a crossing that couldn't be reported and show the error in chat (always shown, unless
+     * the race isn't running). Runs on the event worker thread.
      */
-    private void showMessage(String message) {
-        MinecraftClient client = MinecraftClient.getInstance();
-        client.execute(() -> {
-            if (client.player != null) {
-                client.player.sendMessage(Text.literal(message), false);
+    private void announceDroppedCrossing(RaceEvent.CrossingDropped dropped) {
+        switch (dropped.reason()) {
+            case NO_RACER_ID -> {
+                IcekartClient.LOGGER.warn("[IceKart] Waypoint triggered but no racer ID for: {}", dropped.playerName());
+                showMessage("§c[IceKart] §7Waypoint missed - racer ID not synced");
             }
-        });
+            case DISCONNECTED -> {
+                IcekartClient.LOGGER.warn("[IceKart] Waypoint triggered but WebSocket not connected: {} at {}",
+                        dropped.playerName(), dropped.gateId());
+                showMessage("§c[IceKart] §7Waypoint missed - not connected to server");
+            }
+            case NOT_RACING -> IcekartClient.LOGGER.debug("[IceKart] Waypoint triggered but race not running: {} at {}",
+                    dropped.playerName(), dropped.gateId());
+        }
     }
 
     /**
-     * Show an error message in chat (always shown).
+     * Show a message in chat.
      */
-    private void showErrorMessage(String message) {
+    private void showMessage(String message) {
         MinecraftClient client = MinecraftClient.getInstance();
         client.execute(() -> {
             if (client.player != null) {
@@ -242,25 +395,74 @@ public class WaypointTracker {
         });
     }
 
+    /**
+     * The race sessions tracked next to the main race.
+     */
+    public RaceSessions getSessions() {
+        return sessions;
+    }
+
     /**
      * Reset tracking for all players (e.g., on race reset).
      */
     public void resetTracking() {
         playerCurrentWaypoint.clear();
         playerLastWaypointOrder.clear();
+        playerLastPosition.clear();
+        playerNextCheckTick.clear();
         playerCooldowns.clear();
         IcekartClient.LOGGER.info("[IceKart] Waypoint tracking reset");
     }
 
+    /**
+     * Forget which players are inside the given waypoints (e.g. after they were moved or removed).
+     * Players will trigger a moved waypoint again when they enter its new bounds.
+     */
+    public void invalidateWaypoints(Set<String> waypointIds) {
+        if (!waypointIds.isEmpty()) {
+            playerCurrentWaypoint.values().removeIf(waypointIds::contains);
+            // Moved gates may be closer than scheduled
+            playerNextCheckTick.clear();
+        }
+    }
+
     /**
      * Reset tracking for a specific player.
      */
     public void resetPlayerTracking(String playerName) {
         playerCurrentWaypoint.remove(playerName);
         playerLastWaypointOrder.remove(playerName);
+        playerLastPosition.remove(playerName);
+        playerNextCheckTick.remove(playerName);
         playerCooldowns.remove(playerName);
     }
 
+    /**
+     * Tracker progress of every player that passed or is inside a gate, for session snapshots.
+     */
+    public List<SessionSnapshot.Progress> getProgress() {
+        Set<String> players = new HashSet<>(playerLastWaypointOrder.keySet());
+        players.addAll(playerCurrentWaypoint.keySet());
+        List<SessionSnapshot.Progress> progress = new ArrayList<>(players.size());
+        for (String player : players) {
+            progress.add(new SessionSnapshot.Progress(player, playerLastWaypointOrder.getOrDefault(player, -1),
+                    playerCurrentWaypoint.get(player)));
+        }
+        return progress;
+    }
+
+    /**
+     * Restore the progress of a player from a session snapshot.
+     */
+    public void restoreProgress(SessionSnapshot.Progress progress) {
+        if (progress.lastOrder() >= 0) {
+            playerLastWaypointOrder.put(progress.playerName(), progress.lastOrder());
+        }
+        if (progress.currentGateId() != null) {
+            playerCurrentWaypoint.put(progress.playerName(), progress.currentGateId());
+        }
+    }
+
     /**
      * Get the last waypoint order a player passed through.
      */
@@ -1,11 +1,15 @@
  package de.agentquack.icekart.client.waypoint;
 
+import de.agentquack.icekart.track.Waypoint;
 import net.fabricmc.fabric.api.event.Event;
 import net.fabricmc.fabric.api.event.EventFactory;
 import net.minecraft.entity.player.PlayerEntity;
 
 /**
  * Callback for when a player passes through a waypoint.
+ * Invoked on the tick thread as soon as the entry passed the cooldown, before it is reported.
+ * Listeners must return quickly; use the {@link de.agentquack.icekart.client.event.RaceEventBus}
+ * for slow work.
  */
 public interface WaypointTriggeredCallback {
 
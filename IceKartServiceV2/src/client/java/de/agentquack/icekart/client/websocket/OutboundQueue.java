@@ -0,0 +1,109 @@
+package de.agentquack.icekart.client.websocket;
+
+import de.agentquack.icekart.client.IcekartClient;
+import de.agentquack.icekart.client.metrics.Metrics;
+
+import java.net.http.WebSocket;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Outbound message queue of the WebSocket connection.
+ * {@link WebSocket#sendText} fails while a previous send is still pending, so messages
+ * are queued and sent one after another as each send completes. Callers never block.
+ */
+final class OutboundQueue {
+
+    // Messages beyond this are dropped (the server is unreachable or far behind)
+    private static final int MAX_DEPTH = 1024;
+
+    private record Pending(String text, long enqueuedNanos) {
+    }
+
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicBoolean sending = new AtomicBoolean(false);
+    private volatile WebSocket webSocket = null;
+
+    /**
+     * Use a (new) connection, pending messages are sent over it.
+     */
+    void attach(WebSocket webSocket) {
+        this.webSocket = webSocket;
+        drain();
+    }
+
+    /**
+     * Drop the connection and all pending messages.
+     */
+    void detach() {
+        webSocket = null;
+        int dropped = 0;
+        while (queue.poll() != null) {
+            depth.decrementAndGet();
+            dropped++;
+        }
+        Metrics.WS_MESSAGES_DROPPED.add(dropped);
+    }
+
+    int getDepth() {
+        return depth.get();
+    }
+
+    /**
+     * Queue a message, returns false if the queue is full.
+     */
+    boolean enqueue(String text) {
+        if (depth.incrementAndGet() > MAX_DEPTH) {
+            depth.decrementAndGet();
+            Metrics.WS_MESSAGES_DROPPED.inc();
+            return false;
+        }
+        queue.add(new Pending(text, System.nanoTime()));
+        drain();
+        return true;
+    }
+
+    /**
+     * Send the next message unless a send is already in flight.
+     */
+    private void drain() {
+        while (true) {
+            WebSocket ws = webSocket;
+            if (ws == null || queue.isEmpty() || !sending.compareAndSet(false, true)) {
+                return;
+            }
+            Pending next = queue.poll();
+            if (next == null) {
+                // Raced with another drain, release and check again
+                sending.set(false);
+                continue;
+            }
+            depth.decrementAndGet();
+            send(ws, next);
+            return;
+        }
+    }
+
+    private void send(WebSocket ws, Pending pending) {
+        try {
+            ws.sendText(pending.text(), true).whenComplete((result, error) -> {
+                if (error != null) {
+                    IcekartClient.LOGGER.error("[IceKart] Failed to send WebSocket message: {}", error.getMessage());
+                    Metrics.WS_MESSAGES_DROPPED.inc();
+                } else {
+                    Metrics.WS_MESSAGES_SENT.inc();
+                    Metrics.WS_SEND_LATENCY.observeSince(pending.enqueuedNanos());
+                }
+                sending.set(false);
+                drain();
+            });
+        } catch (Exception e) {
+            IcekartClient.LOGGER.error("[IceKart] Failed to send WebSocket message: {}", e.getMessage());
+            Metrics.WS_MESSAGES_DROPPED.inc();
+            sending.set(false);
+            drain();
+        }
+    }
+}
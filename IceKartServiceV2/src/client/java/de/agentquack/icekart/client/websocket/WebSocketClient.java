@@ -6,12 +6,26 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import de.agentquack.icekart.client.IcekartClient;
 import de.agentquack.icekart.client.command.RacerManager;
+import de.agentquack.icekart.client.event.RaceEvent;
+import de.agentquack.icekart.client.event.RaceEventBus;
+import de.agentquack.icekart.client.hud.StandingsModel;
+import de.agentquack.icekart.client.metrics.Metrics;
+import de.agentquack.icekart.client.metrics.MetricsRegistry;
+import de.agentquack.icekart.client.timing.RaceTimer;
+import de.agentquack.icekart.race.MessageEncoder;
+import de.agentquack.icekart.timing.CrossingTiming;
+import de.agentquack.icekart.timing.RaceClock;
+import de.agentquack.icekart.tracking.TrackerElection;
 
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.WebSocket;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -27,11 +41,25 @@ public class WebSocketClient implements WebSocket.Listener {
     private WebSocket webSocket;
     private final AtomicBoolean connected = new AtomicBoolean(false);
     private final StringBuilder messageBuffer = new StringBuilder();
+    private final OutboundQueue outbound = new OutboundQueue();
+    private final TrackerElection election = new TrackerElection(TrackerElection.CLIENT_PRIORITY);
+    private final RaceClock raceClock = new RaceClock();
+    private boolean everConnected = false;
+    // Race server of the last connect, null after an explicit disconnect
+    private volatile String serverUrl = null;
 
     // Race status tracking: "idle", "racing", "stopped"
     private volatile String raceStatus = "idle";
 
     private WebSocketClient() {
+        MetricsRegistry.getInstance().gauge("icekart_websocket_queue_depth",
+                "WebSocket messages waiting to be sent", outbound::getDepth);
+        MetricsRegistry.getInstance().gauge("icekart_tracker_leader",
+                "1 if this client reports crossings, 0 while it is a standby tracker", () -> isLeader() ? 1 : 0);
+        MetricsRegistry.getInstance().gauge("icekart_encoder_messages",
+                "Outbound messages written by the message encoder", MessageEncoder::getMessages);
+        MetricsRegistry.getInstance().gauge("icekart_encoder_allocated_bytes",
+                "Heap bytes allocated while encoding outbound messages", MessageEncoder::getAllocatedBytes);
     }
 
     public static WebSocketClient getInstance() {
@@ -52,33 +80,68 @@ public class WebSocketClient implements WebSocket.Listener {
         }
 
         IcekartClient.LOGGER.info("[IceKart] Attempting to connect to {}", url);
+        serverUrl = url;
         HttpClient client = HttpClient.newHttpClient();
         return client.newWebSocketBuilder()
                 .buildAsync(URI.create(url), this)
                 .thenAccept(ws -> {
                     this.webSocket = ws;
                     connected.set(true);
+                    outbound.attach(ws);
+                    Metrics.WS_CONNECTS.inc();
+                    if (everConnected) {
+                        Metrics.WS_RECONNECTS.inc();
+                    }
+                    everConnected = true;
                     IcekartClient.LOGGER.info("[IceKart] WebSocket connected to {}", url);
+                    sendMessage(election.joinMessage());
+                    schedulePing(ws, 0);
                 })
                 .exceptionally(ex -> {
                     IcekartClient.LOGGER.error("[IceKart] WebSocket connection failed: {}", ex.getMessage());
+                    Metrics.WS_CONNECT_FAILURES.inc();
                     ex.printStackTrace();
                     return null;
                 });
     }
 
     public void disconnect() {
+        serverUrl = null;
         if (webSocket != null && connected.get()) {
             webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "Client disconnecting");
             connected.set(false);
+            outbound.detach();
+            election.reset();
+            StandingsModel.getInstance().clear();
             IcekartClient.LOGGER.info("[IceKart] WebSocket disconnected");
         }
     }
 
+    /**
+     * Ping the race server every {@link RaceClock#PING_INTERVAL_MS} while this connection is open,
+     * the pongs keep the race clock in sync.
+     */
+    private void schedulePing(WebSocket ws, long delayMs) {
+        CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS).execute(() -> {
+            if (webSocket != ws || !connected.get()) {
+                return;
+            }
+            sendMessage(raceClock.pingMessage(System.nanoTime()));
+            schedulePing(ws, RaceClock.PING_INTERVAL_MS);
+        });
+    }
+
     public boolean isConnected() {
         return connected.get();
     }
 
+    /**
+     * The race server this client connects to, null if it was disconnected on purpose.
+     */
+    public String getServerUrl() {
+        return serverUrl;
+    }
+
     /**
      * Get the current race status
      * @return "idle", "racing", or "stopped"
@@ -94,15 +157,29 @@ public class WebSocketClient implements WebSocket.Listener {
         return "racing".equals(raceStatus);
     }
 
+    /**
+     * Check if this client reports crossings (false while it is a standby tracker)
+     */
+    public boolean isLeader() {
+        return election.isLeader();
+    }
+
     // --- Send Messages ---
 
     /**
      * Send a race action (start, stop, reset)
      */
     public void sendAction(String action) {
+        sendText(MessageEncoder.get().action(action));
+    }
+
+    /**
+     * Set the number of laps of the next race. Only accepted while no race is running.
+     */
+    public void sendConfig(int totalLaps) {
         JsonObject msg = new JsonObject();
-        msg.addProperty("type", "action");
-        msg.addProperty("payload", action);
+        msg.addProperty("type", "config");
+        msg.addProperty("totalLaps", totalLaps);
         sendMessage(msg);
     }
 
@@ -110,30 +187,60 @@ public class WebSocketClient implements WebSocket.Listener {
      * Trigger a lap completion for a racer
      */
     public void sendLap(String racerId) {
-        JsonObject msg = new JsonObject();
-        msg.addProperty("type", "lap");
-        msg.addProperty("racerId", racerId);
-        sendMessage(msg);
+        sendText(MessageEncoder.get().racer("lap", racerId));
     }
 
     /**
      * Trigger a checkpoint for a racer
      */
     public void sendCheckpoint(String racerId) {
-        JsonObject msg = new JsonObject();
-        msg.addProperty("type", "checkpoint");
-        msg.addProperty("racerId", racerId);
-        sendMessage(msg);
+        sendText(MessageEncoder.get().racer("checkpoint", racerId));
+    }
+
+    /**
+     * Trigger a checkpoint for a racer, with the timing computed by the client.
+     * The server prefers these times over its own message arrival times.
+     * Standby trackers only keep the checkpoint for a replay in case they are promoted.
+     */
+    public void sendCheckpoint(String racerId, CrossingTiming timing) {
+        String json = MessageEncoder.get().checkpoint(racerId, timing);
+        if (election.offer(json)) {
+            sendText(json);
+        } else {
+            Metrics.CROSSINGS_SHADOWED.inc();
+        }
+    }
+
+    /**
+     * Report a crossing of a claimed shard. The race server merges the crossings of all
+     * shards into one timeline per racer and computes the lap timing.
+     *
+     * @param raceNanos time of the crossing since the race start
+     */
+    public void sendShardCrossing(String racerId, String shardId, String gateId, int gatesPerLap, long raceNanos) {
+        String json = MessageEncoder.get().shardCrossing(racerId, shardId, gateId, gatesPerLap, raceNanos);
+        if (election.offer(json)) {
+            sendText(json);
+        } else {
+            Metrics.CROSSINGS_SHADOWED.inc();
+        }
+    }
+
+    /**
+     * Claim a shard of the track (null for the whole track) and join the election of that shard.
+     */
+    public void setShard(String shardId, List<String> gateIds) {
+        election.setShard(shardId, gateIds);
+        if (connected.get()) {
+            sendMessage(election.joinMessage());
+        }
     }
 
     /**
      * Toggle disqualification for a racer
      */
     public void sendDisqualify(String racerId) {
-        JsonObject msg = new JsonObject();
-        msg.addProperty("type", "disqualify");
-        msg.addProperty("racerId", racerId);
-        sendMessage(msg);
+        sendText(MessageEncoder.get().racer("disqualify", racerId));
     }
 
     /**
@@ -157,6 +264,10 @@ public class WebSocketClient implements WebSocket.Listener {
     }
 
     private void sendMessage(JsonObject msg) {
+        sendText(GSON.toJson(msg));
+    }
+
+    private void sendText(String json) {
         if (!connected.get()) {
             IcekartClient.LOGGER.warn("[IceKart] Cannot send message - not connected (connected=false)");
             return;
@@ -166,14 +277,10 @@ public class WebSocketClient implements WebSocket.Listener {
             return;
         }
 
-        String json = GSON.toJson(msg);
-        IcekartClient.LOGGER.info("[IceKart] Sending WebSocket message: {}", json);
-        try {
-            webSocket.sendText(json, true);
-            IcekartClient.LOGGER.info("[IceKart] WebSocket message sent successfully");
-        } catch (Exception e) {
-            IcekartClient.LOGGER.error("[IceKart] Failed to send WebSocket message: {}", e.getMessage());
-            e.printStackTrace();
+        IcekartClient.LOGGER.debug("[IceKart] Sending WebSocket message: {}", json);
+        // Queued, sendText must not be called while a previous send is pending
+        if (!outbound.enqueue(json)) {
+            IcekartClient.LOGGER.warn("[IceKart] WebSocket send queue full, message dropped");
         }
     }
 
@@ -200,6 +307,8 @@ public class WebSocketClient implements WebSocket.Listener {
     @Override
     public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
         connected.set(false);
+        outbound.detach();
+        election.reset();
         IcekartClient.LOGGER.info("[IceKart] WebSocket closed: {} - {}", statusCode, reason);
         return null;
     }
@@ -207,52 +316,109 @@ public class WebSocketClient implements WebSocket.Listener {
     @Override
     public void onError(WebSocket webSocket, Throwable error) {
         connected.set(false);
+        outbound.detach();
+        election.reset();
         IcekartClient.LOGGER.error("[IceKart] WebSocket error: {}", error.getMessage());
     }
 
     private void handleMessage(String message) {
+        long start = System.nanoTime();
+        Metrics.WS_MESSAGES_RECEIVED.inc();
         try {
             JsonObject json = GSON.fromJson(message, JsonObject.class);
             String type = json.has("type") ? json.get("type").getAsString() : "unknown";
 
             switch (type) {
                 case "init":
-                    handleInitOrUpdate(json, "init");
+                    handleInitOrUpdate(json, "init", start);
                     break;
                 case "update":
-                    handleInitOrUpdate(json, "update");
+                    handleInitOrUpdate(json, "update", start);
                     break;
                 case "status":
                     String newStatus = json.has("status") ? json.get("status").getAsString() : "unknown";
-                    raceStatus = newStatus;
+                    if (json.has("startTime")) {
+                        syncRaceClock(json, start);
+                    }
+                    setRaceStatus(newStatus, getStartTime(json));
                     IcekartClient.LOGGER.info("[IceKart] Race status changed: {}", newStatus);
                     break;
+                case "leader":
+                    String leaderId = json.has("leader") && !json.get("leader").isJsonNull()
+                            ? json.get("leader").getAsString() : null;
+                    long term = json.has("term") ? json.get("term").getAsLong() : 0;
+                    for (String replay : election.onLeader(leaderId, term)) {
+                        sendText(replay);
+                    }
+                    break;
+                case "pong":
+                    raceClock.onPong(json.get("id").getAsInt(), getStartTime(json), getLong(json, "elapsedNanos"), start);
+                    RaceTimer.getInstance().onClockSync(raceClock.getStartNanos());
+                    break;
+                case "clock":
+                    sendMessage(RaceClock.probeAnswer(json.get("id"), RaceTimer.getInstance().getRaceStartNanos(), start));
+                    break;
                 default:
                     IcekartClient.LOGGER.debug("[IceKart] Received unknown message type: {}", type);
             }
         } catch (Exception e) {
             IcekartClient.LOGGER.error("[IceKart] Error parsing message: {}", e.getMessage());
             e.printStackTrace();
+        } finally {
+            Metrics.WS_PARSE_TIME.observeSince(start);
+        }
+    }
+
+    private void setRaceStatus(String status, Long startTimeMs) {
+        String previous = raceStatus;
+        raceStatus = status;
+        RaceTimer.getInstance().onRaceStatus(status, startTimeMs, raceClock.getStartNanos());
+        if (!status.equals(previous)) {
+            RaceEventBus.getInstance().post(new RaceEvent.RaceStatusChanged(previous, status));
         }
     }
 
+    /**
+     * Map the race server's race clock onto ours, from a message received at receivedNanos.
+     */
+    private void syncRaceClock(JsonObject json, long receivedNanos) {
+        raceClock.onInit(getStartTime(json), getLong(json, "elapsedNanos"), receivedNanos);
+    }
+
+    private static Long getStartTime(JsonObject json) {
+        return getLong(json, "startTime");
+    }
+
+    private static Long getLong(JsonObject json, String key) {
+        return json.has(key) && !json.get(key).isJsonNull() ? json.get(key).getAsLong() : null;
+    }
+
     /**
      * Handle init and update messages - parse racers and sync with RacerManager
      */
-    private void handleInitOrUpdate(JsonObject json, String eventType) {
+    private void handleInitOrUpdate(JsonObject json, String eventType, long receivedNanos) {
         String status = json.has("status") ? json.get("status").getAsString() : "unknown";
 
-        // Update race status from init event
-        if ("init".equals(eventType) && json.has("status")) {
-            raceStatus = status;
+        if ("init".equals(eventType)) {
+            syncRaceClock(json, receivedNanos);
+        }
+
+        // Update race status from init events and from updates that change it (e.g. the race
+        // stops by itself when all racers finished)
+        if (json.has("status") && ("init".equals(eventType) || !status.equals(raceStatus))) {
+            setRaceStatus(status, getStartTime(json));
+        }
+        if ("init".equals(eventType) && json.has("totalLaps") && !json.get("totalLaps").isJsonNull()) {
+            StandingsModel.getInstance().setTotalLaps(json.get("totalLaps").getAsInt());
         }
 
         IcekartClient.LOGGER.info("[IceKart] Received {}: status={}", eventType, status);
 
         if (json.has("racers") && json.get("racers").isJsonArray()) {
             JsonArray racersArray = json.getAsJsonArray("racers");
-            RacerManager racerManager = RacerManager.getInstance();
 
+            // The message lists the complete roster, racers missing from it were removed
+            Map<String, String> serverRacers = new LinkedHashMap<>();
             for (JsonElement element : racersArray) {
                 if (element.isJsonObject()) {
                     JsonObject racer = element.getAsJsonObject();
@@ -260,11 +426,12 @@ public class WebSocketClient implements WebSocket.Listener {
                     String name = racer.has("name") ? racer.get("name").getAsString() : null;
 
                     if (id != null && name != null) {
-                        racerManager.updateRacerFromServer(id, name);
-                        IcekartClient.LOGGER.debug("[IceKart] Synced racer: {} (ID: {})", name, id);
+                        serverRacers.put(name, id);
                     }
                 }
             }
+            RacerManager.getInstance().syncFromServer(serverRacers);
+            StandingsModel.getInstance().update(racersArray);
             IcekartClient.LOGGER.info("[IceKart] Synced {} racers from server", racersArray.size());
         }
     }
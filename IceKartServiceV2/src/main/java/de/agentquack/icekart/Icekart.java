@@ -0,0 +1,16 @@
+package de.agentquack.icekart;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Constants shared by the client and the dedicated server side of the mod.
+ */
+public final class Icekart {
+
+    public static final String MOD_ID = "icekart";
+    public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
+
+    private Icekart() {
+    }
+}
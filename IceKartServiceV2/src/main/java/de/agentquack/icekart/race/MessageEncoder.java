@@ -0,0 +1,377 @@
+package de.agentquack.icekart.race;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.agentquack.icekart.Icekart;
+import de.agentquack.icekart.timing.CrossingTiming;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encoder for the outbound messages sent on every crossing, the only place their format is defined.
+ * Messages are written into a reusable per-thread buffer from pre-encoded templates, with the
+ * escaped racer and gate IDs cached, so the only allocation per message is the resulting String
+ * (which has to outlive the call, it is queued and kept for replays).
+ *
+ * The output is identical to serializing the same {@code JsonObject} the way the callers did
+ * before: {@link #get()} like a default {@code Gson} (HTML-safe escaping, the operator client),
+ * {@link #plain()} like {@code JsonElement.toString()} (the dedicated server). This is checked
+ * against Gson once when the class is loaded ({@link #verify()}); should it ever differ, the
+ * messages are serialized with Gson instead.
+ *
+ * The bytes allocated while encoding are measured with the thread allocation counter of the JVM
+ * and exposed through {@link #getAllocatedBytes()}.
+ */
+public final class MessageEncoder {
+
+    private static final Gson GSON = new Gson();
+
+    // Escaped IDs are cached per thread, the cache starts over beyond this
+    private static final int MAX_CACHED_IDS = 4096;
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX = threadMXBean();
+    private static final AtomicLong MESSAGES = new AtomicLong();
+    private static final AtomicLong ALLOCATED_BYTES = new AtomicLong();
+
+    private static final boolean VERIFIED;
+
+    static {
+        VERIFIED = verify();
+        MESSAGES.set(0);
+        ALLOCATED_BYTES.set(0);
+    }
+
+    private static final ThreadLocal<MessageEncoder> HTML_SAFE = ThreadLocal.withInitial(() -> new MessageEncoder(true, VERIFIED));
+    private static final ThreadLocal<MessageEncoder> PLAIN = ThreadLocal.withInitial(() -> new MessageEncoder(false, VERIFIED));
+
+    // --- Templates ---
+
+    private static final String CHECKPOINT = "{\"type\":\"checkpoint\",\"racerId\":\"";
+    private static final String TIMING_GATE = "\",\"timing\":{\"gate\":\"";
+    private static final String ARMED = "\",\"armed\":";
+    private static final String LAP = ",\"lap\":";
+    private static final String SPLIT = ",\"split\":";
+    private static final String SPLIT_NANOS = ",\"splitNanos\":";
+    private static final String SECTOR_NANOS = ",\"sectorNanos\":";
+    private static final String LAP_NANOS = ",\"lapNanos\":";
+    private static final String BEST_LAP_NANOS = ",\"bestLapNanos\":";
+    private static final String RACE_NANOS = ",\"raceNanos\":";
+    private static final String DELTA_NANOS = ",\"deltaNanos\":";
+    private static final String SHARD = "\",\"shard\":\"";
+    private static final String CROSSING_GATE = "\",\"crossing\":{\"gate\":\"";
+    private static final String GATES = "\",\"gates\":";
+    private static final String TYPE = "{\"type\":\"";
+    private static final String RACER_ID = "\",\"racerId\":\"";
+    private static final String PAYLOAD = "\",\"payload\":\"";
+    private static final String END = "\"}";
+    private static final String END_NESTED = "}}";
+
+    private final boolean htmlSafe;
+    // False if the output didn't match Gson, messages are then serialized with Gson
+    private final boolean fast;
+    private final StringBuilder buffer = new StringBuilder(256);
+    private final Map<String, String> escaped = new HashMap<>();
+    private long allocatedBefore;
+
+    private MessageEncoder(boolean htmlSafe, boolean fast) {
+        this.htmlSafe = htmlSafe;
+        this.fast = fast;
+    }
+
+    /**
+     * The encoder of the current thread, escaping like a default {@code Gson} (HTML-safe).
+     */
+    public static MessageEncoder get() {
+        return HTML_SAFE.get();
+    }
+
+    /**
+     * The encoder of the current thread, escaping like {@code JsonElement.toString()}.
+     */
+    public static MessageEncoder plain() {
+        return PLAIN.get();
+    }
+
+    /**
+     * Messages encoded so far, on all threads.
+     */
+    public static long getMessages() {
+        return MESSAGES.get();
+    }
+
+    /**
+     * Bytes allocated while encoding messages so far, on all threads. 0 if the JVM
+     * can't measure thread allocations.
+     */
+    public static long getAllocatedBytes() {
+        return ALLOCATED_BYTES.get();
+    }
+
+    // --- Messages ---
+
+    /**
+     * A checkpoint with the timing computed by the tracker:
+     * {@code {"type":"checkpoint","racerId":..,"timing":{..}}}.
+     */
+    public String checkpoint(String racerId, CrossingTiming timing) {
+        if (!fast) {
+            return serialize(checkpointJson(racerId, timing));
+        }
+        begin();
+        String racer = escape(racerId);
+        buffer.append(CHECKPOINT).append(racer)
+                .append(TIMING_GATE).append(escape(timing.gateId()))
+                .append(ARMED).append(timing.armed())
+                .append(LAP).append(timing.lap())
+                .append(SPLIT).append(timing.splitIndex())
+                .append(SPLIT_NANOS).append(timing.splitNanos())
+                .append(SECTOR_NANOS).append(timing.sectorNanos());
+        if (timing.completesLap()) {
+            buffer.append(LAP_NANOS).append(timing.lapNanos());
+        }
+        if (timing.bestLapNanos() >= 0) {
+            buffer.append(BEST_LAP_NANOS).append(timing.bestLapNanos());
+        }
+        buffer.append(RACE_NANOS).append(timing.raceNanos());
+        if (timing.hasDelta()) {
+            buffer.append(DELTA_NANOS).append(timing.deltaNanos());
+        }
+        buffer.append(END_NESTED);
+        return finish();
+    }
+
+    /**
+     * A crossing of a claimed shard:
+     * {@code {"type":"checkpoint","racerId":..,"shard":..,"crossing":{..}}}.
+     */
+    public String shardCrossing(String racerId, String shardId, String gateId, int gatesPerLap, long raceNanos) {
+        if (!fast) {
+            return serialize(shardCrossingJson(racerId, shardId, gateId, gatesPerLap, raceNanos));
+        }
+        begin();
+        buffer.append(CHECKPOINT).append(escape(racerId))
+                .append(SHARD).append(escape(shardId))
+                .append(CROSSING_GATE).append(escape(gateId))
+                .append(GATES).append(gatesPerLap)
+                .append(RACE_NANOS).append(raceNanos)
+                .append(END_NESTED);
+        return finish();
+    }
+
+    /**
+     * A message about one racer: {@code {"type":..,"racerId":..}} (lap, checkpoint, disqualify).
+     */
+    public String racer(String type, String racerId) {
+        if (!fast) {
+            return serialize(racerJson(type, racerId));
+        }
+        begin();
+        buffer.append(TYPE).append(escape(type)).append(RACER_ID).append(escape(racerId)).append(END);
+        return finish();
+    }
+
+    /**
+     * A race action: {@code {"type":"action","payload":..}}.
+     */
+    public String action(String action) {
+        if (!fast) {
+            return serialize(actionJson(action));
+        }
+        begin();
+        buffer.append(TYPE).append("action").append(PAYLOAD).append(escape(action)).append(END);
+        return finish();
+    }
+
+    private void begin() {
+        buffer.setLength(0);
+        allocatedBefore = allocatedBytes();
+    }
+
+    private String finish() {
+        String text = buffer.toString();
+        MESSAGES.incrementAndGet();
+        if (allocatedBefore >= 0) {
+            ALLOCATED_BYTES.addAndGet(allocatedBytes() - allocatedBefore);
+        }
+        return text;
+    }
+
+    // --- Escaping ---
+
+    private String escape(String value) {
+        String cached = escaped.get(value);
+        if (cached != null) {
+            return cached;
+        }
+        if (escaped.size() >= MAX_CACHED_IDS) {
+            escaped.clear();
+        }
+        String result = escapeString(value, htmlSafe);
+        escaped.put(value, result);
+        return result;
+    }
+
+    /**
+     * Escape a string value the way Gson does, HTML-safe by default and plain in
+     * {@code JsonElement.toString()}.
+     */
+    static String escapeString(String value, boolean htmlSafe) {
+        StringBuilder out = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement = replacement(c, htmlSafe);
+            if (replacement != null) {
+                if (out == null) {
+                    out = new StringBuilder(value.length() + 16).append(value, 0, i);
+                }
+                out.append(replacement);
+            } else if (out != null) {
+                out.append(c);
+            }
+        }
+        return out != null ? out.toString() : value;
+    }
+
+    private static String replacement(char c, boolean htmlSafe) {
+        return switch (c) {
+            case '"' -> "\\\"";
+            case '\\' -> "\\\\";
+            case '\t' -> "\\t";
+            case '\b' -> "\\b";
+            case '\n' -> "\\n";
+            case '\r' -> "\\r";
+            case '\f' -> "\\f";
+            case '\u2028', '\u2029' -> unicodeEscape(c);
+            case '<', '>', '&', '=', '\'' -> htmlSafe ? unicodeEscape(c) : null;
+            default -> c < 0x20 ? unicodeEscape(c) : null;
+        };
+    }
+
+    private static String unicodeEscape(char c) {
+        return String.format("\\u%04x", (int) c);
+    }
+
+    // --- Gson reference ---
+
+    private String serialize(JsonObject json) {
+        return htmlSafe ? GSON.toJson(json) : json.toString();
+    }
+
+    private static JsonObject checkpointJson(String racerId, CrossingTiming timing) {
+        JsonObject json = new JsonObject();
+        json.addProperty("gate", timing.gateId());
+        json.addProperty("armed", timing.armed());
+        json.addProperty("lap", timing.lap());
+        json.addProperty("split", timing.splitIndex());
+        json.addProperty("splitNanos", timing.splitNanos());
+        json.addProperty("sectorNanos", timing.sectorNanos());
+        if (timing.completesLap()) {
+            json.addProperty("lapNanos", timing.lapNanos());
+        }
+        if (timing.bestLapNanos() >= 0) {
+            json.addProperty("bestLapNanos", timing.bestLapNanos());
+        }
+        json.addProperty("raceNanos", timing.raceNanos());
+        if (timing.hasDelta()) {
+            json.addProperty("deltaNanos", timing.deltaNanos());
+        }
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "checkpoint");
+        msg.addProperty("racerId", racerId);
+        msg.add("timing", json);
+        return msg;
+    }
+
+    private static JsonObject shardCrossingJson(String racerId, String shardId, String gateId, int gatesPerLap,
+                                                long raceNanos) {
+        JsonObject crossing = new JsonObject();
+        crossing.addProperty("gate", gateId);
+        crossing.addProperty("gates", gatesPerLap);
+        crossing.addProperty("raceNanos", raceNanos);
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "checkpoint");
+        msg.addProperty("racerId", racerId);
+        msg.addProperty("shard", shardId);
+        msg.add("crossing", crossing);
+        return msg;
+    }
+
+    private static JsonObject racerJson(String type, String racerId) {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", type);
+        msg.addProperty("racerId", racerId);
+        return msg;
+    }
+
+    private static JsonObject actionJson(String action) {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "action");
+        msg.addProperty("payload", action);
+        return msg;
+    }
+
+    /**
+     * Round-trip every message type, with IDs that need escaping and all optional timing fields
+     * present and absent, in both escaping modes: the output has to parse back to the
+     * {@code JsonObject} it stands for and be the exact bytes Gson writes for it.
+     *
+     * @return true if the encoder matches Gson
+     */
+    static boolean verify() {
+        String[] ids = {"r1700000000000", "gate-12", "a\"b\\c/d<e>f&g=h'i", "\t\b\n\r\f\u0000\u001f\u007f",
+                "\u2028\u2029 \u00e9 \ud83d\ude00", ""};
+        for (boolean htmlSafe : new boolean[]{true, false}) {
+            MessageEncoder encoder = new MessageEncoder(htmlSafe, true);
+            for (String id : ids) {
+                CrossingTiming[] timings = {
+                        new CrossingTiming(id, id, true, 0, -1, 0, 0, -1, 1_234_567_890L, -1, CrossingTiming.NO_DELTA),
+                        new CrossingTiming(id, id, false, 3, 7, 12_345_678_901L, 987_654_321L, 61_000_000_001L,
+                                Long.MAX_VALUE, 60_500_000_000L, -250_000_000L),
+                        new CrossingTiming(id, id, false, 1, 0, 1, 1, -1, -5, -1, 0)
+                };
+                for (CrossingTiming timing : timings) {
+                    if (!matches(encoder, encoder.checkpoint(id, timing), checkpointJson(id, timing))) {
+                        return false;
+                    }
+                }
+                if (!matches(encoder, encoder.shardCrossing(id, id, id, 10, -42), shardCrossingJson(id, id, id, 10, -42))
+                        || !matches(encoder, encoder.racer("disqualify", id), racerJson("disqualify", id))
+                        || !matches(encoder, encoder.action(id), actionJson(id))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(MessageEncoder encoder, String encoded, JsonObject expected) {
+        String reference = encoder.serialize(expected);
+        if (encoded.equals(reference) && JsonParser.parseString(encoded).equals(expected)) {
+            return true;
+        }
+        Icekart.LOGGER.error("[IceKart] Message encoder output differs from Gson, serializing with Gson instead: {} vs {}",
+                encoded, reference);
+        return false;
+    }
+
+    // --- Allocation measurement ---
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                    && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean;
+            }
+        } catch (LinkageError | UnsupportedOperationException ignored) {
+        }
+        return null;
+    }
+
+    private static long allocatedBytes() {
+        return THREAD_MX != null ? THREAD_MX.getCurrentThreadAllocatedBytes() : -1;
+    }
+}
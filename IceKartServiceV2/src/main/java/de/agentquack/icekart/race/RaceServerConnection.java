@@ -0,0 +1,276 @@
+package de.agentquack.icekart.race;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.agentquack.icekart.Icekart;
+import de.agentquack.icekart.timing.CrossingTiming;
+import de.agentquack.icekart.timing.RaceClock;
+import de.agentquack.icekart.tracking.TrackerElection;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Channel of a {@link RaceSession} to its race server.
+ * Keeps the racer IDs and the race status in sync from the init, update and status
+ * messages and sends the checkpoints detected by the session.
+ * The dedicated server joins the tracker election with a higher priority than operator
+ * clients, so it reports crossings whenever it is connected.
+ * Reconnects automatically until {@link #disconnect()} is called.
+ */
+public class RaceServerConnection implements WebSocket.Listener {
+
+    private static final long RECONNECT_DELAY_SECONDS = 5;
+
+    private final String url;
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final StringBuilder messageBuffer = new StringBuilder();
+    private final TrackerElection election;
+    private final RaceClock raceClock = new RaceClock();
+
+    // Racer IDs by player name, as registered on the race server
+    private volatile Map<String, String> racerIds = Map.of();
+    // Incremented with every roster change
+    private volatile int rosterVersion = 0;
+
+    private volatile WebSocket webSocket = null;
+    private volatile boolean closed = false;
+    // Race status tracking: "idle", "racing", "finishing", "stopped"
+    private volatile String raceStatus = "idle";
+
+    // sendText must not be called while a previous send is pending, so sends are chained
+    private CompletableFuture<?> lastSend = CompletableFuture.completedFuture(null);
+
+    /**
+     * @param priority election priority, {@link TrackerElection#SERVER_PRIORITY} on the dedicated server
+     */
+    public RaceServerConnection(String url, int priority) {
+        this.url = url;
+        this.election = new TrackerElection(priority);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void connect() {
+        if (closed) {
+            return;
+        }
+        Icekart.LOGGER.info("[IceKart] Connecting to race server {}", url);
+        httpClient.newWebSocketBuilder()
+                .buildAsync(URI.create(url), this)
+                .thenAccept(ws -> {
+                    webSocket = ws;
+                    Icekart.LOGGER.info("[IceKart] Connected to race server {}", url);
+                    send(election.joinMessage().toString());
+                    schedulePing(ws, 0);
+                })
+                .exceptionally(ex -> {
+                    Icekart.LOGGER.warn("[IceKart] Race server connection failed: {}", ex.getMessage());
+                    scheduleReconnect();
+                    return null;
+                });
+    }
+
+    public void disconnect() {
+        closed = true;
+        WebSocket ws = webSocket;
+        webSocket = null;
+        if (ws != null) {
+            ws.sendClose(WebSocket.NORMAL_CLOSURE, "Tracker disconnecting");
+            Icekart.LOGGER.info("[IceKart] Disconnected from race server");
+        }
+    }
+
+    /**
+     * Ping the race server every {@link RaceClock#PING_INTERVAL_MS} while this connection is open,
+     * the pongs keep the race clock in sync.
+     */
+    private void schedulePing(WebSocket ws, long delayMs) {
+        CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS).execute(() -> {
+            if (webSocket != ws) {
+                return;
+            }
+            send(raceClock.pingMessage(System.nanoTime()).toString());
+            schedulePing(ws, RaceClock.PING_INTERVAL_MS);
+        });
+    }
+
+    private void scheduleReconnect() {
+        webSocket = null;
+        election.reset();
+        if (!closed) {
+            CompletableFuture.delayedExecutor(RECONNECT_DELAY_SECONDS, TimeUnit.SECONDS).execute(this::connect);
+        }
+    }
+
+    public boolean isConnected() {
+        return webSocket != null;
+    }
+
+    public String getRaceStatus() {
+        return raceStatus;
+    }
+
+    /**
+     * Race start on the local monotonic clock, 0 if no race was started.
+     */
+    public long getRaceStartNanos() {
+        return raceClock.getStartNanos();
+    }
+
+    public Optional<String> getRacerId(String playerName) {
+        return Optional.ofNullable(racerIds.get(playerName));
+    }
+
+    public boolean isRacer(String playerName) {
+        return racerIds.containsKey(playerName);
+    }
+
+    /**
+     * Names of the registered racers.
+     */
+    public Set<String> getRacerNames() {
+        return racerIds.keySet();
+    }
+
+    public int getRosterVersion() {
+        return rosterVersion;
+    }
+
+    // --- Send Messages ---
+
+    /**
+     * Send a checkpoint with the timing computed on the server.
+     */
+    public void sendCheckpoint(String racerId, CrossingTiming timing) {
+        String text = MessageEncoder.plain().checkpoint(racerId, timing);
+        if (election.offer(text)) {
+            send(text);
+        }
+    }
+
+    private synchronized void send(String text) {
+        WebSocket ws = webSocket;
+        if (ws == null) {
+            Icekart.LOGGER.warn("[IceKart] Cannot send message - not connected to race server");
+            return;
+        }
+        lastSend = lastSend.handle((result, error) -> null)
+                .thenCompose(ignored -> ws.sendText(text, true))
+                .exceptionally(error -> {
+                    Icekart.LOGGER.error("[IceKart] Failed to send message to race server: {}", error.getMessage());
+                    return null;
+                });
+    }
+
+    // --- WebSocket.Listener Implementation ---
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        messageBuffer.append(data);
+        if (last) {
+            String message = messageBuffer.toString();
+            messageBuffer.setLength(0);
+            handleMessage(message);
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        Icekart.LOGGER.info("[IceKart] Race server connection closed: {} - {}", statusCode, reason);
+        scheduleReconnect();
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        Icekart.LOGGER.error("[IceKart] Race server connection error: {}", error.getMessage());
+        scheduleReconnect();
+    }
+
+    private void handleMessage(String message) {
+        long receivedNanos = System.nanoTime();
+        try {
+            JsonObject json = JsonParser.parseString(message).getAsJsonObject();
+            String type = json.has("type") ? json.get("type").getAsString() : "unknown";
+
+            switch (type) {
+                case "init", "update" -> {
+                    if ("init".equals(type)) {
+                        updateStatus(json, receivedNanos);
+                    }
+                    if (json.has("racers") && json.get("racers").isJsonArray()) {
+                        syncRacers(json.getAsJsonArray("racers"));
+                    }
+                }
+                case "status" -> updateStatus(json, receivedNanos);
+                case "leader" -> {
+                    String leaderId = json.has("leader") && !json.get("leader").isJsonNull()
+                            ? json.get("leader").getAsString() : null;
+                    long term = json.has("term") ? json.get("term").getAsLong() : 0;
+                    election.onLeader(leaderId, term).forEach(this::send);
+                }
+                case "pong" -> raceClock.onPong(json.get("id").getAsInt(), getLong(json, "startTime"),
+                        getLong(json, "elapsedNanos"), receivedNanos);
+                case "clock" -> send(RaceClock.probeAnswer(json.get("id"), raceClock.getStartNanos(),
+                        receivedNanos).toString());
+                default -> Icekart.LOGGER.debug("[IceKart] Received unknown message type: {}", type);
+            }
+        } catch (Exception e) {
+            Icekart.LOGGER.error("[IceKart] Error parsing race server message: {}", e.getMessage());
+        }
+    }
+
+    private void updateStatus(JsonObject json, long receivedNanos) {
+        if (!json.has("status")) {
+            return;
+        }
+        if (json.has("startTime")) {
+            raceClock.onInit(getLong(json, "startTime"), getLong(json, "elapsedNanos"), receivedNanos);
+        }
+        String status = json.get("status").getAsString();
+        if (!status.equals(raceStatus)) {
+            Icekart.LOGGER.info("[IceKart] Race status changed: {}", status);
+        }
+        raceStatus = status;
+    }
+
+    private static Long getLong(JsonObject json, String key) {
+        return json.has(key) && !json.get(key).isJsonNull() ? json.get(key).getAsLong() : null;
+    }
+
+    private void syncRacers(JsonArray racers) {
+        Map<String, String> ids = new HashMap<>();
+        for (JsonElement element : racers) {
+            if (element.isJsonObject()) {
+                JsonObject racer = element.getAsJsonObject();
+                if (racer.has("id") && racer.has("name")) {
+                    ids.put(racer.get("name").getAsString(), racer.get("id").getAsString());
+                }
+            }
+        }
+        if (!ids.equals(racerIds)) {
+            racerIds = ids;
+            rosterVersion++;
+        }
+    }
+}
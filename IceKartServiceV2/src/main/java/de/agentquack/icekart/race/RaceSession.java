@@ -0,0 +1,223 @@
+package de.agentquack.icekart.race;
+
+import de.agentquack.icekart.Icekart;
+import de.agentquack.icekart.timing.CrossingTiming;
+import de.agentquack.icekart.timing.RacerTiming;
+import de.agentquack.icekart.track.CompiledTrack;
+import de.agentquack.icekart.track.Waypoint;
+import de.agentquack.icekart.tracking.TimeToContact;
+import net.minecraft.util.math.Vec3d;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A race (heat) with its own track, roster, tracker state and race server channel.
+ * Several sessions can run at once on different tracks of the same world; the vehicle
+ * positions are collected in one pass per tick by {@link RaceSessions} and handed to the
+ * session the racer belongs to. Gate crossings are timed with the shared {@link RacerTiming}
+ * rules and reported over the session's channel. Racers far from every gate are only checked
+ * again when they could have reached one ({@link TimeToContact}). Only used on the tick thread.
+ */
+public class RaceSession {
+
+    private static final long COOLDOWN_MS = 500;
+
+    /**
+     * Detection state of a player.
+     */
+    private static final class PlayerState {
+        int gate = -1;
+        Vec3d lastPosition = null;
+        long lastTriggerMs = 0;
+        long lastSeenTick = 0;
+        // First tick the gates have to be checked again
+        long nextCheckTick = 0;
+    }
+
+    private final String name;
+    private final RaceServerConnection channel;
+    private final Map<String, PlayerState> players = new HashMap<>();
+    private final Map<String, RacerTiming> timings = new HashMap<>();
+
+    private CompiledTrack track = CompiledTrack.EMPTY;
+    private String trackName = null;
+    private String raceStatus = "idle";
+    // Monotonic time of the race start, 0 if no race is running
+    private long raceStartNanos = 0;
+    private long tick = 0;
+    private long tickNanos = 0;
+    private long lastTickNanos = 0;
+
+    public RaceSession(String name, RaceServerConnection channel) {
+        this.name = name;
+        this.channel = channel;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public RaceServerConnection getChannel() {
+        return channel;
+    }
+
+    /**
+     * Use a (newly loaded) track. Detection state is reset, timing is kept.
+     *
+     * @param trackName name of the track in the world's track library, for display
+     */
+    public void setTrack(String trackName, CompiledTrack track) {
+        this.trackName = trackName;
+        this.track = track;
+        players.clear();
+        Icekart.LOGGER.info("[IceKart] Session {} tracking {} gates of track {}", name, track.size(), trackName);
+    }
+
+    public CompiledTrack getTrack() {
+        return track;
+    }
+
+    public String getTrackName() {
+        return trackName;
+    }
+
+    public String getRaceStatus() {
+        return raceStatus;
+    }
+
+    public void connect() {
+        channel.connect();
+    }
+
+    public void close() {
+        channel.disconnect();
+    }
+
+    // --- Tick (called by RaceSessions) ---
+
+    void beginTick(long tick, long nanos) {
+        this.tick = tick;
+        tickNanos = nanos;
+        updateRaceStatus(channel.getRaceStatus());
+        if (raceStartNanos != 0 && channel.getRaceStartNanos() != 0) {
+            // Follows the race clock as pings refine it
+            raceStartNanos = channel.getRaceStartNanos();
+        }
+    }
+
+    /**
+     * Check the vehicle position of one of the session's racers.
+     */
+    void onVehicle(String playerName, Vec3d position) {
+        if (track.isEmpty()) {
+            return;
+        }
+        PlayerState state = players.computeIfAbsent(playerName, key -> new PlayerState());
+        state.lastSeenTick = tick;
+        int gate = canSkipGates(state, position) ? -1 : findGate(state, position);
+
+        if (gate >= 0 && gate != state.gate) {
+            long crossingNanos = interpolateCrossing(track.get(gate), state.lastPosition, position);
+            onGateEntered(playerName, state, track.get(gate), crossingNanos);
+        }
+        state.gate = gate;
+        state.lastPosition = position;
+
+        if (isRacing()) {
+            channel.getRacerId(playerName).map(timings::get)
+                    .ifPresent(timing -> timing.onSample(tickNanos, position.x, position.y, position.z));
+        }
+    }
+
+    void endTick() {
+        // Forget players that left, got out of their vehicle or were removed from the roster
+        players.values().removeIf(state -> state.lastSeenTick != tick);
+        lastTickNanos = tickNanos;
+    }
+
+    /**
+     * Whether the racer can't have reached a gate since the last check.
+     */
+    private boolean canSkipGates(PlayerState state, Vec3d position) {
+        return tick < state.nextCheckTick && state.lastPosition != null
+                && TimeToContact.isPlausibleMove(state.lastPosition, position);
+    }
+
+    private int findGate(PlayerState state, Vec3d position) {
+        double nearest = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < track.size(); i++) {
+            if (track.contains(i, position.x, position.y, position.z)) {
+                state.nextCheckTick = tick + 1;
+                return i;
+            }
+            nearest = Math.min(nearest, TimeToContact.distanceSquared(track.minX(i), track.minY(i), track.minZ(i),
+                    track.maxX(i), track.maxY(i), track.maxZ(i), position.x, position.y, position.z));
+        }
+        state.nextCheckTick = tick + 1 + TimeToContact.skippableTicks(nearest);
+        return -1;
+    }
+
+    /**
+     * Estimate when the vehicle entered the gate between the previous and the current tick,
+     * assuming it moved in a straight line.
+     */
+    private long interpolateCrossing(Waypoint waypoint, Vec3d previousPos, Vec3d currentPos) {
+        if (previousPos == null || lastTickNanos == 0) {
+            return tickNanos;
+        }
+        double fraction = waypoint.getEntryFraction(previousPos, currentPos);
+        return lastTickNanos + (long) ((tickNanos - lastTickNanos) * fraction);
+    }
+
+    private void onGateEntered(String playerName, PlayerState state, Waypoint waypoint, long crossingNanos) {
+        long now = System.currentTimeMillis();
+        if (now - state.lastTriggerMs < COOLDOWN_MS) {
+            return;
+        }
+        state.lastTriggerMs = now;
+
+        if (!isRacing() || !channel.isConnected()) {
+            return;
+        }
+        Optional<String> racerId = channel.getRacerId(playerName);
+        if (racerId.isEmpty()) {
+            return;
+        }
+
+        RacerTiming timing = timings.computeIfAbsent(racerId.get(), RacerTiming::new);
+        CrossingTiming result = timing.onCrossing(waypoint.getId(), crossingNanos, raceStartNanos, track.size());
+        channel.sendCheckpoint(racerId.get(), result);
+        Icekart.LOGGER.info("[IceKart] Session {}: waypoint {} triggered by {} (ID: {}, order: {})",
+                name, waypoint.getId(), playerName, racerId.get(), waypoint.getOrder());
+    }
+
+    private boolean isRacing() {
+        return "racing".equals(raceStatus) || "finishing".equals(raceStatus);
+    }
+
+    /**
+     * Follow the race status of the race server: anchor the race start on the monotonic clock
+     * when a race starts (or is joined while running) and clear all timing on reset.
+     */
+    private void updateRaceStatus(String status) {
+        if (status.equals(raceStatus)) {
+            return;
+        }
+        raceStatus = status;
+
+        if ("idle".equals(status)) {
+            timings.clear();
+            players.clear();
+            raceStartNanos = 0;
+            Icekart.LOGGER.info("[IceKart] Session {} race timing reset", name);
+            return;
+        }
+        if (raceStartNanos == 0 && isRacing()) {
+            long clockStartNanos = channel.getRaceStartNanos();
+            raceStartNanos = clockStartNanos != 0 ? clockStartNanos : tickNanos;
+            Icekart.LOGGER.info("[IceKart] Session {} race timer started", name);
+        }
+    }
+}
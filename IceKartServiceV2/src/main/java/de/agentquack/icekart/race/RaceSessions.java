@@ -0,0 +1,128 @@
+package de.agentquack.icekart.race;
+
+import de.agentquack.icekart.Icekart;
+import net.minecraft.util.math.Vec3d;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The race sessions running at the same time and the shared per-tick pass over them.
+ * The caller walks the racer vehicles once per tick and {@link #dispatch dispatches} each
+ * position to the session whose roster contains the racer, so the cost of a tick grows with
+ * the number of racers, not with the number of sessions. Only used on the tick thread.
+ */
+public class RaceSessions {
+
+    private final Map<String, RaceSession> sessions = new LinkedHashMap<>();
+
+    // Session of each racer by player name, rebuilt when a roster changes
+    private Map<String, RaceSession> byRacer = Map.of();
+    private final Map<RaceSession, Integer> indexedRosters = new HashMap<>();
+    private boolean indexStale = true;
+
+    private long tick = 0;
+
+    /**
+     * Add a session and connect it to its race server.
+     *
+     * @return false if a session with this name already exists
+     */
+    public boolean add(RaceSession session) {
+        if (sessions.putIfAbsent(session.getName(), session) != null) {
+            return false;
+        }
+        indexStale = true;
+        session.connect();
+        return true;
+    }
+
+    /**
+     * Remove a session and close its channel.
+     */
+    public boolean remove(String name) {
+        RaceSession session = sessions.remove(name);
+        if (session == null) {
+            return false;
+        }
+        indexStale = true;
+        session.close();
+        return true;
+    }
+
+    public Optional<RaceSession> get(String name) {
+        return Optional.ofNullable(sessions.get(name));
+    }
+
+    public List<RaceSession> getAll() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    public boolean isEmpty() {
+        return sessions.isEmpty();
+    }
+
+    public void closeAll() {
+        sessions.values().forEach(RaceSession::close);
+        sessions.clear();
+        indexStale = true;
+    }
+
+    // --- Tick ---
+
+    public void beginTick(long nanos) {
+        tick++;
+        for (RaceSession session : sessions.values()) {
+            session.beginTick(tick, nanos);
+            Integer indexed = indexedRosters.get(session);
+            if (indexed == null || indexed != session.getChannel().getRosterVersion()) {
+                indexStale = true;
+            }
+        }
+        if (indexStale) {
+            rebuildIndex();
+        }
+    }
+
+    /**
+     * Hand the vehicle position of a player to its session.
+     *
+     * @return true if the player is a racer of one of the sessions
+     */
+    public boolean dispatch(String playerName, Vec3d vehiclePosition) {
+        RaceSession session = byRacer.get(playerName);
+        if (session == null) {
+            return false;
+        }
+        session.onVehicle(playerName, vehiclePosition);
+        return true;
+    }
+
+    public void endTick() {
+        for (RaceSession session : sessions.values()) {
+            session.endTick();
+        }
+    }
+
+    private void rebuildIndex() {
+        Map<String, RaceSession> index = new HashMap<>();
+        indexedRosters.clear();
+        for (RaceSession session : sessions.values()) {
+            RaceServerConnection channel = session.getChannel();
+            indexedRosters.put(session, channel.getRosterVersion());
+            for (String racer : channel.getRacerNames()) {
+                RaceSession other = index.putIfAbsent(racer, session);
+                if (other != null) {
+                    Icekart.LOGGER.warn("[IceKart] {} is registered in sessions {} and {}, tracking in {}",
+                            racer, other.getName(), session.getName(), other.getName());
+                }
+            }
+        }
+        byRacer = index;
+        indexStale = false;
+    }
+}
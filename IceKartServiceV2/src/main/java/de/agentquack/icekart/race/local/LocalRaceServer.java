@@ -0,0 +1,394 @@
+package de.agentquack.icekart.race.local;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.agentquack.icekart.Icekart;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process stand-in for the Bun race server (service/server.ts), for tests, replays and
+ * load generators that have no Bun runtime. Speaks the protocol of API.md over WebSocket
+ * (RFC 6455, text frames) at /ws and serves GET /api/results. Only binds to the loopback
+ * interface.
+ *
+ * Each connection is read on its own daemon thread; messages are applied under one lock,
+ * so every client sees the same message order as with the Bun server.
+ *
+ * <pre>
+ * try (LocalRaceServer server = LocalRaceServer.start(0)) {
+ *     WebSocketClient.getInstance().connect(server.getUrl());
+ * }
+ * </pre>
+ */
+public class LocalRaceServer implements AutoCloseable {
+
+    public static final int DEFAULT_TOTAL_LAPS = 5;
+    public static final int DEFAULT_CHECKPOINTS_PER_LAP = 10;
+
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int MAX_MESSAGE_BYTES = 1024 * 1024;
+
+    private static final int OP_CONTINUATION = 0x0;
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_BINARY = 0x2;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+    private static final int OP_PONG = 0xA;
+
+    private final ServerSocket serverSocket;
+    private final LocalRaceState state;
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private volatile boolean closed = false;
+
+    private LocalRaceServer(ServerSocket serverSocket, int totalLaps, int checkpointsPerLap) {
+        this.serverSocket = serverSocket;
+        this.state = new LocalRaceState(new LocalRaceState.Outbox() {
+            @Override
+            public void broadcast(String message) {
+                for (Connection connection : connections) {
+                    connection.sendText(message);
+                }
+            }
+
+            @Override
+            public void send(Object connection, String message) {
+                ((Connection) connection).sendText(message);
+            }
+        }, totalLaps, checkpointsPerLap);
+    }
+
+    /**
+     * Start a server with the default lap settings on 127.0.0.1.
+     *
+     * @param port port to bind, 0 for any free port
+     */
+    public static LocalRaceServer start(int port) throws IOException {
+        return start(port, DEFAULT_TOTAL_LAPS, DEFAULT_CHECKPOINTS_PER_LAP);
+    }
+
+    /**
+     * Start a server on 127.0.0.1.
+     *
+     * @param port              port to bind, 0 for any free port
+     * @param checkpointsPerLap checkpoints without client timing that complete a lap
+     */
+    public static LocalRaceServer start(int port, int totalLaps, int checkpointsPerLap) throws IOException {
+        ServerSocket socket = new ServerSocket();
+        socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        LocalRaceServer server = new LocalRaceServer(socket, totalLaps, checkpointsPerLap);
+
+        Thread acceptor = new Thread(server::acceptLoop, "IceKart-LocalRaceServer");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        Icekart.LOGGER.info("[IceKart] Local race server listening on {}", server.getUrl());
+        return server;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * WebSocket URL to connect to, e.g. ws://127.0.0.1:3000/ws
+     */
+    public String getUrl() {
+        return "ws://127.0.0.1:" + getPort() + "/ws";
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        connections.clear();
+        Icekart.LOGGER.info("[IceKart] Local race server stopped");
+    }
+
+    // --- Connections ---
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread reader = new Thread(() -> handleSocket(socket), "IceKart-LocalRaceServer-Connection");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    Icekart.LOGGER.warn("[IceKart] Local race server accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handleSocket(Socket socket) {
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream out = socket.getOutputStream();
+            Map<String, String> headers = new HashMap<>();
+            String path = readHttpRequest(in, headers);
+            if (path == null) {
+                return;
+            }
+
+            if (path.equals("/ws") && "websocket".equalsIgnoreCase(headers.get("upgrade"))
+                    && headers.containsKey("sec-websocket-key")) {
+                out.write(("HTTP/1.1 101 Switching Protocols\r\n"
+                        + "Upgrade: websocket\r\n"
+                        + "Connection: Upgrade\r\n"
+                        + "Sec-WebSocket-Accept: " + acceptKey(headers.get("sec-websocket-key")) + "\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                runConnection(new Connection(socket, out), in);
+            } else if (path.equals("/api/results")) {
+                String body;
+                synchronized (state) {
+                    body = state.resultsJson();
+                }
+                writeHttpResponse(out, "200 OK", "application/json", body);
+            } else {
+                writeHttpResponse(out, "404 Not Found", "text/plain", "Not Found");
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                Icekart.LOGGER.debug("[IceKart] Local race server connection failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void runConnection(Connection connection, DataInputStream in) throws IOException {
+        synchronized (state) {
+            // Registered under the lock, so the connection gets no broadcast before its init
+            connections.add(connection);
+            connection.sendText(state.initMessage());
+        }
+        try {
+            ByteArrayOutputStream message = new ByteArrayOutputStream();
+            int messageOpcode = -1;
+            while (!closed) {
+                int first = in.readUnsignedByte();
+                int second = in.readUnsignedByte();
+                boolean fin = (first & 0x80) != 0;
+                int opcode = first & 0x0F;
+                boolean masked = (second & 0x80) != 0;
+                long length = second & 0x7F;
+                if (length == 126) {
+                    length = in.readUnsignedShort();
+                } else if (length == 127) {
+                    length = in.readLong();
+                }
+                if (length < 0 || length + message.size() > MAX_MESSAGE_BYTES) {
+                    connection.sendClose(1009);
+                    return;
+                }
+                byte[] mask = new byte[4];
+                if (masked) {
+                    in.readFully(mask);
+                }
+                byte[] payload = new byte[(int) length];
+                in.readFully(payload);
+                if (masked) {
+                    for (int i = 0; i < payload.length; i++) {
+                        payload[i] ^= mask[i & 3];
+                    }
+                }
+
+                switch (opcode) {
+                    case OP_CLOSE -> {
+                        connection.sendClose(1000);
+                        return;
+                    }
+                    case OP_PING -> connection.sendFrame(OP_PONG, payload);
+                    case OP_PONG -> {
+                    }
+                    case OP_TEXT, OP_BINARY, OP_CONTINUATION -> {
+                        if (opcode != OP_CONTINUATION) {
+                            message.reset();
+                            messageOpcode = opcode;
+                        }
+                        message.write(payload);
+                        if (fin && messageOpcode == OP_TEXT) {
+                            onText(connection, message.toString(StandardCharsets.UTF_8));
+                        }
+                    }
+                    default -> {
+                        connection.sendClose(1002);
+                        return;
+                    }
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            // Client went away
+        } finally {
+            connections.remove(connection);
+            synchronized (state) {
+                state.onClose(connection);
+            }
+            connection.close();
+        }
+    }
+
+    private void onText(Connection connection, String text) {
+        JsonObject data;
+        try {
+            data = JsonParser.parseString(text).getAsJsonObject();
+        } catch (RuntimeException e) {
+            Icekart.LOGGER.warn("[IceKart] Local race server received invalid message: {}", e.getMessage());
+            return;
+        }
+        synchronized (state) {
+            try {
+                state.onMessage(connection, data);
+            } catch (RuntimeException e) {
+                Icekart.LOGGER.warn("[IceKart] Local race server failed to handle {}: {}", text, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Read the request line and headers (lower case names).
+     *
+     * @return the request path without query, null if the request is malformed
+     */
+    private static String readHttpRequest(InputStream in, Map<String, String> headers) throws IOException {
+        String requestLine = readLine(in);
+        if (requestLine == null) {
+            return null;
+        }
+        String[] parts = requestLine.split(" ");
+        if (parts.length < 3 || !parts[0].equals("GET")) {
+            return null;
+        }
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+        int query = parts[1].indexOf('?');
+        return query >= 0 ? parts[1].substring(0, query) : parts[1];
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int end = line.length();
+                return end > 0 && line.charAt(end - 1) == '\r' ? line.substring(0, end - 1) : line.toString();
+            }
+            if (line.length() > 8192) {
+                return null;
+            }
+            line.append((char) c);
+        }
+        return line.isEmpty() ? null : line.toString();
+    }
+
+    private static void writeHttpResponse(OutputStream out, String status, String contentType, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        out.write(("HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + bytes.length + "\r\n"
+                + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(bytes);
+        out.flush();
+    }
+
+    private static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    /**
+     * A WebSocket connection. Writes are serialized per connection; frames from the server are unmasked.
+     */
+    private static final class Connection {
+        private final Socket socket;
+        private final OutputStream out;
+
+        Connection(Socket socket, OutputStream out) {
+            this.socket = socket;
+            this.out = out;
+        }
+
+        void sendText(String message) {
+            sendFrame(OP_TEXT, message.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void sendClose(int code) {
+            sendFrame(OP_CLOSE, new byte[]{(byte) (code >> 8), (byte) code});
+        }
+
+        synchronized void sendFrame(int opcode, byte[] payload) {
+            if (socket.isClosed()) {
+                return;
+            }
+            try {
+                byte[] header;
+                if (payload.length < 126) {
+                    header = new byte[]{(byte) (0x80 | opcode), (byte) payload.length};
+                } else if (payload.length <= 0xFFFF) {
+                    header = new byte[]{(byte) (0x80 | opcode), 126, (byte) (payload.length >> 8), (byte) payload.length};
+                } else {
+                    header = new byte[10];
+                    header[0] = (byte) (0x80 | opcode);
+                    header[1] = 127;
+                    for (int i = 0; i < 8; i++) {
+                        header[9 - i] = (byte) ((long) payload.length >> (8 * i));
+                    }
+                }
+                out.write(header);
+                out.write(payload);
+                out.flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
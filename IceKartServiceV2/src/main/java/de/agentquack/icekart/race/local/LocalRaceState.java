@@ -0,0 +1,614 @@
+package de.agentquack.icekart.race.local;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import de.agentquack.icekart.Icekart;
+import de.agentquack.icekart.timing.StandingsTree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Race state and message handling of the {@link LocalRaceServer}, ported from service/server.ts:
+ * racers, laps with auto-completion after the configured number of checkpoints, client timing,
+ * gaps to the course records, the race finish, checkpoint deduplication and the tracker leader
+ * election (whole track trackers only, shard claims are not supported).
+ *
+ * All methods are called with the server's lock held, messages are handed to the {@link Outbox}.
+ */
+final class LocalRaceState {
+
+    // Reports of the same racer and gate closer than this (the trackers' gate cooldown) are one crossing
+    private static final long CROSSING_TOLERANCE_NANOS = 500_000_000L;
+
+    /**
+     * Where the state sends its messages.
+     */
+    interface Outbox {
+        void broadcast(String message);
+
+        void send(Object connection, String message);
+    }
+
+    private record LapData(int lapNumber, double lapTime, List<Double> splits) {
+    }
+
+    private static final class Racer {
+        final String id;
+        final String name;
+        int laps = 0;
+        Double bestLap = null;
+        long lastLapTimestamp = 0;
+        double totalTime = 0;
+        boolean disqualified = false;
+        int checkpoints = 0;
+        double gap = 0;
+        boolean finished = false;
+        final List<LapData> history = new ArrayList<>();
+        List<Double> currentLapSplits = new ArrayList<>();
+        Double delta = null;
+
+        Racer(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("id", id);
+            json.addProperty("name", name);
+            json.addProperty("avatar", "");
+            json.addProperty("laps", laps);
+            json.addProperty("bestLap", bestLap);
+            json.addProperty("lastLapTimestamp", lastLapTimestamp);
+            json.addProperty("totalTime", totalTime);
+            json.addProperty("disqualified", disqualified);
+            json.addProperty("checkpoints", checkpoints);
+            json.addProperty("gap", gap);
+            json.addProperty("finished", finished);
+            JsonArray laps = new JsonArray();
+            for (LapData lap : history) {
+                JsonObject lapJson = new JsonObject();
+                lapJson.addProperty("lapNumber", lap.lapNumber());
+                lapJson.addProperty("lapTime", lap.lapTime());
+                lapJson.add("splits", toArray(lap.splits()));
+                laps.add(lapJson);
+            }
+            json.add("history", laps);
+            json.add("currentLapSplits", toArray(currentLapSplits));
+            if (delta != null) {
+                json.addProperty("delta", delta);
+            }
+            return json;
+        }
+
+        StandingsTree.Key key() {
+            long time = totalTime > 0 ? Math.max(1, Math.round(totalTime)) : 0;
+            return new StandingsTree.Key(id, disqualified, laps, checkpoints, time);
+        }
+    }
+
+    private static final class Tracker {
+        final Object connection;
+        final String trackerId;
+        final int priority;
+        final long joinedAt;
+
+        Tracker(Object connection, String trackerId, int priority, long joinedAt) {
+            this.connection = connection;
+            this.trackerId = trackerId;
+            this.priority = priority;
+            this.joinedAt = joinedAt;
+        }
+    }
+
+    private final Outbox outbox;
+    private final int checkpointsPerLap;
+
+    private String status = "idle";
+    private final List<Racer> racers = new ArrayList<>();
+    private Long startTime = null;
+    // Race start on the monotonic clock, trackers get the elapsed time instead of comparing wall clocks
+    private long startNanos = 0;
+    private Long endTime = null;
+    private int totalLaps;
+    private long lastRacerId = 0;
+
+    private final Map<String, Double> courseRecords = new HashMap<>();
+    private final StandingsTree standings = new StandingsTree();
+    // Race time of the last applied crossing by racer and gate
+    private final Map<String, Long> lastCrossings = new HashMap<>();
+
+    private final List<Tracker> trackers = new ArrayList<>();
+    private Tracker leader = null;
+    private long leaderTerm = 0;
+
+    LocalRaceState(Outbox outbox, int totalLaps, int checkpointsPerLap) {
+        this.outbox = outbox;
+        this.totalLaps = totalLaps;
+        this.checkpointsPerLap = checkpointsPerLap;
+    }
+
+    // --- Connections ---
+
+    String initMessage() {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "init");
+        msg.addProperty("status", status);
+        msg.add("racers", racersJson());
+        msg.addProperty("startTime", startTime);
+        msg.addProperty("elapsedNanos", elapsedNanos());
+        msg.addProperty("endTime", endTime);
+        msg.addProperty("totalLaps", totalLaps);
+        return msg.toString();
+    }
+
+    void onClose(Object connection) {
+        Iterator<Tracker> iterator = trackers.iterator();
+        while (iterator.hasNext()) {
+            Tracker tracker = iterator.next();
+            if (tracker.connection == connection) {
+                iterator.remove();
+                Icekart.LOGGER.info("[IceKart] Local race server: tracker {} left ({} trackers)",
+                        tracker.trackerId, trackers.size());
+                electLeader();
+                return;
+            }
+        }
+    }
+
+    void onMessage(Object connection, JsonObject data) {
+        String type = getString(data, "type");
+        if (type == null) {
+            return;
+        }
+        switch (type) {
+            case "action" -> handleAction(getString(data, "payload"));
+            case "lap" -> handleLap(getString(data, "racerId"));
+            case "checkpoint" -> handleCheckpoint(getString(data, "racerId"), data);
+            case "tracker" -> handleTrackerJoin(connection, data);
+            case "disqualify" -> handleDisqualify(getString(data, "racerId"));
+            case "remove" -> handleRemove(getString(data, "name"));
+            case "register" -> handleRegister(getString(data, "name"));
+            case "config" -> handleConfig(data);
+            case "ping" -> outbox.send(connection, pongMessage(data));
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Racers in standings order, as served at /api/results.
+     */
+    String resultsJson() {
+        Map<String, Racer> byId = new HashMap<>();
+        racers.forEach(racer -> byId.put(racer.id, racer));
+        JsonArray array = new JsonArray();
+        standings.forEachInOrder(key -> array.add(byId.get(key.racerId()).toJson()));
+        JsonObject json = new JsonObject();
+        json.add("racers", array);
+        return json.toString();
+    }
+
+    // --- Race ---
+
+    private void handleAction(String action) {
+        if ("start".equals(action)) {
+            status = "racing";
+            endTime = null;
+            if (startTime == null) {
+                startTime = System.currentTimeMillis();
+                startNanos = System.nanoTime();
+            }
+        } else if ("stop".equals(action)) {
+            status = "stopped";
+            endTime = System.currentTimeMillis();
+        } else if ("reset".equals(action)) {
+            status = "idle";
+            startTime = null;
+            startNanos = 0;
+            endTime = null;
+            for (Racer racer : racers) {
+                racer.laps = 0;
+                racer.bestLap = null;
+                racer.lastLapTimestamp = 0;
+                racer.totalTime = 0;
+                racer.disqualified = false;
+                racer.checkpoints = 0;
+                racer.history.clear();
+                racer.currentLapSplits = new ArrayList<>();
+                racer.gap = 0;
+                racer.finished = false;
+                racer.delta = null;
+            }
+            courseRecords.clear();
+            lastCrossings.clear();
+            standings.clear();
+            racers.forEach(racer -> standings.update(racer.key()));
+        } else {
+            return;
+        }
+        Icekart.LOGGER.info("[IceKart] Local race server: {}", action);
+        // Full state on actions to ensure sync
+        outbox.broadcast(initMessage());
+    }
+
+    private void handleConfig(JsonObject data) {
+        if (isRacing() || !data.has("totalLaps") || !data.get("totalLaps").isJsonPrimitive()) {
+            return;
+        }
+        int laps = data.get("totalLaps").getAsInt();
+        if (laps < 1) {
+            return;
+        }
+        totalLaps = laps;
+        outbox.broadcast(initMessage());
+    }
+
+    private void handleLap(String racerId) {
+        Racer racer = findActiveRacer(racerId);
+        if (racer == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+
+        // The first trigger only arms lap timing
+        if (racer.laps == 0 && racer.lastLapTimestamp == 0) {
+            racer.lastLapTimestamp = now;
+            racer.checkpoints = 0;
+            racer.currentLapSplits = new ArrayList<>();
+            racer.totalTime = now - startTimeOr(now);
+            updateRacerGap(racer);
+            broadcastUpdate();
+            return;
+        }
+
+        racer.totalTime = now - startTimeOr(now);
+        if (racer.lastLapTimestamp > 0) {
+            completeLap(racer, now - racer.lastLapTimestamp);
+        }
+        racer.laps++;
+        racer.checkpoints = 0;
+        racer.currentLapSplits = new ArrayList<>();
+        racer.lastLapTimestamp = now;
+        updateRacerGap(racer);
+        checkRaceFinish(racer);
+        broadcastUpdate();
+    }
+
+    private void handleCheckpoint(String racerId, JsonObject data) {
+        Racer racer = findActiveRacer(racerId);
+        if (racer == null) {
+            return;
+        }
+        JsonObject timing = data.has("timing") && data.get("timing").isJsonObject()
+                ? data.getAsJsonObject("timing") : null;
+        boolean clientTiming = timing != null && timing.has("armed") && timing.has("splitNanos")
+                && timing.has("raceNanos");
+
+        if (clientTiming && isDuplicateCrossing(racerId, getString(timing, "gate"), timing.get("raceNanos").getAsLong())) {
+            return;
+        }
+        if (data.has("shard") && data.has("crossing")) {
+            Icekart.LOGGER.warn("[IceKart] Local race server: shard crossings are not supported, ignored");
+            return;
+        }
+        if (clientTiming) {
+            handleTimedCheckpoint(racer, timing);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (racer.lastLapTimestamp > 0) {
+            racer.currentLapSplits.add((double) (now - racer.lastLapTimestamp));
+        } else if (racer.laps == 0 && startTime != null) {
+            racer.currentLapSplits.add((double) (now - startTime));
+        }
+        racer.checkpoints++;
+        racer.totalTime = now - startTimeOr(now);
+        updateRacerGap(racer);
+
+        // Racers behind can't have a better time (time travel prevention)
+        double runningMaxTime = racer.totalTime;
+        int position = standings.positionOf(racer.id);
+        List<Racer> lowerRacers = new ArrayList<>();
+        for (int p = position + 1; p <= standings.size(); p++) {
+            lowerRacers.add(findRacer(standings.get(p).racerId()));
+        }
+        for (Racer lower : lowerRacers) {
+            if (lower.disqualified) {
+                break;
+            }
+            if (runningMaxTime > lower.totalTime) {
+                lower.totalTime = runningMaxTime;
+                updateRacerGap(lower);
+            } else {
+                runningMaxTime = lower.totalTime;
+            }
+        }
+
+        // The first checkpoint after the start only arms lap timing
+        int requiredCheckpoints = racer.lastLapTimestamp == 0 ? 1 : checkpointsPerLap;
+        if (racer.checkpoints >= requiredCheckpoints) {
+            if (racer.lastLapTimestamp == 0) {
+                racer.checkpoints = 0;
+                racer.currentLapSplits = new ArrayList<>();
+                racer.lastLapTimestamp = now;
+                updateRacerGap(racer);
+                broadcastUpdate();
+                return;
+            }
+            completeLap(racer, now - racer.lastLapTimestamp);
+            racer.laps++;
+            racer.checkpoints = 0;
+            racer.currentLapSplits = new ArrayList<>();
+            racer.lastLapTimestamp = now;
+            updateRacerGap(racer);
+            checkRaceFinish(racer);
+        }
+        broadcastUpdate();
+    }
+
+    /**
+     * Apply a checkpoint with client computed timing. The client decides when a lap is complete.
+     */
+    private void handleTimedCheckpoint(Racer racer, JsonObject timing) {
+        long now = System.currentTimeMillis();
+        long raceNanos = timing.get("raceNanos").getAsLong();
+        racer.totalTime = raceNanos > 0 ? nanosToMs(raceNanos) : now - startTimeOr(now);
+
+        if (timing.get("armed").getAsBoolean()) {
+            racer.checkpoints = 0;
+            racer.currentLapSplits = new ArrayList<>();
+            racer.lastLapTimestamp = now;
+            updateRacerGap(racer);
+            broadcastUpdate();
+            return;
+        }
+
+        racer.checkpoints++;
+        racer.currentLapSplits.add(nanosToMs(timing.get("splitNanos").getAsLong()));
+        racer.delta = timing.has("deltaNanos") ? nanosToMs(timing.get("deltaNanos").getAsLong()) : null;
+
+        if (timing.has("lapNanos") && timing.get("lapNanos").getAsLong() >= 0) {
+            completeLap(racer, nanosToMs(timing.get("lapNanos").getAsLong()));
+            racer.laps++;
+            racer.checkpoints = 0;
+            racer.currentLapSplits = new ArrayList<>();
+            racer.lastLapTimestamp = now;
+            updateRacerGap(racer);
+            checkRaceFinish(racer);
+        } else {
+            updateRacerGap(racer);
+        }
+        broadcastUpdate();
+    }
+
+    /**
+     * Add the lap to the racer's history and best lap. The lap count is updated by the caller.
+     */
+    private static void completeLap(Racer racer, double lapTime) {
+        racer.history.add(new LapData(racer.laps + 1, lapTime, List.copyOf(racer.currentLapSplits)));
+        if (racer.bestLap == null || lapTime < racer.bestLap) {
+            racer.bestLap = lapTime;
+        }
+    }
+
+    private void updateRacerGap(Racer racer) {
+        String key = racer.laps + "-" + racer.checkpoints;
+        Double record = courseRecords.get(key);
+        if (record == null || racer.totalTime < record) {
+            record = racer.totalTime;
+            courseRecords.put(key, record);
+        }
+        racer.gap = racer.totalTime - record;
+        standings.update(racer.key());
+    }
+
+    private void checkRaceFinish(Racer racer) {
+        if ("racing".equals(status)) {
+            if (racer.laps >= totalLaps) {
+                racer.finished = true;
+                status = "finishing";
+                Icekart.LOGGER.info("[IceKart] Local race server: {} finished, finishing mode", racer.name);
+            }
+        } else if ("finishing".equals(status)) {
+            racer.finished = true;
+        }
+
+        if (racers.stream().filter(r -> !r.disqualified).allMatch(r -> r.finished)) {
+            status = "stopped";
+            endTime = System.currentTimeMillis();
+            Icekart.LOGGER.info("[IceKart] Local race server: all racers finished, race stopped");
+        }
+    }
+
+    /**
+     * Check if the racer's last applied crossing of the gate is the same crossing (within the
+     * tolerance of race time), and remember the crossing otherwise.
+     */
+    private boolean isDuplicateCrossing(String racerId, String gate, long raceNanos) {
+        String key = racerId + ":" + gate;
+        Long last = lastCrossings.get(key);
+        if (last != null && Math.abs(raceNanos - last) < CROSSING_TOLERANCE_NANOS) {
+            return true;
+        }
+        lastCrossings.put(key, raceNanos);
+        return false;
+    }
+
+    // --- Racers ---
+
+    private void handleRegister(String name) {
+        if (name == null || name.isEmpty() || racers.stream().anyMatch(r -> r.name.equals(name))) {
+            return;
+        }
+        // Same ID format as the Bun server, unique even when registering several racers per millisecond
+        lastRacerId = Math.max(System.currentTimeMillis(), lastRacerId + 1);
+        Racer racer = new Racer("r" + lastRacerId, name);
+        racers.add(racer);
+        standings.update(racer.key());
+        Icekart.LOGGER.info("[IceKart] Local race server: added {}", name);
+        broadcastUpdate();
+    }
+
+    private void handleRemove(String name) {
+        Racer racer = racers.stream().filter(r -> r.name.equals(name)).findFirst().orElse(null);
+        if (racer == null) {
+            return;
+        }
+        racers.remove(racer);
+        standings.remove(racer.id);
+        broadcastUpdate();
+    }
+
+    private void handleDisqualify(String racerId) {
+        Racer racer = findRacer(racerId);
+        if (racer == null) {
+            return;
+        }
+        racer.disqualified = !racer.disqualified;
+        standings.update(racer.key());
+        broadcastUpdate();
+    }
+
+    // --- Trackers ---
+
+    private void handleTrackerJoin(Object connection, JsonObject data) {
+        String trackerId = getString(data, "trackerId");
+        if (trackerId == null || trackerId.isEmpty()) {
+            return;
+        }
+        // A tracker joining again keeps its seniority
+        Tracker previous = null;
+        Iterator<Tracker> iterator = trackers.iterator();
+        while (iterator.hasNext()) {
+            Tracker tracker = iterator.next();
+            if (tracker.connection == connection || tracker.trackerId.equals(trackerId)) {
+                previous = tracker;
+                iterator.remove();
+                break;
+            }
+        }
+        int priority = data.has("priority") ? data.get("priority").getAsInt() : 0;
+        Tracker tracker = new Tracker(connection, trackerId, priority,
+                previous != null ? previous.joinedAt : System.currentTimeMillis());
+        if (previous != null && previous == leader) {
+            leader = tracker;
+        }
+        trackers.add(tracker);
+
+        if (!electLeader()) {
+            // Leader unchanged, only tell the new tracker who it is
+            outbox.send(connection, leaderMessage());
+        }
+    }
+
+    /**
+     * Elect the tracker with the highest priority (the longest connected one on ties).
+     *
+     * @return true if the leader changed (and was announced to all trackers)
+     */
+    private boolean electLeader() {
+        Tracker next = null;
+        for (Tracker tracker : trackers) {
+            if (next == null || tracker.priority > next.priority
+                    || (tracker.priority == next.priority && tracker.joinedAt < next.joinedAt)) {
+                next = tracker;
+            }
+        }
+        if (next == leader) {
+            return false;
+        }
+        leader = next;
+        leaderTerm++;
+        String message = leaderMessage();
+        for (Tracker tracker : trackers) {
+            outbox.send(tracker.connection, message);
+        }
+        return true;
+    }
+
+    private String leaderMessage() {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "leader");
+        msg.add("shard", null);
+        msg.addProperty("leader", leader != null ? leader.trackerId : null);
+        msg.addProperty("term", leaderTerm);
+        return msg.toString();
+    }
+
+    // --- Helpers ---
+
+    private String pongMessage(JsonObject ping) {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "pong");
+        msg.add("id", ping.get("id"));
+        msg.addProperty("startTime", startTime);
+        msg.addProperty("elapsedNanos", elapsedNanos());
+        return msg.toString();
+    }
+
+    private Long elapsedNanos() {
+        return startTime != null ? System.nanoTime() - startNanos : null;
+    }
+
+    private void broadcastUpdate() {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "update");
+        msg.add("racers", racersJson());
+        msg.addProperty("status", status);
+        msg.addProperty("endTime", endTime);
+        outbox.broadcast(msg.toString());
+    }
+
+    private JsonArray racersJson() {
+        JsonArray array = new JsonArray();
+        racers.forEach(racer -> array.add(racer.toJson()));
+        return array;
+    }
+
+    private boolean isRacing() {
+        return "racing".equals(status) || "finishing".equals(status);
+    }
+
+    private Racer findActiveRacer(String racerId) {
+        if (!isRacing()) {
+            return null;
+        }
+        Racer racer = findRacer(racerId);
+        return racer == null || racer.disqualified || racer.finished ? null : racer;
+    }
+
+    private Racer findRacer(String racerId) {
+        for (Racer racer : racers) {
+            if (racer.id.equals(racerId)) {
+                return racer;
+            }
+        }
+        return null;
+    }
+
+    private long startTimeOr(long now) {
+        return startTime != null ? startTime : now;
+    }
+
+    private static double nanosToMs(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+
+    private static String getString(JsonObject json, String key) {
+        JsonElement element = json.get(key);
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+
+    private static JsonArray toArray(List<Double> values) {
+        JsonArray array = new JsonArray();
+        values.forEach(array::add);
+        return array;
+    }
+}
@@ -0,0 +1,108 @@
+package de.agentquack.icekart.server;
+
+import de.agentquack.icekart.Icekart;
+import de.agentquack.icekart.race.RaceServerConnection;
+import de.agentquack.icekart.race.RaceSession;
+import de.agentquack.icekart.race.RaceSessions;
+import de.agentquack.icekart.track.TrackLibrary;
+import de.agentquack.icekart.track.TrackStorage;
+import de.agentquack.icekart.tracking.TrackerElection;
+import net.fabricmc.api.DedicatedServerModInitializer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.entity.Entity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Dedicated server entrypoint: tracks all racers on the server and reports their
+ * crossings to the race server(s) directly, one {@link RaceSession} per configured heat.
+ * Uses the track files of config/icekart, which can be copied over from the client
+ * that created the tracks.
+ */
+public class IcekartServer implements DedicatedServerModInitializer {
+
+    private RaceSessions sessions;
+
+    @Override
+    public void onInitializeServer() {
+        Icekart.LOGGER.info("[IceKart] Server initialized (authoritative tracking)");
+
+        ServerLifecycleEvents.SERVER_STARTED.register(this::onServerStarted);
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+            if (sessions != null) {
+                sessions.closeAll();
+            }
+            sessions = null;
+        });
+        ServerTickEvents.END_SERVER_TICK.register(this::tick);
+    }
+
+    private void onServerStarted(MinecraftServer server) {
+        Path configDir = FabricLoader.getInstance().getConfigDir().resolve("icekart");
+        ServerConfig config = ServerConfig.load(configDir);
+        String worldName = config.trackKey() != null
+                ? config.trackKey()
+                : server.getSaveProperties().getLevelName();
+
+        sessions = new RaceSessions();
+        for (ServerConfig.SessionConfig sessionConfig : config.sessions()) {
+            RaceSession session = new RaceSession(sessionConfig.name(),
+                    new RaceServerConnection(sessionConfig.raceServerUrl(), TrackerElection.SERVER_PRIORITY));
+            sessions.add(session);
+            loadTrack(server, configDir, worldName, sessionConfig.track(), session);
+        }
+    }
+
+    /**
+     * One pass over the racer vehicles per tick, each handed to its session.
+     */
+    private void tick(MinecraftServer server) {
+        if (sessions == null || sessions.isEmpty()) {
+            return;
+        }
+        sessions.beginTick(System.nanoTime());
+        for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+            // Only vehicles trigger gates, walking through them doesn't count
+            Entity vehicle = player.getVehicle();
+            if (vehicle != null) {
+                sessions.dispatch(player.getName().getString(), vehicle.getPos());
+            }
+        }
+        sessions.endTick();
+    }
+
+    /**
+     * Load a track of the world (the active one if no name is given) in the background
+     * and hand it to the session.
+     */
+    private static void loadTrack(MinecraftServer server, Path configDir, String worldName, String trackName,
+                                  RaceSession session) {
+        String fileKey = worldName.replaceAll("[^a-zA-Z0-9_-]", "_");
+        CompletableFuture.supplyAsync(() -> TrackLibrary.load(configDir, fileKey), TrackStorage.getExecutor())
+                .thenCompose(library -> {
+                    String name = trackName != null && library.hasTrack(trackName) ? trackName : library.getActiveTrack();
+                    if (trackName != null && !name.equals(trackName)) {
+                        Icekart.LOGGER.warn("[IceKart] Track {} not found, session {} uses {}",
+                                trackName, session.getName(), name);
+                    }
+                    return TrackStorage.loadAsync(library.getTrackPath(name), worldName)
+                            .thenApply(stored -> {
+                                // Read only, the track is edited on the client
+                                stored.journal().close();
+                                server.execute(() -> session.setTrack(name, stored.track()));
+                                return name;
+                            });
+                })
+                .whenComplete((name, error) -> {
+                    if (error != null) {
+                        Icekart.LOGGER.error("[IceKart] Failed to load track for session {}: {}",
+                                session.getName(), error.getMessage());
+                    }
+                });
+    }
+}
@@ -0,0 +1,86 @@
+package de.agentquack.icekart.server;
+
+import de.agentquack.icekart.Icekart;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Settings of the dedicated server side, stored in config/icekart/server.properties.
+ * A default file is written on first start.
+ *
+ * Several heats can run at once by listing session names in "sessions"; each session
+ * has its own race server ("name.race-server-url") and track ("name.track").
+ *
+ * @param trackKey key of the track files in config/icekart (the world name the tracks were
+ *                 created under on the client), null to use the level name
+ * @param sessions the race sessions to run
+ */
+public record ServerConfig(String trackKey, List<SessionConfig> sessions) {
+
+    public static final String FILE_NAME = "server.properties";
+    public static final String DEFAULT_RACE_SERVER_URL = "ws://localhost:3000/ws";
+    public static final String DEFAULT_SESSION = "default";
+
+    /**
+     * @param track name of the track in the world's track library, null for the active track
+     */
+    public record SessionConfig(String name, String raceServerUrl, String track) {
+    }
+
+    /**
+     * Read the config from the given directory, falling back to the defaults.
+     */
+    public static ServerConfig load(Path configDir) {
+        Path path = configDir.resolve(FILE_NAME);
+        Properties properties = new Properties();
+        if (Files.exists(path)) {
+            try (Reader reader = Files.newBufferedReader(path)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                Icekart.LOGGER.error("[IceKart] Failed to read {}, using defaults: {}", path, e.getMessage());
+            }
+        } else {
+            writeDefaults(path);
+        }
+
+        String url = properties.getProperty("race-server-url", DEFAULT_RACE_SERVER_URL).trim();
+        String trackKey = properties.getProperty("track-key", "").trim();
+
+        List<SessionConfig> sessions = new ArrayList<>();
+        for (String name : properties.getProperty("sessions", "").split(",")) {
+            name = name.trim();
+            if (!name.isEmpty()) {
+                String track = properties.getProperty(name + ".track", "").trim();
+                sessions.add(new SessionConfig(name, properties.getProperty(name + ".race-server-url", url).trim(),
+                        track.isEmpty() ? null : track));
+            }
+        }
+        if (sessions.isEmpty()) {
+            sessions.add(new SessionConfig(DEFAULT_SESSION, url, null));
+        }
+        return new ServerConfig(trackKey.isEmpty() ? null : trackKey, List.copyOf(sessions));
+    }
+
+    private static void writeDefaults(Path path) {
+        Properties defaults = new Properties();
+        defaults.setProperty("race-server-url", DEFAULT_RACE_SERVER_URL);
+        defaults.setProperty("track-key", "");
+        defaults.setProperty("sessions", "");
+        try {
+            Files.createDirectories(path.getParent());
+            try (Writer writer = Files.newBufferedWriter(path)) {
+                defaults.store(writer, "IceKart server settings (track-key: world name of the track files, empty = level name;"
+                        + " sessions: comma separated heats, each with <name>.race-server-url and <name>.track)");
+            }
+        } catch (IOException e) {
+            Icekart.LOGGER.warn("[IceKart] Failed to write default {}: {}", path, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package de.agentquack.icekart.timing;
+
+/**
+ * Timing of a single gate crossing, computed by {@link RacerTiming}.
+ * All durations are in nanoseconds of the monotonic clock ({@link System#nanoTime()}).
+ *
+ * @param racerId     server racer ID
+ * @param gateId      ID of the crossed waypoint
+ * @param armed       true if this crossing only armed lap timing (first crossing of the race)
+ * @param lap         number of the lap this crossing belongs to (1 based), 0 when arming
+ * @param splitIndex  index of this split within the lap (0 based), -1 when arming
+ * @param splitNanos  time since the start of the lap
+ * @param sectorNanos time since the previous crossing of this racer
+ * @param lapNanos    lap time if this crossing completed a lap, otherwise -1
+ * @param raceNanos   time since the race start
+ * @param bestLapNanos best lap time so far, -1 if no lap was completed yet
+ * @param deltaNanos  delta to the best lap (positive = slower), {@link #NO_DELTA} if unknown
+ */
+public record CrossingTiming(String racerId, String gateId, boolean armed, int lap, int splitIndex,
+                             long splitNanos, long sectorNanos, long lapNanos, long raceNanos,
+                             long bestLapNanos, long deltaNanos) {
+
+    public static final long NO_DELTA = Long.MIN_VALUE;
+
+    public boolean hasDelta() {
+        return deltaNanos != NO_DELTA;
+    }
+
+    public boolean completesLap() {
+        return lapNanos >= 0;
+    }
+}
@@ -0,0 +1,147 @@
+package de.agentquack.icekart.timing;
+
+import java.util.Arrays;
+
+/**
+ * Recorded lap of a racer, used as reference for the live delta.
+ * Samples are stored in primitive arrays (time since lap start and vehicle position),
+ * about 32 bytes per tick.
+ */
+public final class GhostLap {
+
+    private final long[] times;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+    private final long lapNanos;
+
+    GhostLap(long[] times, double[] xs, double[] ys, double[] zs, long lapNanos) {
+        this.times = times;
+        this.xs = xs;
+        this.ys = ys;
+        this.zs = zs;
+        this.lapNanos = lapNanos;
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public long getLapNanos() {
+        return lapNanos;
+    }
+
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    /**
+     * Index of the sample closest to a position, searching only the window
+     * [from, from + window). The search never moves backwards, so following a
+     * racer through a lap costs O(window) per tick.
+     */
+    public int findNearest(int from, int window, double x, double y, double z) {
+        int end = Math.min(times.length, from + window);
+        int nearest = from;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int i = from; i < end; i++) {
+            double distance = distanceSq(i, x, y, z);
+            if (distance < nearestDistance) {
+                nearest = i;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Ghost time at a position near the given sample, interpolated by projecting the
+     * position onto the segment to the next (or from the previous) sample.
+     */
+    public long timeAt(int index, double x, double y, double z) {
+        if (index + 1 < times.length) {
+            double fraction = project(index, index + 1, x, y, z);
+            if (fraction > 0 || index == 0) {
+                return times[index] + (long) ((times[index + 1] - times[index]) * fraction);
+            }
+        }
+        if (index > 0) {
+            double fraction = project(index - 1, index, x, y, z);
+            return times[index - 1] + (long) ((times[index] - times[index - 1]) * fraction);
+        }
+        return times[index];
+    }
+
+    /**
+     * Fraction (0..1) of the segment between two samples closest to the position.
+     */
+    private double project(int a, int b, double x, double y, double z) {
+        double dx = xs[b] - xs[a];
+        double dy = ys[b] - ys[a];
+        double dz = zs[b] - zs[a];
+        double lengthSq = dx * dx + dy * dy + dz * dz;
+        if (lengthSq == 0) {
+            return 0;
+        }
+        double t = ((x - xs[a]) * dx + (y - ys[a]) * dy + (z - zs[a]) * dz) / lengthSq;
+        return Math.max(0, Math.min(1, t));
+    }
+
+    private double distanceSq(int i, double x, double y, double z) {
+        double dx = xs[i] - x;
+        double dy = ys[i] - y;
+        double dz = zs[i] - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Collects the samples of the lap in progress.
+     */
+    static final class Recorder {
+
+        // 20 minutes at 20 ticks per second, longer laps don't get a ghost
+        private static final int MAX_SAMPLES = 24_000;
+
+        private long[] times = new long[256];
+        private double[] xs = new double[256];
+        private double[] ys = new double[256];
+        private double[] zs = new double[256];
+        private int size = 0;
+        private boolean overflowed = false;
+
+        void add(long time, double x, double y, double z) {
+            if (size == MAX_SAMPLES) {
+                overflowed = true;
+                return;
+            }
+            if (size == times.length) {
+                int capacity = Math.min(MAX_SAMPLES, times.length * 2);
+                times = Arrays.copyOf(times, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+                zs = Arrays.copyOf(zs, capacity);
+            }
+            times[size] = time;
+            xs[size] = x;
+            ys[size] = y;
+            zs[size] = z;
+            size++;
+        }
+
+        void reset() {
+            size = 0;
+            overflowed = false;
+        }
+
+        /**
+         * Copy the recorded samples into a ghost, null if nothing (or too much) was recorded.
+         */
+        GhostLap toGhost(long lapNanos) {
+            if (size == 0 || overflowed) {
+                return null;
+            }
+            return new GhostLap(Arrays.copyOf(times, size), Arrays.copyOf(xs, size),
+                    Arrays.copyOf(ys, size), Arrays.copyOf(zs, size), lapNanos);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package de.agentquack.icekart.timing;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Maps the race clock of the race server onto the local monotonic clock ({@link System#nanoTime()}).
+ * The race server reports the time elapsed since the race start, measured on its own monotonic
+ * clock, with every init message and in reply to pings. A ping is timed locally, so the race
+ * start is estimated as its send time plus half the round trip minus the reported elapsed time;
+ * of the recent samples the one with the shortest round trip wins, it leaves the least room for
+ * asymmetric latency. Until the first pong the elapsed time of the init message is used as is,
+ * which is late by the one-way latency.
+ *
+ * What is left of the offset is measured by the race server, which probes the race time of its
+ * trackers ({@link #probeAnswer}) and corrects the race times they report.
+ *
+ * Wall clocks of different machines are never compared, the server's start time (epoch ms) only
+ * identifies the race. Thread-safe.
+ */
+public class RaceClock {
+
+    public static final long PING_INTERVAL_MS = 5_000;
+
+    // Samples to pick the shortest round trip from, older ones may have drifted
+    private static final int SAMPLES = 8;
+
+    // Race start time on the race server (epoch ms), identifies the race; null if no race
+    private Long raceStartTime = null;
+    // Estimated race start on the local monotonic clock, 0 if no race
+    private long startNanos = 0;
+
+    private final long[] sampleStartNanos = new long[SAMPLES];
+    private final long[] sampleRttNanos = new long[SAMPLES];
+    private int sampleCount = 0;
+    private int nextSample = 0;
+
+    private int pingId = 0;
+    private long pingSentNanos = 0;
+    private long lastRttNanos = -1;
+
+    /**
+     * A ping to send now, the race server answers with a pong echoing its ID.
+     */
+    public synchronized JsonObject pingMessage(long nowNanos) {
+        pingId++;
+        pingSentNanos = nowNanos;
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "ping");
+        msg.addProperty("id", pingId);
+        return msg;
+    }
+
+    /**
+     * Race state of an init message.
+     *
+     * @param startTime    race start time on the race server (epoch ms), null if no race was started
+     * @param elapsedNanos time since the race start on the race server when the message was sent,
+     *                     null if the server doesn't report it (the race then starts on receipt)
+     * @param receivedNanos monotonic time the message was received
+     */
+    public synchronized void onInit(Long startTime, Long elapsedNanos, long receivedNanos) {
+        if (startTime == null) {
+            raceStartTime = null;
+            startNanos = 0;
+            clearSamples();
+            return;
+        }
+        if (!startTime.equals(raceStartTime)) {
+            raceStartTime = startTime;
+            clearSamples();
+        }
+        if (sampleCount == 0) {
+            startNanos = receivedNanos - (elapsedNanos != null ? Math.max(0, elapsedNanos) : 0);
+        }
+    }
+
+    /**
+     * Answer to a {@link #pingMessage ping}. Pongs of other pings or of another race are ignored.
+     */
+    public synchronized void onPong(int id, Long startTime, Long elapsedNanos, long receivedNanos) {
+        if (id != pingId || pingSentNanos == 0) {
+            return;
+        }
+        long rtt = receivedNanos - pingSentNanos;
+        long sentNanos = pingSentNanos;
+        pingSentNanos = 0;
+        lastRttNanos = rtt;
+        if (startTime == null || elapsedNanos == null || !startTime.equals(raceStartTime)) {
+            return;
+        }
+
+        sampleStartNanos[nextSample] = sentNanos + rtt / 2 - elapsedNanos;
+        sampleRttNanos[nextSample] = rtt;
+        nextSample = (nextSample + 1) % SAMPLES;
+        sampleCount = Math.min(SAMPLES, sampleCount + 1);
+
+        int best = 0;
+        for (int i = 1; i < sampleCount; i++) {
+            if (sampleRttNanos[i] < sampleRttNanos[best]) {
+                best = i;
+            }
+        }
+        startNanos = sampleStartNanos[best];
+    }
+
+    /**
+     * Answer to a clock probe of the race server: the race time when the probe was received,
+     * omitted while the race start is unknown.
+     *
+     * @param raceStartNanos race start the reported race times are measured from, 0 if unknown
+     */
+    public static JsonObject probeAnswer(JsonElement id, long raceStartNanos, long receivedNanos) {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "clock");
+        msg.add("id", id);
+        if (raceStartNanos != 0) {
+            msg.addProperty("raceNanos", receivedNanos - raceStartNanos);
+        }
+        return msg;
+    }
+
+    private void clearSamples() {
+        sampleCount = 0;
+        nextSample = 0;
+    }
+
+    /**
+     * Estimated race start on the local monotonic clock, 0 if no race was started.
+     */
+    public synchronized long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Round trip of the last answered ping, -1 if none.
+     */
+    public synchronized long getLastRttNanos() {
+        return lastRttNanos;
+    }
+}
@@ -0,0 +1,244 @@
+package de.agentquack.icekart.timing;
+
+import java.util.Arrays;
+
+/**
+ * Timing state of a single racer: current lap splits, last/best lap and best sectors.
+ * Follows the same lap rules as the race server: the first crossing after the race
+ * start arms lap timing, after that every gatesPerLap crossings complete a lap.
+ * The best lap is kept as a {@link GhostLap} to compute the live delta.
+ */
+public class RacerTiming {
+
+    /**
+     * Timing state to resume a racer with after a client restart. Points in time are relative to
+     * the race start, the monotonic clock of the restarted client has a different origin. The
+     * ghost lap is not kept, the live delta returns with the next best lap.
+     *
+     * @param lapStartRaceNanos     race time the current lap started
+     * @param lastCrossingRaceNanos race time of the last crossing
+     * @param splits                split times of the current lap
+     */
+    public record State(String racerId, boolean armed, int completedLaps, long lapStartRaceNanos,
+                        long lastCrossingRaceNanos, long[] splits, long lastLapNanos, long bestLapNanos,
+                        long[] bestSectors, long[] lastLapSectors) {
+    }
+
+    private final String racerId;
+
+    private boolean armed = false;
+    private int completedLaps = 0;
+    private long lapStartNanos = 0;
+    private long lastCrossingNanos = 0;
+
+    // Split times (since lap start) of the current lap
+    private long[] splits = new long[16];
+    private int splitCount = 0;
+
+    private long lastLapNanos = -1;
+    private long bestLapNanos = -1;
+    // Best time per sector index, -1 if not driven yet
+    private long[] bestSectorNanos = new long[0];
+    // Sector times of the last completed lap
+    private long[] lastLapSectors = new long[0];
+
+    // Samples per tick to search ahead of the previous ghost sample (1 second)
+    private static final int GHOST_WINDOW = 20;
+
+    private final GhostLap.Recorder recorder = new GhostLap.Recorder();
+    private GhostLap ghost = null;
+    private int ghostCursor = 0;
+    private long deltaNanos = CrossingTiming.NO_DELTA;
+
+    public RacerTiming(String racerId) {
+        this.racerId = racerId;
+    }
+
+    /**
+     * Record a crossing at the given monotonic time.
+     */
+    public CrossingTiming onCrossing(String gateId, long crossingNanos, long raceStartNanos, int gatesPerLap) {
+        long raceNanos = raceStartNanos > 0 ? crossingNanos - raceStartNanos : 0;
+
+        if (!armed) {
+            armed = true;
+            lapStartNanos = crossingNanos;
+            lastCrossingNanos = crossingNanos;
+            splitCount = 0;
+            startGhostLap();
+            return new CrossingTiming(racerId, gateId, true, 0, -1, 0, 0, -1, raceNanos, bestLapNanos,
+                    CrossingTiming.NO_DELTA);
+        }
+
+        long splitNanos = crossingNanos - lapStartNanos;
+        long sectorNanos = crossingNanos - lastCrossingNanos;
+        int splitIndex = splitCount;
+        addSplit(splitNanos);
+        updateBestSector(splitIndex, sectorNanos);
+        lastCrossingNanos = crossingNanos;
+
+        long lapNanos = -1;
+        long delta = deltaNanos;
+        if (splitCount >= Math.max(1, gatesPerLap)) {
+            lapNanos = splitNanos;
+            lastLapNanos = lapNanos;
+            // At the line the delta is exact: lap time against the previous best
+            delta = bestLapNanos >= 0 ? lapNanos - bestLapNanos : CrossingTiming.NO_DELTA;
+            if (bestLapNanos < 0 || lapNanos < bestLapNanos) {
+                bestLapNanos = lapNanos;
+                GhostLap recorded = recorder.toGhost(lapNanos);
+                if (recorded != null) {
+                    ghost = recorded;
+                }
+            }
+            lastLapSectors = getSectors();
+            completedLaps++;
+            lapStartNanos = crossingNanos;
+            splitCount = 0;
+            startGhostLap();
+        }
+
+        int lap = lapNanos >= 0 ? completedLaps : completedLaps + 1;
+        return new CrossingTiming(racerId, gateId, false, lap, splitIndex, splitNanos, sectorNanos, lapNanos,
+                raceNanos, bestLapNanos, delta);
+    }
+
+    /**
+     * Record the vehicle position of a tick and update the live delta against the ghost.
+     */
+    public void onSample(long nanos, double x, double y, double z) {
+        if (!armed) {
+            return;
+        }
+        long lapTime = nanos - lapStartNanos;
+        recorder.add(lapTime, x, y, z);
+
+        if (ghost == null) {
+            return;
+        }
+        ghostCursor = ghost.findNearest(ghostCursor, GHOST_WINDOW, x, y, z);
+        deltaNanos = lapTime - ghost.timeAt(ghostCursor, x, y, z);
+    }
+
+    private void startGhostLap() {
+        recorder.reset();
+        ghostCursor = 0;
+    }
+
+    private void addSplit(long splitNanos) {
+        if (splitCount == splits.length) {
+            splits = Arrays.copyOf(splits, splits.length * 2);
+        }
+        splits[splitCount++] = splitNanos;
+    }
+
+    private void updateBestSector(int index, long sectorNanos) {
+        if (index >= bestSectorNanos.length) {
+            int oldLength = bestSectorNanos.length;
+            bestSectorNanos = Arrays.copyOf(bestSectorNanos, index + 1);
+            Arrays.fill(bestSectorNanos, oldLength, bestSectorNanos.length, -1);
+        }
+        if (bestSectorNanos[index] < 0 || sectorNanos < bestSectorNanos[index]) {
+            bestSectorNanos[index] = sectorNanos;
+        }
+    }
+
+    // --- Resume ---
+
+    /**
+     * Timing state relative to the given race start, to restore with {@link #fromState}.
+     */
+    public State getState(long raceStartNanos) {
+        return new State(racerId, armed, completedLaps, lapStartNanos - raceStartNanos,
+                lastCrossingNanos - raceStartNanos, getSplits(), lastLapNanos, bestLapNanos,
+                getBestSectors(), getLastLapSectors());
+    }
+
+    /**
+     * Restore a racer from its state, with the race start on this client's monotonic clock.
+     */
+    public static RacerTiming fromState(State state, long raceStartNanos) {
+        RacerTiming timing = new RacerTiming(state.racerId());
+        timing.armed = state.armed();
+        timing.completedLaps = state.completedLaps();
+        timing.lapStartNanos = raceStartNanos + state.lapStartRaceNanos();
+        timing.lastCrossingNanos = raceStartNanos + state.lastCrossingRaceNanos();
+        for (long split : state.splits()) {
+            timing.addSplit(split);
+        }
+        timing.lastLapNanos = state.lastLapNanos();
+        timing.bestLapNanos = state.bestLapNanos();
+        timing.bestSectorNanos = state.bestSectors().clone();
+        timing.lastLapSectors = state.lastLapSectors().clone();
+        return timing;
+    }
+
+    // --- Getters ---
+
+    public String getRacerId() {
+        return racerId;
+    }
+
+    public boolean isArmed() {
+        return armed;
+    }
+
+    public int getCompletedLaps() {
+        return completedLaps;
+    }
+
+    /**
+     * Number of gates crossed in the current lap.
+     */
+    public int getSplitCount() {
+        return splitCount;
+    }
+
+    public long getLastLapNanos() {
+        return lastLapNanos;
+    }
+
+    public long getBestLapNanos() {
+        return bestLapNanos;
+    }
+
+    /**
+     * Live delta to the best lap (positive = slower), {@link CrossingTiming#NO_DELTA} without a ghost.
+     */
+    public long getDeltaNanos() {
+        return deltaNanos;
+    }
+
+    /**
+     * Ghost of the best lap, null if no lap was completed yet.
+     */
+    public GhostLap getGhost() {
+        return ghost;
+    }
+
+    /**
+     * Split times of the current lap.
+     */
+    public long[] getSplits() {
+        return Arrays.copyOf(splits, splitCount);
+    }
+
+    /**
+     * Sector times of the current lap.
+     */
+    public long[] getSectors() {
+        long[] sectors = new long[splitCount];
+        for (int i = 0; i < splitCount; i++) {
+            sectors[i] = i == 0 ? splits[0] : splits[i] - splits[i - 1];
+        }
+        return sectors;
+    }
+
+    public long[] getLastLapSectors() {
+        return lastLapSectors.clone();
+    }
+
+    public long[] getBestSectors() {
+        return bestSectorNanos.clone();
+    }
+}
@@ -0,0 +1,316 @@
+package de.agentquack.icekart.timing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Order-statistics tree of race standings (a treap augmented with subtree sizes).
+ * Racers are ordered like on the server: disqualified last, then most laps, most
+ * checkpoints, lowest total time (0 = no time yet), and finally by racer ID so the
+ * order is total.
+ *
+ * Updating a racer, looking up its position and selecting the racer at a position
+ * are O(log n); the leader is cached, so {@link #getLeader()} is O(1).
+ * Not thread safe.
+ */
+public class StandingsTree {
+
+    /**
+     * Ranking key of a racer.
+     */
+    public record Key(String racerId, boolean disqualified, int laps, int checkpoints, long totalTime)
+            implements Comparable<Key> {
+
+        @Override
+        public int compareTo(Key other) {
+            if (disqualified != other.disqualified) {
+                return disqualified ? 1 : -1;
+            }
+            if (laps != other.laps) {
+                return Integer.compare(other.laps, laps);
+            }
+            if (checkpoints != other.checkpoints) {
+                return Integer.compare(other.checkpoints, checkpoints);
+            }
+            long timeA = totalTime == 0 ? Long.MAX_VALUE : totalTime;
+            long timeB = other.totalTime == 0 ? Long.MAX_VALUE : other.totalTime;
+            if (timeA != timeB) {
+                return Long.compare(timeA, timeB);
+            }
+            return racerId.compareTo(other.racerId);
+        }
+    }
+
+    private static final class Node {
+        final Key key;
+        final int priority;
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(Key key, int priority) {
+            this.key = key;
+            this.priority = priority;
+        }
+    }
+
+    private final Map<String, Key> keys = new HashMap<>();
+    private Node root = null;
+    private Key leader = null;
+    private int seed = 0x2545F491;
+
+    /**
+     * Insert or update a racer. O(log n)
+     */
+    public void update(Key key) {
+        Key previous = keys.put(key.racerId(), key);
+        if (key.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            root = delete(root, previous);
+        }
+        root = insert(root, new Node(key, nextPriority()));
+        updateLeader();
+    }
+
+    /**
+     * Remove a racer. O(log n)
+     */
+    public boolean remove(String racerId) {
+        Key previous = keys.remove(racerId);
+        if (previous == null) {
+            return false;
+        }
+        root = delete(root, previous);
+        updateLeader();
+        return true;
+    }
+
+    public void clear() {
+        keys.clear();
+        root = null;
+        leader = null;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public boolean contains(String racerId) {
+        return keys.containsKey(racerId);
+    }
+
+    public Key getKey(String racerId) {
+        return keys.get(racerId);
+    }
+
+    /**
+     * Key of the racer in first position, null if empty. O(1)
+     */
+    public Key getLeader() {
+        return leader;
+    }
+
+    /**
+     * Position (1 based) of a racer, or -1 if unknown. O(log n)
+     */
+    public int positionOf(String racerId) {
+        Key key = keys.get(racerId);
+        if (key == null) {
+            return -1;
+        }
+        int position = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp < 0) {
+                node = node.left;
+            } else {
+                position += size(node.left) + 1;
+                if (cmp == 0) {
+                    return position;
+                }
+                node = node.right;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Key of the racer at a position (1 based), or null if out of range. O(log n)
+     */
+    public Key get(int position) {
+        if (position < 1 || position > size(root)) {
+            return null;
+        }
+        int remaining = position;
+        Node node = root;
+        while (node != null) {
+            int leftSize = size(node.left);
+            if (remaining <= leftSize) {
+                node = node.left;
+            } else if (remaining == leftSize + 1) {
+                return node.key;
+            } else {
+                remaining -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Visit all racers in standings order. O(n)
+     */
+    public void forEachInOrder(Consumer<Key> action) {
+        Deque<Node> stack = new ArrayDeque<>();
+        Node node = root;
+        while (node != null || !stack.isEmpty()) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+            node = stack.pop();
+            action.accept(node.key);
+            node = node.right;
+        }
+    }
+
+    public List<Key> toList() {
+        List<Key> list = new ArrayList<>(size());
+        forEachInOrder(list::add);
+        return list;
+    }
+
+    /**
+     * Time gap of a racer to the leader, or -1 if not comparable
+     * (unknown racer, disqualified, no time yet or laps behind).
+     */
+    public long getTimeGap(String racerId) {
+        Key key = keys.get(racerId);
+        if (key == null || leader == null || key.disqualified() || key.laps() != leader.laps()
+                || key.totalTime() == 0) {
+            return -1;
+        }
+        return Math.max(0, key.totalTime() - leader.totalTime());
+    }
+
+    /**
+     * Number of laps a racer is behind the leader (0 if on the lead lap or unknown).
+     */
+    public int getLapsBehind(String racerId) {
+        Key key = keys.get(racerId);
+        if (key == null || leader == null) {
+            return 0;
+        }
+        return Math.max(0, leader.laps() - key.laps());
+    }
+
+    // --- Treap ---
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void updateSize(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    private static Node insert(Node node, Node inserted) {
+        if (node == null) {
+            return inserted;
+        }
+        if (inserted.priority > node.priority) {
+            // Split the subtree around the new key and put the new node on top
+            Node[] parts = split(node, inserted.key);
+            inserted.left = parts[0];
+            inserted.right = parts[1];
+            updateSize(inserted);
+            return inserted;
+        }
+        if (inserted.key.compareTo(node.key) < 0) {
+            node.left = insert(node.left, inserted);
+        } else {
+            node.right = insert(node.right, inserted);
+        }
+        updateSize(node);
+        return node;
+    }
+
+    private static Node delete(Node node, Key key) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = key.compareTo(node.key);
+        if (cmp == 0) {
+            return merge(node.left, node.right);
+        }
+        if (cmp < 0) {
+            node.left = delete(node.left, key);
+        } else {
+            node.right = delete(node.right, key);
+        }
+        updateSize(node);
+        return node;
+    }
+
+    /**
+     * Split into keys smaller than the given key and keys greater or equal.
+     */
+    private static Node[] split(Node node, Key key) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (node.key.compareTo(key) < 0) {
+            Node[] parts = split(node.right, key);
+            node.right = parts[0];
+            updateSize(node);
+            parts[0] = node;
+            return parts;
+        }
+        Node[] parts = split(node.left, key);
+        node.left = parts[1];
+        updateSize(node);
+        parts[1] = node;
+        return parts;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            updateSize(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        updateSize(right);
+        return right;
+    }
+
+    private void updateLeader() {
+        Node node = root;
+        while (node != null && node.left != null) {
+            node = node.left;
+        }
+        leader = node == null ? null : node.key;
+    }
+
+    private int nextPriority() {
+        // xorshift, good enough to keep the treap balanced
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+}
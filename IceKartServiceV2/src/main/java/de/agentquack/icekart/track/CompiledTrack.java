@@ -0,0 +1,139 @@
+package de.agentquack.icekart.track;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable snapshot of a track, compiled from its waypoints.
+ * Gate bounds are flattened into a primitive array so hot paths (tracking, rendering)
+ * don't have to rebuild a Box for every check. A new instance is created whenever
+ * the waypoints change, so consumers can cache derived data per generation.
+ */
+public final class CompiledTrack {
+
+    // Generation 0, so it doesn't depend on the initialization order of NEXT_GENERATION
+    public static final CompiledTrack EMPTY = new CompiledTrack(List.of(), 0);
+
+    private static final AtomicLong NEXT_GENERATION = new AtomicLong();
+
+    private final List<Waypoint> waypoints;
+    private final long generation;
+
+    // 6 values per gate: minX, minY, minZ, maxX, maxY, maxZ
+    private final double[] bounds;
+
+    private CompiledTrack(List<Waypoint> orderedWaypoints, long generation) {
+        this.waypoints = Collections.unmodifiableList(orderedWaypoints);
+        this.generation = generation;
+        this.bounds = new double[orderedWaypoints.size() * 6];
+
+        for (int i = 0; i < orderedWaypoints.size(); i++) {
+            Waypoint wp = orderedWaypoints.get(i);
+            int b = i * 6;
+            bounds[b] = Math.min(wp.getPos1().getX(), wp.getPos2().getX());
+            bounds[b + 1] = Math.min(wp.getPos1().getY(), wp.getPos2().getY());
+            bounds[b + 2] = Math.min(wp.getPos1().getZ(), wp.getPos2().getZ());
+            bounds[b + 3] = Math.max(wp.getPos1().getX(), wp.getPos2().getX()) + 1;
+            bounds[b + 4] = Math.max(wp.getPos1().getY(), wp.getPos2().getY()) + 1;
+            bounds[b + 5] = Math.max(wp.getPos1().getZ(), wp.getPos2().getZ()) + 1;
+        }
+    }
+
+    /**
+     * Compile a track from the given waypoints. The waypoints are sorted by order.
+     */
+    public static CompiledTrack compile(Collection<Waypoint> waypoints) {
+        if (waypoints.isEmpty()) {
+            return EMPTY;
+        }
+        List<Waypoint> ordered = new ArrayList<>(waypoints);
+        ordered.sort(Comparator.comparingInt(Waypoint::getOrder));
+        return new CompiledTrack(ordered, NEXT_GENERATION.incrementAndGet());
+    }
+
+    /**
+     * Unique, increasing number identifying this snapshot.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public List<Waypoint> getWaypoints() {
+        return waypoints;
+    }
+
+    public Waypoint get(int index) {
+        return waypoints.get(index);
+    }
+
+    public int size() {
+        return waypoints.size();
+    }
+
+    public boolean isEmpty() {
+        return waypoints.isEmpty();
+    }
+
+    public double minX(int index) {
+        return bounds[index * 6];
+    }
+
+    public double minY(int index) {
+        return bounds[index * 6 + 1];
+    }
+
+    public double minZ(int index) {
+        return bounds[index * 6 + 2];
+    }
+
+    public double maxX(int index) {
+        return bounds[index * 6 + 3];
+    }
+
+    public double maxY(int index) {
+        return bounds[index * 6 + 4];
+    }
+
+    public double maxZ(int index) {
+        return bounds[index * 6 + 5];
+    }
+
+    public double centerX(int index) {
+        return (bounds[index * 6] + bounds[index * 6 + 3]) * 0.5;
+    }
+
+    public double centerY(int index) {
+        return (bounds[index * 6 + 1] + bounds[index * 6 + 4]) * 0.5;
+    }
+
+    public double centerZ(int index) {
+        return (bounds[index * 6 + 2] + bounds[index * 6 + 5]) * 0.5;
+    }
+
+    /**
+     * Rough estimate of the heap used by this track (waypoints, positions, boxes, IDs and bounds).
+     */
+    public long estimateMemory() {
+        long bytes = 64 + bounds.length * 8L;
+        for (Waypoint waypoint : waypoints) {
+            // Waypoint, 2 BlockPos, Box, id String + chars, list slot
+            bytes += 32 + 2 * 24 + 64 + 48 + waypoint.getId().length() + 8;
+        }
+        return bytes;
+    }
+
+    /**
+     * Check if a position is inside the gate at the given index.
+     * Same semantics as {@link net.minecraft.util.math.Box#contains(double, double, double)}.
+     */
+    public boolean contains(int index, double x, double y, double z) {
+        int b = index * 6;
+        return x >= bounds[b] && x < bounds[b + 3]
+                && y >= bounds[b + 1] && y < bounds[b + 4]
+                && z >= bounds[b + 2] && z < bounds[b + 5];
+    }
+}
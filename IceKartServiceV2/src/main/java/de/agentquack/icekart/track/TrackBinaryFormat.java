@@ -0,0 +1,223 @@
+package de.agentquack.icekart.track;
+
+import net.minecraft.util.math.BlockPos;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Compact binary track format (version 3, JSON is version 1).
+ *
+ * Layout (big endian):
+ * - Header (40 bytes): magic "IKTR", version (u16), flags (u16), gate count,
+ *   gate table offset, string table offset, string count, world name index
+ *   (-1 if none), journal epoch ({@link TrackJournal}), reserved int,
+ *   CRC32C of the whole file with the checksum field zeroed; the header is covered too, the
+ *   journal epoch decides whether the journal is replayed. Version 2 files (checksum of
+ *   everything after the header) are still read.
+ * - Gate table: one fixed-width record of 10 ints per gate:
+ *   id string index, type ordinal, order, x1, y1, z1, x2, y2, z2, reserved
+ * - String table: per string an u16 byte length followed by UTF-8 bytes
+ *
+ * Files are read into a heap buffer with a single channel read (no mapping, so the file can be
+ * replaced by journal compaction right away), the gate table is copied out with a single bulk int read.
+ */
+public final class TrackBinaryFormat {
+
+    public static final int MAGIC = 0x494B5452; // "IKTR"
+    public static final int VERSION = 3;
+    // Checksum covers only the data after the header
+    private static final int VERSION_BODY_CHECKSUM = 2;
+
+    private static final int HEADER_SIZE = 40;
+    private static final int GATE_INTS = 10;
+    private static final int GATE_SIZE = GATE_INTS * Integer.BYTES;
+    private static final int CHECKSUM_OFFSET = 36;
+
+    private static final int JOURNAL_EPOCH_OFFSET = 28;
+
+    /**
+     * A decoded track file.
+     */
+    public record TrackFile(CompiledTrack track, int journalEpoch) {
+    }
+
+    private TrackBinaryFormat() {
+    }
+
+    /**
+     * Encode a track into the binary format.
+     */
+    public static byte[] encode(String worldName, CompiledTrack track, int journalEpoch) {
+        List<byte[]> strings = new ArrayList<>(track.size() + 1);
+        for (Waypoint waypoint : track.getWaypoints()) {
+            strings.add(encodeString(waypoint.getId()));
+        }
+        int worldNameIndex = -1;
+        if (worldName != null) {
+            worldNameIndex = strings.size();
+            strings.add(encodeString(worldName));
+        }
+
+        int gateTableOffset = HEADER_SIZE;
+        int stringTableOffset = gateTableOffset + track.size() * GATE_SIZE;
+        int length = stringTableOffset;
+        for (byte[] string : strings) {
+            length += Short.BYTES + string.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) 0); // flags
+        buffer.putInt(track.size());
+        buffer.putInt(gateTableOffset);
+        buffer.putInt(stringTableOffset);
+        buffer.putInt(strings.size());
+        buffer.putInt(worldNameIndex);
+        buffer.putInt(journalEpoch);
+        buffer.putInt(0); // reserved
+        buffer.putInt(0); // checksum, filled in below
+
+        for (int i = 0; i < track.size(); i++) {
+            Waypoint waypoint = track.get(i);
+            buffer.putInt(i);
+            buffer.putInt(waypoint.getType().ordinal());
+            buffer.putInt(waypoint.getOrder());
+            buffer.putInt(waypoint.getPos1().getX());
+            buffer.putInt(waypoint.getPos1().getY());
+            buffer.putInt(waypoint.getPos1().getZ());
+            buffer.putInt(waypoint.getPos2().getX());
+            buffer.putInt(waypoint.getPos2().getY());
+            buffer.putInt(waypoint.getPos2().getZ());
+            buffer.putInt(0); // reserved
+        }
+
+        for (byte[] string : strings) {
+            buffer.putShort((short) string.length);
+            buffer.put(string);
+        }
+
+        buffer.putInt(CHECKSUM_OFFSET, checksum(buffer, VERSION));
+        return buffer.array();
+    }
+
+    /**
+     * Read and compile a track from a binary file.
+     *
+     * @throws IOException if the file can't be read or is not a valid track file
+     */
+    public static TrackFile read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid track file size: " + size);
+            }
+            // Read into the heap, a live mapping would block replacing the file (journal compaction) on Windows
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Track file truncated while reading: " + path);
+                }
+            }
+            return decode(buffer.flip());
+        }
+    }
+
+    /**
+     * Decode a track from a buffer containing a complete binary track file.
+     */
+    public static TrackFile decode(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an IceKart track file");
+        }
+        int version = buffer.getShort(4) & 0xFFFF;
+        if (version != VERSION && version != VERSION_BODY_CHECKSUM) {
+            throw new IOException("Unsupported track file version: " + version);
+        }
+        if (buffer.getInt(CHECKSUM_OFFSET) != checksum(buffer, version)) {
+            throw new IOException("Track file checksum mismatch");
+        }
+
+        int gateCount = buffer.getInt(8);
+        int gateTableOffset = buffer.getInt(12);
+        int stringTableOffset = buffer.getInt(16);
+        int stringCount = buffer.getInt(20);
+        if (gateCount < 0 || stringCount < 0
+                || (long) gateTableOffset + (long) gateCount * GATE_SIZE > stringTableOffset
+                || stringTableOffset > buffer.limit()) {
+            throw new IOException("Corrupt track file header");
+        }
+
+        // Bulk copy of the fixed-width gate table
+        int[] gates = new int[gateCount * GATE_INTS];
+        buffer.slice(gateTableOffset, gateCount * GATE_SIZE).asIntBuffer().get(gates);
+
+        String[] strings = readStrings(buffer, stringTableOffset, stringCount);
+        Waypoint.Type[] types = Waypoint.Type.values();
+
+        List<Waypoint> waypoints = new ArrayList<>(gateCount);
+        for (int i = 0; i < gateCount; i++) {
+            int g = i * GATE_INTS;
+            int idIndex = gates[g];
+            int typeOrdinal = gates[g + 1];
+            if (idIndex < 0 || idIndex >= strings.length || typeOrdinal < 0 || typeOrdinal >= types.length) {
+                throw new IOException("Corrupt gate record at index " + i);
+            }
+            waypoints.add(new Waypoint(strings[idIndex], types[typeOrdinal],
+                    new BlockPos(gates[g + 3], gates[g + 4], gates[g + 5]),
+                    new BlockPos(gates[g + 6], gates[g + 7], gates[g + 8]),
+                    gates[g + 2]));
+        }
+
+        return new TrackFile(CompiledTrack.compile(waypoints), buffer.getInt(JOURNAL_EPOCH_OFFSET));
+    }
+
+    private static String[] readStrings(ByteBuffer buffer, int offset, int count) throws IOException {
+        String[] strings = new String[count];
+        int position = offset;
+        for (int i = 0; i < count; i++) {
+            if (position + Short.BYTES > buffer.limit()) {
+                throw new IOException("Corrupt string table");
+            }
+            int length = buffer.getShort(position) & 0xFFFF;
+            position += Short.BYTES;
+            if (position + length > buffer.limit()) {
+                throw new IOException("Corrupt string table");
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(position, bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            position += length;
+        }
+        return strings;
+    }
+
+    private static byte[] encodeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String too long for track file: " + value.length());
+        }
+        return bytes;
+    }
+
+    /**
+     * CRC32C of the file with the checksum field zeroed (version 2: of everything after the header).
+     */
+    private static int checksum(ByteBuffer buffer, int version) {
+        CRC32C crc = new CRC32C();
+        if (version != VERSION_BODY_CHECKSUM) {
+            crc.update(buffer.slice(0, CHECKSUM_OFFSET));
+            crc.update(new byte[Integer.BYTES]);
+        }
+        crc.update(buffer.slice(HEADER_SIZE, buffer.limit() - HEADER_SIZE));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,493 @@
+package de.agentquack.icekart.track;
+
+import de.agentquack.icekart.Icekart;
+import net.minecraft.util.math.BlockPos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only edit journal of a track (<track>.ikj next to the base .ikt file).
+ * Every add/remove/clear and every undo/redo is appended as a small checksummed
+ * record and fsynced on the I/O thread, so edits are durable without rewriting
+ * the track file. Once enough records have accumulated, the journal is compacted:
+ * the current track is written to the base file and the journal is replaced by
+ * the (bounded) undo/redo history, which therefore survives restarts.
+ *
+ * The journal header stores an epoch that must match the journal epoch of the base
+ * file. Compaction writes the base file with the next epoch before replacing the
+ * journal, so a crash in between leaves a journal that is recognized as already
+ * compacted instead of being applied twice.
+ *
+ * Edits and the undo/redo stacks are only touched on the client thread, file
+ * access only happens on the I/O thread ({@link TrackStorage#getExecutor()}).
+ */
+public class TrackJournal {
+
+    public static final String EXTENSION = ".ikj";
+
+    private static final int MAGIC = 0x494B4A52; // "IKJR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    // Record: type (u8), payload length (int), payload, CRC32C of type, length and payload
+    private static final int RECORD_OVERHEAD = 1 + Integer.BYTES + Integer.BYTES;
+    private static final byte RECORD_EDIT = 1;
+    private static final byte RECORD_UNDO = 2;
+    private static final byte RECORD_REDO = 3;
+    private static final byte RECORD_HISTORY_UNDO = 4; // Compacted history, already part of the base file
+    private static final byte RECORD_HISTORY_REDO = 5;
+
+    private static final int COMPACT_THRESHOLD = 256;
+    private static final int MAX_HISTORY = 100;
+
+    /**
+     * A single edit of a track. For REMOVE and CLEAR the removed waypoints are kept,
+     * so the edit can be inverted.
+     */
+    public record Edit(Kind kind, List<Waypoint> waypoints) {
+
+        public enum Kind {
+            ADD,
+            REMOVE,
+            CLEAR
+        }
+
+        public static Edit add(Waypoint waypoint) {
+            return new Edit(Kind.ADD, List.of(waypoint));
+        }
+
+        public static Edit remove(Waypoint waypoint) {
+            return new Edit(Kind.REMOVE, List.of(waypoint));
+        }
+
+        public static Edit clear(List<Waypoint> removed) {
+            return new Edit(Kind.CLEAR, List.copyOf(removed));
+        }
+
+        public String describe() {
+            return switch (kind) {
+                case ADD -> "create " + waypoints.get(0).getId();
+                case REMOVE -> "remove " + waypoints.get(0).getId();
+                case CLEAR -> "clear (" + waypoints.size() + " waypoints)";
+            };
+        }
+
+        /**
+         * Apply this edit (or its inverse) to a map of waypoints by ID.
+         */
+        public void applyTo(Map<String, Waypoint> target, boolean inverse) {
+            boolean adds = (kind == Kind.ADD) != inverse;
+            for (Waypoint waypoint : waypoints) {
+                if (adds) {
+                    target.put(waypoint.getId(), waypoint);
+                } else {
+                    target.remove(waypoint.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * A loaded track together with its journal.
+     */
+    public record StoredTrack(CompiledTrack track, TrackJournal journal) {
+    }
+
+    private final Path basePath;
+    private final String worldName;
+
+    // Client thread
+    private final Deque<Edit> undoStack = new ArrayDeque<>();
+    private final Deque<Edit> redoStack = new ArrayDeque<>();
+    private int recordCount;
+
+    // I/O thread
+    private int epoch;
+    private long validLength; // -1 if the journal file has to be (re)created
+    private FileChannel channel = null;
+
+    private TrackJournal(Path basePath, String worldName, int epoch, long validLength, int recordCount) {
+        this.basePath = basePath;
+        this.worldName = worldName;
+        this.epoch = epoch;
+        this.validLength = validLength;
+        this.recordCount = recordCount;
+    }
+
+    /**
+     * Journal of a track without files yet, its first record creates the journal file.
+     */
+    static TrackJournal empty(Path basePath, String worldName) {
+        return new TrackJournal(basePath, worldName, 0, -1, 0);
+    }
+
+    public static Path journalPath(Path basePath) {
+        return basePath.resolveSibling(basePath.getFileName() + EXTENSION);
+    }
+
+    // --- Edits (client thread) ---
+
+    /**
+     * Record an edit that was just applied to the track.
+     */
+    public void record(Edit edit) {
+        push(undoStack, edit);
+        redoStack.clear();
+        append(RECORD_EDIT, edit);
+    }
+
+    /**
+     * Pop the most recent edit for undoing. The caller applies its inverse.
+     * Returns null if there is nothing to undo.
+     */
+    public Edit undo() {
+        Edit edit = undoStack.pollFirst();
+        if (edit != null) {
+            push(redoStack, edit);
+            append(RECORD_UNDO, null);
+        }
+        return edit;
+    }
+
+    /**
+     * Pop the most recently undone edit for redoing. The caller applies it again.
+     * Returns null if there is nothing to redo.
+     */
+    public Edit redo() {
+        Edit edit = redoStack.pollFirst();
+        if (edit != null) {
+            push(undoStack, edit);
+            append(RECORD_REDO, null);
+        }
+        return edit;
+    }
+
+    public int getUndoCount() {
+        return undoStack.size();
+    }
+
+    public int getRedoCount() {
+        return redoStack.size();
+    }
+
+    private static void push(Deque<Edit> stack, Edit edit) {
+        stack.addFirst(edit);
+        if (stack.size() > MAX_HISTORY) {
+            stack.removeLast();
+        }
+    }
+
+    private void append(byte type, Edit edit) {
+        byte[] record = encodeRecord(type, edit);
+        recordCount++;
+        TrackStorage.getExecutor().execute(() -> {
+            try {
+                writeRecord(record);
+            } catch (IOException e) {
+                Icekart.LOGGER.error("[IceKart] Failed to append to track journal: {}", e.getMessage());
+                closeChannel();
+            }
+        });
+    }
+
+    /**
+     * Compact the journal in the background once enough records have accumulated.
+     */
+    public void compactIfNeeded(CompiledTrack current) {
+        if (recordCount >= COMPACT_THRESHOLD) {
+            compact(current);
+        }
+    }
+
+    /**
+     * Write the current track to the base file and replace the journal with the undo/redo history.
+     */
+    public CompletableFuture<Void> compact(CompiledTrack current) {
+        List<Edit> undo = new ArrayList<>(undoStack);
+        List<Edit> redo = new ArrayList<>(redoStack);
+        recordCount = undo.size() + redo.size();
+
+        return CompletableFuture.runAsync(() -> {
+            try {
+                writeCompacted(current, undo, redo);
+                Icekart.LOGGER.info("[IceKart] Compacted track journal of {} ({} waypoints)",
+                        basePath.getFileName(), current.size());
+            } catch (IOException e) {
+                Icekart.LOGGER.error("[IceKart] Failed to compact track journal: {}", e.getMessage());
+                throw new UncheckedIOException(e);
+            }
+        }, TrackStorage.getExecutor());
+    }
+
+    /**
+     * Close the journal file. It is reopened on the next append.
+     */
+    public void close() {
+        TrackStorage.getExecutor().execute(this::closeChannel);
+    }
+
+    // --- File Access (I/O thread) ---
+
+    /**
+     * Open the journal of a track and replay it on top of the base track.
+     * A journal from another epoch (already compacted into the base file) is ignored,
+     * a torn record at the end (crash while appending) is cut off.
+     */
+    static StoredTrack replay(Path basePath, String worldName, CompiledTrack base, int baseEpoch) throws IOException {
+        Path path = journalPath(basePath);
+        if (!Files.exists(path)) {
+            return new StoredTrack(base, new TrackJournal(basePath, worldName, baseEpoch, -1, 0));
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        int applied = 0;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+                || (buffer.getShort(4) & 0xFFFF) != VERSION || buffer.getInt(8) != baseEpoch) {
+            Icekart.LOGGER.warn("[IceKart] Ignoring outdated or invalid track journal {}", path.getFileName());
+            return new StoredTrack(base, new TrackJournal(basePath, worldName, baseEpoch, -1, 0));
+        }
+
+        Map<String, Waypoint> waypoints = new LinkedHashMap<>();
+        for (Waypoint waypoint : base.getWaypoints()) {
+            waypoints.put(waypoint.getId(), waypoint);
+        }
+
+        TrackJournal journal = new TrackJournal(basePath, worldName, baseEpoch, HEADER_SIZE, 0);
+        buffer.position(HEADER_SIZE);
+        while (buffer.remaining() >= RECORD_OVERHEAD) {
+            int start = buffer.position();
+            byte type = buffer.get();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining() - Integer.BYTES) {
+                break;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(start, 1 + Integer.BYTES + length));
+            if (buffer.getInt(start + 1 + Integer.BYTES + length) != (int) crc.getValue()) {
+                break;
+            }
+            ByteBuffer payload = buffer.slice(buffer.position(), length);
+            buffer.position(start + RECORD_OVERHEAD + length);
+
+            try {
+                journal.replayRecord(type, payload, waypoints);
+            } catch (IOException e) {
+                Icekart.LOGGER.warn("[IceKart] {}", e.getMessage());
+                break;
+            }
+            if (type == RECORD_EDIT || type == RECORD_UNDO || type == RECORD_REDO) {
+                applied++;
+            }
+            journal.recordCount++;
+            journal.validLength = buffer.position();
+        }
+
+        if (journal.validLength < buffer.limit()) {
+            Icekart.LOGGER.warn("[IceKart] Discarding {} bytes of incomplete journal records in {}",
+                    buffer.limit() - journal.validLength, path.getFileName());
+        }
+        if (applied > 0) {
+            Icekart.LOGGER.info("[IceKart] Replayed {} journal records for {}", applied, basePath.getFileName());
+        }
+
+        CompiledTrack track = applied > 0 ? CompiledTrack.compile(waypoints.values()) : base;
+        return new StoredTrack(track, journal);
+    }
+
+    private void replayRecord(byte type, ByteBuffer payload, Map<String, Waypoint> waypoints) throws IOException {
+        switch (type) {
+            case RECORD_EDIT -> {
+                Edit edit = decodeEdit(payload);
+                edit.applyTo(waypoints, false);
+                push(undoStack, edit);
+                redoStack.clear();
+            }
+            case RECORD_UNDO -> {
+                Edit edit = undoStack.pollFirst();
+                if (edit != null) {
+                    edit.applyTo(waypoints, true);
+                    push(redoStack, edit);
+                }
+            }
+            case RECORD_REDO -> {
+                Edit edit = redoStack.pollFirst();
+                if (edit != null) {
+                    edit.applyTo(waypoints, false);
+                    push(undoStack, edit);
+                }
+            }
+            case RECORD_HISTORY_UNDO -> push(undoStack, decodeEdit(payload));
+            case RECORD_HISTORY_REDO -> push(redoStack, decodeEdit(payload));
+            default -> throw new IOException("Unknown journal record type: " + type);
+        }
+    }
+
+    /**
+     * Install a track that replaces the base file and journal contents (e.g. an imported
+     * JSON file). The undo/redo history of the existing journal is kept.
+     */
+    static StoredTrack replace(Path basePath, String worldName, CompiledTrack track, int baseEpoch) throws IOException {
+        TrackJournal journal = replay(basePath, worldName, CompiledTrack.EMPTY, baseEpoch).journal();
+        journal.writeCompacted(track, new ArrayList<>(journal.undoStack), new ArrayList<>(journal.redoStack));
+        journal.recordCount = journal.undoStack.size() + journal.redoStack.size();
+        return new StoredTrack(track, journal);
+    }
+
+    /**
+     * Write the base file with the next epoch, then replace the journal with the history.
+     */
+    private void writeCompacted(CompiledTrack track, List<Edit> undo, List<Edit> redo) throws IOException {
+        int nextEpoch = epoch + 1;
+        TrackStorage.writeAtomically(TrackStorage.binaryPath(basePath),
+                TrackBinaryFormat.encode(worldName, track, nextEpoch));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(encodeHeader(nextEpoch));
+        // Stacks are stored bottom to top, so replaying the pushes restores them
+        for (int i = undo.size() - 1; i >= 0; i--) {
+            out.writeBytes(encodeRecord(RECORD_HISTORY_UNDO, undo.get(i)));
+        }
+        for (int i = redo.size() - 1; i >= 0; i--) {
+            out.writeBytes(encodeRecord(RECORD_HISTORY_REDO, redo.get(i)));
+        }
+
+        closeChannel();
+        byte[] data = out.toByteArray();
+        TrackStorage.writeAtomically(journalPath(basePath), data);
+        epoch = nextEpoch;
+        validLength = data.length;
+    }
+
+    private void writeRecord(byte[] record) throws IOException {
+        if (channel == null) {
+            openChannel();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        validLength += record.length;
+    }
+
+    private void openChannel() throws IOException {
+        Path path = journalPath(basePath);
+        if (validLength < 0) {
+            byte[] header = encodeHeader(epoch);
+            TrackStorage.writeAtomically(path, header);
+            validLength = header.length;
+        }
+        channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        // Cut off a torn record from a previous crash before appending
+        channel.truncate(validLength);
+        channel.position(validLength);
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            channel = null;
+        }
+    }
+
+    // --- Encoding ---
+
+    private static byte[] encodeHeader(int epoch) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) 0); // flags
+        buffer.putInt(epoch);
+        buffer.putInt(0); // reserved
+        return buffer.array();
+    }
+
+    private static byte[] encodeRecord(byte type, Edit edit) {
+        byte[] payload = edit != null ? encodeEdit(edit) : new byte[0];
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_OVERHEAD + payload.length);
+        buffer.put(type);
+        buffer.putInt(payload.length);
+        buffer.put(payload);
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    private static byte[] encodeEdit(Edit edit) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer gate = ByteBuffer.allocate(8 * Integer.BYTES);
+        out.write(edit.kind().ordinal());
+        out.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt(edit.waypoints().size()).array());
+
+        for (Waypoint waypoint : edit.waypoints()) {
+            byte[] id = waypoint.getId().getBytes(StandardCharsets.UTF_8);
+            out.write(id.length >> 8);
+            out.write(id.length);
+            out.writeBytes(id);
+
+            gate.clear();
+            gate.putInt(waypoint.getType().ordinal());
+            gate.putInt(waypoint.getOrder());
+            gate.putInt(waypoint.getPos1().getX());
+            gate.putInt(waypoint.getPos1().getY());
+            gate.putInt(waypoint.getPos1().getZ());
+            gate.putInt(waypoint.getPos2().getX());
+            gate.putInt(waypoint.getPos2().getY());
+            gate.putInt(waypoint.getPos2().getZ());
+            out.writeBytes(gate.array());
+        }
+        return out.toByteArray();
+    }
+
+    private static Edit decodeEdit(ByteBuffer payload) throws IOException {
+        try {
+            Edit.Kind[] kinds = Edit.Kind.values();
+            Waypoint.Type[] types = Waypoint.Type.values();
+            Edit.Kind kind = kinds[payload.get()];
+            int count = payload.getInt();
+
+            List<Waypoint> waypoints = new ArrayList<>(Math.min(count, 1024));
+            for (int i = 0; i < count; i++) {
+                byte[] id = new byte[payload.getShort() & 0xFFFF];
+                payload.get(id);
+                Waypoint.Type type = types[payload.getInt()];
+                int order = payload.getInt();
+                BlockPos pos1 = new BlockPos(payload.getInt(), payload.getInt(), payload.getInt());
+                BlockPos pos2 = new BlockPos(payload.getInt(), payload.getInt(), payload.getInt());
+                waypoints.add(new Waypoint(new String(id, StandardCharsets.UTF_8), type, pos1, pos2, order));
+            }
+            return new Edit(kind, waypoints);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt journal record", e);
+        }
+    }
+
+    /**
+     * Number of records appended since the last compaction (for diagnostics).
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+}
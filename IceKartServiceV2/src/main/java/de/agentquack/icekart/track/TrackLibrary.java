@@ -0,0 +1,190 @@
+package de.agentquack.icekart.track;
+
+import com.google.gson.*;
+import de.agentquack.icekart.Icekart;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+/**
+ * Named tracks of a single world, backed by a small index file (tracks_<world>.json).
+ * The index only stores track names, gate counts and the active track; the tracks
+ * themselves are loaded on selection. The "default" track uses the original
+ * waypoints_<world> file, other tracks use waypoints_<world>.<name>.
+ *
+ * Instances are only modified on the client thread, index writes run on the I/O thread.
+ */
+public class TrackLibrary {
+
+    public static final String DEFAULT_TRACK = "default";
+
+    private static final Pattern TRACK_NAME = Pattern.compile("[a-zA-Z0-9_-]{1,32}");
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    /**
+     * Index entry of a track. The gate count is updated whenever the track is saved.
+     */
+    public record TrackInfo(String name, int gateCount) {
+    }
+
+    private final Path configDir;
+    private final String fileKey;
+    private final Map<String, TrackInfo> tracks = new LinkedHashMap<>();
+    private String activeTrack = DEFAULT_TRACK;
+
+    private TrackLibrary(Path configDir, String fileKey) {
+        this.configDir = configDir;
+        this.fileKey = fileKey;
+        tracks.put(DEFAULT_TRACK, new TrackInfo(DEFAULT_TRACK, 0));
+    }
+
+    /**
+     * Check if a name can be used as a track name.
+     */
+    public static boolean isValidName(String name) {
+        return TRACK_NAME.matcher(name).matches();
+    }
+
+    // --- Tracks ---
+
+    public String getActiveTrack() {
+        return activeTrack;
+    }
+
+    public void setActiveTrack(String name) {
+        if (!tracks.containsKey(name)) {
+            throw new IllegalArgumentException("Unknown track: " + name);
+        }
+        activeTrack = name;
+    }
+
+    public boolean hasTrack(String name) {
+        return tracks.containsKey(name);
+    }
+
+    public List<TrackInfo> getTracks() {
+        return Collections.unmodifiableList(new ArrayList<>(tracks.values()));
+    }
+
+    /**
+     * Add an empty track. Returns false if the name is invalid or already taken.
+     */
+    public boolean addTrack(String name) {
+        if (!isValidName(name) || tracks.containsKey(name)) {
+            return false;
+        }
+        tracks.put(name, new TrackInfo(name, 0));
+        return true;
+    }
+
+    /**
+     * Remove a track from the index. The active and the default track can't be removed.
+     */
+    public boolean removeTrack(String name) {
+        if (name.equals(activeTrack) || name.equals(DEFAULT_TRACK)) {
+            return false;
+        }
+        return tracks.remove(name) != null;
+    }
+
+    public void setGateCount(String name, int gateCount) {
+        tracks.computeIfPresent(name, (key, info) -> new TrackInfo(key, gateCount));
+    }
+
+    // --- Paths ---
+
+    /**
+     * Track file path of a track, without extension.
+     */
+    public Path getTrackPath(String name) {
+        if (DEFAULT_TRACK.equals(name)) {
+            return configDir.resolve("waypoints_" + fileKey);
+        }
+        return configDir.resolve("waypoints_" + fileKey + "." + name);
+    }
+
+    public Path getIndexPath() {
+        return configDir.resolve("tracks_" + fileKey + TrackStorage.JSON_EXTENSION);
+    }
+
+    // --- Persistence ---
+
+    /**
+     * Read the track index of a world. Runs on the calling thread (the I/O thread).
+     * A missing or unreadable index results in a library with only the default track.
+     */
+    public static TrackLibrary load(Path configDir, String fileKey) {
+        TrackLibrary library = new TrackLibrary(configDir, fileKey);
+        Path indexPath = library.getIndexPath();
+        if (!Files.exists(indexPath)) {
+            return library;
+        }
+
+        try {
+            JsonObject root = JsonParser.parseString(Files.readString(indexPath)).getAsJsonObject();
+            JsonArray tracksArray = root.getAsJsonArray("tracks");
+            if (tracksArray != null) {
+                for (JsonElement element : tracksArray) {
+                    JsonObject trackJson = element.getAsJsonObject();
+                    String name = trackJson.get("name").getAsString();
+                    int gates = trackJson.has("gates") ? trackJson.get("gates").getAsInt() : 0;
+                    if (isValidName(name)) {
+                        library.tracks.put(name, new TrackInfo(name, gates));
+                    }
+                }
+            }
+            if (root.has("active") && library.hasTrack(root.get("active").getAsString())) {
+                library.activeTrack = root.get("active").getAsString();
+            }
+            Icekart.LOGGER.info("[IceKart] Loaded track index with {} tracks from {}",
+                    library.tracks.size(), indexPath);
+        } catch (Exception e) {
+            Icekart.LOGGER.error("[IceKart] Failed to read track index, using default track: {}",
+                    e.getMessage());
+        }
+        return library;
+    }
+
+    /**
+     * Save the index asynchronously. The current state is captured on the calling thread.
+     */
+    public CompletableFuture<Void> saveAsync() {
+        Path indexPath = getIndexPath();
+        byte[] data = toJson().getBytes(StandardCharsets.UTF_8);
+        return CompletableFuture.runAsync(() -> {
+            try {
+                TrackStorage.writeAtomically(indexPath, data);
+            } catch (IOException e) {
+                Icekart.LOGGER.error("[IceKart] Failed to save track index: {}", e.getMessage());
+                throw new UncheckedIOException(e);
+            }
+        }, TrackStorage.getExecutor());
+    }
+
+    private String toJson() {
+        JsonObject root = new JsonObject();
+        root.addProperty("version", 1);
+        root.addProperty("active", activeTrack);
+
+        JsonArray tracksArray = new JsonArray();
+        for (TrackInfo info : tracks.values()) {
+            JsonObject trackJson = new JsonObject();
+            trackJson.addProperty("name", info.name());
+            trackJson.addProperty("gates", info.gateCount());
+            tracksArray.add(trackJson);
+        }
+        root.add("tracks", tracksArray);
+
+        return GSON.toJson(root);
+    }
+}
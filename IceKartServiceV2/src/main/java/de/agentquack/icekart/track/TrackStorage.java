@@ -0,0 +1,303 @@
+package de.agentquack.icekart.track;
+
+import com.google.gson.*;
+import de.agentquack.icekart.Icekart;
+import net.minecraft.util.math.BlockPos;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads and writes track files on a background I/O thread.
+ * Tracks are saved in the binary format ({@link TrackBinaryFormat}) plus an edit
+ * journal ({@link TrackJournal}), JSON is still read (and migrated) and can be
+ * exported for hand editing.
+ * All file operations run on a single thread, so a load queued after a save
+ * always sees the saved data. Writes go to a temp file which is fsynced and then
+ * atomically moved over the target, so a crash never leaves a partial track file.
+ */
+public final class TrackStorage {
+
+    public static final String BINARY_EXTENSION = ".ikt";
+    public static final String JSON_EXTENSION = ".json";
+    public static final String BROKEN_SUFFIX = ".broken";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private static final ExecutorService IO_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "IceKart-IO");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private TrackStorage() {
+    }
+
+    /**
+     * Get the executor used for track file I/O.
+     */
+    public static ExecutorService getExecutor() {
+        return IO_EXECUTOR;
+    }
+
+    /**
+     * Path of the binary track file for a track base path (without extension).
+     */
+    public static Path binaryPath(Path basePath) {
+        return basePath.resolveSibling(basePath.getFileName() + BINARY_EXTENSION);
+    }
+
+    /**
+     * Path of the JSON track file for a track base path (without extension).
+     */
+    public static Path jsonPath(Path basePath) {
+        return basePath.resolveSibling(basePath.getFileName() + JSON_EXTENSION);
+    }
+
+    /**
+     * Export a track asynchronously as JSON for hand editing.
+     * Completes with the path of the written file.
+     */
+    public static CompletableFuture<Path> exportJsonAsync(Path basePath, String worldName, CompiledTrack track) {
+        return CompletableFuture.supplyAsync(() -> {
+            Path path = jsonPath(basePath);
+            try {
+                writeAtomically(path, toJson(worldName, track).getBytes(StandardCharsets.UTF_8));
+                Icekart.LOGGER.info("[IceKart] Exported {} waypoints to {}", track.size(), path);
+                return path;
+            } catch (IOException e) {
+                Icekart.LOGGER.error("[IceKart] Failed to export waypoints: {}", e.getMessage());
+                throw new UncheckedIOException(e);
+            }
+        }, IO_EXECUTOR);
+    }
+
+    /**
+     * Delete all files of a track asynchronously.
+     */
+    public static CompletableFuture<Void> deleteAsync(Path basePath) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                Files.deleteIfExists(binaryPath(basePath));
+                Files.deleteIfExists(jsonPath(basePath));
+                Files.deleteIfExists(TrackJournal.journalPath(basePath));
+                Icekart.LOGGER.info("[IceKart] Deleted track files {}", basePath.getFileName());
+            } catch (IOException e) {
+                Icekart.LOGGER.error("[IceKart] Failed to delete track files: {}", e.getMessage());
+                throw new UncheckedIOException(e);
+            }
+        }, IO_EXECUTOR);
+    }
+
+    /**
+     * Start over with an empty track after its files couldn't be loaded: the files are moved aside
+     * (suffix {@link #BROKEN_SUFFIX}, to repair by hand) so they are neither replayed against nor
+     * overwritten by the new journal. Completes with the empty track and its journal.
+     */
+    public static CompletableFuture<TrackJournal.StoredTrack> recoverAsync(Path basePath, String worldName) {
+        return CompletableFuture.supplyAsync(() -> {
+            for (Path path : List.of(binaryPath(basePath), jsonPath(basePath), TrackJournal.journalPath(basePath))) {
+                try {
+                    if (Files.exists(path)) {
+                        Files.move(path, path.resolveSibling(path.getFileName() + BROKEN_SUFFIX),
+                                StandardCopyOption.REPLACE_EXISTING);
+                        Icekart.LOGGER.warn("[IceKart] Moved unreadable track file {} aside", path.getFileName());
+                    }
+                } catch (IOException e) {
+                    Icekart.LOGGER.error("[IceKart] Failed to move track file {} aside: {}", path.getFileName(), e.getMessage());
+                }
+            }
+            return new TrackJournal.StoredTrack(CompiledTrack.EMPTY, TrackJournal.empty(basePath, worldName));
+        }, IO_EXECUTOR);
+    }
+
+    /**
+     * Load and compile a track and its journal asynchronously.
+     * Completes with an empty track if no track file exists.
+     */
+    public static CompletableFuture<TrackJournal.StoredTrack> loadAsync(Path basePath, String worldName) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return load(basePath, worldName);
+            } catch (Exception e) {
+                Icekart.LOGGER.error("[IceKart] Failed to load waypoints: {}", e.getMessage());
+                throw new IllegalStateException("Failed to load " + basePath, e);
+            }
+        }, IO_EXECUTOR);
+    }
+
+    /**
+     * Load a track on the current thread and replay its journal.
+     * The binary file (plus journal) is used unless the JSON file is newer than both
+     * (hand edited or a v1 file that was never migrated). JSON files are migrated
+     * to the binary format on load.
+     */
+    static TrackJournal.StoredTrack load(Path basePath, String worldName) throws IOException {
+        Path binary = binaryPath(basePath);
+        Path json = jsonPath(basePath);
+        Path journal = TrackJournal.journalPath(basePath);
+        boolean hasBinary = Files.exists(binary);
+        boolean hasJson = Files.exists(json);
+
+        if (hasJson && (!hasBinary || isNewer(json, binary, journal))) {
+            CompiledTrack track = fromJson(Files.readString(json));
+            Icekart.LOGGER.info("[IceKart] Loaded {} waypoints from {}", track.size(), json);
+            int epoch = hasBinary ? TrackBinaryFormat.read(binary).journalEpoch() : 0;
+            TrackJournal.StoredTrack stored = TrackJournal.replace(basePath, worldName, track, epoch);
+            Icekart.LOGGER.info("[IceKart] Migrated {} to binary track format", json.getFileName());
+            return stored;
+        }
+
+        if (hasBinary) {
+            TrackBinaryFormat.TrackFile file = TrackBinaryFormat.read(binary);
+            Icekart.LOGGER.info("[IceKart] Loaded {} waypoints from {}", file.track().size(), binary);
+            return TrackJournal.replay(basePath, worldName, file.track(), file.journalEpoch());
+        }
+
+        if (!Files.exists(journal)) {
+            Icekart.LOGGER.info("[IceKart] No waypoint config found at {}", binary);
+        }
+        // Edits of a new track may only exist in the journal so far
+        return TrackJournal.replay(basePath, worldName, CompiledTrack.EMPTY, 0);
+    }
+
+    /**
+     * Check if a file was modified after all other (existing) files.
+     */
+    private static boolean isNewer(Path file, Path... others) throws IOException {
+        var modified = Files.getLastModifiedTime(file);
+        for (Path other : others) {
+            if (Files.exists(other) && Files.getLastModifiedTime(other).compareTo(modified) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // --- JSON Format ---
+
+    /**
+     * Serialize a track to the JSON format (version 1).
+     */
+    public static String toJson(String worldName, CompiledTrack track) {
+        JsonObject root = new JsonObject();
+        root.addProperty("worldName", worldName);
+        root.addProperty("version", 1);
+
+        JsonArray waypointsArray = new JsonArray();
+        for (Waypoint waypoint : track.getWaypoints()) {
+            JsonObject wpJson = new JsonObject();
+            wpJson.addProperty("id", waypoint.getId());
+            wpJson.addProperty("type", waypoint.getType().name());
+            wpJson.addProperty("order", waypoint.getOrder());
+
+            JsonObject pos1Json = new JsonObject();
+            pos1Json.addProperty("x", waypoint.getPos1().getX());
+            pos1Json.addProperty("y", waypoint.getPos1().getY());
+            pos1Json.addProperty("z", waypoint.getPos1().getZ());
+            wpJson.add("pos1", pos1Json);
+
+            JsonObject pos2Json = new JsonObject();
+            pos2Json.addProperty("x", waypoint.getPos2().getX());
+            pos2Json.addProperty("y", waypoint.getPos2().getY());
+            pos2Json.addProperty("z", waypoint.getPos2().getZ());
+            wpJson.add("pos2", pos2Json);
+
+            waypointsArray.add(wpJson);
+        }
+        root.add("waypoints", waypointsArray);
+
+        return GSON.toJson(root);
+    }
+
+    /**
+     * Parse and compile a track from the JSON format.
+     */
+    public static CompiledTrack fromJson(String json) {
+        JsonObject root = JsonParser.parseString(json).getAsJsonObject();
+
+        JsonArray waypointsArray = root.getAsJsonArray("waypoints");
+        if (waypointsArray == null) {
+            return CompiledTrack.EMPTY;
+        }
+
+        List<Waypoint> waypoints = new ArrayList<>(waypointsArray.size());
+        for (JsonElement element : waypointsArray) {
+            JsonObject wpJson = element.getAsJsonObject();
+
+            String id = wpJson.get("id").getAsString();
+            Waypoint.Type type = Waypoint.Type.valueOf(wpJson.get("type").getAsString());
+            int order = wpJson.get("order").getAsInt();
+
+            JsonObject pos1Json = wpJson.getAsJsonObject("pos1");
+            BlockPos pos1 = new BlockPos(
+                    pos1Json.get("x").getAsInt(),
+                    pos1Json.get("y").getAsInt(),
+                    pos1Json.get("z").getAsInt()
+            );
+
+            JsonObject pos2Json = wpJson.getAsJsonObject("pos2");
+            BlockPos pos2 = new BlockPos(
+                    pos2Json.get("x").getAsInt(),
+                    pos2Json.get("y").getAsInt(),
+                    pos2Json.get("z").getAsInt()
+            );
+
+            waypoints.add(new Waypoint(id, type, pos1, pos2, order));
+        }
+
+        return CompiledTrack.compile(waypoints);
+    }
+
+    // --- File Helpers ---
+
+    /**
+     * Write data to a temp file, fsync it and atomically replace the target.
+     */
+    public static void writeAtomically(Path target, byte[] data) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        syncDirectory(dir);
+    }
+
+    /**
+     * Fsync the directory so the rename itself is durable. Not supported on all platforms.
+     */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Best effort (e.g. Windows does not allow opening directories)
+        }
+    }
+}
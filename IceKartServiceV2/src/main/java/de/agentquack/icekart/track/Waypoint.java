@@ -1,4 +1,4 @@
-package de.agentquack.icekart.client.waypoint;
+package de.agentquack.icekart.track;
 
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Box;
@@ -21,6 +21,7 @@ public class Waypoint {
     private final BlockPos pos1;
     private final BlockPos pos2;
     private final int order; // Order in the race sequence (0 = start)
+    private final Box boundingBox; // Positions are immutable, so the box is computed once
 
     public Waypoint(String id, Type type, BlockPos pos1, BlockPos pos2, int order) {
         this.id = id;
@@ -28,6 +29,7 @@ public class Waypoint {
         this.pos1 = pos1;
         this.pos2 = pos2;
         this.order = order;
+        this.boundingBox = computeBoundingBox(pos1, pos2);
     }
 
     public String getId() {
@@ -55,6 +57,10 @@ public class Waypoint {
      * Expands by 0.5 to match block boundaries properly.
      */
     public Box getBoundingBox() {
+        return boundingBox;
+    }
+
+    private static Box computeBoundingBox(BlockPos pos1, BlockPos pos2) {
         int minX = Math.min(pos1.getX(), pos2.getX());
         int minY = Math.min(pos1.getY(), pos2.getY());
         int minZ = Math.min(pos1.getZ(), pos2.getZ());
@@ -78,6 +84,36 @@ public class Waypoint {
         return contains(Vec3d.ofCenter(position));
     }
 
+    /**
+     * Fraction (0..1) of the movement from one position to another at which the
+     * bounding box is entered. Used to time crossings more precisely than per tick.
+     * Returns 1 if the segment doesn't enter the box.
+     */
+    public double getEntryFraction(Vec3d from, Vec3d to) {
+        double[] range = {0, 1};
+        if (!clipAxis(from.x, to.x, boundingBox.minX, boundingBox.maxX, range)
+                || !clipAxis(from.y, to.y, boundingBox.minY, boundingBox.maxY, range)
+                || !clipAxis(from.z, to.z, boundingBox.minZ, boundingBox.maxZ, range)) {
+            return 1;
+        }
+        return range[0];
+    }
+
+    /**
+     * Narrow the [enter, exit] range of a segment to the part inside the slab [min, max] of one axis.
+     */
+    private static boolean clipAxis(double from, double to, double min, double max, double[] range) {
+        double delta = to - from;
+        if (delta == 0) {
+            return from >= min && from < max;
+        }
+        double t1 = (min - from) / delta;
+        double t2 = (max - from) / delta;
+        range[0] = Math.max(range[0], Math.min(t1, t2));
+        range[1] = Math.min(range[1], Math.max(t1, t2));
+        return range[0] <= range[1];
+    }
+
     /**
      * Get the center of the waypoint.
      */
@@ -85,6 +121,14 @@ public class Waypoint {
         return getBoundingBox().getCenter();
     }
 
+    /**
+     * Check if another waypoint has the same type, order and bounds (ignoring the ID).
+     */
+    public boolean hasSameLayout(Waypoint other) {
+        return type == other.type && order == other.order
+                && pos1.equals(other.pos1) && pos2.equals(other.pos2);
+    }
+
     @Override
     public String toString() {
         return String.format("Waypoint{id='%s', type=%s, order=%d, pos1=%s, pos2=%s}",
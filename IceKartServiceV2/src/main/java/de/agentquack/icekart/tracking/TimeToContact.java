@@ -0,0 +1,57 @@
+package de.agentquack.icekart.tracking;
+
+import net.minecraft.util.math.Vec3d;
+
+/**
+ * Time-to-contact bound for gate checks. A vehicle moves at most {@link #MAX_BLOCKS_PER_TICK}
+ * per tick, so a racer that is d blocks away from the nearest gate can't be inside any gate
+ * for the next d / MAX_BLOCKS_PER_TICK ticks and its gate checks can be skipped until then.
+ * Near the gates racers are checked every tick. Movements above the bound (teleports, respawns)
+ * invalidate the schedule, so no crossing is missed.
+ */
+public final class TimeToContact {
+
+    // Boats on blue ice top out around 3.6 blocks per tick, the rest is headroom
+    public static final double MAX_BLOCKS_PER_TICK = 4.5;
+    private static final double MAX_MOVE_SQUARED = MAX_BLOCKS_PER_TICK * MAX_BLOCKS_PER_TICK;
+
+    // Re-check at least every 5 seconds, even far away from the track
+    private static final int MAX_SKIP_TICKS = 100;
+
+    private TimeToContact() {
+    }
+
+    /**
+     * Ticks after the current one in which a racer can't reach a gate.
+     *
+     * @param nearestGateDistanceSquared squared distance to the nearest gate bounds
+     * @return number of ticks to skip, 0 to check again next tick
+     */
+    public static int skippableTicks(double nearestGateDistanceSquared) {
+        if (nearestGateDistanceSquared == Double.POSITIVE_INFINITY) {
+            return MAX_SKIP_TICKS;
+        }
+        // One tick less than the bound, the last tick before contact is always checked
+        int ticks = (int) (Math.sqrt(nearestGateDistanceSquared) / MAX_BLOCKS_PER_TICK) - 1;
+        return Math.max(0, Math.min(ticks, MAX_SKIP_TICKS));
+    }
+
+    /**
+     * Whether a movement between two ticks stays within the speed bound the schedule relies on.
+     */
+    public static boolean isPlausibleMove(Vec3d from, Vec3d to) {
+        return from.squaredDistanceTo(to) <= MAX_MOVE_SQUARED;
+    }
+
+    /**
+     * Squared distance from a point to an axis-aligned box, 0 inside the box.
+     */
+    public static double distanceSquared(double minX, double minY, double minZ,
+                                         double maxX, double maxY, double maxZ,
+                                         double x, double y, double z) {
+        double dx = Math.max(0, Math.max(minX - x, x - maxX));
+        double dy = Math.max(0, Math.max(minY - y, y - maxY));
+        double dz = Math.max(0, Math.max(minZ - z, z - maxZ));
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
@@ -0,0 +1,152 @@
+package de.agentquack.icekart.tracking;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import de.agentquack.icekart.Icekart;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Role of a tracker (operator client or dedicated server) in the leader election of the race server.
+ * Trackers cover the whole track or claim a shard of it, and the race server elects a leader per
+ * shard. Only the leader reports crossings; standby trackers shadow-track so they can take over
+ * instantly when the leader disconnects.
+ *
+ * Crossings of the last few seconds are kept and replayed on promotion, so crossings made
+ * between the leader dropping out and the promotion aren't lost. The race server drops the
+ * ones the old leader already reported: same racer and gate at (almost) the same race time.
+ */
+public class TrackerElection {
+
+    public static final int CLIENT_PRIORITY = 0;
+    public static final int SERVER_PRIORITY = 10;
+
+    // Crossings kept for replay after a promotion
+    private static final long REPLAY_WINDOW_NANOS = 5_000_000_000L;
+
+    private record Recent(String message, long nanos) {
+    }
+
+    private final String trackerId = UUID.randomUUID().toString().substring(0, 8);
+    private final int priority;
+    private final Deque<Recent> recent = new ArrayDeque<>();
+
+    // Claimed shard, null for the whole track
+    private String shardId = null;
+    private List<String> shardGates = List.of();
+
+    // Leader announced by the race server, null until the first announcement
+    private String leaderId = null;
+    private long term = 0;
+
+    public TrackerElection(int priority) {
+        this.priority = priority;
+    }
+
+    public String getTrackerId() {
+        return trackerId;
+    }
+
+    /**
+     * Claim a shard of the track (null for the whole track). The election has to be
+     * joined again for the claim to take effect.
+     */
+    public synchronized void setShard(String shardId, List<String> gateIds) {
+        this.shardId = shardId;
+        this.shardGates = shardId != null ? List.copyOf(gateIds) : List.of();
+        leaderId = null;
+        term = 0;
+        recent.clear();
+    }
+
+    /**
+     * Message to join the election, sent after every (re)connect.
+     */
+    public synchronized JsonObject joinMessage() {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "tracker");
+        msg.addProperty("trackerId", trackerId);
+        msg.addProperty("priority", priority);
+        if (shardId != null) {
+            msg.addProperty("shard", shardId);
+            JsonArray gates = new JsonArray();
+            shardGates.forEach(gates::add);
+            msg.add("gates", gates);
+        }
+        return msg;
+    }
+
+    /**
+     * True if this tracker reports crossings. Race servers without leader election
+     * never announce a leader, every tracker reports to them.
+     */
+    public synchronized boolean isLeader() {
+        return leaderId == null || leaderId.equals(trackerId);
+    }
+
+    public synchronized String getLeaderId() {
+        return leaderId;
+    }
+
+    /**
+     * Handle a leader announcement.
+     *
+     * @return crossing messages to send now, non-empty if this tracker was just promoted
+     */
+    public synchronized List<String> onLeader(String leaderId, long term) {
+        if (term < this.term) {
+            return List.of();
+        }
+        boolean wasLeader = trackerId.equals(this.leaderId);
+        this.leaderId = leaderId;
+        this.term = term;
+
+        boolean leader = trackerId.equals(leaderId);
+        if (leader == wasLeader) {
+            return List.of();
+        }
+        if (!leader) {
+            Icekart.LOGGER.info("[IceKart] Tracker {} is standby (leader: {}, term {})", trackerId, leaderId, term);
+            return List.of();
+        }
+        Icekart.LOGGER.info("[IceKart] Tracker {} promoted to leader (term {}), replaying {} crossings",
+                trackerId, term, recent.size());
+        prune(System.nanoTime());
+        List<String> replay = new ArrayList<>(recent.size());
+        for (Recent crossing : recent) {
+            replay.add(crossing.message());
+        }
+        return replay;
+    }
+
+    /**
+     * Remember a crossing message for a possible replay.
+     *
+     * @return true if the message should be sent (this tracker is the leader)
+     */
+    public synchronized boolean offer(String message) {
+        long now = System.nanoTime();
+        prune(now);
+        recent.addLast(new Recent(message, now));
+        return leaderId == null || leaderId.equals(trackerId);
+    }
+
+    /**
+     * Forget the election state, e.g. when the connection is lost.
+     */
+    public synchronized void reset() {
+        leaderId = null;
+        term = 0;
+        recent.clear();
+    }
+
+    private void prune(long now) {
+        while (!recent.isEmpty() && now - recent.peekFirst().nanos() > REPLAY_WINDOW_NANOS) {
+            recent.removeFirst();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+// Offset of a tracker's race clock against the server's. Trackers anchor their race start from the
+// elapsed time the server reports, which leaves an error of up to half their round trip, and
+// trackers on different machines are off in different ways. Crossings of several trackers are merged
+// by race time, so the server probes each tracker: it sends its own elapsed race time, the tracker
+// answers with its race time on receipt, and the offset is the tracker's time minus the server's
+// elapsed time half a round trip after the probe. Of the recent probes the one with the shortest
+// round trip wins. All times are on monotonic clocks, wall clocks are never compared.
+
+const SAMPLES = 8;
+
+interface Sample {
+    offsetNanos: number;
+    rttMs: number;
+}
+
+export class TrackerClock {
+    private probeId = 0;
+    private probeSentAt = 0; // performance.now() of the pending probe, 0 if none
+    private probeElapsedNanos = 0;
+    private samples: Sample[] = [];
+
+    offsetNanos = 0; // tracker race time - server race time, 0 until the first answer
+
+    /**
+     * Message probing the tracker's clock, to send now.
+     */
+    probe(elapsedNanos: number, now: number) {
+        this.probeId++;
+        this.probeSentAt = now;
+        this.probeElapsedNanos = elapsedNanos;
+        return { type: 'clock', id: this.probeId };
+    }
+
+    /**
+     * Answer of the tracker. Answers of older probes are ignored.
+     */
+    onAnswer(id: unknown, raceNanos: unknown, now: number) {
+        if (id !== this.probeId || this.probeSentAt === 0) return;
+        const rttMs = now - this.probeSentAt;
+        this.probeSentAt = 0;
+        if (typeof raceNanos !== 'number') return; // the tracker doesn't know the race start yet
+
+        this.samples.push({ offsetNanos: raceNanos - (this.probeElapsedNanos + rttMs * 500_000), rttMs });
+        if (this.samples.length > SAMPLES) this.samples.shift();
+
+        let best = this.samples[0];
+        for (const sample of this.samples) {
+            if (sample.rttMs < best.rttMs) best = sample;
+        }
+        this.offsetNanos = Math.round(best.offsetNanos);
+    }
+
+    /**
+     * Map a race time of the tracker onto the server's race clock.
+     */
+    correct(raceNanos: number): number {
+        return raceNanos - this.offsetNanos;
+    }
+
+    /**
+     * Forget the samples, e.g. when a new race starts (trackers anchor their race start again).
+     */
+    reset() {
+        this.probeSentAt = 0;
+        this.samples = [];
+        this.offsetNanos = 0;
+    }
+}
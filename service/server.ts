@@ -1,4 +1,7 @@
-import { serve } from "bun";
+import { serve, type ServerWebSocket } from "bun";
+import { StandingsTree } from "./standings";
+import { ShardTimeline, type ShardCrossing } from "./timeline";
+import { TrackerClock } from "./clock";
 
 interface LapData {
     lapNumber: number;
@@ -20,6 +23,22 @@ interface Racer {
     finished: boolean;
     history: LapData[]; // History of completed laps
     currentLapSplits: number[]; // Splits for the current ongoing lap
+    delta?: number; // delta to the personal best lap at the last checkpoint (ms), from client timing
+}
+
+// Timing computed by the Minecraft client from its gate crossing times (monotonic clock, nanoseconds).
+// When present it is preferred over message arrival times, so network latency doesn't affect timing.
+interface ClientTiming {
+    gate: string;
+    armed: boolean; // first crossing of the race, only arms lap timing
+    lap: number; // lap this crossing belongs to (1 based)
+    split: number; // split index within the lap
+    splitNanos: number; // time since lap start
+    sectorNanos: number; // time since the previous crossing
+    lapNanos?: number; // lap time, only if this crossing completed a lap
+    bestLapNanos?: number;
+    raceNanos: number; // time since race start
+    deltaNanos?: number; // delta to the racer's best lap (positive = slower)
 }
 
 const CHECKPOINTS_PER_LAP = Bun.env.CHECKPOINTS_PER_LAP ? parseInt(Bun.env.CHECKPOINTS_PER_LAP) : 10; // Number of checkpoints before a lap is complete
@@ -35,6 +54,39 @@ interface GameState {
 // Track the best time for each position (lap-checkpoint) to calculate gaps
 const courseRecords = new Map<string, number>();
 
+// Live standings, re-ranked in O(log n) whenever a racer's progress changes
+const standings = new StandingsTree<Racer>();
+
+// Every Minecraft client (or dedicated server) running the mod is a tracker. Trackers either cover
+// the whole track or claim a shard (a set of gates). Per shard only the elected leader reports
+// crossings, standby trackers shadow-track and take over when the leader disconnects.
+// A whole track tracker outranks all shards, shard trackers are standby while one is connected.
+interface Tracker {
+    ws: ServerWebSocket<unknown>;
+    trackerId: string;
+    priority: number; // higher wins, the dedicated server outranks operator clients
+    shard: string; // '' for the whole track
+    gates: string[]; // gate IDs claimed by the shard
+    joinedAt: number;
+    clock: TrackerClock; // offset of the tracker's race clock, corrects the race times it reports
+}
+
+const trackers: Tracker[] = [];
+const leaders = new Map<string, Tracker | null>(); // by shard
+let leaderTerm = 0;
+
+// Crossings of sharded trackers, merged into one timeline per racer
+const SHARD_REORDER_MS = Bun.env.SHARD_REORDER_MS ? parseInt(Bun.env.SHARD_REORDER_MS) : 500;
+const SHARD_STALE_MS = Bun.env.SHARD_STALE_MS ? parseInt(Bun.env.SHARD_STALE_MS) : 60_000;
+const shardTimeline = new ShardTimeline(SHARD_REORDER_MS);
+
+// Crossings are identified by racer, gate and race time, which every tracker agrees on (unlike
+// local lap or entry counts). A crossing reported by several trackers (or replayed after a failover)
+// is only applied once: reports of the same racer and gate closer than the trackers' gate cooldown
+// are the same crossing, seen on slightly different clocks.
+const CROSSING_TOLERANCE_MS = Bun.env.CROSSING_TOLERANCE_MS ? parseInt(Bun.env.CROSSING_TOLERANCE_MS) : 500;
+const lastCrossings = new Map<string, number>(); // racerId:gate -> raceNanos of the last applied crossing
+
 const INITIAL_RACERS: Racer[] = [];
 
 let gameState: GameState = {
@@ -45,6 +97,18 @@ let gameState: GameState = {
     totalLaps: Bun.env.TOTAL_LAPS ? parseInt(Bun.env.TOTAL_LAPS) : 5,
 };
 
+// Race start on the server's monotonic clock (ms). Trackers map the race time onto their own
+// monotonic clock from the elapsed time in init messages and pongs, wall clocks of different
+// machines are never compared.
+let raceStartMark: number | null = null;
+
+function raceElapsedNanos(): number | null {
+    return raceStartMark !== null ? Math.round((performance.now() - raceStartMark) * 1_000_000) : null;
+}
+
+// Trackers are probed while a race runs, to correct what is left of their clock offset
+const CLOCK_PROBE_MS = Bun.env.CLOCK_PROBE_MS ? parseInt(Bun.env.CLOCK_PROBE_MS) : 5_000;
+
 const server = serve({
     port: Bun.env.PORT ? parseInt(Bun.env.PORT) : 3000,
     async fetch(req, server) {
@@ -84,22 +148,17 @@ const server = serve({
             return Response.redirect('/leaderboard/');
         }
 
+        // Health of the track shards
+        if (url.pathname === '/api/shards' && req.method === 'GET') {
+            return new Response(JSON.stringify({ shards: getShardHealth() }), {
+                headers: { "Content-Type": "application/json" }
+            });
+        }
+
         // Get race results (sorted)
         if (url.pathname === '/api/results' && req.method === 'GET') {
-            const sortedRacers = [...gameState.racers]
-                .filter(r => !r.disqualified)
-                .sort((a, b) => {
-                    if (b.laps !== a.laps) return b.laps - a.laps;
-                    if (b.checkpoints !== a.checkpoints) return b.checkpoints - a.checkpoints;
-                    const timeA = a.totalTime || Infinity;
-                    const timeB = b.totalTime || Infinity;
-                    return timeA - timeB;
-                });
-            
-            // Add disqualified at the end
-            const disqualified = gameState.racers.filter(r => r.disqualified);
-            
-            return new Response(JSON.stringify({ racers: [...sortedRacers, ...disqualified] }), {
+            // Standings order already puts disqualified racers at the end
+            return new Response(JSON.stringify({ racers: standings.toArray() }), {
                 headers: { "Content-Type": "application/json" }
             });
         }
@@ -135,6 +194,7 @@ const server = serve({
                 };
                 
                 gameState.racers.push(newRacer);
+                standings.update(newRacer);
                 console.log(`\x1b[32m[RACER] Added ${newRacer.name}\x1b[0m`);
                 
                 // Broadcast update
@@ -161,10 +221,14 @@ const server = serve({
                 status: gameState.status,
                 racers: gameState.racers,
                 startTime: gameState.startTime,
+                elapsedNanos: raceElapsedNanos(),
                 endTime: gameState.endTime,
                 totalLaps: gameState.totalLaps
             }));
         },
+        close(ws) {
+            handleTrackerLeave(ws);
+        },
         message(ws, message) {
             const data = JSON.parse(typeof message === 'string' ? message : new TextDecoder().decode(message));
 
@@ -173,13 +237,26 @@ const server = serve({
             } else if (data.type === 'lap') {
                 handleLap(data.racerId);
             } else if (data.type === 'checkpoint') {
-                handleCheckpoint(data.racerId);
+                handleCheckpoint(ws, data.racerId, data.timing, data.shard, data.crossing);
+            } else if (data.type === 'tracker') {
+                handleTrackerJoin(ws, data);
             } else if (data.type === 'disqualify') {
                 handleDisqualify(data.racerId);
             } else if (data.type === 'remove') {
                 handleRemove(data.name);
             } else if (data.type === 'register') {
                 handleRegister(data.name);
+            } else if (data.type === 'config') {
+                handleConfig(data);
+            } else if (data.type === 'clock') {
+                trackers.find(t => t.ws === ws)?.clock.onAnswer(data.id, data.raceNanos, performance.now());
+            } else if (data.type === 'ping') {
+                ws.send(JSON.stringify({
+                    type: 'pong',
+                    id: data.id,
+                    startTime: gameState.startTime,
+                    elapsedNanos: raceElapsedNanos()
+                }));
             }
         },
     },
@@ -193,6 +270,8 @@ function handleAction(action: string) {
         gameState.endTime = null;
         if (!gameState.startTime) {
             gameState.startTime = Date.now();
+            raceStartMark = performance.now();
+            trackers.forEach(t => t.clock.reset());
             console.log(`\x1b[32m[RACE] Started at ${new Date(gameState.startTime).toISOString()}\x1b[0m`);
         }
     } else if (action === 'stop') {
@@ -202,6 +281,7 @@ function handleAction(action: string) {
     } else if (action === 'reset') {
         gameState.status = 'idle';
         gameState.startTime = null;
+        raceStartMark = null;
         gameState.endTime = null;
         
         // Reset stats for all current racers instead of reverting to initial list
@@ -216,9 +296,14 @@ function handleAction(action: string) {
             r.currentLapSplits = [];
             r.gap = 0;
             r.finished = false;
+            r.delta = undefined;
         });
         
         courseRecords.clear();
+        lastCrossings.clear();
+        shardTimeline.clear();
+        standings.clear();
+        gameState.racers.forEach(r => standings.update(r));
         console.log(`\x1b[36m[RACE] Reset - stats cleared for ${gameState.racers.length} racers\x1b[0m`);
     }
     
@@ -227,6 +312,7 @@ function handleAction(action: string) {
         status: gameState.status,
         racers: gameState.racers,
         startTime: gameState.startTime,
+        elapsedNanos: raceElapsedNanos(),
         endTime: gameState.endTime,
         totalLaps: gameState.totalLaps
     }));
@@ -245,6 +331,9 @@ function updateRacerGap(racer: Racer) {
     }
     
     racer.gap = currentTotalTime - recordTime;
+
+    // Every change of laps, checkpoints or time ends here, keep the standings in sync
+    standings.update(racer);
 }
 
 function handleLap(racerId: string) {
@@ -311,25 +400,110 @@ function handleLap(racerId: string) {
     }));
 }
 
-function getSortedRacers() {
-    // Sort active racers: Most laps first, then most checkpoints, then lowest totalTime
-    return [...gameState.racers]
-        .filter(r => !r.disqualified)
-        .sort((a, b) => {
-            if (b.laps !== a.laps) return b.laps - a.laps;
-            if (b.checkpoints !== a.checkpoints) return b.checkpoints - a.checkpoints;
-            const timeA = a.totalTime || Infinity;
-            const timeB = b.totalTime || Infinity;
-            return timeA - timeB;
+function isClientTiming(timing: any): timing is ClientTiming {
+    return timing != null
+        && typeof timing.armed === 'boolean'
+        && typeof timing.splitNanos === 'number'
+        && typeof timing.raceNanos === 'number';
+}
+
+const nanosToMs = (nanos: number) => Math.round(nanos / 1_000) / 1_000;
+
+/**
+ * Apply a checkpoint with client computed timing. The client decides when a lap is complete.
+ */
+function handleTimedCheckpoint(racer: Racer, timing: ClientTiming) {
+    const now = Date.now();
+    if (timing.raceNanos > 0) {
+        racer.totalTime = nanosToMs(timing.raceNanos);
+    } else {
+        racer.totalTime = now - (gameState.startTime || now);
+    }
+
+    if (timing.armed) {
+        racer.checkpoints = 0;
+        racer.currentLapSplits = [];
+        racer.lastLapTimestamp = now;
+        updateRacerGap(racer);
+        console.log(`\x1b[33m[LAP] ${racer.name} armed lap timing (client timing)\x1b[0m`);
+        broadcastUpdate();
+        return;
+    }
+
+    racer.checkpoints++;
+    racer.currentLapSplits.push(nanosToMs(timing.splitNanos));
+    racer.delta = typeof timing.deltaNanos === 'number' ? nanosToMs(timing.deltaNanos) : undefined;
+
+    if (timing.lapNanos !== undefined && timing.lapNanos >= 0) {
+        const lapTime = nanosToMs(timing.lapNanos);
+        racer.history.push({
+            lapNumber: racer.laps + 1,
+            lapTime,
+            splits: [...racer.currentLapSplits]
         });
+        if (racer.bestLap === null || lapTime < racer.bestLap) {
+            racer.bestLap = lapTime;
+        }
+        racer.laps++;
+        racer.checkpoints = 0;
+        racer.currentLapSplits = [];
+        racer.lastLapTimestamp = now;
+
+        updateRacerGap(racer);
+        console.log(`\x1b[33m[LAP] ${racer.name} completed lap ${racer.laps} (time: ${(lapTime / 1000).toFixed(3)}s, client timing)\x1b[0m`);
+        checkRaceFinish(racer);
+    } else {
+        updateRacerGap(racer);
+        console.log(`\x1b[33m[CHECKPOINT] ${racer.name} split ${timing.split + 1} at ${(nanosToMs(timing.splitNanos) / 1000).toFixed(3)}s (client timing)\x1b[0m`);
+    }
+
+    broadcastUpdate();
+}
+
+function broadcastUpdate() {
+    server.publish("all", JSON.stringify({
+        type: 'update',
+        racers: gameState.racers,
+        status: gameState.status,
+        endTime: gameState.endTime
+    }));
 }
 
-function handleCheckpoint(racerId: string) {
+function handleCheckpoint(ws: ServerWebSocket<unknown>, racerId: string, timing?: unknown, shard?: unknown, crossing?: unknown) {
     if (gameState.status !== 'racing' && gameState.status !== 'finishing') return;
 
     const racer = gameState.racers.find(r => r.id === racerId);
     if (!racer || racer.disqualified || racer.finished) return;
 
+    const reported = isClientTiming(timing) ? timing
+        : typeof shard === 'string' && isShardCrossing(crossing) ? crossing : null;
+    if (reported !== null) {
+        // Race times of different trackers are compared and merged, put them on the server's race clock
+        const tracker = trackers.find(t => t.ws === ws);
+        if (tracker) reported.raceNanos = tracker.clock.correct(reported.raceNanos);
+    }
+    if (reported !== null && isDuplicateCrossing(racerId, reported.gate, reported.raceNanos)) {
+        console.log(`\x1b[90m[CHECKPOINT] ${racer.name} duplicate crossing of ${reported.gate} at ${(nanosToMs(reported.raceNanos) / 1000).toFixed(3)}s ignored\x1b[0m`);
+        return;
+    }
+
+    if (typeof shard === 'string' && isShardCrossing(crossing)) {
+        // Timed once the crossing is merged into the racer's timeline
+        shardTimeline.add({
+            racerId,
+            shard,
+            gate: crossing.gate,
+            gates: crossing.gates,
+            raceNanos: crossing.raceNanos
+        }, Date.now());
+        return;
+    }
+
+    if (isClientTiming(timing)) {
+        handleTimedCheckpoint(racer, timing);
+        return;
+    }
+
     const now = Date.now();
     
     // Record split time
@@ -350,14 +524,14 @@ function handleCheckpoint(racerId: string) {
     
     // Propagate time to lower racers if they are "faster" (time travel prevention)
     // and ensure monotonicity of time for racers behind
-    const sortedRacers = getSortedRacers();
-    const currentRacerIndex = sortedRacers.findIndex(r => r.id === racerId);
+    // Only the racers behind are visited, collected before their times (and positions) change
+    const lowerRacers = standings.after(standings.positionOf(racerId));
     
     let runningMaxTime = racer.totalTime;
     const racersToUpdate: string[] = [];
 
-    for (let i = currentRacerIndex + 1; i < sortedRacers.length; i++) {
-        const lowerRacer = sortedRacers[i];
+    for (const lowerRacer of lowerRacers) {
+        if (lowerRacer.disqualified) break;
         if (runningMaxTime > lowerRacer.totalTime) {
             lowerRacer.totalTime = runningMaxTime;
             updateRacerGap(lowerRacer);
@@ -430,11 +604,167 @@ function handleCheckpoint(racerId: string) {
     }));
 }
 
+/**
+ * Check if the racer's last applied crossing of the gate is the same crossing (within the
+ * tolerance of race time), and remember the crossing otherwise.
+ * Only the last crossing per gate is kept, a lap takes longer than the trackers' replay window.
+ */
+function isDuplicateCrossing(racerId: string, gate: string, raceNanos: number): boolean {
+    const key = `${racerId}:${gate}`;
+    const last = lastCrossings.get(key);
+    if (last !== undefined && Math.abs(raceNanos - last) < CROSSING_TOLERANCE_MS * 1_000_000) return true;
+    lastCrossings.set(key, raceNanos);
+    return false;
+}
+
+function isShardCrossing(crossing: any): crossing is Omit<ShardCrossing, 'racerId' | 'shard'> {
+    return crossing != null
+        && typeof crossing.gate === 'string'
+        && typeof crossing.gates === 'number'
+        && typeof crossing.raceNanos === 'number';
+}
+
+/**
+ * Apply the merged shard crossings whose reorder window has passed.
+ */
+function releaseShardCrossings() {
+    for (const { racerId, timing } of shardTimeline.release(Date.now())) {
+        if (gameState.status !== 'racing' && gameState.status !== 'finishing') break;
+        const racer = gameState.racers.find(r => r.id === racerId);
+        if (!racer || racer.disqualified || racer.finished) continue;
+        handleTimedCheckpoint(racer, timing);
+    }
+}
+
+setInterval(releaseShardCrossings, 50);
+
+function getShardHealth() {
+    const now = Date.now();
+    const shards = new Set<string>(trackers.map(t => t.shard));
+    leaders.forEach((_, shard) => shards.add(shard));
+    shards.delete(''); // the whole track isn't a shard
+
+    return [...shards].sort().map(shard => {
+        const members = trackers.filter(t => t.shard === shard);
+        const stats = shardTimeline.shardStats(shard);
+        const racing = gameState.status === 'racing' || gameState.status === 'finishing';
+        const stale = racing && stats.lastCrossingAt !== null && now - stats.lastCrossingAt > SHARD_STALE_MS;
+        return {
+            shard,
+            gates: members.length > 0 ? members[0].gates : [],
+            trackers: members.map(t => t.trackerId),
+            leader: leaders.get(shard)?.trackerId ?? null,
+            crossings: stats.crossings,
+            late: stats.late,
+            lastCrossingAt: stats.lastCrossingAt,
+            status: members.length === 0 ? 'no-tracker' : stale ? 'stale' : 'ok'
+        };
+    });
+}
+
+function handleTrackerJoin(ws: ServerWebSocket<unknown>, data: any) {
+    if (typeof data.trackerId !== 'string' || !data.trackerId) return;
+
+    // A tracker changing its claim keeps its seniority
+    const existing = trackers.findIndex(t => t.ws === ws || t.trackerId === data.trackerId);
+    const previous = existing !== -1 ? trackers.splice(existing, 1)[0] : undefined;
+    const tracker: Tracker = {
+        ws,
+        trackerId: data.trackerId,
+        priority: typeof data.priority === 'number' ? data.priority : 0,
+        shard: typeof data.shard === 'string' ? data.shard : '',
+        gates: Array.isArray(data.gates) ? data.gates.filter((g: unknown) => typeof g === 'string') : [],
+        joinedAt: previous ? previous.joinedAt : Date.now(),
+        clock: previous && previous.ws === ws ? previous.clock : new TrackerClock() // a reconnected tracker anchors again
+    };
+    trackers.push(tracker);
+    console.log(`\x1b[36m[TRACKER] ${tracker.trackerId} joined${tracker.shard ? ` shard ${tracker.shard} (${tracker.gates.length} gates)` : ''} (${trackers.length} trackers)\x1b[0m`);
+
+    if (!electLeader().has(tracker.shard)) {
+        // Leader unchanged, only tell the new tracker who it is
+        ws.send(leaderMessage(tracker.shard));
+    }
+    probeClock(tracker);
+}
+
+function probeClock(tracker: Tracker) {
+    const elapsedNanos = raceElapsedNanos();
+    if (elapsedNanos === null) return;
+    tracker.ws.send(JSON.stringify(tracker.clock.probe(elapsedNanos, performance.now())));
+}
+
+setInterval(() => trackers.forEach(probeClock), CLOCK_PROBE_MS);
+
+function handleTrackerLeave(ws: ServerWebSocket<unknown>) {
+    const index = trackers.findIndex(t => t.ws === ws);
+    if (index === -1) return;
+
+    const [tracker] = trackers.splice(index, 1);
+    console.log(`\x1b[36m[TRACKER] ${tracker.trackerId} left (${trackers.length} trackers)\x1b[0m`);
+    if (tracker.shard && !trackers.some(t => t.shard === tracker.shard)) {
+        console.log(`\x1b[31m[TRACKER] Shard ${tracker.shard} has no tracker left, its gates are not covered\x1b[0m`);
+    }
+    electLeader();
+}
+
+/**
+ * Elect the tracker with the highest priority (the longest connected one on ties) per shard.
+ * A whole track leader leads every shard. Announces the leader to the trackers of each shard
+ * whose leader changed.
+ * @returns the shards whose leader changed
+ */
+function electLeader(): Set<string> {
+    const best = (candidates: Tracker[]) => {
+        let next: Tracker | null = null;
+        for (const tracker of candidates) {
+            if (!next || tracker.priority > next.priority
+                || (tracker.priority === next.priority && tracker.joinedAt < next.joinedAt)) {
+                next = tracker;
+            }
+        }
+        return next;
+    };
+
+    const wholeTrack = best(trackers.filter(t => t.shard === ''));
+    const shards = new Set<string>(['', ...trackers.map(t => t.shard)]);
+    leaders.forEach((_, shard) => shards.add(shard));
+
+    const changed = new Set<string>();
+    for (const shard of shards) {
+        const next = shard === '' ? wholeTrack : wholeTrack ?? best(trackers.filter(t => t.shard === shard));
+        if ((leaders.get(shard) ?? null) === next) continue;
+
+        leaders.set(shard, next);
+        changed.add(shard);
+    }
+    if (changed.size === 0) return changed;
+
+    leaderTerm++;
+    for (const shard of changed) {
+        const leader = leaders.get(shard);
+        console.log(`\x1b[36m[TRACKER] Leader${shard ? ` of shard ${shard}` : ''}: ${leader ? leader.trackerId : 'none'} (term ${leaderTerm})\x1b[0m`);
+        const message = leaderMessage(shard);
+        trackers.filter(t => t.shard === shard).forEach(t => t.ws.send(message));
+    }
+    return changed;
+}
+
+function leaderMessage(shard: string): string {
+    const leader = leaders.get(shard) ?? null;
+    return JSON.stringify({
+        type: 'leader',
+        shard: shard || null,
+        leader: leader ? leader.trackerId : null,
+        term: leaderTerm
+    });
+}
+
 function handleDisqualify(racerId: string) {
     const racer = gameState.racers.find(r => r.id === racerId);
     if (!racer) return;
 
     racer.disqualified = !racer.disqualified; // Toggle disqualification
+    standings.update(racer);
     console.log(`\x1b[31m[DQ] ${racer.name} ${racer.disqualified ? 'DISQUALIFIED' : 'RESTORED'}\x1b[0m`);
 
     server.publish("all", JSON.stringify({
@@ -445,12 +775,37 @@ function handleDisqualify(racerId: string) {
     }));
 }
 
+function handleConfig(data: any) {
+    // Changing the lap count of a running race would finish or extend it midway
+    if (gameState.status === 'racing' || gameState.status === 'finishing') {
+        console.log(`\x1b[33m[CONFIG] Ignored while the race is running\x1b[0m`);
+        return;
+    }
+    const totalLaps = Number(data.totalLaps);
+    if (!Number.isInteger(totalLaps) || totalLaps < 1) return;
+
+    gameState.totalLaps = totalLaps;
+    console.log(`\x1b[36m[CONFIG] Total laps: ${totalLaps}\x1b[0m`);
+
+    server.publish("all", JSON.stringify({
+        type: 'init',
+        status: gameState.status,
+        racers: gameState.racers,
+        startTime: gameState.startTime,
+        elapsedNanos: raceElapsedNanos(),
+        endTime: gameState.endTime,
+        totalLaps: gameState.totalLaps
+    }));
+}
+
 function handleRemove(name: string) {
     const index = gameState.racers.findIndex(r => r.name === name);
     if (index === -1) return;
 
     const racer = gameState.racers[index];
     gameState.racers.splice(index, 1);
+    standings.remove(racer.id);
+    shardTimeline.removeRacer(racer.id);
     console.log(`\x1b[31m[RACER] Removed ${racer.name}\x1b[0m`);
 
     server.publish("all", JSON.stringify({
@@ -485,6 +840,7 @@ function handleRegister(name: string) {
     };
     
     gameState.racers.push(newRacer);
+    standings.update(newRacer);
     console.log(`\x1b[32m[RACER] Added ${newRacer.name}\x1b[0m`);
     
     server.publish("all", JSON.stringify({
@@ -0,0 +1,231 @@
+// Order-statistics tree of race standings (a treap augmented with subtree sizes).
+// Racers are ordered disqualified last, then most laps, most checkpoints, lowest
+// totalTime (0 = no time yet) and finally by id, so the order is total.
+// Updates, position lookups and selecting by position are O(log n), the leader is O(1).
+
+export interface Standing {
+    id: string;
+    disqualified: boolean;
+    laps: number;
+    checkpoints: number;
+    totalTime: number;
+}
+
+interface Key {
+    id: string;
+    disqualified: boolean;
+    laps: number;
+    checkpoints: number;
+    totalTime: number;
+}
+
+interface Node<T> {
+    key: Key;
+    value: T;
+    priority: number;
+    size: number;
+    left: Node<T> | null;
+    right: Node<T> | null;
+}
+
+export function compareStandings(a: Standing, b: Standing): number {
+    if (a.disqualified !== b.disqualified) return a.disqualified ? 1 : -1;
+    if (b.laps !== a.laps) return b.laps - a.laps;
+    if (b.checkpoints !== a.checkpoints) return b.checkpoints - a.checkpoints;
+    const timeA = a.totalTime || Infinity;
+    const timeB = b.totalTime || Infinity;
+    if (timeA !== timeB) return timeA < timeB ? -1 : 1;
+    return a.id < b.id ? -1 : a.id > b.id ? 1 : 0;
+}
+
+const size = (node: Node<any> | null) => node ? node.size : 0;
+
+function updateSize(node: Node<any>) {
+    node.size = 1 + size(node.left) + size(node.right);
+}
+
+export class StandingsTree<T extends Standing> {
+    // Key a racer was inserted with, needed to find its node after the racer object changed
+    private keys = new Map<string, Key>();
+    private root: Node<T> | null = null;
+    private leaderNode: Node<T> | null = null;
+
+    get size(): number {
+        return this.keys.size;
+    }
+
+    /**
+     * Insert or re-rank a racer after its laps, checkpoints, time or disqualification changed. O(log n)
+     */
+    update(racer: T) {
+        const key: Key = {
+            id: racer.id,
+            disqualified: racer.disqualified,
+            laps: racer.laps,
+            checkpoints: racer.checkpoints,
+            totalTime: racer.totalTime,
+        };
+        const previous = this.keys.get(racer.id);
+        if (previous && compareStandings(previous, key) === 0) return;
+
+        if (previous) this.root = this.delete(this.root, previous);
+        this.keys.set(racer.id, key);
+        const node: Node<T> = { key, value: racer, priority: Math.random(), size: 1, left: null, right: null };
+        this.root = this.insert(this.root, node);
+        this.updateLeader();
+    }
+
+    /**
+     * Remove a racer. O(log n)
+     */
+    remove(id: string): boolean {
+        const previous = this.keys.get(id);
+        if (!previous) return false;
+        this.keys.delete(id);
+        this.root = this.delete(this.root, previous);
+        this.updateLeader();
+        return true;
+    }
+
+    clear() {
+        this.keys.clear();
+        this.root = null;
+        this.leaderNode = null;
+    }
+
+    /**
+     * Racer in first position, undefined if empty. O(1)
+     */
+    leader(): T | undefined {
+        return this.leaderNode?.value;
+    }
+
+    /**
+     * Position (1 based) of a racer, -1 if unknown. O(log n)
+     */
+    positionOf(id: string): number {
+        const key = this.keys.get(id);
+        if (!key) return -1;
+        let position = 0;
+        let node = this.root;
+        while (node) {
+            const cmp = compareStandings(key, node.key);
+            if (cmp < 0) {
+                node = node.left;
+            } else {
+                position += size(node.left) + 1;
+                if (cmp === 0) return position;
+                node = node.right;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Racer at a position (1 based), undefined if out of range. O(log n)
+     */
+    at(position: number): T | undefined {
+        if (position < 1 || position > size(this.root)) return undefined;
+        let remaining = position;
+        let node = this.root;
+        while (node) {
+            const leftSize = size(node.left);
+            if (remaining <= leftSize) {
+                node = node.left;
+            } else if (remaining === leftSize + 1) {
+                return node.value;
+            } else {
+                remaining -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        return undefined;
+    }
+
+    /**
+     * Racers after the given position (1 based) in standings order. O(log n + k)
+     */
+    after(position: number): T[] {
+        const result: T[] = [];
+        const collect = (node: Node<T> | null, offset: number) => {
+            if (!node) return;
+            const nodePosition = offset + size(node.left) + 1;
+            if (nodePosition > position) collect(node.left, offset);
+            if (nodePosition > position) result.push(node.value);
+            collect(node.right, nodePosition);
+        };
+        collect(this.root, 0);
+        return result;
+    }
+
+    /**
+     * All racers in standings order. O(n)
+     */
+    toArray(): T[] {
+        return this.after(0);
+    }
+
+    private insert(node: Node<T> | null, inserted: Node<T>): Node<T> {
+        if (!node) return inserted;
+        if (inserted.priority > node.priority) {
+            // Split the subtree around the new key and put the new node on top
+            [inserted.left, inserted.right] = this.split(node, inserted.key);
+            updateSize(inserted);
+            return inserted;
+        }
+        if (compareStandings(inserted.key, node.key) < 0) {
+            node.left = this.insert(node.left, inserted);
+        } else {
+            node.right = this.insert(node.right, inserted);
+        }
+        updateSize(node);
+        return node;
+    }
+
+    private delete(node: Node<T> | null, key: Key): Node<T> | null {
+        if (!node) return null;
+        const cmp = compareStandings(key, node.key);
+        if (cmp === 0) return this.merge(node.left, node.right);
+        if (cmp < 0) {
+            node.left = this.delete(node.left, key);
+        } else {
+            node.right = this.delete(node.right, key);
+        }
+        updateSize(node);
+        return node;
+    }
+
+    // Split into keys smaller than the given key and keys greater or equal
+    private split(node: Node<T> | null, key: Key): [Node<T> | null, Node<T> | null] {
+        if (!node) return [null, null];
+        if (compareStandings(node.key, key) < 0) {
+            const [left, right] = this.split(node.right, key);
+            node.right = left;
+            updateSize(node);
+            return [node, right];
+        }
+        const [left, right] = this.split(node.left, key);
+        node.left = right;
+        updateSize(node);
+        return [left, node];
+    }
+
+    private merge(left: Node<T> | null, right: Node<T> | null): Node<T> | null {
+        if (!left) return right;
+        if (!right) return left;
+        if (left.priority > right.priority) {
+            left.right = this.merge(left.right, right);
+            updateSize(left);
+            return left;
+        }
+        right.left = this.merge(left, right.left);
+        updateSize(right);
+        return right;
+    }
+
+    private updateLeader() {
+        let node = this.root;
+        while (node && node.left) node = node.left;
+        this.leaderNode = node;
+    }
+}
@@ -0,0 +1,165 @@
+// Merges the gate crossings of sharded trackers into one ordered timeline per racer.
+// Each shard only sees part of the track, so shards report raw crossings (gate and race time)
+// and the lap timing is computed here. Crossings are held for a short reorder window, released
+// in race time order and timed with the same lap rules as the Minecraft client: the first
+// crossing arms lap timing, after that every `gates` crossings complete a lap.
+
+export interface ShardCrossing {
+    racerId: string;
+    shard: string;
+    gate: string;
+    gates: number; // gates per lap of the whole track
+    raceNanos: number; // time since race start, corrected for the tracker's clock offset
+}
+
+// Same shape as the timing the client computes for unsharded checkpoints
+export interface MergedTiming {
+    gate: string;
+    armed: boolean;
+    lap: number;
+    split: number;
+    splitNanos: number;
+    sectorNanos: number;
+    lapNanos?: number;
+    bestLapNanos?: number;
+    raceNanos: number;
+}
+
+export interface ShardStats {
+    shard: string;
+    crossings: number;
+    late: number; // crossings that arrived after later ones of the same racer were already released
+    lastCrossingAt: number | null; // arrival time (ms)
+}
+
+interface Pending {
+    crossing: ShardCrossing;
+    arrivedAt: number;
+}
+
+interface RacerTimeline {
+    pending: Pending[]; // sorted by raceNanos
+    armed: boolean;
+    completedLaps: number;
+    splitCount: number;
+    lapStartNanos: number;
+    lastCrossingNanos: number;
+    bestLapNanos: number; // -1 until the first lap
+}
+
+export class ShardTimeline {
+    private racers = new Map<string, RacerTimeline>();
+    private stats = new Map<string, ShardStats>();
+
+    constructor(private reorderMs: number) {}
+
+    /**
+     * Queue a crossing for its racer's timeline.
+     */
+    add(crossing: ShardCrossing, now: number) {
+        let timeline = this.racers.get(crossing.racerId);
+        if (!timeline) {
+            timeline = {
+                pending: [],
+                armed: false,
+                completedLaps: 0,
+                splitCount: 0,
+                lapStartNanos: 0,
+                lastCrossingNanos: 0,
+                bestLapNanos: -1
+            };
+            this.racers.set(crossing.racerId, timeline);
+        }
+
+        const stats = this.statsOf(crossing.shard);
+        stats.crossings++;
+        stats.lastCrossingAt = now;
+        if (timeline.armed && crossing.raceNanos < timeline.lastCrossingNanos) {
+            stats.late++;
+        }
+
+        // Insert sorted, crossings mostly arrive in order so search from the end
+        let index = timeline.pending.length;
+        while (index > 0 && timeline.pending[index - 1].crossing.raceNanos > crossing.raceNanos) index--;
+        timeline.pending.splice(index, 0, { crossing, arrivedAt: now });
+    }
+
+    /**
+     * Release the crossings whose reorder window has passed, in race time order per racer.
+     */
+    release(now: number): { racerId: string, timing: MergedTiming }[] {
+        const released: { racerId: string, timing: MergedTiming }[] = [];
+        for (const [racerId, timeline] of this.racers) {
+            while (timeline.pending.length > 0 && now - timeline.pending[0].arrivedAt >= this.reorderMs) {
+                const { crossing } = timeline.pending.shift()!;
+                released.push({ racerId, timing: this.time(timeline, crossing) });
+            }
+        }
+        return released;
+    }
+
+    removeRacer(racerId: string) {
+        this.racers.delete(racerId);
+    }
+
+    clear() {
+        this.racers.clear();
+        this.stats.clear();
+    }
+
+    shardStats(shard: string): ShardStats {
+        return this.stats.get(shard) ?? { shard, crossings: 0, late: 0, lastCrossingAt: null };
+    }
+
+    private statsOf(shard: string): ShardStats {
+        let stats = this.stats.get(shard);
+        if (!stats) {
+            stats = { shard, crossings: 0, late: 0, lastCrossingAt: null };
+            this.stats.set(shard, stats);
+        }
+        return stats;
+    }
+
+    private time(timeline: RacerTimeline, crossing: ShardCrossing): MergedTiming {
+        const t = crossing.raceNanos;
+        if (!timeline.armed) {
+            timeline.armed = true;
+            timeline.lapStartNanos = t;
+            timeline.lastCrossingNanos = t;
+            timeline.splitCount = 0;
+            return {
+                gate: crossing.gate, armed: true, lap: 0, split: -1, splitNanos: 0, sectorNanos: 0,
+                raceNanos: t, bestLapNanos: timeline.bestLapNanos >= 0 ? timeline.bestLapNanos : undefined
+            };
+        }
+
+        // A late crossing can't move time backwards
+        const splitNanos = Math.max(0, t - timeline.lapStartNanos);
+        const sectorNanos = Math.max(0, t - timeline.lastCrossingNanos);
+        const split = timeline.splitCount++;
+        timeline.lastCrossingNanos = Math.max(timeline.lastCrossingNanos, t);
+
+        let lapNanos: number | undefined;
+        if (timeline.splitCount >= Math.max(1, crossing.gates)) {
+            lapNanos = splitNanos;
+            if (timeline.bestLapNanos < 0 || lapNanos < timeline.bestLapNanos) {
+                timeline.bestLapNanos = lapNanos;
+            }
+            timeline.completedLaps++;
+            timeline.lapStartNanos = timeline.lastCrossingNanos;
+            timeline.splitCount = 0;
+        }
+
+        return {
+            gate: crossing.gate,
+            armed: false,
+            lap: lapNanos !== undefined ? timeline.completedLaps : timeline.completedLaps + 1,
+            split,
+            splitNanos,
+            sectorNanos,
+            lapNanos,
+            bestLapNanos: timeline.bestLapNanos >= 0 ? timeline.bestLapNanos : undefined,
+            raceNanos: t
+        };
+    }
+}